@@ -0,0 +1,510 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.harvard.hms.dbmi.bd2k.irct.exception.JoinActionSetupException;
+import edu.harvard.hms.dbmi.bd2k.irct.join.HashJoinImpl.HashJoinImplType;
+import edu.harvard.hms.dbmi.bd2k.irct.join.SortMergeJoinImpl.SortMergeJoinImplType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.join.Join;
+import edu.harvard.hms.dbmi.bd2k.irct.model.join.JoinImplementation;
+import edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.Result;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultStatus;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.security.SecureSession;
+
+/**
+ * Performs a join between two result sets with the join implementation that
+ * is estimated to be the cheapest for them. The type of join is set by the
+ * JoinType field and can be inner, leftOuter, rightOuter or fullOuter
+ * (default: inner). The Sorted field can tell the join that the result sets
+ * are already sorted on their join columns, otherwise each result set is
+ * checked.
+ *
+ * When the join is run the sizes of the result sets, the data types of their
+ * join columns, whether they are sorted and the memory that is available are
+ * used to estimate the cost of each plan:
+ *
+ * <ul>
+ * <li>HASH - Hash join with the smaller result set held in memory</li>
+ * <li>GRACE_HASH - Hash join that partitions both result sets to disk because
+ * the smaller one does not fit in memory</li>
+ * <li>SORT_MERGE - Sort merge join, which sorts the result sets that are not
+ * sorted yet</li>
+ * <li>BROADCAST_HASH - Hash join with the smaller result set held in memory
+ * once and shared by several threads that each probe part of the larger
+ * result set</li>
+ * </ul>
+ *
+ * The costs are counted in row operations and are only meant to compare the
+ * plans with each other. The plan with the lowest cost is run, and the plan,
+ * the estimated cost of every plan, the actual cost counted from the rows the
+ * join built, probed, sorted, merged and spilled, and the time the join took
+ * are written to the message of the result. A result set is only checked for
+ * being sorted while a sort merge join could still be the cheapest plan.
+ *
+ * If a plan fails, or the join is cancelled through its JoinProgress, the
+ * result is set to ERROR with the reason in its message.
+ *
+ * The setup takes the same parameters as the hash joins. The memory budget is
+ * lowered to the free heap when there is less of it, and is used by the hash
+ * table or the sort. If parallelism is not set the broadcast plan may use a
+ * thread for each processor.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+public class AdaptiveJoin implements JoinImplementation {
+	/**
+	 * The ways the join can be run
+	 */
+	public enum JoinPlan {
+		HASH, GRACE_HASH, SORT_MERGE, BROADCAST_HASH
+	}
+
+	// Cost of putting a row in the hash table
+	private static final double HASH_BUILD_COST = 2.0;
+	// Cost of looking a row up in the hash table
+	private static final double HASH_PROBE_COST = 1.0;
+	// Cost of writing a row to disk and reading it back
+	private static final double SPILL_COST = 4.0;
+	// Cost of comparing two rows while sorting
+	private static final double COMPARE_COST = 1.0;
+	// Cost of reading a row while merging
+	private static final double MERGE_COST = 1.0;
+	// Cost of starting and feeding a probe thread
+	private static final double THREAD_COST = 1000.0;
+	// Hashing or comparing keys that are not integers costs this many times
+	// more
+	private static final double OBJECT_KEY_FACTOR = 2.0;
+
+	private Map<String, Object> parameters;
+	private HashJoinOptions options;
+	private int threads;
+
+	@Override
+	public void setup(Map<String, Object> parameters)
+			throws JoinActionSetupException {
+		this.parameters = new HashMap<String, Object>();
+		if (parameters != null) {
+			this.parameters.putAll(parameters);
+		}
+		this.options = HashJoinOptions.fromParameters(this.parameters);
+		if (this.parameters.get("parallelism") != null) {
+			this.threads = options.getParallelism();
+		} else {
+			this.threads = Runtime.getRuntime().availableProcessors();
+		}
+	}
+
+	@Override
+	public Result run(SecureSession session, Join join, Result result)
+			throws ResultSetException, PersistableException {
+
+		ResultSet leftResultSet = (ResultSet) join.getObjectValues().get(
+				"LeftResultSet");
+
+		if (leftResultSet == null) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("LeftResultSet is null");
+			return result;
+		}
+
+		ResultSet rightResultSet = (ResultSet) join.getObjectValues().get(
+				"RightResultSet");
+		if (rightResultSet == null) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("RightResultSet is null");
+			return result;
+		}
+
+		SortMergeJoinImplType joinType = getJoinType(join.getStringValues()
+				.get("JoinType"));
+		if (joinType == null) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("JoinType : Unknown join type "
+					+ join.getStringValues().get("JoinType"));
+			return result;
+		}
+
+		Boolean sorted = null;
+		String sortedValue = join.getStringValues().get("Sorted");
+		if ((sortedValue != null) && !sortedValue.trim().isEmpty()) {
+			sorted = Boolean.valueOf(sortedValue.trim());
+		}
+
+		// Get Left Matching Column Ids
+		String[] leftStringColumnNames = join.getStringValues()
+				.get("LeftColumn").split(",");
+		int[] leftColumns = new int[leftStringColumnNames.length];
+
+		int counter = 0;
+		try {
+			for (String columnName : leftStringColumnNames) {
+				leftColumns[counter] = leftResultSet.findColumn(columnName);
+				counter++;
+			}
+		} catch (ResultSetException rse) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("LeftColumn : " + rse.getMessage());
+			return result;
+		}
+
+		// Get Right Matching Column Ids
+		String[] rightStringColumnNames = join.getStringValues()
+				.get("RightColumn").split(",");
+		int[] rightColumns = new int[rightStringColumnNames.length];
+
+		counter = 0;
+		try {
+			for (String columnName : rightStringColumnNames) {
+				rightColumns[counter] = rightResultSet.findColumn(columnName);
+				counter++;
+			}
+		} catch (ResultSetException rse) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("RightColumn : " + rse.getMessage());
+			return result;
+		}
+
+		if (leftColumns.length != rightColumns.length) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("LeftColumn and RightColumn have a different number of columns");
+			return result;
+		}
+
+		// Reject the join before it runs if it would output too many rows
+		if (options.getMaxOutputRows() > 0) {
+			JoinEstimate estimate = JoinEstimate.estimate(leftResultSet,
+					rightResultSet, leftColumns, rightColumns);
+			long outputRows = estimate.getOutputRows(getHashJoinType(joinType));
+			if (outputRows > options.getMaxOutputRows()) {
+				result.setResultStatus(ResultStatus.ERROR);
+				result.setMessage("Estimated output rows : " + outputRows
+						+ " is more than maxOutputRows : "
+						+ options.getMaxOutputRows() + " (" + estimate + ")");
+				return result;
+			}
+		}
+
+		// Plan the join
+		long memoryBudget = getAvailableMemory();
+		ExternalSort leftSort = new ExternalSort(leftColumns, memoryBudget,
+				options.getTempDirectory());
+		ExternalSort rightSort = new ExternalSort(rightColumns, memoryBudget,
+				options.getTempDirectory());
+		long leftRows = leftResultSet.getSize();
+		long rightRows = rightResultSet.getSize();
+		long leftBytes = leftRows * RowSizes.estimateRow(leftResultSet);
+		long rightBytes = rightRows * RowSizes.estimateRow(rightResultSet);
+		double keyFactor = getKeyFactor(leftResultSet, rightResultSet,
+				leftColumns, rightColumns);
+
+		boolean leftSorted = (sorted == null) || sorted;
+		boolean rightSorted = leftSorted;
+		if (sorted == null) {
+			// A result set is only checked while a sort merge join could still
+			// be the cheapest plan, counting the ones that are not checked yet
+			// as sorted
+			leftSorted = !isSortMergeRuledOut(estimateCosts(leftRows,
+					rightRows, leftBytes, rightBytes, keyFactor, true, true,
+					memoryBudget)) && leftSort.isSorted(leftResultSet);
+			rightSorted = !isSortMergeRuledOut(estimateCosts(leftRows,
+					rightRows, leftBytes, rightBytes, keyFactor, leftSorted,
+					true, memoryBudget)) && rightSort.isSorted(rightResultSet);
+		}
+
+		Map<JoinPlan, Double> costs = estimateCosts(leftRows, rightRows,
+				leftBytes, rightBytes, keyFactor, leftSorted, rightSorted,
+				memoryBudget);
+		JoinPlan plan = null;
+		for (JoinPlan candidate : costs.keySet()) {
+			if ((plan == null) || (costs.get(candidate) < costs.get(plan))) {
+				plan = candidate;
+			}
+		}
+
+		ResultSet outputResult = (ResultSet) result.getData();
+		long start = System.nanoTime();
+		double actualCost;
+		String statistics;
+
+		JoinProgress progress = JoinProgress.start(result);
+		try {
+			if (plan == JoinPlan.SORT_MERGE) {
+				// Only the result sets that are not sorted are sorted
+				Boolean bothSorted = (leftSorted && rightSorted) ? Boolean.TRUE
+						: sorted;
+				SortMergeJoinImpl sortMergeJoin = new SortMergeJoinImpl(
+						leftResultSet, rightResultSet, leftColumns,
+						rightColumns, joinType, bothSorted, memoryBudget,
+						options.getTempDirectory());
+				sortMergeJoin.setProgress(progress);
+				sortMergeJoin.join(outputResult);
+
+				actualCost = getSortCost(sortMergeJoin.getLeftSortedRows(),
+						keyFactor)
+						+ getSortCost(sortMergeJoin.getRightSortedRows(),
+								keyFactor)
+						+ (sortMergeJoin.getSpilledRows() * SPILL_COST)
+						+ (keyFactor * sortMergeJoin.getMergedRows() * MERGE_COST);
+				statistics = "Sorted rows : "
+						+ (sortMergeJoin.getLeftSortedRows() + sortMergeJoin
+								.getRightSortedRows()) + ", Spilled rows : "
+						+ sortMergeJoin.getSpilledRows() + ", Merged rows : "
+						+ sortMergeJoin.getMergedRows();
+			} else {
+				int parallelism = (plan == JoinPlan.BROADCAST_HASH) ? threads
+						: 1;
+				HashJoinOptions hashOptions;
+				try {
+					hashOptions = getHashOptions(parallelism, memoryBudget);
+				} catch (JoinActionSetupException jase) {
+					result.setResultStatus(ResultStatus.ERROR);
+					result.setMessage(jase.getMessage());
+					return result;
+				}
+				HashJoinImpl hashJoin = new HashJoinImpl(leftResultSet,
+						rightResultSet, leftColumns, rightColumns,
+						getHashJoinType(joinType), hashOptions);
+				hashJoin.setResultIds(
+						JoinParameters.getResultId(join, "LeftResultSet"),
+						JoinParameters.getResultId(join, "RightResultSet"));
+				hashJoin.setProgress(progress);
+				if (hashOptions.isPipelined()) {
+					hashJoin.join(outputResult,
+							hashOptions.getOutputQueueSize());
+				} else {
+					hashJoin.join(outputResult);
+				}
+
+				// Rows probed in parallel are shared out between the threads
+				HashJoinStatistics hashStatistics = hashJoin.getStatistics();
+				long parallelProbeRows = hashStatistics.getParallelProbeRows();
+				long serialProbeRows = hashStatistics.getProbeRows()
+						- parallelProbeRows;
+				actualCost = (keyFactor * ((progress.getRowsBuilt() * HASH_BUILD_COST)
+						+ (serialProbeRows * HASH_PROBE_COST)
+						+ (parallelProbeRows * HASH_PROBE_COST / parallelism)))
+						+ (hashStatistics.getSpilledRows() * SPILL_COST);
+				if (plan == JoinPlan.BROADCAST_HASH) {
+					actualCost += threads * THREAD_COST;
+				}
+				statistics = hashStatistics.toString();
+			}
+		} catch (ResultSetException rse) {
+			// Every plan fails the same way, whether it was cancelled or could
+			// not read or write a result set
+			result.setResultStatus(ResultStatus.ERROR);
+			if (progress.isCancelled()) {
+				result.setMessage("Join was cancelled : " + progress);
+			} else {
+				result.setMessage("Plan : " + plan + " : " + rse.getMessage());
+			}
+			return result;
+		} finally {
+			progress.finish();
+		}
+		long elapsed = (System.nanoTime() - start) / 1000000;
+
+		outputResult.beforeFirst();
+		result.setResultStatus(ResultStatus.COMPLETE);
+		result.setMessage(getPlanMessage(plan, costs, actualCost, elapsed,
+				statistics));
+		result.setData(outputResult);
+		return result;
+	}
+
+	/**
+	 * Estimates the cost of every plan that can run the join. The broadcast
+	 * plan is left out when there is only one thread, or when the smaller
+	 * result set does not fit in memory.
+	 *
+	 * @return Estimated cost of each plan
+	 */
+	private Map<JoinPlan, Double> estimateCosts(long leftRows,
+			long rightRows, long leftBytes, long rightBytes, double keyFactor,
+			boolean leftSorted, boolean rightSorted, long memoryBudget) {
+		Map<JoinPlan, Double> costs = new EnumMap<JoinPlan, Double>(
+				JoinPlan.class);
+
+		// The smaller result set is held in the hash table
+		long buildRows = Math.min(leftRows, rightRows);
+		long probeRows = Math.max(leftRows, rightRows);
+		long buildBytes = (leftRows <= rightRows) ? leftBytes : rightBytes;
+		buildBytes += buildRows * HashJoinImpl.HASH_TABLE_ROW_SIZE;
+		boolean fits = buildBytes <= memoryBudget;
+		if (options.getBlockSize() > 0) {
+			fits = fits && (buildRows <= options.getBlockSize());
+		}
+
+		double hashCost = keyFactor
+				* ((buildRows * HASH_BUILD_COST) + (probeRows * HASH_PROBE_COST));
+		if (fits) {
+			costs.put(JoinPlan.HASH, hashCost);
+			if (threads > 1) {
+				costs.put(JoinPlan.BROADCAST_HASH, (keyFactor
+						* ((buildRows * HASH_BUILD_COST)
+						+ (probeRows * HASH_PROBE_COST / threads)))
+						+ (threads * THREAD_COST));
+			}
+		} else {
+			costs.put(JoinPlan.GRACE_HASH, hashCost
+					+ ((leftRows + rightRows) * SPILL_COST));
+		}
+
+		costs.put(JoinPlan.SORT_MERGE, estimateSortCost(leftRows, leftBytes,
+				leftSorted, keyFactor, memoryBudget)
+				+ estimateSortCost(rightRows, rightBytes, rightSorted,
+						keyFactor, memoryBudget)
+				+ (keyFactor * (leftRows + rightRows) * MERGE_COST));
+
+		return costs;
+	}
+
+	private double estimateSortCost(long rows, long bytes, boolean sorted,
+			double keyFactor, long memoryBudget) {
+		if (sorted || (rows < 2)) {
+			return 0;
+		}
+		double cost = getSortCost(rows, keyFactor);
+		if (bytes > memoryBudget) {
+			cost += rows * SPILL_COST;
+		}
+		return cost;
+	}
+
+	/**
+	 * Returns the cost of comparing the rows while sorting them
+	 */
+	private double getSortCost(long rows, double keyFactor) {
+		if (rows < 2) {
+			return 0;
+		}
+		return keyFactor * rows * (Math.log(rows) / Math.log(2))
+				* COMPARE_COST;
+	}
+
+	/**
+	 * Returns true if another plan is cheaper than the sort merge join
+	 */
+	private boolean isSortMergeRuledOut(Map<JoinPlan, Double> costs) {
+		double sortMergeCost = costs.get(JoinPlan.SORT_MERGE);
+		for (JoinPlan candidate : costs.keySet()) {
+			if (costs.get(candidate) < sortMergeCost) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private double getKeyFactor(ResultSet leftResultSet,
+			ResultSet rightResultSet, int[] leftColumns, int[] rightColumns)
+			throws ResultSetException {
+		if (!HashJoinImpl.isIntegerKeys(getDataTypes(leftResultSet,
+				leftColumns))
+				|| !HashJoinImpl.isIntegerKeys(getDataTypes(rightResultSet,
+						rightColumns))) {
+			return OBJECT_KEY_FACTOR;
+		}
+		return 1.0;
+	}
+
+	/**
+	 * Returns the memory budget, lowered to the heap that is still free if
+	 * there is less of it
+	 */
+	private long getAvailableMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		long free = runtime.maxMemory()
+				- (runtime.totalMemory() - runtime.freeMemory());
+		return Math.max(1, Math.min(options.getMemoryBudget(), free));
+	}
+
+	private HashJoinOptions getHashOptions(int parallelism, long memoryBudget)
+			throws JoinActionSetupException {
+		Map<String, Object> hashParameters = new HashMap<String, Object>(
+				parameters);
+		hashParameters.put("parallelism", parallelism);
+		hashParameters.put("memoryBudget", memoryBudget);
+		return HashJoinOptions.fromParameters(hashParameters);
+	}
+
+	private PrimitiveDataType[] getDataTypes(ResultSet resultSet,
+			int[] columns) throws ResultSetException {
+		PrimitiveDataType[] dataTypes = new PrimitiveDataType[columns.length];
+		for (int columnI = 0; columnI < columns.length; columnI++) {
+			dataTypes[columnI] = resultSet.getColumn(columns[columnI])
+					.getDataType();
+		}
+		return dataTypes;
+	}
+
+	private String getPlanMessage(JoinPlan plan, Map<JoinPlan, Double> costs,
+			double actualCost, long elapsed, String statistics) {
+		StringBuilder message = new StringBuilder();
+		message.append("Plan : ").append(plan);
+		message.append(", Estimated cost : ").append(
+				Math.round(costs.get(plan)));
+		message.append(", Actual cost : ").append(Math.round(actualCost));
+		message.append(", Time : ").append(elapsed).append(" ms");
+		message.append(", Plan costs :");
+		for (JoinPlan candidate : costs.keySet()) {
+			message.append(" ").append(candidate).append(" ")
+					.append(Math.round(costs.get(candidate)));
+		}
+		if (statistics != null) {
+			message.append(", ").append(statistics);
+		}
+		return message.toString();
+	}
+
+	private SortMergeJoinImplType getJoinType(String joinType) {
+		if ((joinType == null) || joinType.trim().isEmpty()) {
+			return SortMergeJoinImplType.INNERJOIN;
+		}
+		switch (joinType.trim().toLowerCase()) {
+		case "inner":
+			return SortMergeJoinImplType.INNERJOIN;
+		case "leftouter":
+			return SortMergeJoinImplType.LEFTOUTER;
+		case "rightouter":
+			return SortMergeJoinImplType.RIGHTOUTER;
+		case "fullouter":
+			return SortMergeJoinImplType.FULLOUTER;
+		default:
+			return null;
+		}
+	}
+
+	private HashJoinImplType getHashJoinType(SortMergeJoinImplType joinType) {
+		switch (joinType) {
+		case LEFTOUTER:
+			return HashJoinImplType.LEFTOUTER;
+		case RIGHTOUTER:
+			return HashJoinImplType.RIGHTOUTER;
+		case FULLOUTER:
+			return HashJoinImplType.FULLOUTER;
+		default:
+			return HashJoinImplType.INNERJOIN;
+		}
+	}
+
+	@Override
+	public Result getResults(Result result) {
+		return result;
+	}
+
+	@Override
+	public ResultDataType getJoinDataType() {
+		return ResultDataType.TABULAR;
+	}
+}
@@ -0,0 +1,311 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
+
+/**
+ * A cache of the hash tables the hash joins build, so a result set that is
+ * joined again on the same columns does not have its hash table built a
+ * second time. The cache is shared by all the hash joins and holds at most a
+ * set number of bytes of hash tables. When it is full the table that was used
+ * least recently is dropped.
+ *
+ * Tables are cached by the id of the result they were built from and the
+ * columns they were built on, so the cache does not keep result sets
+ * reachable. Each table also keeps a fingerprint of the names and types of
+ * the columns, the number of rows and the first rows of the result set it was
+ * built from. A join that finds a table only reads those first rows to check
+ * the fingerprint, and a table whose result set no longer matches it is
+ * dropped. A result is not expected to change under the same id, so a change
+ * that keeps its columns, size and first rows is not noticed.
+ *
+ * A cached table is only ever read, so several joins can use it at the same
+ * time. A join that gets a table from the cache gives it back once it is
+ * done, and a table that is dropped while joins are using it is only released
+ * once the last of them gives it back.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+final class BuildTableCache {
+	private static final BuildTableCache INSTANCE = new BuildTableCache();
+	// Number of rows at the start of a result set in its fingerprint
+	private static final int FINGERPRINT_ROWS = 64;
+
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(
+			16, 0.75f, true);
+	private long maxBytes;
+	private long bytes;
+	private long hits;
+	private long misses;
+
+	private BuildTableCache() {
+	}
+
+	/**
+	 * Returns the cache shared by all the hash joins
+	 *
+	 * @return Build table cache
+	 */
+	static BuildTableCache getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Sets the number of bytes of hash tables the cache may hold, dropping
+	 * tables if it holds more
+	 *
+	 * @param maxBytes
+	 *            Maximum bytes
+	 */
+	synchronized void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		evict();
+	}
+
+	/**
+	 * Returns the table built from a result on the given columns, if it is
+	 * cached and the result set has not changed. The table has to be given
+	 * back once the join is done with it.
+	 *
+	 * @param key
+	 *            Result id and columns
+	 * @param fingerprint
+	 *            Fingerprint of the result set as it is now
+	 * @return Cached table, or null
+	 */
+	synchronized Entry get(Key key, long fingerprint) {
+		Entry entry = entries.get(key);
+		if ((entry != null) && (entry.fingerprint != fingerprint)) {
+			remove(key);
+			entry = null;
+		}
+		if (entry == null) {
+			misses++;
+		} else {
+			hits++;
+			entry.users++;
+		}
+		return entry;
+	}
+
+	/**
+	 * Adds a table to the cache. A table larger than the cache is not added.
+	 * The table has to be given back once the join that built it is done with
+	 * it.
+	 *
+	 * @param key
+	 *            Result id and columns the table was built from
+	 * @param entry
+	 *            Table
+	 */
+	synchronized void put(Key key, Entry entry) {
+		remove(key);
+		entry.users++;
+		if (entry.bytes > maxBytes) {
+			entry.dropped = true;
+			return;
+		}
+		entries.put(key, entry);
+		bytes += entry.bytes;
+		evict();
+	}
+
+	/**
+	 * Gives back a table a join got from the cache or added to it, releasing
+	 * it if it was dropped and no other join is using it
+	 *
+	 * @param entry
+	 *            Table
+	 */
+	synchronized void giveBack(Entry entry) {
+		entry.users--;
+		if (entry.dropped && (entry.users == 0)) {
+			entry.release();
+		}
+	}
+
+	/**
+	 * Drops all the cached tables
+	 */
+	synchronized void clear() {
+		for (Entry entry : entries.values()) {
+			drop(entry);
+		}
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Returns the number of bytes of tables in the cache
+	 *
+	 * @return Bytes
+	 */
+	synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Returns the number of lookups that found a table
+	 *
+	 * @return Hits
+	 */
+	synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups that did not find a table
+	 *
+	 * @return Misses
+	 */
+	synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns a fingerprint of the names and types of the columns, the number
+	 * of rows and the first rows of a result set. The result set is left
+	 * positioned before its first row.
+	 *
+	 * @param resultSet
+	 *            Result set
+	 * @return Fingerprint
+	 * @throws ResultSetException
+	 *             An error occurred reading the result set
+	 */
+	static long fingerprint(ResultSet resultSet) throws ResultSetException {
+		long fingerprint = (RowFingerprints.columns(resultSet) * 31)
+				+ resultSet.getSize();
+		if (resultSet.getSize() > 0) {
+			int columnCount = resultSet.getColumnSize();
+			resultSet.beforeFirst();
+			int rowI = 0;
+			while ((rowI < FINGERPRINT_ROWS) && resultSet.next()) {
+				fingerprint = (fingerprint * 31)
+						+ RowFingerprints.row(resultSet.getCurrentRow(),
+								columnCount, rowI++);
+			}
+			resultSet.beforeFirst();
+		}
+		return fingerprint;
+	}
+
+	private void remove(Key key) {
+		Entry entry = entries.remove(key);
+		if (entry != null) {
+			bytes -= entry.bytes;
+			drop(entry);
+		}
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet()
+				.iterator();
+		while ((bytes > maxBytes) && iterator.hasNext()) {
+			Entry entry = iterator.next().getValue();
+			bytes -= entry.bytes;
+			iterator.remove();
+			drop(entry);
+		}
+	}
+
+	/**
+	 * Marks a table that is no longer cached, releasing it unless a join is
+	 * still using it
+	 */
+	private void drop(Entry entry) {
+		entry.dropped = true;
+		if (entry.users == 0) {
+			entry.release();
+		}
+	}
+
+	/**
+	 * Identifies a table by the id of the result it was built from, the
+	 * columns it was built on and how its keys were made
+	 */
+	static final class Key {
+		private final String resultId;
+		private final int[] columns;
+		private final boolean integerKeys;
+		private final boolean exactKeys;
+
+		Key(String resultId, int[] columns, boolean integerKeys,
+				boolean exactKeys) {
+			this.resultId = resultId;
+			this.columns = columns.clone();
+			this.integerKeys = integerKeys;
+			this.exactKeys = exactKeys;
+		}
+
+		@Override
+		public int hashCode() {
+			return (resultId.hashCode() * 31 + Arrays.hashCode(columns)) * 4
+					+ (integerKeys ? 2 : 0) + (exactKeys ? 1 : 0);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return resultId.equals(other.resultId)
+					&& Arrays.equals(columns, other.columns)
+					&& (integerKeys == other.integerKeys)
+					&& (exactKeys == other.exactKeys);
+		}
+	}
+
+	/**
+	 * A hash table built from every row of a result set, along with the rows
+	 * that have no key and so are not in the table
+	 */
+	static final class Entry {
+		private final LongHashTable hashTable;
+		private final BloomFilter bloomFilter;
+		private final List<Row> keylessRows;
+		private final long fingerprint;
+		private final long bytes;
+		// Joins using the table, and whether it has left the cache. Both are
+		// guarded by the cache.
+		private int users;
+		private boolean dropped;
+
+		Entry(LongHashTable hashTable, BloomFilter bloomFilter,
+				List<Row> keylessRows, long fingerprint, long bytes) {
+			this.hashTable = hashTable;
+			this.bloomFilter = bloomFilter;
+			this.keylessRows = keylessRows;
+			this.fingerprint = fingerprint;
+			this.bytes = bytes;
+		}
+
+		LongHashTable getHashTable() {
+			return hashTable;
+		}
+
+		BloomFilter getBloomFilter() {
+			return bloomFilter;
+		}
+
+		List<Row> getKeylessRows() {
+			return keylessRows;
+		}
+
+		private void release() {
+			hashTable.release();
+		}
+	}
+}
@@ -0,0 +1,467 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.util.Arrays;
+
+import edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Column;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
+
+/**
+ * A batch of rows of a result set stored by column. Each column is held in an
+ * array of its own: whole numbers in a long array, decimal numbers in a double
+ * array, booleans in a boolean array and everything else in an object array.
+ * Which cells are null is kept in a bitmap for each column. A batch is filled
+ * from a result set a number of rows at a time, so code that works on every
+ * row can loop over arrays instead of asking the result set for each cell.
+ *
+ * The type of a column is picked from its data type. A long or double column
+ * also keeps the Java class of its values, such as Integer or Float, so a
+ * value read back as an object or a string is the same as the value in the
+ * result set. If a cell does not have the type of its column, for example
+ * text in an integer column or a Long in a column of Integers, the column
+ * falls back to holding objects. The rows the batch was filled from are kept
+ * as well, so a row can be handed on without being rebuilt from the columns.
+ *
+ * A batch can be reused: every fill replaces the rows of the previous one.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+public class ColumnBatch {
+	/**
+	 * The number of rows a batch holds by default
+	 */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	/**
+	 * How the values of a column are stored
+	 */
+	public enum VectorType {
+		LONG, DOUBLE, BOOLEAN, OBJECT
+	}
+
+	private final int[] sourceColumns;
+	private final int capacity;
+	private final VectorType[] types;
+	// Class of the values of each long or double column, or null until the
+	// first value is read
+	private final Class<?>[] valueClasses;
+	private final long[][] longs;
+	private final double[][] doubles;
+	private final boolean[][] booleans;
+	private final Object[][] objects;
+	private final long[][] nulls;
+	private final Row[] rows;
+	private int size;
+
+	/**
+	 * Creates a batch over all the columns of a result set
+	 *
+	 * @param resultSet
+	 *            Result set the batch is filled from
+	 * @param capacity
+	 *            Maximum number of rows in the batch
+	 * @throws ResultSetException
+	 *             An error occurred reading the columns of the result set
+	 */
+	public ColumnBatch(ResultSet resultSet, int capacity)
+			throws ResultSetException {
+		this(resultSet, allColumns(resultSet), capacity);
+	}
+
+	/**
+	 * Creates a batch over some of the columns of a result set. Column i of
+	 * the batch holds the column columns[i] of the result set.
+	 *
+	 * @param resultSet
+	 *            Result set the batch is filled from
+	 * @param columns
+	 *            Columns of the result set to hold
+	 * @param capacity
+	 *            Maximum number of rows in the batch
+	 * @throws ResultSetException
+	 *             An error occurred reading the columns of the result set
+	 */
+	public ColumnBatch(ResultSet resultSet, int[] columns, int capacity)
+			throws ResultSetException {
+		if (capacity < 1) {
+			throw new IllegalArgumentException(
+					"capacity must be at least 1");
+		}
+		this.sourceColumns = columns.clone();
+		this.capacity = capacity;
+		this.types = new VectorType[columns.length];
+		this.valueClasses = new Class<?>[columns.length];
+		this.longs = new long[columns.length][];
+		this.doubles = new double[columns.length][];
+		this.booleans = new boolean[columns.length][];
+		this.objects = new Object[columns.length][];
+		this.nulls = new long[columns.length][(capacity + 63) >>> 6];
+		this.rows = new Row[capacity];
+
+		for (int column = 0; column < columns.length; column++) {
+			Column sourceColumn = resultSet.getColumn(columns[column]);
+			types[column] = vectorType(sourceColumn.getDataType());
+			switch (types[column]) {
+			case LONG:
+				longs[column] = new long[capacity];
+				break;
+			case DOUBLE:
+				doubles[column] = new double[capacity];
+				break;
+			case BOOLEAN:
+				booleans[column] = new boolean[capacity];
+				break;
+			default:
+				objects[column] = new Object[capacity];
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Reads the next rows of a result set into the batch, replacing the rows
+	 * that were in it. Reading starts at the row after the current row of the
+	 * result set, so the result set has to be positioned before its first row
+	 * when the first batch is filled.
+	 *
+	 * @param resultSet
+	 *            Result set to read from
+	 * @return Number of rows read, 0 once there are no rows left
+	 * @throws ResultSetException
+	 *             An error occurred reading the result set
+	 */
+	public int fill(ResultSet resultSet) throws ResultSetException {
+		clear();
+		while ((size < capacity) && resultSet.next()) {
+			add(resultSet.getCurrentRow());
+		}
+		return size;
+	}
+
+	/**
+	 * Adds a row to the end of the batch
+	 *
+	 * @param row
+	 *            Row
+	 * @return False if the batch is full and the row was not added
+	 */
+	public boolean add(Row row) {
+		if (size == capacity) {
+			return false;
+		}
+		for (int column = 0; column < sourceColumns.length; column++) {
+			set(column, size, row.getColumn(sourceColumns[column]));
+		}
+		rows[size] = row;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Removes all the rows from the batch
+	 */
+	public void clear() {
+		for (long[] columnNulls : nulls) {
+			Arrays.fill(columnNulls, 0L);
+		}
+		for (Object[] columnObjects : objects) {
+			if (columnObjects != null) {
+				Arrays.fill(columnObjects, 0, size, null);
+			}
+		}
+		Arrays.fill(rows, 0, size, null);
+		size = 0;
+	}
+
+	/**
+	 * Returns the number of rows in the batch
+	 *
+	 * @return Rows
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the maximum number of rows in the batch
+	 *
+	 * @return Capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the number of columns in the batch
+	 *
+	 * @return Columns
+	 */
+	public int getColumnCount() {
+		return sourceColumns.length;
+	}
+
+	/**
+	 * Returns how the values of a column are stored
+	 *
+	 * @param column
+	 *            Column of the batch
+	 * @return Vector type
+	 */
+	public VectorType getType(int column) {
+		return types[column];
+	}
+
+	/**
+	 * Returns the values of a column that is stored as longs. Only the first
+	 * size() values are rows of the batch, and the value of a null cell is 0.
+	 *
+	 * @param column
+	 *            Column of the batch
+	 * @return Values, or null if the column is not stored as longs
+	 */
+	public long[] getLongs(int column) {
+		return longs[column];
+	}
+
+	/**
+	 * Returns the values of a column that is stored as doubles. Only the first
+	 * size() values are rows of the batch, and the value of a null cell is 0.
+	 *
+	 * @param column
+	 *            Column of the batch
+	 * @return Values, or null if the column is not stored as doubles
+	 */
+	public double[] getDoubles(int column) {
+		return doubles[column];
+	}
+
+	/**
+	 * Returns the values of a column that is stored as booleans. Only the
+	 * first size() values are rows of the batch, and the value of a null cell
+	 * is false.
+	 *
+	 * @param column
+	 *            Column of the batch
+	 * @return Values, or null if the column is not stored as booleans
+	 */
+	public boolean[] getBooleans(int column) {
+		return booleans[column];
+	}
+
+	/**
+	 * Returns the values of a column that is stored as objects. Only the
+	 * first size() values are rows of the batch.
+	 *
+	 * @param column
+	 *            Column of the batch
+	 * @return Values, or null if the column is not stored as objects
+	 */
+	public Object[] getObjects(int column) {
+		return objects[column];
+	}
+
+	/**
+	 * Returns true if a cell is null
+	 *
+	 * @param column
+	 *            Column of the batch
+	 * @param row
+	 *            Row of the batch
+	 * @return True if the cell is null
+	 */
+	public boolean isNull(int column, int row) {
+		return (nulls[column][row >>> 6] & (1L << row)) != 0;
+	}
+
+	/**
+	 * Returns true if any cell of a column is null
+	 *
+	 * @param column
+	 *            Column of the batch
+	 * @return True if the column has a null
+	 */
+	public boolean hasNulls(int column) {
+		for (long word : nulls[column]) {
+			if (word != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the value of a cell as an object of the same class as the value
+	 * in the result set
+	 *
+	 * @param column
+	 *            Column of the batch
+	 * @param row
+	 *            Row of the batch
+	 * @return Value, or null if the cell is null
+	 */
+	public Object getObject(int column, int row) {
+		if (isNull(column, row)) {
+			return null;
+		}
+		switch (types[column]) {
+		case LONG:
+			long longValue = longs[column][row];
+			if (valueClasses[column] == Integer.class) {
+				return (int) longValue;
+			} else if (valueClasses[column] == Short.class) {
+				return (short) longValue;
+			} else if (valueClasses[column] == Byte.class) {
+				return (byte) longValue;
+			}
+			return longValue;
+		case DOUBLE:
+			if (valueClasses[column] == Float.class) {
+				return (float) doubles[column][row];
+			}
+			return doubles[column][row];
+		case BOOLEAN:
+			return booleans[column][row];
+		default:
+			return objects[column][row];
+		}
+	}
+
+	/**
+	 * Returns the value of a cell as a string, in the same form as the string
+	 * value of the value in the result set
+	 *
+	 * @param column
+	 *            Column of the batch
+	 * @param row
+	 *            Row of the batch
+	 * @return Value, or null if the cell is null
+	 */
+	public String getString(int column, int row) {
+		if (isNull(column, row)) {
+			return null;
+		}
+		switch (types[column]) {
+		case LONG:
+			return Long.toString(longs[column][row]);
+		case DOUBLE:
+			// A float widened to a double prints with more digits
+			if (valueClasses[column] == Float.class) {
+				return Float.toString((float) doubles[column][row]);
+			}
+			return Double.toString(doubles[column][row]);
+		case BOOLEAN:
+			return Boolean.toString(booleans[column][row]);
+		default:
+			return objects[column][row].toString();
+		}
+	}
+
+	/**
+	 * Returns the row of the result set a row of the batch was read from
+	 *
+	 * @param row
+	 *            Row of the batch
+	 * @return Row
+	 */
+	public Row getRow(int row) {
+		return rows[row];
+	}
+
+	private void set(int column, int row, Object value) {
+		if (value == null) {
+			nulls[column][row >>> 6] |= 1L << row;
+			return;
+		}
+		switch (types[column]) {
+		case LONG:
+			if (((value instanceof Integer) || (value instanceof Long)
+					|| (value instanceof Short) || (value instanceof Byte))
+					&& isValueClass(column, value)) {
+				longs[column][row] = ((Number) value).longValue();
+				return;
+			}
+			break;
+		case DOUBLE:
+			if (((value instanceof Double) || (value instanceof Float))
+					&& isValueClass(column, value)) {
+				doubles[column][row] = ((Number) value).doubleValue();
+				return;
+			}
+			break;
+		case BOOLEAN:
+			if (value instanceof Boolean) {
+				booleans[column][row] = (Boolean) value;
+				return;
+			}
+			break;
+		default:
+			objects[column][row] = value;
+			return;
+		}
+		toObjects(column);
+		objects[column][row] = value;
+	}
+
+	/**
+	 * Returns true if a value has the class of the values of its column. The
+	 * first value of a column sets the class.
+	 */
+	private boolean isValueClass(int column, Object value) {
+		if (valueClasses[column] == null) {
+			valueClasses[column] = value.getClass();
+		}
+		return valueClasses[column] == value.getClass();
+	}
+
+	/**
+	 * Moves a column over to holding objects, boxing the values it already
+	 * holds. Getting values back as objects from a long or double column keeps
+	 * their Java class, so the values are the same either way.
+	 */
+	private void toObjects(int column) {
+		Object[] columnObjects = new Object[capacity];
+		for (int row = 0; row < size; row++) {
+			columnObjects[row] = getObject(column, row);
+		}
+		types[column] = VectorType.OBJECT;
+		objects[column] = columnObjects;
+		longs[column] = null;
+		doubles[column] = null;
+		booleans[column] = null;
+		valueClasses[column] = null;
+	}
+
+	private static VectorType vectorType(PrimitiveDataType dataType) {
+		if (dataType == null) {
+			return VectorType.OBJECT;
+		}
+		switch (dataType.getName()) {
+		case "byte":
+		case "integer":
+		case "long":
+			return VectorType.LONG;
+		case "double":
+		case "float":
+			return VectorType.DOUBLE;
+		case "boolean":
+			return VectorType.BOOLEAN;
+		default:
+			return VectorType.OBJECT;
+		}
+	}
+
+	private static int[] allColumns(ResultSet resultSet)
+			throws ResultSetException {
+		int[] columns = new int[resultSet.getColumnSize()];
+		for (int column = 0; column < columns.length; column++) {
+			columns[column] = column;
+		}
+		return columns;
+	}
+}
@@ -0,0 +1,221 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
+
+/**
+ * A hash index over a single column of a result set. Rows are grouped by the
+ * value of the column, normalized the way JoinKeys normalizes join columns so
+ * it matches the same values the other joins match, and keep the order they
+ * have in the result set. Rows where the column is null are not indexed, so
+ * they never match.
+ *
+ * The index is used by the single column joins to find the matching rows of
+ * one result set for every row of the other in a single pass over each.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+final class ColumnHashIndex {
+	private final List<Row> rows = new ArrayList<Row>();
+	private final Map<Object, List<Integer>> positions = new HashMap<Object, List<Integer>>();
+	private final int[] columns;
+	private final boolean[] numericColumns;
+
+	/**
+	 * Builds an index over a column of a result set
+	 *
+	 * @param resultSet
+	 *            Result set to index
+	 * @param column
+	 *            Column to index on
+	 * @throws ResultSetException
+	 *             An error occurred reading the result set
+	 */
+	ColumnHashIndex(ResultSet resultSet, int column) throws ResultSetException {
+		this.columns = new int[] { column };
+		this.numericColumns = JoinKeys.getNumericColumns(resultSet, columns);
+		if (resultSet.getSize() == 0) {
+			return;
+		}
+		resultSet.beforeFirst();
+		while (resultSet.next()) {
+			Row row = resultSet.getCurrentRow();
+			Object key = JoinKeys.hashKey(row, columns, numericColumns);
+			if (key != null) {
+				List<Integer> keyPositions = positions.get(key);
+				if (keyPositions == null) {
+					keyPositions = new ArrayList<Integer>(1);
+					positions.put(key, keyPositions);
+				}
+				keyPositions.add(rows.size());
+			}
+			rows.add(row);
+		}
+		resultSet.beforeFirst();
+	}
+
+	/**
+	 * Returns the positions of the rows that have the given key, in result
+	 * set order
+	 *
+	 * @param key
+	 *            Normalized value to look up
+	 * @return Row positions, empty if no row has the value
+	 */
+	List<Integer> getPositions(Object key) {
+		List<Integer> keyPositions = (key == null) ? null : positions.get(key);
+		if (keyPositions == null) {
+			return Collections.emptyList();
+		}
+		return keyPositions;
+	}
+
+	/**
+	 * Returns the row at a position of the result set
+	 *
+	 * @param position
+	 *            Row position
+	 * @return Row
+	 */
+	Row getRow(int position) {
+		return rows.get(position);
+	}
+
+	/**
+	 * Returns the number of rows in the index
+	 *
+	 * @return Number of rows
+	 */
+	int size() {
+		return rows.size();
+	}
+
+	/**
+	 * Finds the rows of one result set that match each row of another. The
+	 * index is built over whichever result set is smaller. If that is the
+	 * other result set, the matches of a driving row are looked up when they
+	 * are asked for, so only the index is held in memory. If it is the driving
+	 * result set, the other is read once and its rows are handed to the
+	 * driving rows they match up front. Either way the matches of a row are in
+	 * the order of the other result set.
+	 *
+	 * @param drivingResultSet
+	 *            Result set whose rows are matched
+	 * @param drivingColumn
+	 *            Join column of the driving result set
+	 * @param otherResultSet
+	 *            Result set the matches are taken from
+	 * @param otherColumn
+	 *            Join column of the other result set
+	 * @return Matching rows of the other result set for the driving rows
+	 * @throws ResultSetException
+	 *             An error occurred reading a result set
+	 */
+	static RowMatches matchRows(ResultSet drivingResultSet,
+			int drivingColumn, ResultSet otherResultSet, int otherColumn)
+			throws ResultSetException {
+		int[] drivingColumns = new int[] { drivingColumn };
+		boolean[] drivingNumeric = JoinKeys.getNumericColumns(
+				drivingResultSet, drivingColumns);
+
+		if (otherResultSet.getSize() <= drivingResultSet.getSize()) {
+			// Index the other side and look up each driving row
+			return new RowMatches(new ColumnHashIndex(otherResultSet,
+					otherColumn), drivingColumns, drivingNumeric, null);
+		}
+
+		// Index the driving side and hand each other row to its matches
+		ColumnHashIndex index = new ColumnHashIndex(drivingResultSet,
+				drivingColumn);
+		List<List<Row>> matches = new ArrayList<List<Row>>(Collections
+				.<List<Row>> nCopies(index.size(), null));
+		if (otherResultSet.getSize() > 0) {
+			int[] otherColumns = new int[] { otherColumn };
+			boolean[] otherNumeric = JoinKeys.getNumericColumns(
+					otherResultSet, otherColumns);
+			otherResultSet.beforeFirst();
+			while (otherResultSet.next()) {
+				Row row = otherResultSet.getCurrentRow();
+				for (int position : index.getPositions(JoinKeys.hashKey(row,
+						otherColumns, otherNumeric))) {
+					List<Row> rowMatches = matches.get(position);
+					if (rowMatches == null) {
+						rowMatches = new ArrayList<Row>(1);
+						matches.set(position, rowMatches);
+					}
+					rowMatches.add(row);
+				}
+			}
+			otherResultSet.beforeFirst();
+		}
+		return new RowMatches(null, drivingColumns, drivingNumeric, matches);
+	}
+
+	/**
+	 * The rows of the other result set that match the rows of a driving
+	 * result set
+	 */
+	static final class RowMatches {
+		private final ColumnHashIndex otherIndex;
+		private final int[] drivingColumns;
+		private final boolean[] drivingNumeric;
+		private final List<List<Row>> matches;
+
+		private RowMatches(ColumnHashIndex otherIndex, int[] drivingColumns,
+				boolean[] drivingNumeric, List<List<Row>> matches) {
+			this.otherIndex = otherIndex;
+			this.drivingColumns = drivingColumns;
+			this.drivingNumeric = drivingNumeric;
+			this.matches = matches;
+		}
+
+		/**
+		 * Returns the rows of the other result set that match a driving row
+		 *
+		 * @param position
+		 *            Position of the row in the driving result set
+		 * @param drivingRow
+		 *            Driving row
+		 * @return Matching rows in the order of the other result set, empty
+		 *         if there are none
+		 */
+		List<Row> get(int position, Row drivingRow) {
+			if (otherIndex == null) {
+				List<Row> rowMatches = (position < matches.size()) ? matches
+						.get(position) : null;
+				if (rowMatches == null) {
+					return Collections.emptyList();
+				}
+				return rowMatches;
+			}
+
+			// A view of the index, so nothing is copied for the row
+			final List<Integer> keyPositions = otherIndex
+					.getPositions(JoinKeys.hashKey(drivingRow, drivingColumns,
+							drivingNumeric));
+			return new AbstractList<Row>() {
+				@Override
+				public Row get(int index) {
+					return otherIndex.getRow(keyPositions.get(index));
+				}
+
+				@Override
+				public int size() {
+					return keyPositions.size();
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,365 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
+
+/**
+ * Sorts the rows of a result set on a set of columns using no more than a
+ * given amount of memory. Rows are read into memory until the memory budget is
+ * used up, sorted, and written to a temporary file as a sorted run. The runs
+ * are then merged together as the sorted rows are read, at most MERGE_WIDTH
+ * runs at a time so the number of open files stays bounded. If the result set
+ * fits into memory no files are written. Rows that sort the same keep the
+ * order they had in the result set.
+ * 
+ * Columns are sorted ascending with nulls first. Values are normalized the way
+ * the joins normalize their join columns, so numbers are compared by value
+ * whatever their type, text in a numeric column is compared as a number, and
+ * values of different types sort numbers first, then booleans, dates and
+ * text.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+public class ExternalSort {
+	// Estimated bytes used by the sort buffer for each row on top of the row
+	private static final long BUFFER_ROW_SIZE = 8;
+	// Maximum number of runs that are merged at once
+	private static final int MERGE_WIDTH = 64;
+
+	private final int[] columns;
+	private final long memoryBudget;
+	private final File tempDirectory;
+	private long spilledRows;
+
+	/**
+	 * Creates a sort on the given columns
+	 *
+	 * @param columns
+	 *            Columns to sort on, in order of precedence
+	 * @param memoryBudget
+	 *            Number of bytes of rows to hold in memory at once
+	 * @param tempDirectory
+	 *            Directory to write sorted runs to
+	 */
+	public ExternalSort(int[] columns, long memoryBudget, File tempDirectory) {
+		this.columns = columns;
+		this.memoryBudget = memoryBudget;
+		this.tempDirectory = tempDirectory;
+	}
+
+	/**
+	 * Returns the number of rows the sort has written to temporary files.
+	 * Rows that are merged into a longer run are counted again.
+	 *
+	 * @return Spilled rows
+	 */
+	long getSpilledRows() {
+		return spilledRows;
+	}
+
+	/**
+	 * Returns a comparator of the rows of a result set on the sort columns
+	 *
+	 * @param resultSet
+	 *            Result set
+	 * @return Row comparator
+	 * @throws ResultSetException
+	 *             An error occurred reading the columns of the result set
+	 */
+	Comparator<Row> getComparator(ResultSet resultSet)
+			throws ResultSetException {
+		final boolean[] numericColumns = JoinKeys.getNumericColumns(
+				resultSet, columns);
+		return new Comparator<Row>() {
+			@Override
+			public int compare(Row row1, Row row2) {
+				return JoinKeys.compare(row1, columns, numericColumns, row2,
+						columns, numericColumns);
+			}
+		};
+	}
+
+	/**
+	 * Returns true if the rows of the result set are already in order
+	 *
+	 * @param resultSet
+	 *            Result set
+	 * @return True if the result set is sorted
+	 * @throws ResultSetException
+	 *             An error occurred reading the result set
+	 */
+	public boolean isSorted(ResultSet resultSet) throws ResultSetException {
+		if (resultSet.getSize() == 0) {
+			return true;
+		}
+		Comparator<Row> comparator = getComparator(resultSet);
+		Row previous = null;
+		resultSet.beforeFirst();
+		try {
+			while (resultSet.next()) {
+				Row row = resultSet.getCurrentRow();
+				if ((previous != null)
+						&& (comparator.compare(previous, row) > 0)) {
+					return false;
+				}
+				previous = row;
+			}
+		} finally {
+			resultSet.beforeFirst();
+		}
+		return true;
+	}
+
+	/**
+	 * Sorts the rows of a result set into the output result set. The columns
+	 * of the input are added to the output.
+	 *
+	 * @param input
+	 *            Result set to sort
+	 * @param output
+	 *            Result set to write the sorted rows to
+	 * @throws ResultSetException
+	 *             An error occurred reading or writing a result set
+	 * @throws PersistableException
+	 *             An error occurred writing to the output
+	 */
+	public void sort(ResultSet input, ResultSet output)
+			throws ResultSetException, PersistableException {
+		int columnCount = input.getColumnSize();
+		for (int column = 0; column < columnCount; column++) {
+			output.appendColumn(input.getColumn(column));
+		}
+
+		RowCursor cursor = sort(input);
+		try {
+			while (cursor.next()) {
+				Row row = cursor.getRow();
+				output.appendRow();
+				for (int column = 0; column < columnCount; column++) {
+					output.updateObject(column, row.getColumn(column));
+				}
+			}
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Sorts the rows of a result set
+	 *
+	 * @param resultSet
+	 *            Result set
+	 * @return Cursor over the sorted rows, which must be closed once it has
+	 *         been read
+	 * @throws ResultSetException
+	 *             An error occurred reading the result set or writing a run
+	 */
+	RowCursor sort(ResultSet resultSet) throws ResultSetException {
+		int columnCount = resultSet.getColumnSize();
+		for (int column : columns) {
+			if ((column < 0) || (column >= columnCount)) {
+				throw new ResultSetException("Sort column " + column
+						+ " does not exist");
+			}
+		}
+		Comparator<Row> comparator = getComparator(resultSet);
+		List<Row> buffer = new ArrayList<Row>();
+		List<SpillFile> runs = new ArrayList<SpillFile>();
+		long bytes = 0;
+
+		try {
+			if (resultSet.getSize() != 0) {
+				resultSet.beforeFirst();
+				while (resultSet.next()) {
+					Row row = resultSet.getCurrentRow();
+					buffer.add(row);
+					bytes += RowSizes.estimateRow(row, columnCount)
+							+ BUFFER_ROW_SIZE;
+					if (bytes >= memoryBudget) {
+						runs.add(writeRun(buffer, columnCount, comparator));
+						buffer.clear();
+						bytes = 0;
+					}
+				}
+				resultSet.beforeFirst();
+			}
+
+			if (runs.isEmpty()) {
+				Collections.sort(buffer, comparator);
+				return new MemoryCursor(buffer);
+			}
+			if (!buffer.isEmpty()) {
+				runs.add(writeRun(buffer, columnCount, comparator));
+				buffer.clear();
+			}
+
+			// Merge groups of runs into longer runs until they can all be
+			// merged at once
+			while (runs.size() > MERGE_WIDTH) {
+				List<SpillFile> mergedRuns = new ArrayList<SpillFile>();
+				try {
+					for (int start = 0; start < runs.size(); start += MERGE_WIDTH) {
+						List<SpillFile> group = runs.subList(start,
+								Math.min(runs.size(), start + MERGE_WIDTH));
+						mergedRuns.add(mergeRuns(
+								new ArrayList<SpillFile>(group), columnCount,
+								comparator));
+					}
+				} catch (ResultSetException e) {
+					for (SpillFile run : mergedRuns) {
+						run.delete();
+					}
+					throw e;
+				}
+				runs = mergedRuns;
+			}
+			return new MergeCursor(runs, comparator);
+		} catch (ResultSetException e) {
+			for (SpillFile run : runs) {
+				run.delete();
+			}
+			throw e;
+		}
+	}
+
+	private SpillFile mergeRuns(List<SpillFile> group, int columnCount,
+			Comparator<Row> comparator) throws ResultSetException {
+		MergeCursor cursor = new MergeCursor(group, comparator);
+		SpillFile run = null;
+		try {
+			run = new SpillFile(tempDirectory, columnCount);
+			while (cursor.next()) {
+				run.write(0, cursor.getRow());
+				spilledRows++;
+			}
+		} catch (ResultSetException e) {
+			if (run != null) {
+				run.delete();
+			}
+			throw e;
+		} finally {
+			cursor.close();
+		}
+		return run;
+	}
+
+	private SpillFile writeRun(List<Row> buffer, int columnCount,
+			Comparator<Row> comparator) throws ResultSetException {
+		Collections.sort(buffer, comparator);
+		SpillFile run = new SpillFile(tempDirectory, columnCount);
+		try {
+			for (Row row : buffer) {
+				run.write(0, row);
+				spilledRows++;
+			}
+		} catch (ResultSetException e) {
+			run.delete();
+			throw e;
+		}
+		return run;
+	}
+
+	/**
+	 * Reads the rows of a sort that fit in memory
+	 */
+	private static class MemoryCursor implements RowCursor {
+		private List<Row> rows;
+		private int position = -1;
+
+		MemoryCursor(List<Row> rows) {
+			this.rows = rows;
+		}
+
+		@Override
+		public boolean next() {
+			if (position < rows.size()) {
+				position++;
+			}
+			return position < rows.size();
+		}
+
+		@Override
+		public Row getRow() {
+			return rows.get(position);
+		}
+
+		@Override
+		public void close() {
+			rows = Collections.emptyList();
+		}
+	}
+
+	/**
+	 * Merges sorted runs by keeping the current row of each run in a priority
+	 * queue. Runs with equal rows are read in the order they were written.
+	 */
+	private static class MergeCursor implements RowCursor {
+		private List<SpillFile> runs;
+		private PriorityQueue<Integer> queue;
+		private Integer currentRun;
+
+		MergeCursor(final List<SpillFile> runs,
+				final Comparator<Row> comparator) throws ResultSetException {
+			this.runs = runs;
+			this.queue = new PriorityQueue<Integer>(runs.size(),
+					new Comparator<Integer>() {
+						@Override
+						public int compare(Integer run1, Integer run2) {
+							int compare = comparator.compare(runs.get(run1)
+									.getRow(), runs.get(run2).getRow());
+							if (compare == 0) {
+								return run1.compareTo(run2);
+							}
+							return compare;
+						}
+					});
+			for (int run = 0; run < runs.size(); run++) {
+				runs.get(run).beforeFirst();
+				if (runs.get(run).next()) {
+					queue.add(run);
+				}
+			}
+		}
+
+		@Override
+		public boolean next() throws ResultSetException {
+			if (currentRun != null) {
+				SpillFile run = runs.get(currentRun);
+				if (run.next()) {
+					queue.add(currentRun);
+				} else {
+					run.delete();
+				}
+			}
+			currentRun = queue.poll();
+			return currentRun != null;
+		}
+
+		@Override
+		public Row getRow() {
+			return runs.get(currentRun).getRow();
+		}
+
+		@Override
+		public void close() {
+			for (SpillFile run : runs) {
+				run.delete();
+			}
+			queue.clear();
+			currentRun = null;
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A Misra-Gries summary that finds the 64 bit hashes that were added most
+ * often. It keeps a counter for at most capacity hashes. A hash without a
+ * counter takes a free one, and when there is none every counter is lowered by
+ * one and the counters that reach zero are freed. A hash that makes up more
+ * than 1 / (capacity + 1) of the hashes that were added always keeps its
+ * counter, and a counter is never lower than the real count by more than the
+ * number of times the counters were lowered.
+ *
+ * You can read more about the Misra-Gries summary at
+ * https://en.wikipedia.org/wiki/Misra%E2%80%93Gries_summary
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+class FrequentKeys {
+	static final int DEFAULT_CAPACITY = 64;
+
+	private final int capacity;
+	private final Map<Long, long[]> counters;
+	private long decrements;
+
+	/**
+	 * Creates a summary with the default capacity
+	 */
+	FrequentKeys() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a summary that counts at most capacity hashes at once
+	 *
+	 * @param capacity
+	 *            Number of counters
+	 */
+	FrequentKeys(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be at least 1");
+		}
+		this.capacity = capacity;
+		this.counters = new HashMap<Long, long[]>(capacity * 2);
+	}
+
+	/**
+	 * Adds a hash to the summary
+	 *
+	 * @param hash
+	 *            64 bit hash
+	 */
+	void add(long hash) {
+		long[] counter = counters.get(hash);
+		if (counter != null) {
+			counter[0]++;
+			return;
+		}
+		if (counters.size() < capacity) {
+			counters.put(hash, new long[] { 1 });
+			return;
+		}
+		// The new hash and one of every counted hash cancel each other out
+		decrements++;
+		Iterator<long[]> iterator = counters.values().iterator();
+		while (iterator.hasNext()) {
+			if (--iterator.next()[0] == 0) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of times a hash was added at least, or zero if it has
+	 * no counter
+	 *
+	 * @param hash
+	 *            64 bit hash
+	 * @return Lower bound of the count
+	 */
+	long count(long hash) {
+		long[] counter = counters.get(hash);
+		return (counter == null) ? 0 : counter[0];
+	}
+
+	/**
+	 * Returns true if the hash has a counter
+	 *
+	 * @param hash
+	 *            64 bit hash
+	 * @return True if the hash is counted
+	 */
+	boolean contains(long hash) {
+		return counters.containsKey(hash);
+	}
+
+	/**
+	 * Returns the most a count can be below the number of times its hash was
+	 * added. It is also the most times a hash without a counter was added.
+	 *
+	 * @return Maximum error of a count
+	 */
+	long getMaxError() {
+		return decrements;
+	}
+
+	/**
+	 * Returns the hashes whose count is more than a minimum
+	 *
+	 * @param minCount
+	 *            Count a hash has to be over
+	 * @return Hashes
+	 */
+	Set<Long> getHashes(double minCount) {
+		Set<Long> hashes = new HashSet<Long>();
+		for (Map.Entry<Long, long[]> counter : counters.entrySet()) {
+			if (counter.getValue()[0] > minCount) {
+				hashes.add(counter.getKey());
+			}
+		}
+		return hashes;
+	}
+}
@@ -17,6 +17,7 @@ import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableExceptio
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSetImpl;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
 import edu.harvard.hms.dbmi.bd2k.irct.model.security.SecureSession;
 
 /**
@@ -88,20 +89,14 @@ public class FullOuterJoin implements JoinImplementation {
 
 		// Loop through right result to make sure that right joins occur bringing
 		// in all right matches
-		rightResultSet.beforeFirst();
+		ColumnHashIndex.RowMatches leftMatches = ColumnHashIndex.matchRows(rightResultSet, rightColumnIndex, leftResultSet, leftColumnIndex);
 
+		int rightRowIndex = 0;
+		rightResultSet.beforeFirst();
 		while (rightResultSet.next()) {
 			Object rightRowMatchObj = ((ResultSetImpl) rightResultSet).getObject(rightColumnIndex);
-			boolean match = false;
-
-			// Reset resultset before looping through it
-			leftResultSet.beforeFirst();
-			while (leftResultSet.next()) {
-				if (((ResultSetImpl) leftResultSet).getObject(leftColumnIndex).equals(rightRowMatchObj)) {
-					match = true;
-					break;
-				}
-			}
+			boolean match = !leftMatches.get(rightRowIndex, rightResultSet.getCurrentRow()).isEmpty();
+			rightRowIndex++;
 
 			// If a match isn't found then add it to the results
 			if (!match) {
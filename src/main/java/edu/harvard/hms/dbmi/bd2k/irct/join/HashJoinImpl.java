@@ -3,16 +3,20 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package edu.harvard.hms.dbmi.bd2k.irct.join;
 
+import java.io.File;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
-import com.google.common.base.Charsets;
-import com.google.common.collect.LinkedHashMultimap;
-import com.google.common.hash.HashCode;
 import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 
 import edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType;
@@ -26,6 +30,62 @@ import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
  * This is an implementation of a equi hybrid hash join. It performs joins
  * between two result sets of either full, inner, left, or right type.
  * 
+ * Rows are kept in a hash table keyed on a long. If all the join columns are
+ * integers or longs the key is built directly from the column values,
+ * otherwise it is taken from a hash of the normalized byte key of the
+ * columns. Unless a single integer column is joined on, the byte key is kept
+ * with each row and rows with the same long key only match if their byte keys
+ * are equal, so values of different Java types that are equal, such as an
+ * integer and a long, still match.
+ * 
+ * If the outer result set fits in a single block it is joined in memory.
+ * Otherwise both result sets are partitioned on the hash of their join
+ * columns, one partition is kept in memory and the rest are spilled to disk
+ * and joined partition by partition.
+ * 
+ * When the parallelism option is greater than one the hash table for each
+ * block is built by several threads at once from radix partitions of the
+ * block. The inner rows are then read in batches and each batch is probed
+ * against the hash table by several threads at once. The joined rows are
+ * written to the output in the same order as a single threaded join would
+ * write them.
+ * 
+ * The number of outer rows in a block is bounded by a memory budget. The
+ * block size is first estimated from the column types of the outer result
+ * set, and while a block is built the estimated size of the rows that were
+ * actually added is tracked so a block of wide rows ends early.
+ * 
+ * A Bloom filter of the keys in the hash table is built along with each
+ * block, so probe rows without a match are usually rejected without a hash
+ * table lookup. The number of rows it rejects is kept in the statistics.
+ * 
+ * The hash table of an outer result set that fits in a single block can be
+ * kept in a cache shared by all the hash joins, so a result that is joined
+ * again on the same columns reuses it instead of building it again. Tables
+ * are cached by result id, so only joins that are given the ids of their
+ * results use the cache.
+ * 
+ * The rows of the hash table can be kept outside of the heap, in which case
+ * they are serialized into direct memory and only read back into row objects
+ * when they are matched.
+ * 
+ * Once the hash table of a block is built, keys that are shared by more rows
+ * than the skew threshold are joined as heavy hitters. Their rows are grouped
+ * by byte key into arrays, so a probe row with such a key is matched against
+ * the group as a whole instead of walking and comparing the chain row by row.
+ * When the join is parallel the joined rows of a heavy hitter are built by
+ * all the threads at once, each taking a share of the group. The number of
+ * heavy hitters and their rows is kept in the statistics.
+ * 
+ * The progress of the join, the rows it has built, probed and written and the
+ * block it is on, is kept in a JoinProgress. The join checks in with it
+ * between batches of rows, which publishes the progress to the result and
+ * stops the join if it has been cancelled.
+ * 
+ * The join can also be pipelined. It then runs on its own thread and hands
+ * the joined rows over through a bounded queue as they are found, so the
+ * first rows reach the output before the join is finished.
+ * 
  * You can read more about a hybrid hash join at
  * https://en.wikipedia.org/wiki/Hash_join#Hybrid_hash_join
  * 
@@ -37,264 +97,1750 @@ public class HashJoinImpl {
 		FULLOUTER, INNERJOIN, LEFTOUTER, RIGHTOUTER
 	}
 
+	// Upper bound on the number of partitions so the number of open spill
+	// files stays reasonable
+	private static final int MAX_PARTITIONS = 256;
+	// Number of inner rows read before they are probed in parallel
+	private static final int PROBE_BATCH_SIZE = 16384;
+	// How many times cheaper the larger result set has to be estimated to be
+	// before it is used to build the hash table
+	private static final double BUILD_SIDE_MARGIN = 2.0;
+	// Estimated bytes the hash table and Bloom filter use for each row on top
+	// of the row itself
+	static final long HASH_TABLE_ROW_SIZE = 56;
+	// Estimated bytes of the array that holds a byte key on top of the key
+	private static final long KEY_BYTES_SIZE = 24;
+	// Rows are indexed by int in the hash table
+	private static final long MAX_BLOCK_SIZE = Integer.MAX_VALUE - 8;
+	// Number of rows a single worker task works on
+	private static final int TASK_SIZE = 1024;
+	// Number of rows read or written between two progress checkpoints
+	private static final int CHECKPOINT_ROWS = 4096;
+	// Marks a match buffer entry as an inner row that matched a heavy hitter
+	// key. Entries below it index the rows of the heavy hitter.
+	private static final int HEAVY_ROW = -2;
+
 	private HashFunction hashFunction;
 	private boolean isLeftOuterResultSet;
 	private ResultSet innerResultSet;
 	private ResultSet outerResultSet;
 
-	private List<Integer> ignoreOuterColumns;
-	private List<Integer> ignoreInnerColumns;
+	private List<Column> columns;
+	// Names of the output columns to keep, or null to keep them all
+	private Set<String> projection;
+	private ColumnProjection outerProjection;
+	private ColumnProjection innerProjection;
 
 	private int[] innerColumns;
-	private PrimitiveDataType[] innerDataTypes;
+	private KeyEncoder innerEncoder;
 	private int[] outerColumns;
-	private PrimitiveDataType[] outerDataTypes;
+	private KeyEncoder outerEncoder;
 	private HashJoinImplType joinType;
 	private long blockSize;
-	private LinkedHashMultimap<HashCode, Row> hashMultiMap;
+	private long memoryBudget;
+	private long blockBytes;
+	private File tempDirectory;
+	private int parallelism;
+	private boolean offHeap;
+	private ForkJoinPool workerPool;
+	private LongHashTable hashTable;
+	private BloomFilter bloomFilter;
+	private BitSet usedRows;
+	private HashJoinStatistics statistics;
+	private JoinProgress progress;
+	private BuildTableCache buildCache;
+	// Id of the result the outer result set belongs to, or null if unknown
+	private String outerResultId;
+	private int skewThreshold;
+	// Keys of the hash table that are shared by so many rows that they are
+	// joined on their own
+	private Map<Long, HeavyKey> heavyKeys;
+
+	// True if all the join columns are integers or longs
+	private boolean integerKeys;
+	// True if two rows with the same key are guaranteed to match
+	private boolean exactKeys;
+
 
 	public HashJoinImpl(ResultSet leftResultSet, ResultSet rightResultSet,
 			int[] leftColumns, int[] rightColumns, HashJoinImplType joinType,
-			long blockSize) throws ResultSetException {
+			HashJoinOptions options) throws ResultSetException {
 		this.joinType = joinType;
-		this.blockSize = blockSize;
+		this.memoryBudget = options.getMemoryBudget();
+		this.tempDirectory = options.getTempDirectory();
+		this.parallelism = options.getParallelism();
+		this.offHeap = options.isOffHeap();
+		this.skewThreshold = options.getSkewThreshold();
+
+		PrimitiveDataType[] leftDataTypes = getDataTypes(leftResultSet,
+				leftColumns);
+		PrimitiveDataType[] rightDataTypes = getDataTypes(rightResultSet,
+				rightColumns);
 
-		this.ignoreOuterColumns = new ArrayList<Integer>();
-		this.ignoreInnerColumns = new ArrayList<Integer>();
+		this.integerKeys = isIntegerKeys(leftDataTypes)
+				&& isIntegerKeys(rightDataTypes);
+		this.exactKeys = integerKeys && (leftColumns.length == 1);
+		hashFunction = Hashing.murmur3_128();
+		KeyEncoder leftEncoder = new KeyEncoder(leftColumns, leftDataTypes);
+		KeyEncoder rightEncoder = new KeyEncoder(rightColumns, rightDataTypes);
 
 		// If the left result set is smaller or equal to the right result set it
 		// becomes the outer result set, and the right result set becomes the
-		// inner one. Otherwise the outer result set is set to the right result
-		// set and the inner result set is set to the left result set.
-		if (leftResultSet.getSize() <= rightResultSet.getSize()) {
+		// inner one. The smaller result set is only passed over if the other
+		// one is estimated to be clearly cheaper to hold in the hash table.
+		boolean leftBuildSide;
+		if ("left".equals(options.getBuildSide())) {
+			leftBuildSide = true;
+		} else if ("right".equals(options.getBuildSide())) {
+			leftBuildSide = false;
+		} else {
+			leftBuildSide = leftResultSet.getSize() <= rightResultSet.getSize();
+			double leftCost = estimateBuildCost(leftResultSet, leftColumns,
+					leftEncoder, options.getSampleRows());
+			double rightCost = estimateBuildCost(rightResultSet, rightColumns,
+					rightEncoder, options.getSampleRows());
+			if (leftBuildSide && (leftCost > rightCost * BUILD_SIDE_MARGIN)) {
+				leftBuildSide = false;
+			} else if (!leftBuildSide
+					&& (rightCost > leftCost * BUILD_SIDE_MARGIN)) {
+				leftBuildSide = true;
+			}
+		}
+
+		if (leftBuildSide) {
 			this.outerResultSet = leftResultSet;
 			this.outerColumns = leftColumns;
+			this.outerEncoder = leftEncoder;
 			this.innerResultSet = rightResultSet;
 			this.innerColumns = rightColumns;
+			this.innerEncoder = rightEncoder;
 			this.isLeftOuterResultSet = true;
 		} else {
 			this.outerResultSet = rightResultSet;
 			this.outerColumns = rightColumns;
+			this.outerEncoder = rightEncoder;
 			this.innerResultSet = leftResultSet;
 			this.innerColumns = leftColumns;
+			this.innerEncoder = leftEncoder;
 			this.isLeftOuterResultSet = false;
 		}
 
-		this.innerDataTypes = new PrimitiveDataType[this.innerColumns.length];
-		this.outerDataTypes = new PrimitiveDataType[this.outerColumns.length];
+		// Fit as many rows in a block as the memory budget allows unless the
+		// block size was set explicitly
+		this.blockSize = options.getBlockSize();
+		if (this.blockSize == 0) {
+			this.blockSize = Math.max(1, memoryBudget
+					/ (RowSizes.estimateRow(outerResultSet) + HASH_TABLE_ROW_SIZE));
+		}
+		this.blockSize = Math.min(MAX_BLOCK_SIZE, this.blockSize);
 
-		int counter = 0;
-		for (int column : innerColumns) {
-			this.innerDataTypes[counter] = this.innerResultSet
-					.getColumn(column).getDataType();
-			counter++;
+		hashTable = newHashTable();
+		if (options.isBloomFilter()) {
+			bloomFilter = new BloomFilter(Math.min(blockSize,
+					outerResultSet.getSize()));
 		}
-		counter = 0;
-		for (int column : outerColumns) {
-			this.outerDataTypes[counter] = this.outerResultSet
-					.getColumn(column).getDataType();
-			counter++;
+		usedRows = new BitSet();
+		heavyKeys = new HashMap<Long, HeavyKey>();
+		statistics = new HashJoinStatistics();
+		progress = new JoinProgress();
+		statistics.setBlockSize(blockSize);
+		statistics.setBuildSide(leftBuildSide ? "left" : "right");
+
+		if (options.getBuildCacheBytes() > 0) {
+			buildCache = BuildTableCache.getInstance();
+			buildCache.setMaxBytes(options.getBuildCacheBytes());
 		}
+	}
 
-		hashFunction = Hashing.murmur3_128();
-		hashMultiMap = LinkedHashMultimap.<HashCode, Row> create();
+	/**
+	 * Returns the counters collected while the join ran
+	 * 
+	 * @return Join statistics
+	 */
+	public HashJoinStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Sets the ids of the results the result sets belong to. The hash table
+	 * of the outer result set is only cached if its result id is known.
+	 * 
+	 * @param leftResultId
+	 *            Id of the left result, or null if it is not known
+	 * @param rightResultId
+	 *            Id of the right result, or null if it is not known
+	 */
+	public void setResultIds(String leftResultId, String rightResultId) {
+		this.outerResultId = isLeftOuterResultSet ? leftResultId
+				: rightResultId;
+	}
+
+	/**
+	 * Drops every hash table in the cache shared by the hash joins
+	 */
+	public static void clearBuildCache() {
+		BuildTableCache.getInstance().clear();
+	}
+
+	/**
+	 * Sets the progress the join reports to and checks for cancellation
+	 * 
+	 * @param progress
+	 *            Join progress
+	 */
+	public void setProgress(JoinProgress progress) {
+		this.progress = progress;
+	}
+
+	private PrimitiveDataType[] getDataTypes(ResultSet resultSet,
+			int[] columns) throws ResultSetException {
+		PrimitiveDataType[] dataTypes = new PrimitiveDataType[columns.length];
+		for (int columnI = 0; columnI < columns.length; columnI++) {
+			dataTypes[columnI] = resultSet.getColumn(columns[columnI])
+					.getDataType();
+		}
+		return dataTypes;
+	}
+
+	/**
+	 * Estimates the cost of building the hash table from a result set. The
+	 * cost is the estimated size of the result set in memory, multiplied by
+	 * the average number of rows that share a key. Both are measured on the
+	 * first rows of the result set. Rows that share a key end up on the same
+	 * chain in the hash table, and every probe row with that key has to walk
+	 * the entire chain.
+	 * 
+	 * @param resultSet
+	 *            Result set
+	 * @param columns
+	 *            Join columns
+	 * @param encoder
+	 *            Encoder of the join columns
+	 * @param sampleRows
+	 *            Number of rows to sample
+	 * @return Estimated cost
+	 * @throws ResultSetException
+	 *             An error occurred reading the result set
+	 */
+	private double estimateBuildCost(ResultSet resultSet, int[] columns,
+			KeyEncoder encoder, int sampleRows)
+			throws ResultSetException {
+		if ((sampleRows == 0) || (resultSet.getSize() == 0)) {
+			return resultSet.getSize();
+		}
+
+		long bytes = 0;
+		int rows = 0;
+		Set<Long> keys = new HashSet<Long>();
+		resultSet.beforeFirst();
+		while ((rows < sampleRows) && resultSet.next()) {
+			Row row = resultSet.getCurrentRow();
+			bytes += RowSizes.estimateRow(row, resultSet.getColumnSize());
+			if (hasKey(columns, row)) {
+				keys.add(getKey(columns, getKeyBytes(encoder, columns, row), row));
+			}
+			rows++;
+		}
+		resultSet.beforeFirst();
+		if (rows == 0) {
+			return 0;
+		}
+
+		double bytesPerRow = (double) bytes / rows;
+		double rowsPerKey = (double) rows / Math.max(1, keys.size());
+		return resultSet.getSize() * bytesPerRow * rowsPerKey;
+	}
+
+	/**
+	 * Keeps only some of the columns of the joined rows. The columns that are
+	 * kept stay in the order they would have without the projection. It has
+	 * to be set before the join is run.
+	 * 
+	 * @param columnNames
+	 *            Names of the output columns to keep, or null to keep them all
+	 */
+	public void setProjection(List<String> columnNames) {
+		if (columnNames == null) {
+			this.projection = null;
+		} else {
+			this.projection = new HashSet<String>(columnNames);
+		}
+		this.columns = null;
+	}
+
+	/**
+	 * Returns the columns of the joined rows. The columns of the left result
+	 * set come first, or the right result set if the hash table is built from
+	 * it, followed by the columns of the other result set that do not share a
+	 * name with them. If a projection is set only the columns in it are
+	 * returned.
+	 * 
+	 * The first time the columns are asked for, where each column of the
+	 * outer and inner rows is copied to in a joined row is worked out as
+	 * well, so joining a row is a loop over two arrays.
+	 *
+	 * @return Output columns
+	 * @throws ResultSetException
+	 *             An error occurred reading the columns of a result set, or
+	 *             the projection has a column that is not in either result
+	 *             set
+	 */
+	public List<Column> getColumns() throws ResultSetException {
+		if (columns != null) {
+			return columns;
+		}
+		ResultSet firstResultSet = isLeftOuterResultSet ? outerResultSet
+				: innerResultSet;
+		ResultSet secondResultSet = isLeftOuterResultSet ? innerResultSet
+				: outerResultSet;
+		int[] firstTargets = new int[firstResultSet.getColumnSize()];
+		int[] secondTargets = new int[secondResultSet.getColumnSize()];
+
+		List<Column> outputColumns = new ArrayList<Column>();
+		Set<String> columnNames = new HashSet<String>();
+		for (int columnI = 0; columnI < firstTargets.length; columnI++) {
+			Column column = firstResultSet.getColumn(columnI);
+			columnNames.add(column.getName());
+			firstTargets[columnI] = addColumn(outputColumns, column);
+		}
+		for (int columnI = 0; columnI < secondTargets.length; columnI++) {
+			Column column = secondResultSet.getColumn(columnI);
+			if (columnNames.add(column.getName())) {
+				secondTargets[columnI] = addColumn(outputColumns, column);
+			} else {
+				secondTargets[columnI] = -1;
+			}
+		}
+
+		if (projection != null) {
+			for (String columnName : projection) {
+				if (!columnNames.contains(columnName)) {
+					throw new ResultSetException("Unknown column : "
+							+ columnName);
+				}
+			}
+		}
+
+		if (isLeftOuterResultSet) {
+			outerProjection = new ColumnProjection(firstTargets);
+			innerProjection = new ColumnProjection(secondTargets);
+		} else {
+			innerProjection = new ColumnProjection(firstTargets);
+			outerProjection = new ColumnProjection(secondTargets);
+		}
+		columns = outputColumns;
+		return columns;
+	}
+
+	/**
+	 * Adds a column to the output unless the projection leaves it out
+	 * 
+	 * @return Index of the column in the output, or -1 if it is left out
+	 */
+	private int addColumn(List<Column> outputColumns, Column column) {
+		if ((projection != null) && !projection.contains(column.getName())) {
+			return -1;
+		}
+		outputColumns.add(column);
+		return outputColumns.size() - 1;
 	}
 
 	public ResultSet join(ResultSet output) throws ResultSetException,
 			PersistableException {
 		// Set up columns for output
-		// Calculate offset
-		int innerOffset = 0;
-		int outerOffset = 0;
-		List<String> columnNames = new ArrayList<String>();
-		if (isLeftOuterResultSet) {
+		for (Column column : getColumns()) {
+			output.appendColumn(column);
+		}
+		join(new ResultSetRowSink(output, columns.size()));
+		return output;
+	}
+
+	/**
+	 * Performs the join on a separate thread and writes the joined rows to the
+	 * output as they are found, instead of waiting for the join to finish.
+	 * Only the rows in the queue between the join and the output are held in
+	 * memory.
+	 *
+	 * @param output
+	 *            Result set to write the joined rows to
+	 * @param queueSize
+	 *            Maximum number of joined rows waiting to be written
+	 * @return Output result set
+	 * @throws ResultSetException
+	 *             An error occurred joining or writing the rows
+	 * @throws PersistableException
+	 *             An error occurred writing to the output
+	 */
+	public ResultSet join(ResultSet output, int queueSize)
+			throws ResultSetException, PersistableException {
+		for (Column column : getColumns()) {
+			output.appendColumn(column);
+		}
+		RowSink outputSink = new ResultSetRowSink(output, columns.size());
+		RowQueue queue = stream(queueSize);
+		try {
+			while (queue.next()) {
+				outputSink.write(queue.getRow());
+			}
+		} catch (ResultSetException rse) {
+			// The join fails the same way it would on the calling thread
+			if (rse.getCause() instanceof PersistableException) {
+				throw (PersistableException) rse.getCause();
+			}
+			throw rse;
+		} finally {
+			queue.close();
+		}
+		return output;
+	}
 
-			for (int outerColumnIterator = 0; outerColumnIterator < outerResultSet
-					.getColumnSize(); outerColumnIterator++) {
-				Column column = outerResultSet.getColumn(outerColumnIterator);
-				columnNames.add(column.getName());
-				output.appendColumn(column);
+	/**
+	 * Starts the join on a separate thread and returns a queue the joined
+	 * rows can be read from as they are found. The queue must be closed once
+	 * it has been read.
+	 *
+	 * @param queueSize
+	 *            Maximum number of joined rows waiting to be read
+	 * @return Queue of joined rows
+	 * @throws ResultSetException
+	 *             An error occurred reading the columns of a result set
+	 */
+	public RowQueue stream(int queueSize) throws ResultSetException {
+		final RowQueue queue = new RowQueue(getColumns(), queueSize);
+		Thread joinThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					join(queue);
+					queue.finish(null);
+				} catch (Throwable e) {
+					queue.finish(e);
+				}
 			}
+		}, "HashJoin");
+		joinThread.setDaemon(true);
+		joinThread.start();
+		return queue;
+	}
 
-			for (int innerColumnIterator = 0; innerColumnIterator < innerResultSet
-					.getColumnSize(); innerColumnIterator++) {
-				Column column = innerResultSet.getColumn(innerColumnIterator);
-				if (!columnNames.contains(column.getName())) {
-					output.appendColumn(column);
+	private void join(RowSink output) throws ResultSetException,
+			PersistableException {
+		getColumns();
+		output = new ProgressRowSink(output);
+		if (parallelism > 1) {
+			workerPool = new ForkJoinPool(parallelism);
+		}
+		try {
+			if (outerResultSet.getSize() <= blockSize) {
+				RowSource outer = new ResultSetRowSource(outerResultSet,
+						outerColumns, outerEncoder);
+				RowSource inner = new ResultSetRowSource(innerResultSet,
+						innerColumns, innerEncoder);
+				if ((buildCache != null) && (outerResultId != null)) {
+					cachedJoin(output, outer, inner);
 				} else {
-					ignoreInnerColumns.add(innerColumnIterator);
+					joinBlocks(output, outer, inner);
 				}
+			} else {
+				partitionedJoin(output);
 			}
-			innerOffset = outerResultSet.getColumnSize();
-		} else {
-			// Set up columns for output
-			for (int innerColumnIterator = 0; innerColumnIterator < innerResultSet
-					.getColumnSize(); innerColumnIterator++) {
-				Column column = innerResultSet.getColumn(innerColumnIterator);
-				columnNames.add(column.getName());
-				output.appendColumn(column);
+		} finally {
+			hashTable.release();
+			if (workerPool != null) {
+				workerPool.shutdown();
+				workerPool = null;
 			}
+		}
+	}
 
-			for (int outerColumnIterator = 0; outerColumnIterator < outerResultSet
-					.getColumnSize(); outerColumnIterator++) {
+	/**
+	 * Performs a hybrid hash join by splitting both result sets into
+	 * partitions on the hash of their join columns. Rows that can only match
+	 * each other always fall into the same partition. The first partition of
+	 * the outer result set is kept in memory and is joined while the inner
+	 * result set is being partitioned. The remaining partitions are spilled to
+	 * disk and are then joined pair by pair so each result set is only read
+	 * once regardless of its size.
+	 * 
+	 * @param output
+	 *            Sink to write the joined rows to
+	 * @throws ResultSetException
+	 *             An error occurred reading or writing a result set
+	 * @throws PersistableException
+	 *             An error occurred writing to the output
+	 */
+	private void partitionedJoin(RowSink output) throws ResultSetException,
+			PersistableException {
+		int partitions = (int) Math.min(MAX_PARTITIONS,
+				(outerResultSet.getSize() / blockSize) + 2);
+
+		SpillFile[] outerPartitions = new SpillFile[partitions];
+		SpillFile[] innerPartitions = new SpillFile[partitions];
+
+		try {
+			// Partition the outer result set. The first partition stays in
+			// memory unless it grows larger than a block.
+			boolean residentPartition = true;
+			clearHashTable();
+			RowSource outer = new ResultSetRowSource(outerResultSet,
+					outerColumns, outerEncoder);
+			outer.beforeFirst();
+			while (outer.next()) {
+				if (!outer.hasKey()) {
+					if (writeUnmatchedOuter()) {
+						writeOuterRow(output, outer.getRow());
+					}
+					continue;
+				}
+				long outerKey = outer.getKey();
+				byte[] outerKeyBytes = outer.getKeyBytes();
+				int partition = getPartition(outerKey, partitions);
 
-				Column column = outerResultSet.getColumn(outerColumnIterator);
-				if (!columnNames.contains(column.getName())) {
-					output.appendColumn(column);
+				if (residentPartition && (partition == 0)) {
+					putHashTable(outerKey, outerKeyBytes, outer.getRow());
+					if (isBlockFull()) {
+						residentPartition = false;
+						outerPartitions[0] = new SpillFile(tempDirectory,
+								outerResultSet.getColumnSize());
+						for (int row = 0; row < hashTable.size(); row++) {
+							outerPartitions[0].write(hashTable.getKey(row),
+									hashTable.getKeyBytes(row),
+									hashTable.getRow(row));
+						}
+						statistics.addSpilledRows(hashTable.size());
+						clearHashTable();
+					}
 				} else {
-					ignoreOuterColumns.add(outerColumnIterator);
+					if (outerPartitions[partition] == null) {
+						outerPartitions[partition] = new SpillFile(
+								tempDirectory, outerResultSet.getColumnSize());
+					}
+					outerPartitions[partition].write(outerKey, outerKeyBytes,
+							outer.getRow());
+					statistics.addSpilledRows(1);
+				}
+			}
+
+			// Partition the inner result set. Rows that fall into the resident
+			// partition are joined straight away.
+			if (residentPartition) {
+				findHeavyKeys();
+			}
+			usedRows.clear();
+			RowSource inner = new ResultSetRowSource(innerResultSet,
+					innerColumns, innerEncoder);
+			inner.beforeFirst();
+			while (inner.next()) {
+				if (!inner.hasKey()) {
+					if (writeUnmatchedInner()) {
+						writeInnerRow(output, inner.getRow());
+					}
+					continue;
 				}
+				long innerKey = inner.getKey();
+				byte[] innerKeyBytes = inner.getKeyBytes();
+				int partition = getPartition(innerKey, partitions);
 
+				if (residentPartition && (partition == 0)) {
+					if (!probe(output, innerKey, innerKeyBytes, inner.getRow())
+							&& writeUnmatchedInner()) {
+						writeInnerRow(output, inner.getRow());
+					}
+				} else {
+					if (innerPartitions[partition] == null) {
+						innerPartitions[partition] = new SpillFile(
+								tempDirectory, innerResultSet.getColumnSize());
+					}
+					innerPartitions[partition].write(innerKey, innerKeyBytes,
+							inner.getRow());
+					statistics.addSpilledRows(1);
+				}
+			}
+			if (residentPartition) {
+				startBlock();
+				writeUnmatchedOuterRows(output);
 			}
 
-			outerOffset = innerResultSet.getColumnSize();
+			// Join the spilled partitions
+			for (int partition = 0; partition < partitions; partition++) {
+				if ((outerPartitions[partition] == null)
+						&& (innerPartitions[partition] == null)) {
+					continue;
+				}
+				joinBlocks(output, nonNullPartition(outerPartitions, partition,
+						outerResultSet), nonNullPartition(innerPartitions,
+						partition, innerResultSet));
+
+				deletePartition(outerPartitions, partition);
+				deletePartition(innerPartitions, partition);
+			}
+		} finally {
+			clearHashTable();
+			usedRows.clear();
+			for (int partition = 0; partition < partitions; partition++) {
+				deletePartition(outerPartitions, partition);
+				deletePartition(innerPartitions, partition);
+			}
 		}
+	}
 
-		outerResultSet.beforeFirst();
+	/**
+	 * Joins two sources of rows by building the hash table from the outer
+	 * source a block at a time and probing it with every row of the inner
+	 * source. If the outer source fits into a single block then each source
+	 * is only read once.
+	 * 
+	 * @param output
+	 *            Sink to write the joined rows to
+	 * @param outer
+	 *            Outer rows
+	 * @param inner
+	 *            Inner rows
+	 * @throws ResultSetException
+	 *             An error occurred reading or writing a result set
+	 * @throws PersistableException
+	 *             An error occurred writing to the output
+	 */
+	private void joinBlocks(RowSink output, RowSource outer, RowSource inner)
+			throws ResultSetException, PersistableException {
+		// Tracks which inner rows have been matched when the outer source does
+		// not fit in a single block
+		BitSet matchedInnerRows = null;
 
-		// Loop around outer result set until all outer result sets have been
-		// hashed and compared
-		while (outerResultSet.isLast()) {
+		outer.beforeFirst();
+		boolean hasOuterRow = outer.next();
+		boolean firstBlock = true;
+		do {
+			// Build the hash table from the outer for this block
+			hasOuterRow = buildHashTable(output, outer, hasOuterRow);
+			boolean singleBlock = firstBlock && !hasOuterRow;
+			if (!singleBlock && (matchedInnerRows == null)) {
+				matchedInnerRows = new BitSet();
+			}
 
-			// Build the multi map from the inner for this block
-			buildMultiMap();
+			probeBlock(output, inner, singleBlock, matchedInnerRows);
 
-			Set<HashCode> usedKeys = new HashSet<HashCode>();
+			writeUnmatchedOuterRows(output);
+			firstBlock = false;
+		} while (hasOuterRow);
 
-			// Loop through the inner loop to check for matches
-			innerResultSet.beforeFirst();
-			while (innerResultSet.next()) {
-				// Create hash of inner columns to match on
-				HashCode innerHash = hashResultSetRow(innerColumns,
-						innerDataTypes, innerResultSet);
+		// Write out the inner rows that did not match in any block
+		if ((matchedInnerRows != null) && writeUnmatchedInner()) {
+			int innerRowIndex = 0;
+			inner.beforeFirst();
+			while (inner.next()) {
+				if (!matchedInnerRows.get(innerRowIndex)) {
+					writeInnerRow(output, inner.getRow());
+				}
+				innerRowIndex++;
+			}
+		}
+		clearHashTable();
+		usedRows.clear();
+	}
 
-				// Check if inner columns match on anything in the hash
-				Set<Row> matchedRows = hashMultiMap.get(innerHash);
+	/**
+	 * Probes the hash table with every row of the inner source
+	 * 
+	 * @param output
+	 *            Sink to write the joined rows to
+	 * @param inner
+	 *            Inner rows
+	 * @param singleBlock
+	 *            True if the hash table holds the entire outer source
+	 * @param matchedInnerRows
+	 *            Inner rows that have been matched, if there is more than one
+	 *            block
+	 * @throws ResultSetException
+	 *             An error occurred reading or writing a result set
+	 * @throws PersistableException
+	 *             An error occurred writing to the output
+	 */
+	private void probeBlock(RowSink output, RowSource inner,
+			boolean singleBlock, BitSet matchedInnerRows)
+			throws ResultSetException, PersistableException {
+		// Loop through the inner to check for matches
+		inner.beforeFirst();
+		if (workerPool != null) {
+			parallelProbe(output, inner, singleBlock, matchedInnerRows);
+			return;
+		}
+		int innerRowIndex = 0;
+		while (inner.next()) {
+			if ((innerRowIndex % CHECKPOINT_ROWS) == 0) {
+				progress.checkpoint();
+			}
+			boolean matched = inner.hasKey()
+					&& probe(output, inner.getKey(), inner.getKeyBytes(),
+							inner.getRow());
 
-				// Loop through all matches
-				for (Row row : matchedRows) {
+			if (singleBlock) {
+				if (!matched && writeUnmatchedInner()) {
+					writeInnerRow(output, inner.getRow());
+				}
+			} else if (matched) {
+				matchedInnerRows.set(innerRowIndex);
+			}
+			innerRowIndex++;
+		}
+	}
 
-					// Check values to ensure no hash collisions
-					if (trueMatch(row, innerResultSet.getCurrentRow())) {
-						// Write both output rows
-						output.appendRow();
-						writeRow(output, row, outerResultSet.getColumnSize(),
-								outerOffset, ignoreOuterColumns);
-						writeRow(output, innerResultSet.getCurrentRow(),
-								innerResultSet.getColumnSize(), innerOffset,
-								ignoreInnerColumns);
+	/**
+	 * Joins the outer result set in a single block using the hash table
+	 * cached for it by an earlier join. If there is no cached table one is
+	 * built and cached, unless the outer result set does not fit in a single
+	 * block after all, in which case it is joined the usual way.
+	 * 
+	 * @param output
+	 *            Sink to write the joined rows to
+	 * @param outer
+	 *            Outer rows
+	 * @param inner
+	 *            Inner rows
+	 * @throws ResultSetException
+	 *             An error occurred reading or writing a result set
+	 * @throws PersistableException
+	 *             An error occurred writing to the output
+	 */
+	private void cachedJoin(RowSink output, RowSource outer, RowSource inner)
+			throws ResultSetException, PersistableException {
+		BuildTableCache.Key key = new BuildTableCache.Key(outerResultId,
+				outerColumns, integerKeys, exactKeys);
+		long fingerprint = BuildTableCache.fingerprint(outerResultSet);
+		BuildTableCache.Entry entry = buildCache.get(key, fingerprint);
+		if (entry == null) {
+			entry = buildCacheEntry(outer, fingerprint);
+			if (entry == null) {
+				joinBlocks(output, outer, inner);
+				return;
+			}
+			buildCache.put(key, entry);
+		} else {
+			statistics.addCachedBlock();
+		}
 
-						usedKeys.add(innerHash);
-					}
+		// Join against the cached table without changing it
+		LongHashTable blockHashTable = hashTable;
+		BloomFilter blockBloomFilter = bloomFilter;
+		hashTable = entry.getHashTable();
+		bloomFilter = (blockBloomFilter == null) ? null : entry
+				.getBloomFilter();
+		try {
+			startBlock();
+			findHeavyKeys();
+			usedRows.clear();
+			if (writeUnmatchedOuter()) {
+				for (Row row : entry.getKeylessRows()) {
+					writeOuterRow(output, row);
+				}
+			}
+			probeBlock(output, inner, true, null);
+			writeUnmatchedOuterRows(output);
+		} finally {
+			hashTable = blockHashTable;
+			bloomFilter = blockBloomFilter;
+			heavyKeys.clear();
+			usedRows.clear();
+			buildCache.giveBack(entry);
+		}
+	}
 
+	/**
+	 * Builds a hash table from every row of the outer source so it can be
+	 * cached
+	 * 
+	 * @param outer
+	 *            Outer rows
+	 * @param fingerprint
+	 *            Fingerprint of the outer result set
+	 * @return Cache entry, or null if the rows do not fit in a single block
+	 * @throws ResultSetException
+	 *             An error occurred reading the outer source
+	 */
+	private BuildTableCache.Entry buildCacheEntry(RowSource outer,
+			long fingerprint) throws ResultSetException {
+		LongHashTable blockHashTable = hashTable;
+		BloomFilter blockBloomFilter = bloomFilter;
+		LongHashTable cacheHashTable = newHashTable();
+		hashTable = cacheHashTable;
+		bloomFilter = new BloomFilter(outerResultSet.getSize());
+		blockBytes = 0;
+		BuildTableCache.Entry entry = null;
+		try {
+			List<Row> keylessRows = new ArrayList<Row>();
+			outer.beforeFirst();
+			while (outer.next()) {
+				if (isBlockFull()) {
+					return null;
 				}
-				if (matchedRows.isEmpty()) {
-					if ((joinType == HashJoinImplType.FULLOUTER)
-							|| (!isLeftOuterResultSet && (joinType == HashJoinImplType.LEFTOUTER))
-							|| (isLeftOuterResultSet && (joinType == HashJoinImplType.RIGHTOUTER))) {
-						output.appendRow();
-						writeRow(output, innerResultSet.getCurrentRow(),
-								innerResultSet.getColumnSize(), innerOffset,
-								ignoreInnerColumns);
-					}
+				if (outer.hasKey()) {
+					putHashTable(outer.getKey(), outer.getKeyBytes(),
+							outer.getRow());
+				} else {
+					keylessRows.add(outer.getRow());
+				}
+			}
+			entry = new BuildTableCache.Entry(cacheHashTable, bloomFilter,
+					keylessRows, fingerprint, blockBytes);
+			return entry;
+		} finally {
+			// A table that is not cached is not used again
+			if (entry == null) {
+				cacheHashTable.release();
+			}
+			hashTable = blockHashTable;
+			bloomFilter = blockBloomFilter;
+			blockBytes = 0;
+		}
+	}
+
+	/**
+	 * Checks the hash table for outer rows that match the inner row and writes
+	 * a joined row to the output for each one.
+	 * 
+	 * @param output
+	 *            Sink to write the joined rows to
+	 * @param innerKey
+	 *            Key of the inner row
+	 * @param innerKeyBytes
+	 *            Byte key of the inner row, or null if the keys are exact
+	 * @param innerRow
+	 *            Inner row
+	 * @return True if the inner row matched at least one outer row
+	 * @throws ResultSetException
+	 *             An error occurred writing to the output
+	 * @throws PersistableException
+	 *             An error occurred writing to the output
+	 */
+	private boolean probe(RowSink output, long innerKey,
+			byte[] innerKeyBytes, Row innerRow) throws ResultSetException, PersistableException {
+		boolean matched = false;
+
+		statistics.addProbeRows(1);
+		progress.addRowsProbed(1);
+		if (bloomFilter != null) {
+			if (!bloomFilter.mightContain(innerKey)) {
+				statistics.addBloomFilterRejected(1);
+				return false;
+			}
+			statistics.addBloomFilterPassed(1);
+		}
+
+		if (!heavyKeys.isEmpty()) {
+			HeavyKey heavyKey = heavyKeys.get(innerKey);
+			if (heavyKey != null) {
+				RowGroup group = heavyKey.get(innerKeyBytes);
+				if (group == null) {
+					return false;
 				}
+				statistics.addHeavyKeyProbeRows(1);
+				writeHeavyMatches(output, group, innerRow);
+				return true;
+			}
+		}
+
+		// Loop through all matches
+		int rowIndex = hashTable.find(innerKey);
+		while (rowIndex != LongHashTable.NO_ROW) {
+			Row row = hashTable.getRow(rowIndex);
+
+			// Check the byte keys to ensure no hash collisions. Rows with
+			// exact keys have no byte keys, so they only match each other.
+			if (Arrays.equals(hashTable.getKeyBytes(rowIndex), innerKeyBytes)) {
+				writeJoinedRow(output, row, innerRow);
+				usedRows.set(rowIndex);
+				matched = true;
 			}
-			if ((joinType == HashJoinImplType.FULLOUTER)
-					|| (isLeftOuterResultSet && (joinType == HashJoinImplType.LEFTOUTER))
-					|| (!isLeftOuterResultSet && (joinType == HashJoinImplType.RIGHTOUTER))) {
-				for (HashCode innerHash : hashMultiMap.keySet()) {
-					if (!usedKeys.contains(innerHash)) {
-						output.appendRow();
-						// Check if inner columns match on anything in the hash
-						// Loop through all matches
-						for (Row row : hashMultiMap.get(innerHash)) {
-							writeRow(output, row,
-									outerResultSet.getColumnSize(),
-									outerOffset, ignoreOuterColumns);
+			rowIndex = hashTable.nextRow(rowIndex);
+		}
+
+		return matched;
+	}
+
+	/**
+	 * Probes the hash table with the rows of the inner source using the probe
+	 * pool. The inner rows are read a batch at a time, each batch is split
+	 * into tasks that check the hash table at the same time, and the matches
+	 * found by each task are then written to the output in order.
+	 * 
+	 * @param output
+	 *            Sink to write the joined rows to
+	 * @param inner
+	 *            Inner rows positioned before the first row
+	 * @param singleBlock
+	 *            True if the hash table holds the entire outer source
+	 * @param matchedInnerRows
+	 *            Inner rows that have been matched, if there is more than one
+	 *            block
+	 * @throws ResultSetException
+	 *             An error occurred reading or writing a result set
+	 * @throws PersistableException
+	 *             An error occurred writing to the output
+	 */
+	private void parallelProbe(RowSink output, RowSource inner,
+			boolean singleBlock, BitSet matchedInnerRows)
+			throws ResultSetException, PersistableException {
+		Row[] batch = new Row[PROBE_BATCH_SIZE];
+		int batchStart = 0;
+		boolean hasInnerRow = true;
+
+		while (hasInnerRow) {
+			int batchSize = 0;
+			while ((batchSize < batch.length) && (hasInnerRow = inner.next())) {
+				batch[batchSize++] = inner.getRow();
+			}
+			if (batchSize == 0) {
+				break;
+			}
+
+			ProbeTask task = new ProbeTask(batch, 0, batchSize);
+			progress.checkpoint();
+			workerPool.invoke(task);
+
+			for (MatchBuffer matches : task.getMatches()) {
+				statistics.addProbeRows(matches.getProbeRows());
+				statistics.addParallelProbeRows(matches.getProbeRows());
+				progress.addRowsProbed(matches.getProbeRows());
+				statistics.addBloomFilterRejected(matches.getRejectedRows());
+				statistics.addBloomFilterPassed(matches.getPassedRows());
+				for (int match = 0; match < matches.size(); match++) {
+					int outerRowIndex = matches.getOuterRow(match);
+					Row innerRow = batch[matches.getInnerRow(match)];
+
+					if (outerRowIndex <= HEAVY_ROW) {
+						statistics.addHeavyKeyProbeRows(1);
+						writeHeavyMatches(output,
+								matches.getHeavyGroup(outerRowIndex), innerRow);
+						if (!singleBlock) {
+							matchedInnerRows.set(batchStart
+									+ matches.getInnerRow(match));
+						}
+					} else if (outerRowIndex != LongHashTable.NO_ROW) {
+						writeJoinedRow(output, hashTable.getRow(outerRowIndex),
+								innerRow);
+						usedRows.set(outerRowIndex);
+						if (!singleBlock) {
+							matchedInnerRows.set(batchStart
+									+ matches.getInnerRow(match));
 						}
+					} else if (singleBlock && writeUnmatchedInner()) {
+						writeInnerRow(output, innerRow);
 					}
+				}
+			}
+
+			batchStart += batchSize;
+		}
+	}
+
+	private void writeJoinedRow(RowSink output, Row outerRow, Row innerRow)
+			throws ResultSetException, PersistableException {
+		output.write(joinRows(outerRow, innerRow));
+	}
+
+	private Row joinRows(Row outerRow, Row innerRow) {
+		Row row = new Row(columns.size());
+		outerProjection.copy(outerRow, row);
+		innerProjection.copy(innerRow, row);
+		return row;
+	}
+
+	/**
+	 * Writes the joined rows of an inner row and every outer row of a heavy
+	 * hitter group. With a worker pool the inner row is broadcast to tasks
+	 * that each join a share of the group, and the joined rows are then
+	 * written in the order of the group.
+	 * 
+	 * @param output
+	 *            Sink to write the joined rows to
+	 * @param group
+	 *            Outer rows that match the inner row
+	 * @param innerRow
+	 *            Inner row
+	 * @throws ResultSetException
+	 *             An error occurred writing to the output
+	 * @throws PersistableException
+	 *             An error occurred writing to the output
+	 */
+	private void writeHeavyMatches(RowSink output, RowGroup group,
+			Row innerRow) throws ResultSetException, PersistableException {
+		int[] rows = group.getRows();
+		int size = group.size();
+		if ((workerPool == null) || (size <= TASK_SIZE)) {
+			for (int row = 0; row < size; row++) {
+				writeJoinedRow(output, hashTable.getRow(rows[row]), innerRow);
+				usedRows.set(rows[row]);
+			}
+			return;
+		}
 
+		Row[] joinedRows = new Row[size];
+		workerPool.invoke(new BroadcastTask(rows, innerRow, joinedRows, 0,
+				size));
+		for (int row = 0; row < size; row++) {
+			output.write(joinedRows[row]);
+			usedRows.set(rows[row]);
+		}
+	}
+
+	private void writeUnmatchedOuterRows(RowSink output)
+			throws ResultSetException, PersistableException {
+		if (writeUnmatchedOuter()) {
+			for (int rowIndex = usedRows.nextClearBit(0); rowIndex < hashTable
+					.size(); rowIndex = usedRows.nextClearBit(rowIndex + 1)) {
+				writeOuterRow(output, hashTable.getRow(rowIndex));
+			}
+		}
+	}
+
+	private boolean writeUnmatchedOuter() {
+		return (joinType == HashJoinImplType.FULLOUTER)
+				|| (isLeftOuterResultSet && (joinType == HashJoinImplType.LEFTOUTER))
+				|| (!isLeftOuterResultSet && (joinType == HashJoinImplType.RIGHTOUTER));
+	}
+
+	private boolean writeUnmatchedInner() {
+		return (joinType == HashJoinImplType.FULLOUTER)
+				|| (!isLeftOuterResultSet && (joinType == HashJoinImplType.LEFTOUTER))
+				|| (isLeftOuterResultSet && (joinType == HashJoinImplType.RIGHTOUTER));
+	}
+
+	private void writeOuterRow(RowSink output, Row row)
+			throws ResultSetException, PersistableException {
+		Row outputRow = new Row(columns.size());
+		outerProjection.copy(row, outputRow);
+		output.write(outputRow);
+	}
+
+	private void writeInnerRow(RowSink output, Row row)
+			throws ResultSetException, PersistableException {
+		Row outputRow = new Row(columns.size());
+		innerProjection.copy(row, outputRow);
+		output.write(outputRow);
+	}
+
+	private int getPartition(long key, int partitions) {
+		// Mix the key so the partition is independent of the slot the row
+		// falls into in the hash table
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int) ((key >>> 1) % partitions);
+	}
+
+	private RowSource nonNullPartition(SpillFile[] partitionFiles,
+			int partition, ResultSet resultSet) throws ResultSetException {
+		if (partitionFiles[partition] == null) {
+			partitionFiles[partition] = new SpillFile(tempDirectory,
+					resultSet.getColumnSize());
+		}
+		return partitionFiles[partition];
+	}
+
+	private void deletePartition(SpillFile[] partitionFiles, int partition) {
+		if (partitionFiles[partition] != null) {
+			partitionFiles[partition].delete();
+			partitionFiles[partition] = null;
+		}
+	}
+
+	private boolean buildHashTable(RowSink output, RowSource outer,
+			boolean hasOuterRow) throws ResultSetException,
+			PersistableException {
+		clearHashTable();
+		usedRows.clear();
+		if (workerPool != null) {
+			return parallelBuildHashTable(output, outer, hasOuterRow);
+		}
+		startBlock();
+		while (hasOuterRow && !isBlockFull()) {
+			if (outer.hasKey()) {
+				putHashTable(outer.getKey(), outer.getKeyBytes(),
+						outer.getRow());
+			} else if (writeUnmatchedOuter()) {
+				writeOuterRow(output, outer.getRow());
+			}
+			hasOuterRow = outer.next();
+		}
+		findHeavyKeys();
+		return hasOuterRow;
+	}
+
+	/**
+	 * Reads a block of outer rows and builds the hash table from them using
+	 * the worker pool. The keys of the rows are computed by the workers and
+	 * the table is then built one radix partition per task.
+	 * 
+	 * @param output
+	 *            Sink to write the joined rows to
+	 * @param outer
+	 *            Outer rows positioned on the first row of the block
+	 * @param hasOuterRow
+	 *            True if there is an outer row to read
+	 * @return True if there are outer rows left after the block
+	 * @throws ResultSetException
+	 *             An error occurred reading or writing a result set
+	 * @throws PersistableException
+	 *             An error occurred writing to the output
+	 */
+	private boolean parallelBuildHashTable(RowSink output, RowSource outer,
+			boolean hasOuterRow) throws ResultSetException,
+			PersistableException {
+		startBlock();
+		Row[] rows = new Row[(int) Math.min(blockSize, 1024)];
+		int count = 0;
+		long bytes = 0;
+		int columnCount = outerResultSet.getColumnSize();
+		while (hasOuterRow && (count < blockSize) && (bytes < memoryBudget)) {
+			Row row = outer.getRow();
+			if (hasKey(outerColumns, row)) {
+				if (count == rows.length) {
+					rows = Arrays.copyOf(rows,
+							(int) Math.min(blockSize, count * 2L));
 				}
+				rows[count++] = row;
+				bytes += RowSizes.estimateRow(row, columnCount)
+						+ HASH_TABLE_ROW_SIZE;
+			} else if (writeUnmatchedOuter()) {
+				writeOuterRow(output, row);
 			}
+			hasOuterRow = outer.next();
 		}
 
-		return output;
+		long[] keys = new long[count];
+		byte[][] keyBytes = new byte[count][];
+		workerPool.invoke(new KeyTask(rows, keys, keyBytes, 0, count));
+		hashTable.putAll(keys, keyBytes, rows, count, workerPool);
+		statistics.addParallelBuildRows(count, hashTable.getPartitionCount());
+		progress.addRowsBuilt(count);
+		for (byte[] rowKeyBytes : keyBytes) {
+			if (rowKeyBytes != null) {
+				bytes += KEY_BYTES_SIZE + rowKeyBytes.length;
+			}
+		}
+		blockBytes = bytes;
+		if (bloomFilter != null) {
+			for (long key : keys) {
+				bloomFilter.add(key);
+			}
+		}
+		findHeavyKeys();
+		return hasOuterRow;
 	}
 
-	private void writeRow(ResultSet output, Row row, int colSize, int offset,
-			List<Integer> ignoreColumns) throws ResultSetException {
-		int minus = 0;
-		for (int i = 0; i < colSize; i++) {
-			if (!ignoreColumns.contains(i)) {
-				output.updateObject(i + offset - minus, row.getColumn(i));
-			} else {
-				minus++;
+	private void putHashTable(long key, byte[] keyBytes, Row row)
+			throws ResultSetException {
+		hashTable.put(key, keyBytes, row);
+		progress.addRowsBuilt(1);
+		blockBytes += RowSizes.estimateRow(row, outerResultSet.getColumnSize())
+				+ HASH_TABLE_ROW_SIZE
+				+ ((keyBytes == null) ? 0 : KEY_BYTES_SIZE + keyBytes.length);
+		if (bloomFilter != null) {
+			bloomFilter.add(key);
+		}
+	}
+
+	private void clearHashTable() {
+		hashTable.clear();
+		heavyKeys.clear();
+		blockBytes = 0;
+		if (bloomFilter != null) {
+			bloomFilter.clear();
+		}
+	}
+
+	/**
+	 * Creates an empty hash table for the outer rows, keeping the rows outside
+	 * of the heap if the join is set up to
+	 */
+	private LongHashTable newHashTable() throws ResultSetException {
+		if (offHeap) {
+			return new LongHashTable(new OffHeapRowStore(
+					outerResultSet.getColumnSize()));
+		}
+		return new LongHashTable();
+	}
+
+	/**
+	 * Finds the keys of the hash table that are shared by at least the skew
+	 * threshold of rows and groups their rows by byte key, so they can be
+	 * joined without walking their chains
+	 */
+	private void findHeavyKeys() {
+		heavyKeys.clear();
+		statistics.addKeyRows(hashTable.getMaxKeyRows());
+		if ((skewThreshold == 0) || (hashTable.size() < skewThreshold)) {
+			return;
+		}
+		for (long key : hashTable.getHeavyKeys(skewThreshold)) {
+			HeavyKey heavyKey = new HeavyKey();
+			int rowIndex = hashTable.find(key);
+			while (rowIndex != LongHashTable.NO_ROW) {
+				heavyKey.add(hashTable.getKeyBytes(rowIndex), rowIndex);
+				rowIndex = hashTable.nextRow(rowIndex);
 			}
+			heavyKeys.put(key, heavyKey);
+			statistics.addHeavyKey(hashTable.getRowCount(key));
 		}
 	}
 
-	private boolean trueMatch(Row outerRow, Row innerRow) {
+	/**
+	 * Counts a new block in the statistics and the progress
+	 */
+	private void startBlock() throws ResultSetException {
+		statistics.addBlock();
+		progress.setBlock(statistics.getBlocks());
+		progress.checkpoint();
+	}
 
-		for (int i = 0; i < innerColumns.length; i++) {
-			Object outerObj = outerRow.getColumn(outerColumns[i]);
-			Object innerObj = innerRow.getColumn(innerColumns[i]);
+	private boolean isBlockFull() {
+		return (hashTable.size() >= blockSize) || (blockBytes >= memoryBudget);
+	}
 
-			if ((outerObj == null) ^ (innerObj == null)) {
+	static boolean isIntegerKeys(PrimitiveDataType[] dataTypes) {
+		for (PrimitiveDataType dataType : dataTypes) {
+			if (!"integer".equals(dataType.getName())
+					&& !"long".equals(dataType.getName())) {
 				return false;
-			} else if ((outerObj != null) && (innerObj != null)) {
-				if (!outerObj.equals(innerObj)) {
-					return false;
-				}
 			}
 		}
+		return true;
+	}
 
+	private boolean hasKey(int[] columns, Row row) {
+		for (int column : columns) {
+			if (row.getColumn(column) == null) {
+				return false;
+			}
+		}
 		return true;
 	}
 
-	private void buildMultiMap() throws ResultSetException {
-		hashMultiMap.clear();
-		long counter = 0;
-		while (outerResultSet.next() && counter < blockSize) {
-			counter++;
-			hashMultiMap.put(
-					hashResultSetRow(outerColumns, outerDataTypes,
-							outerResultSet), outerResultSet.getCurrentRow());
+	/**
+	 * Returns the byte key of a row, or null if its long key is exact and it
+	 * never needs to be compared. A value of an integer column that is not a
+	 * whole number has no exact key, so it always has a byte key.
+	 */
+	private byte[] getKeyBytes(KeyEncoder encoder, int[] columns, Row row) {
+		if (exactKeys && (toLongKey(row.getColumn(columns[0])) != null)) {
+			return null;
 		}
+		return encoder.encode(row);
 	}
 
-	private HashCode hashResultSetRow(int[] columns,
-			PrimitiveDataType[] columnDataTypes, ResultSet resultSet)
-			throws ResultSetException {
-		Hasher columnHash = hashFunction.newHasher();
+	private long getKey(int[] columns, byte[] keyBytes, Row row) {
+		if (!integerKeys) {
+			return hashFunction.hashBytes(keyBytes).asLong();
+		}
 
-		for (int columnI = 0; columnI < columns.length; columnI++) {
-			int column = columns[columnI];
-			switch (columnDataTypes[columnI].getName()) {
-			case "boolean":
-				columnHash.putBoolean(resultSet.getBoolean(column));
-				break;
-			case "byte":
-				columnHash.putByte(resultSet.getByte(column));
-				break;
-			case "double":
-				columnHash.putDouble(resultSet.getDouble(column));
-				break;
-			case "float":
-				columnHash.putFloat(resultSet.getFloat(column));
-				break;
-			case "integer":
-				columnHash.putInt(resultSet.getInt(column));
-				break;
-			case "long":
-				columnHash.putLong(resultSet.getLong(column));
-				break;
-			default:
-				columnHash.putString(resultSet.getString(column),
-						Charsets.UTF_8);
-				break;
+		// Integer keys are used as they are. Multiple integer columns are
+		// combined into a single key, in which case rows with the same key
+		// still need to be compared. A row with a value that is not a whole
+		// number is hashed from its byte key instead, which it always has.
+		long key = 0;
+		for (int column : columns) {
+			Long value = toLongKey(row.getColumn(column));
+			if (value == null) {
+				return hashFunction.hashBytes(keyBytes).asLong();
+			}
+			key = (key * 31) + value;
+		}
+		return key;
+	}
+
+	/**
+	 * Returns the integer key of a value, or null if it is not a whole number
+	 */
+	private static Long toLongKey(Object value) {
+		// Read the value the way every other join reads it, so text and
+		// decimals that hold a whole number match the same rows
+		Object key = JoinKeys.normalize(value, true);
+		return (key instanceof Long) ? (Long) key : null;
+	}
+
+	/**
+	 * Probes the hash table with a range of inner rows. Large ranges are
+	 * split in half until they are small enough to be probed by a single
+	 * task. Each task collects its matches in its own buffer so the hash table
+	 * is only ever read while the tasks are running.
+	 */
+	private class ProbeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private Row[] rows;
+		private int from;
+		private int to;
+
+		private ProbeTask left;
+		private ProbeTask right;
+		private MatchBuffer matches;
+
+		ProbeTask(Row[] rows, int from, int to) {
+			this.rows = rows;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > TASK_SIZE) {
+				int middle = (from + to) >>> 1;
+				left = new ProbeTask(rows, from, middle);
+				right = new ProbeTask(rows, middle, to);
+				invokeAll(left, right);
+				return;
+			}
+
+			matches = new MatchBuffer(to - from);
+			for (int innerRowIndex = from; innerRowIndex < to; innerRowIndex++) {
+				Row innerRow = rows[innerRowIndex];
+				boolean matched = false;
+
+				if (hasKey(innerColumns, innerRow)) {
+					byte[] innerKeyBytes = getKeyBytes(innerEncoder,
+							innerColumns, innerRow);
+					long innerKey = getKey(innerColumns, innerKeyBytes,
+							innerRow);
+					matches.probeRows++;
+					int rowIndex = LongHashTable.NO_ROW;
+					HeavyKey heavyKey = null;
+					if ((bloomFilter != null)
+							&& !bloomFilter.mightContain(innerKey)) {
+						matches.rejectedRows++;
+					} else {
+						if (bloomFilter != null) {
+							matches.passedRows++;
+						}
+						if (!heavyKeys.isEmpty()) {
+							heavyKey = heavyKeys.get(innerKey);
+						}
+						if (heavyKey == null) {
+							rowIndex = hashTable.find(innerKey);
+						}
+					}
+					if (heavyKey != null) {
+						// Heavy hitters are joined as a whole when the
+						// matches are written
+						RowGroup group = heavyKey.get(innerKeyBytes);
+						if (group != null) {
+							matches.addHeavy(group, innerRowIndex);
+							matched = true;
+						}
+					}
+					while (rowIndex != LongHashTable.NO_ROW) {
+						if (Arrays.equals(hashTable.getKeyBytes(rowIndex),
+								innerKeyBytes)) {
+							matches.add(rowIndex, innerRowIndex);
+							matched = true;
+						}
+						rowIndex = hashTable.nextRow(rowIndex);
+					}
+				}
+
+				if (!matched) {
+					matches.add(LongHashTable.NO_ROW, innerRowIndex);
+				}
+			}
+		}
+
+		/**
+		 * Returns the match buffers of this task in the order of the inner
+		 * rows they cover
+		 * 
+		 * @return Match buffers
+		 */
+		List<MatchBuffer> getMatches() {
+			List<MatchBuffer> allMatches = new ArrayList<MatchBuffer>();
+			collectMatches(allMatches);
+			return allMatches;
+		}
+
+		private void collectMatches(List<MatchBuffer> allMatches) {
+			if (matches != null) {
+				allMatches.add(matches);
+			} else {
+				left.collectMatches(allMatches);
+				right.collectMatches(allMatches);
+			}
+		}
+	}
+
+	/**
+	 * Computes the keys of a range of outer rows, splitting the range in half
+	 * until it is small enough for a single task
+	 */
+	private class KeyTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private Row[] rows;
+		private long[] keys;
+		private byte[][] keyBytes;
+		private int from;
+		private int to;
+
+		KeyTask(Row[] rows, long[] keys, byte[][] keyBytes, int from, int to) {
+			this.rows = rows;
+			this.keys = keys;
+			this.keyBytes = keyBytes;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > TASK_SIZE) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new KeyTask(rows, keys, keyBytes, from, middle),
+						new KeyTask(rows, keys, keyBytes, middle, to));
+				return;
+			}
+			for (int row = from; row < to; row++) {
+				keyBytes[row] = getKeyBytes(outerEncoder, outerColumns,
+						rows[row]);
+				keys[row] = getKey(outerColumns, keyBytes[row], rows[row]);
+			}
+		}
+	}
+
+	/**
+	 * Joins an inner row with a range of the rows of a heavy hitter group,
+	 * splitting the range in half until it is small enough for a single task
+	 */
+	private class BroadcastTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private int[] rows;
+		private Row innerRow;
+		private Row[] joinedRows;
+		private int from;
+		private int to;
+
+		BroadcastTask(int[] rows, Row innerRow, Row[] joinedRows, int from,
+				int to) {
+			this.rows = rows;
+			this.innerRow = innerRow;
+			this.joinedRows = joinedRows;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > TASK_SIZE) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new BroadcastTask(rows, innerRow, joinedRows, from,
+						middle), new BroadcastTask(rows, innerRow, joinedRows,
+						middle, to));
+				return;
+			}
+			for (int row = from; row < to; row++) {
+				joinedRows[row] = joinRows(hashTable.getRow(rows[row]),
+						innerRow);
+			}
+		}
+	}
+
+	/**
+	 * The rows of a heavy hitter key grouped by their byte key. Long keys that
+	 * are not exact can be shared by rows with different byte keys, and only
+	 * the rows with the same byte key as a probe row match it.
+	 */
+	private static class HeavyKey {
+		private Map<ByteBuffer, RowGroup> groups = new HashMap<ByteBuffer, RowGroup>();
+
+		void add(byte[] keyBytes, int rowIndex) {
+			ByteBuffer groupKey = groupKey(keyBytes);
+			RowGroup group = groups.get(groupKey);
+			if (group == null) {
+				group = new RowGroup();
+				groups.put(groupKey, group);
 			}
+			group.add(rowIndex);
 		}
 
-		return columnHash.hash();
+		RowGroup get(byte[] keyBytes) {
+			return groups.get(groupKey(keyBytes));
+		}
+
+		private static ByteBuffer groupKey(byte[] keyBytes) {
+			return (keyBytes == null) ? null : ByteBuffer.wrap(keyBytes);
+		}
+	}
+
+	/**
+	 * Where the columns of an outer or inner row are copied to in a joined
+	 * row. Column sources[i] of the row is copied to column targets[i] of the
+	 * joined row, and columns that are left out have no entry.
+	 */
+	private static class ColumnProjection {
+		private final int[] sources;
+		private final int[] targets;
+
+		ColumnProjection(int[] columnTargets) {
+			int size = 0;
+			for (int target : columnTargets) {
+				if (target >= 0) {
+					size++;
+				}
+			}
+			sources = new int[size];
+			targets = new int[size];
+			int index = 0;
+			for (int column = 0; column < columnTargets.length; column++) {
+				if (columnTargets[column] >= 0) {
+					sources[index] = column;
+					targets[index] = columnTargets[column];
+					index++;
+				}
+			}
+		}
+
+		void copy(Row row, Row outputRow) {
+			for (int index = 0; index < sources.length; index++) {
+				outputRow.setColumn(targets[index], row.getColumn(sources[index]));
+			}
+		}
+	}
+
+	/**
+	 * Indexes of hash table rows in the order they were added
+	 */
+	private static class RowGroup {
+		private int[] rows = new int[16];
+		private int size;
+
+		void add(int rowIndex) {
+			if (size == rows.length) {
+				rows = Arrays.copyOf(rows, size * 2);
+			}
+			rows[size++] = rowIndex;
+		}
+
+		int[] getRows() {
+			return rows;
+		}
+
+		int size() {
+			return size;
+		}
+	}
+
+	/**
+	 * Pairs of outer and inner row indexes that were found by a probe task.
+	 * An inner row without a match is stored with an outer row of NO_ROW, and
+	 * an inner row that matched a heavy hitter is stored with an outer row of
+	 * HEAVY_ROW or below, which indexes the group of the heavy hitter.
+	 */
+	private static class MatchBuffer {
+		private int[] outerRows;
+		private int[] innerRows;
+		private List<RowGroup> heavyGroups;
+		private int size;
+		private long probeRows;
+		private long rejectedRows;
+		private long passedRows;
+
+		MatchBuffer(int capacity) {
+			outerRows = new int[capacity];
+			innerRows = new int[capacity];
+		}
+
+		void add(int outerRow, int innerRow) {
+			if (size == outerRows.length) {
+				outerRows = Arrays.copyOf(outerRows, size * 2);
+				innerRows = Arrays.copyOf(innerRows, size * 2);
+			}
+			outerRows[size] = outerRow;
+			innerRows[size] = innerRow;
+			size++;
+		}
+
+		void addHeavy(RowGroup group, int innerRow) {
+			if (heavyGroups == null) {
+				heavyGroups = new ArrayList<RowGroup>();
+			}
+			add(HEAVY_ROW - heavyGroups.size(), innerRow);
+			heavyGroups.add(group);
+		}
+
+		RowGroup getHeavyGroup(int outerRow) {
+			return heavyGroups.get(HEAVY_ROW - outerRow);
+		}
+
+		int getOuterRow(int match) {
+			return outerRows[match];
+		}
+
+		int getInnerRow(int match) {
+			return innerRows[match];
+		}
+
+		int size() {
+			return size;
+		}
+
+		long getProbeRows() {
+			return probeRows;
+		}
+
+		long getRejectedRows() {
+			return rejectedRows;
+		}
+
+		long getPassedRows() {
+			return passedRows;
+		}
+	}
+
+	/**
+	 * Counts the rows written to the output in the progress and checks in
+	 * with it every few thousand rows, so a join that writes a large number
+	 * of rows can still be cancelled
+	 */
+	private class ProgressRowSink implements RowSink {
+		private RowSink output;
+
+		ProgressRowSink(RowSink output) {
+			this.output = output;
+		}
+
+		@Override
+		public void write(Row row) throws ResultSetException,
+				PersistableException {
+			output.write(row);
+			progress.addRowsEmitted(1);
+			if ((progress.getRowsEmitted() % CHECKPOINT_ROWS) == 0) {
+				progress.checkpoint();
+			}
+		}
+	}
+
+	/**
+	 * Reads rows from a result set into column batches and keys their join
+	 * columns a batch at a time. When the keys are integers and the join
+	 * columns are held as longs, the keys are computed straight from the
+	 * column arrays.
+	 */
+	private class ResultSetRowSource implements RowSource {
+		private ResultSet resultSet;
+		private int[] columns;
+		private KeyEncoder encoder;
+
+		private ColumnBatch batch;
+		private boolean[] hasKeys;
+		private long[] keys;
+		private byte[][] keyBytes;
+		private int position;
+
+		ResultSetRowSource(ResultSet resultSet, int[] columns,
+				KeyEncoder encoder) {
+			this.resultSet = resultSet;
+			this.columns = columns;
+			this.encoder = encoder;
+		}
+
+		@Override
+		public void beforeFirst() throws ResultSetException {
+			resultSet.beforeFirst();
+			if (batch != null) {
+				batch.clear();
+			}
+			position = 0;
+		}
+
+		@Override
+		public boolean next() throws ResultSetException {
+			if ((batch == null) || (position + 1 >= batch.size())) {
+				return nextBatch();
+			}
+			position++;
+			return true;
+		}
+
+		@Override
+		public boolean hasKey() throws ResultSetException {
+			return hasKeys[position];
+		}
+
+		@Override
+		public long getKey() throws ResultSetException {
+			return keys[position];
+		}
+
+		@Override
+		public byte[] getKeyBytes() throws ResultSetException {
+			return keyBytes[position];
+		}
+
+		@Override
+		public Row getRow() {
+			if ((batch == null) || (position >= batch.size())) {
+				return null;
+			}
+			return batch.getRow(position);
+		}
+
+		private boolean nextBatch() throws ResultSetException {
+			if (batch == null) {
+				batch = new ColumnBatch(resultSet, columns,
+						ColumnBatch.DEFAULT_CAPACITY);
+				hasKeys = new boolean[batch.getCapacity()];
+				keys = new long[batch.getCapacity()];
+				keyBytes = new byte[batch.getCapacity()][];
+			}
+			position = 0;
+			progress.checkpoint();
+			int size = batch.fill(resultSet);
+			if (size == 0) {
+				return false;
+			}
+
+			Arrays.fill(keyBytes, 0, size, null);
+			if (integerKeys && isLongBatch()) {
+				// Exact integer keys are folded straight from the columns
+				// and never need their byte keys
+				Arrays.fill(hasKeys, 0, size, true);
+				Arrays.fill(keys, 0, size, 0L);
+				for (int column = 0; column < columns.length; column++) {
+					long[] values = batch.getLongs(column);
+					boolean nulls = batch.hasNulls(column);
+					for (int row = 0; row < size; row++) {
+						keys[row] = (keys[row] * 31) + values[row];
+						if (nulls && batch.isNull(column, row)) {
+							hasKeys[row] = false;
+						}
+					}
+				}
+				if (!exactKeys) {
+					for (int row = 0; row < size; row++) {
+						if (hasKeys[row]) {
+							keyBytes[row] = encoder.encode(batch.getRow(row));
+						}
+					}
+				}
+				return true;
+			}
+
+			for (int row = 0; row < size; row++) {
+				Row batchRow = batch.getRow(row);
+				hasKeys[row] = HashJoinImpl.this.hasKey(columns, batchRow);
+				if (hasKeys[row]) {
+					keyBytes[row] = HashJoinImpl.this.getKeyBytes(encoder,
+							columns, batchRow);
+					keys[row] = HashJoinImpl.this.getKey(columns,
+							keyBytes[row], batchRow);
+				}
+			}
+			return true;
+		}
+
+		private boolean isLongBatch() {
+			for (int column = 0; column < columns.length; column++) {
+				if (batch.getType(column) != ColumnBatch.VectorType.LONG) {
+					return false;
+				}
+			}
+			return true;
+		}
 	}
 }
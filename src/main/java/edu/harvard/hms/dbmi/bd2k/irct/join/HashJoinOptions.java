@@ -0,0 +1,288 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.io.File;
+import java.util.Map;
+
+import edu.harvard.hms.dbmi.bd2k.irct.exception.JoinActionSetupException;
+
+/**
+ * The options that control how a hash join is run. They are read from the
+ * parameters passed to the setup of a hash join implementation.
+ *
+ * <ul>
+ * <li>memoryBudget - Number of bytes the rows of the hash table may use
+ * (default: a quarter of the maximum heap size)</li>
+ * <li>blockSize - Maximum number of rows in the hash table (default: as many
+ * rows as are estimated to fit in the memory budget)</li>
+ * <li>tempDirectory - Directory to spill partitions to (default: the system
+ * temporary directory)</li>
+ * <li>parallelism - Number of threads used to probe the hash table (default:
+ * 1)</li>
+ * <li>bloomFilter - Reject probe rows with a Bloom filter before looking them
+ * up in the hash table (default: true)</li>
+ * <li>buildSide - Result set the hash table is built from: left, right or
+ * auto to pick the side that is estimated to be cheaper (default: auto)</li>
+ * <li>sampleRows - Number of rows read from each result set to estimate the
+ * cost of building from it (default: 1000)</li>
+ * <li>pipelined - Run the join on its own thread and write the joined rows to
+ * the output as they are found (default: false)</li>
+ * <li>outputQueueSize - Number of joined rows that may wait to be written
+ * when the join is pipelined (default: 1024)</li>
+ * <li>buildCacheBytes - Number of bytes of hash tables kept between joins so a
+ * result that is joined again on the same columns reuses its hash table, or 0
+ * to not keep them. Tables are kept by result id, so only joins that are
+ * given the ids of their results use them (default: 0)</li>
+ * <li>offHeap - Keep the rows of the hash table in direct memory outside of
+ * the heap instead of as row objects (default: false)</li>
+ * <li>skewThreshold - Number of rows of the hash table that have to share a
+ * key before the key is joined as a heavy hitter, or 0 to not look for heavy
+ * hitters (default: 10000)</li>
+ * <li>incrementalStateBytes - Number of bytes of hash tables kept between runs
+ * of incremental joins, so a join that is run again only joins the rows that
+ * were appended since (default: the memory budget)</li>
+ * <li>maxOutputRows - Number of rows the join is estimated to output above
+ * which it is rejected before it runs, or 0 to not estimate it (default:
+ * 0)</li>
+ * </ul>
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+class HashJoinOptions {
+	private long memoryBudget;
+	private long blockSize;
+	private File tempDirectory;
+	private int parallelism;
+	private boolean bloomFilter;
+	private String buildSide;
+	private int sampleRows;
+	private boolean pipelined;
+	private int outputQueueSize;
+	private long buildCacheBytes;
+	private boolean offHeap;
+	private int skewThreshold;
+	private long incrementalStateBytes;
+	private long maxOutputRows;
+
+	/**
+	 * Creates the hash join options from the setup parameters
+	 *
+	 * @param parameters
+	 *            Setup parameters
+	 * @return Hash join options
+	 * @throws JoinActionSetupException
+	 *             A parameter is not valid
+	 */
+	static HashJoinOptions fromParameters(Map<String, Object> parameters)
+			throws JoinActionSetupException {
+		HashJoinOptions options = new HashJoinOptions();
+		options.memoryBudget = JoinParameters.getLong(parameters,
+				"memoryBudget", Runtime.getRuntime().maxMemory() / 4);
+		if (options.memoryBudget < 1) {
+			throw new JoinActionSetupException(
+					"memoryBudget must be at least 1");
+		}
+		options.blockSize = JoinParameters.getLong(parameters, "blockSize", 0);
+		if (options.blockSize < 0) {
+			throw new JoinActionSetupException("blockSize can not be negative");
+		}
+		options.tempDirectory = JoinParameters.getDirectory(parameters,
+				"tempDirectory");
+		options.parallelism = (int) JoinParameters.getLong(parameters,
+				"parallelism", 1);
+		if (options.parallelism < 1) {
+			throw new JoinActionSetupException(
+					"parallelism must be at least 1");
+		}
+		options.bloomFilter = JoinParameters.getBoolean(parameters,
+				"bloomFilter", true);
+		options.buildSide = JoinParameters.getString(parameters,
+				"buildSide", "auto").toLowerCase();
+		if (!"auto".equals(options.buildSide)
+				&& !"left".equals(options.buildSide)
+				&& !"right".equals(options.buildSide)) {
+			throw new JoinActionSetupException(
+					"buildSide must be left, right or auto : "
+							+ options.buildSide);
+		}
+		options.sampleRows = (int) JoinParameters.getLong(parameters,
+				"sampleRows", 1000);
+		if (options.sampleRows < 0) {
+			throw new JoinActionSetupException(
+					"sampleRows can not be negative");
+		}
+		options.pipelined = JoinParameters.getBoolean(parameters,
+				"pipelined", false);
+		options.outputQueueSize = (int) JoinParameters.getLong(parameters,
+				"outputQueueSize", 1024);
+		if (options.outputQueueSize < 1) {
+			throw new JoinActionSetupException(
+					"outputQueueSize must be at least 1");
+		}
+		options.buildCacheBytes = JoinParameters.getLong(parameters,
+				"buildCacheBytes", 0);
+		if (options.buildCacheBytes < 0) {
+			throw new JoinActionSetupException(
+					"buildCacheBytes can not be negative");
+		}
+		options.offHeap = JoinParameters.getBoolean(parameters, "offHeap",
+				false);
+		options.skewThreshold = (int) JoinParameters.getLong(parameters,
+				"skewThreshold", 10000);
+		if (options.skewThreshold < 0) {
+			throw new JoinActionSetupException(
+					"skewThreshold can not be negative");
+		}
+		options.incrementalStateBytes = JoinParameters.getLong(parameters,
+				"incrementalStateBytes", options.memoryBudget);
+		if (options.incrementalStateBytes < 0) {
+			throw new JoinActionSetupException(
+					"incrementalStateBytes can not be negative");
+		}
+		options.maxOutputRows = JoinParameters.getLong(parameters,
+				"maxOutputRows", 0);
+		if (options.maxOutputRows < 0) {
+			throw new JoinActionSetupException(
+					"maxOutputRows can not be negative");
+		}
+		return options;
+	}
+
+	/**
+	 * Returns the number of bytes the rows of the hash table may use
+	 *
+	 * @return Memory budget
+	 */
+	long getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	/**
+	 * Returns the maximum number of outer rows held in memory at once, or 0 if
+	 * it is sized from the memory budget
+	 *
+	 * @return Block size
+	 */
+	long getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * Returns the directory partitions are spilled to
+	 *
+	 * @return Temporary directory
+	 */
+	File getTempDirectory() {
+		return tempDirectory;
+	}
+
+	/**
+	 * Returns the number of threads used to probe the hash table
+	 *
+	 * @return Parallelism
+	 */
+	int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Returns true if probe rows are checked against a Bloom filter of the
+	 * hash table keys
+	 *
+	 * @return Bloom filter enabled
+	 */
+	boolean isBloomFilter() {
+		return bloomFilter;
+	}
+
+	/**
+	 * Returns the side the hash table is built from: left, right or auto
+	 *
+	 * @return Build side
+	 */
+	String getBuildSide() {
+		return buildSide;
+	}
+
+	/**
+	 * Returns the number of rows sampled from each side when the build side
+	 * is picked automatically
+	 *
+	 * @return Sample rows
+	 */
+	int getSampleRows() {
+		return sampleRows;
+	}
+
+	/**
+	 * Returns true if the joined rows are written to the output while the
+	 * join runs
+	 *
+	 * @return Pipelined
+	 */
+	boolean isPipelined() {
+		return pipelined;
+	}
+
+	/**
+	 * Returns the number of joined rows that may wait to be written when the
+	 * join is pipelined
+	 *
+	 * @return Output queue size
+	 */
+	int getOutputQueueSize() {
+		return outputQueueSize;
+	}
+
+	/**
+	 * Returns the number of bytes of hash tables kept between joins, or 0 if
+	 * they are not kept
+	 *
+	 * @return Build cache bytes
+	 */
+	long getBuildCacheBytes() {
+		return buildCacheBytes;
+	}
+
+	/**
+	 * Returns true if the rows of the hash table are kept outside of the heap
+	 *
+	 * @return Off heap
+	 */
+	boolean isOffHeap() {
+		return offHeap;
+	}
+
+	/**
+	 * Returns the number of rows that have to share a key before it is joined
+	 * as a heavy hitter
+	 *
+	 * @return Skew threshold, 0 if heavy hitters are not looked for
+	 */
+	int getSkewThreshold() {
+		return skewThreshold;
+	}
+
+	/**
+	 * Returns the number of bytes of hash tables kept between runs of
+	 * incremental joins
+	 *
+	 * @return Incremental state bytes
+	 */
+	long getIncrementalStateBytes() {
+		return incrementalStateBytes;
+	}
+
+	/**
+	 * Returns the number of rows the join is estimated to output above which
+	 * it is rejected
+	 *
+	 * @return Maximum output rows, 0 if the output is not estimated
+	 */
+	long getMaxOutputRows() {
+		return maxOutputRows;
+	}
+}
@@ -0,0 +1,243 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+/**
+ * Counters collected while a hash join runs. They are reported in the message
+ * of the result so the effectiveness of the join can be checked.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+public class HashJoinStatistics {
+	private long blockSize;
+	private long blocks;
+	private String buildSide;
+	private long probeRows;
+	private long parallelProbeRows;
+	private long parallelBuildRows;
+	private long buildPartitions;
+	private long bloomFilterRejected;
+	private long bloomFilterPassed;
+	private long spilledRows;
+	private long cachedBlocks;
+	private long heavyKeys;
+	private long heavyKeyRows;
+	private long heavyKeyProbeRows;
+	private long largestKeyRows;
+
+	/**
+	 * Returns the maximum number of rows the join put in a block
+	 *
+	 * @return Block size
+	 */
+	public long getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * Returns the number of blocks the hash table was built in
+	 *
+	 * @return Blocks
+	 */
+	public long getBlocks() {
+		return blocks;
+	}
+
+	/**
+	 * Returns the result set the hash table was built from
+	 *
+	 * @return left or right
+	 */
+	public String getBuildSide() {
+		return buildSide;
+	}
+
+	/**
+	 * Returns the number of inner rows that were probed against the hash
+	 * table
+	 *
+	 * @return Probe rows
+	 */
+	public long getProbeRows() {
+		return probeRows;
+	}
+
+	/**
+	 * Returns the number of inner rows that were probed against the hash
+	 * table by the worker threads of a parallel join
+	 *
+	 * @return Parallel probe rows
+	 */
+	public long getParallelProbeRows() {
+		return parallelProbeRows;
+	}
+
+	/**
+	 * Returns the number of outer rows that were put in the hash table by the
+	 * worker threads of a parallel join
+	 *
+	 * @return Parallel build rows
+	 */
+	public long getParallelBuildRows() {
+		return parallelBuildRows;
+	}
+
+	/**
+	 * Returns the largest number of radix partitions a hash table was built
+	 * from in parallel
+	 *
+	 * @return Build partitions
+	 */
+	public long getBuildPartitions() {
+		return buildPartitions;
+	}
+
+	/**
+	 * Returns the number of probe rows the Bloom filter rejected without a
+	 * hash table lookup
+	 *
+	 * @return Rejected probe rows
+	 */
+	public long getBloomFilterRejected() {
+		return bloomFilterRejected;
+	}
+
+	/**
+	 * Returns the number of probe rows the Bloom filter passed on to the hash
+	 * table
+	 *
+	 * @return Passed probe rows
+	 */
+	public long getBloomFilterPassed() {
+		return bloomFilterPassed;
+	}
+
+	/**
+	 * Returns the number of blocks whose hash table was taken from the build
+	 * table cache instead of being built
+	 *
+	 * @return Cached blocks
+	 */
+	public long getCachedBlocks() {
+		return cachedBlocks;
+	}
+
+	/**
+	 * Returns the number of keys that were joined as heavy hitters, counted
+	 * once for every block they were found in
+	 *
+	 * @return Heavy keys
+	 */
+	public long getHeavyKeys() {
+		return heavyKeys;
+	}
+
+	/**
+	 * Returns the number of hash table rows that had a heavy hitter key
+	 *
+	 * @return Heavy key rows
+	 */
+	public long getHeavyKeyRows() {
+		return heavyKeyRows;
+	}
+
+	/**
+	 * Returns the number of probe rows that matched a heavy hitter key
+	 *
+	 * @return Heavy key probe rows
+	 */
+	public long getHeavyKeyProbeRows() {
+		return heavyKeyProbeRows;
+	}
+
+	/**
+	 * Returns the number of rows that were written to partitions on disk
+	 *
+	 * @return Spilled rows
+	 */
+	public long getSpilledRows() {
+		return spilledRows;
+	}
+
+	/**
+	 * Returns the largest number of hash table rows that shared a single key
+	 *
+	 * @return Largest key rows
+	 */
+	public long getLargestKeyRows() {
+		return largestKeyRows;
+	}
+
+	void setBlockSize(long blockSize) {
+		this.blockSize = blockSize;
+	}
+
+	void addBlock() {
+		blocks++;
+	}
+
+	void setBuildSide(String buildSide) {
+		this.buildSide = buildSide;
+	}
+
+	void addCachedBlock() {
+		cachedBlocks++;
+	}
+
+	void addHeavyKey(long rows) {
+		heavyKeys++;
+		heavyKeyRows += rows;
+	}
+
+	void addHeavyKeyProbeRows(long rows) {
+		heavyKeyProbeRows += rows;
+	}
+
+	void addKeyRows(long rows) {
+		largestKeyRows = Math.max(largestKeyRows, rows);
+	}
+
+	void addProbeRows(long rows) {
+		probeRows += rows;
+	}
+
+	void addParallelProbeRows(long rows) {
+		parallelProbeRows += rows;
+	}
+
+	void addParallelBuildRows(long rows, int partitions) {
+		parallelBuildRows += rows;
+		buildPartitions = Math.max(buildPartitions, partitions);
+	}
+
+	void addSpilledRows(long rows) {
+		spilledRows += rows;
+	}
+
+	void addBloomFilterRejected(long rows) {
+		bloomFilterRejected += rows;
+	}
+
+	void addBloomFilterPassed(long rows) {
+		bloomFilterPassed += rows;
+	}
+
+	@Override
+	public String toString() {
+		return "Blocks : " + blocks + ", Block size : " + blockSize
+				+ ", Build side : " + buildSide + ", Probe rows : " + probeRows
+				+ ", Parallel probe rows : " + parallelProbeRows
+				+ ", Parallel build rows : " + parallelBuildRows
+				+ ", Build partitions : " + buildPartitions
+				+ ", Bloom filter rejected : " + bloomFilterRejected
+				+ ", Bloom filter passed : " + bloomFilterPassed
+				+ ", Spilled rows : " + spilledRows
+				+ ", Cached blocks : " + cachedBlocks
+				+ ", Heavy keys : " + heavyKeys
+				+ ", Heavy key rows : " + heavyKeyRows
+				+ ", Heavy key probe rows : " + heavyKeyProbeRows
+				+ ", Largest key rows : " + largestKeyRows;
+	}
+}
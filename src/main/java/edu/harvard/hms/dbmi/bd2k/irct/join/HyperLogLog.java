@@ -0,0 +1,141 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+/**
+ * A HyperLogLog sketch that estimates how many distinct 64 bit hashes have
+ * been added to it. The top bits of a hash pick a register, and the register
+ * keeps the longest run of leading zeros seen in the rest of the hash. The
+ * sketch uses one byte for each register, and with 2^precision registers its
+ * estimates have a standard error of about 1.04 / sqrt(2^precision), which is
+ * under one percent at the default precision.
+ *
+ * Two sketches of the same precision can be merged into a sketch of the union
+ * of their hashes.
+ *
+ * You can read more about HyperLogLog at
+ * https://en.wikipedia.org/wiki/HyperLogLog
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+class HyperLogLog {
+	static final int DEFAULT_PRECISION = 14;
+	private static final int MIN_PRECISION = 4;
+	private static final int MAX_PRECISION = 18;
+
+	private final int precision;
+	private final byte[] registers;
+
+	/**
+	 * Creates a sketch with the default precision
+	 */
+	HyperLogLog() {
+		this(DEFAULT_PRECISION);
+	}
+
+	/**
+	 * Creates a sketch with 2^precision registers
+	 *
+	 * @param precision
+	 *            Number of bits of a hash that pick its register
+	 */
+	HyperLogLog(int precision) {
+		if ((precision < MIN_PRECISION) || (precision > MAX_PRECISION)) {
+			throw new IllegalArgumentException("precision must be between "
+					+ MIN_PRECISION + " and " + MAX_PRECISION);
+		}
+		this.precision = precision;
+		this.registers = new byte[1 << precision];
+	}
+
+	/**
+	 * Adds a hash to the sketch. The bits of the hash should be evenly
+	 * distributed, so it should come from a hash function and not be a key
+	 * itself.
+	 *
+	 * @param hash
+	 *            64 bit hash
+	 */
+	void add(long hash) {
+		int register = (int) (hash >>> (64 - precision));
+		// The bits that are left with a one bit below them, so the run of
+		// zeros ends even when all the remaining bits are zero
+		long rest = (hash << precision) | (1L << (precision - 1));
+		byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+		if (rank > registers[register]) {
+			registers[register] = rank;
+		}
+	}
+
+	/**
+	 * Adds the hashes of another sketch to this sketch
+	 *
+	 * @param other
+	 *            Sketch with the same precision
+	 */
+	void merge(HyperLogLog other) {
+		if (other.precision != precision) {
+			throw new IllegalArgumentException(
+					"Sketches have a different precision");
+		}
+		for (int register = 0; register < registers.length; register++) {
+			if (other.registers[register] > registers[register]) {
+				registers[register] = other.registers[register];
+			}
+		}
+	}
+
+	/**
+	 * Returns a new sketch of the hashes of this sketch and another sketch
+	 *
+	 * @param other
+	 *            Sketch with the same precision
+	 * @return Sketch of the union
+	 */
+	HyperLogLog union(HyperLogLog other) {
+		HyperLogLog union = new HyperLogLog(precision);
+		union.merge(this);
+		union.merge(other);
+		return union;
+	}
+
+	/**
+	 * Returns the estimated number of distinct hashes that were added
+	 *
+	 * @return Estimated distinct hashes
+	 */
+	double estimate() {
+		int count = registers.length;
+		double sum = 0;
+		int zeros = 0;
+		for (byte rank : registers) {
+			sum += 1.0 / (1L << rank);
+			if (rank == 0) {
+				zeros++;
+			}
+		}
+		double estimate = alpha(count) * count * count / sum;
+
+		// Few hashes leave many registers empty, which linear counting
+		// estimates better
+		if ((estimate <= 2.5 * count) && (zeros > 0)) {
+			return count * Math.log((double) count / zeros);
+		}
+		return estimate;
+	}
+
+	private static double alpha(int count) {
+		switch (count) {
+		case 16:
+			return 0.673;
+		case 32:
+			return 0.697;
+		case 64:
+			return 0.709;
+		default:
+			return 0.7213 / (1 + 1.079 / count);
+		}
+	}
+}
@@ -0,0 +1,395 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import edu.harvard.hms.dbmi.bd2k.irct.join.IncrementalJoinStore.State;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Column;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
+
+/**
+ * An inner join that can be kept up to date as rows are appended to its
+ * result sets. The rows of both result sets are held in a hash table for each
+ * result set, which is kept in the incremental join store under the key of
+ * the join once the join is done.
+ *
+ * When the join is run again with the same key, only the rows that were
+ * appended since the last run are read. The new left rows are matched against
+ * the right rows of the previous run and added to the left table, and then
+ * the new right rows are matched against all the left rows and added to the
+ * right table. Only the joined rows that involve a new row are written, so
+ * the output is the rows to append to the output of the previous run. The
+ * first run, or a run whose result sets have changed in some other way than
+ * having rows appended, joins every row.
+ *
+ * The rows that were joined in earlier runs are still read to reach the new
+ * ones, as a result set cannot move to a row directly, and their fingerprints
+ * are checked against the ones kept in the state. A result set that was
+ * regenerated or sorted again under the same id joins every row. A run that
+ * fails or is cancelled drops the state of the join, so the next run joins
+ * every row.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+public class IncrementalJoinImpl {
+	// Estimated bytes a row uses in a table on top of the row itself
+	private static final long TABLE_ROW_SIZE = 48;
+	// Number of rows read between two progress checkpoints
+	private static final int CHECKPOINT_ROWS = 4096;
+
+	private ResultSet leftResultSet;
+	private ResultSet rightResultSet;
+	private int[] leftColumns;
+	private int[] rightColumns;
+	private String key;
+	private long maxStateBytes;
+
+	// Names of the output columns to keep, or null to keep them all
+	private Set<String> projection;
+	private List<Column> columns;
+	private int[] leftTargets;
+	private int[] rightTargets;
+
+	private JoinProgress progress = new JoinProgress();
+	private boolean incremental;
+	private long newLeftRows;
+	private long newRightRows;
+	private long readRows;
+
+	/**
+	 * Creates an incremental join between two result sets
+	 *
+	 * @param leftResultSet
+	 *            Left result set
+	 * @param rightResultSet
+	 *            Right result set
+	 * @param leftColumns
+	 *            Join columns of the left result set
+	 * @param rightColumns
+	 *            Join columns of the right result set
+	 * @param key
+	 *            Key the state of the join is kept under between runs
+	 * @param maxStateBytes
+	 *            Number of bytes of state the incremental join store may hold
+	 */
+	public IncrementalJoinImpl(ResultSet leftResultSet,
+			ResultSet rightResultSet, int[] leftColumns, int[] rightColumns,
+			String key, long maxStateBytes) {
+		this.leftResultSet = leftResultSet;
+		this.rightResultSet = rightResultSet;
+		this.leftColumns = leftColumns;
+		this.rightColumns = rightColumns;
+		this.key = key;
+		this.maxStateBytes = maxStateBytes;
+	}
+
+	/**
+	 * Drops the state of every incremental join, so the next run of each join
+	 * joins every row
+	 */
+	public static void clearState() {
+		IncrementalJoinStore.getInstance().clear();
+	}
+
+	/**
+	 * Drops the state of this join, so its next run joins every row
+	 */
+	public void dropState() {
+		IncrementalJoinStore.getInstance().take(key);
+	}
+
+	/**
+	 * Returns the estimated size of the state of the join once every row of
+	 * both result sets is in it, from the data types of their columns. A
+	 * state larger than the store can not be kept, so it should not be
+	 * built.
+	 *
+	 * @return Estimated state size in bytes
+	 * @throws ResultSetException
+	 *             An error occurred reading a result set
+	 */
+	public long getEstimatedStateBytes() throws ResultSetException {
+		long leftRowBytes = RowSizes.estimateRow(leftResultSet)
+				+ TABLE_ROW_SIZE;
+		long rightRowBytes = RowSizes.estimateRow(rightResultSet)
+				+ TABLE_ROW_SIZE;
+		return (leftResultSet.getSize() * leftRowBytes)
+				+ (rightResultSet.getSize() * rightRowBytes);
+	}
+
+	/**
+	 * Sets the progress the join reports to and checks for cancellation
+	 *
+	 * @param progress
+	 *            Join progress
+	 */
+	public void setProgress(JoinProgress progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Keeps only some of the columns of the joined rows. The columns that are
+	 * kept stay in the order they would have without the projection. It has
+	 * to be set before the join is run.
+	 *
+	 * @param columnNames
+	 *            Names of the output columns to keep, or null to keep them all
+	 */
+	public void setProjection(List<String> columnNames) {
+		if (columnNames == null) {
+			this.projection = null;
+		} else {
+			this.projection = new HashSet<String>(columnNames);
+		}
+		this.columns = null;
+	}
+
+	/**
+	 * Returns the columns of the joined rows. The columns of the left result
+	 * set come first, followed by the columns of the right result set that do
+	 * not share a name with them. If a projection is set only the columns in
+	 * it are returned.
+	 *
+	 * @return Output columns
+	 * @throws ResultSetException
+	 *             An error occurred reading the columns of a result set, or
+	 *             the projection has a column that is not in either result
+	 *             set
+	 */
+	public List<Column> getColumns() throws ResultSetException {
+		if (columns != null) {
+			return columns;
+		}
+		List<Column> outputColumns = new ArrayList<Column>();
+		Set<String> columnNames = new HashSet<String>();
+		leftTargets = new int[leftResultSet.getColumnSize()];
+		for (int columnI = 0; columnI < leftTargets.length; columnI++) {
+			Column column = leftResultSet.getColumn(columnI);
+			columnNames.add(column.getName());
+			leftTargets[columnI] = addColumn(outputColumns, column);
+		}
+		rightTargets = new int[rightResultSet.getColumnSize()];
+		for (int columnI = 0; columnI < rightTargets.length; columnI++) {
+			Column column = rightResultSet.getColumn(columnI);
+			if (columnNames.add(column.getName())) {
+				rightTargets[columnI] = addColumn(outputColumns, column);
+			} else {
+				rightTargets[columnI] = -1;
+			}
+		}
+
+		if (projection != null) {
+			for (String columnName : projection) {
+				if (!columnNames.contains(columnName)) {
+					throw new ResultSetException("Unknown column : "
+							+ columnName);
+				}
+			}
+		}
+		columns = outputColumns;
+		return columns;
+	}
+
+	/**
+	 * Runs the join, writing the joined rows that are new since the last run
+	 * to the output
+	 *
+	 * @param output
+	 *            Output result set
+	 * @return Output result set
+	 * @throws ResultSetException
+	 *             An error occurred reading or writing a result set, or the
+	 *             join was cancelled
+	 * @throws PersistableException
+	 *             An error occurred writing the output
+	 */
+	public ResultSet join(ResultSet output) throws ResultSetException,
+			PersistableException {
+		for (Column column : getColumns()) {
+			output.appendColumn(column);
+		}
+
+		IncrementalJoinStore store = IncrementalJoinStore.getInstance();
+		store.setMaxBytes(maxStateBytes);
+		State state = store.take(key);
+		int leftColumnCount = leftResultSet.getColumnSize();
+		int rightColumnCount = rightResultSet.getColumnSize();
+		incremental = (state != null)
+				&& state.isAppendedTo(leftResultSet, rightResultSet)
+				&& (skipRows(leftResultSet, leftColumnCount,
+						state.getLeftRows()) == state.getLeftFingerprint())
+				&& (skipRows(rightResultSet, rightColumnCount,
+						state.getRightRows()) == state.getRightFingerprint());
+		if (!incremental) {
+			state = new State(RowFingerprints.columns(leftResultSet),
+					RowFingerprints.columns(rightResultSet));
+			leftResultSet.beforeFirst();
+			rightResultSet.beforeFirst();
+		}
+
+		boolean[] leftNumeric = JoinKeys.getNumericColumns(leftResultSet,
+				leftColumns);
+		boolean[] rightNumeric = JoinKeys.getNumericColumns(rightResultSet,
+				rightColumns);
+		long leftSize = leftResultSet.getSize();
+		long rightSize = rightResultSet.getSize();
+		newLeftRows = leftSize - state.getLeftRows();
+		newRightRows = rightSize - state.getRightRows();
+
+		// New left rows against the right rows that were already joined
+		long rowIndex = state.getLeftRows();
+		if (newLeftRows > 0) {
+			while (leftResultSet.next()) {
+				Row leftRow = leftResultSet.getCurrentRow();
+				checkpoint();
+				state.addLeftFingerprint(RowFingerprints.row(leftRow,
+						leftColumnCount, rowIndex++));
+				if (!JoinKeys.hasKey(leftRow, leftColumns)) {
+					continue;
+				}
+				Object rowKey = JoinKeys.hashKey(leftRow, leftColumns,
+						leftNumeric);
+				progress.addRowsProbed(1);
+				List<Row> matches = state.getRightTable().get(rowKey);
+				if (matches != null) {
+					for (Row rightRow : matches) {
+						writeRow(output, leftRow, rightRow);
+					}
+				}
+				state.add(state.getLeftTable(), rowKey, leftRow,
+						RowSizes.estimateRow(leftRow, leftTargets.length)
+								+ TABLE_ROW_SIZE);
+				progress.addRowsBuilt(1);
+			}
+		}
+
+		// New right rows against all the left rows
+		rowIndex = state.getRightRows();
+		if (newRightRows > 0) {
+			while (rightResultSet.next()) {
+				Row rightRow = rightResultSet.getCurrentRow();
+				checkpoint();
+				state.addRightFingerprint(RowFingerprints.row(rightRow,
+						rightColumnCount, rowIndex++));
+				if (!JoinKeys.hasKey(rightRow, rightColumns)) {
+					continue;
+				}
+				Object rowKey = JoinKeys.hashKey(rightRow, rightColumns,
+						rightNumeric);
+				progress.addRowsProbed(1);
+				List<Row> matches = state.getLeftTable().get(rowKey);
+				if (matches != null) {
+					for (Row leftRow : matches) {
+						writeRow(output, leftRow, rightRow);
+					}
+				}
+				state.add(state.getRightTable(), rowKey, rightRow,
+						RowSizes.estimateRow(rightRow, rightTargets.length)
+								+ TABLE_ROW_SIZE);
+				progress.addRowsBuilt(1);
+			}
+		}
+
+		// A cancelled run does not put its state back
+		progress.checkpoint();
+		state.setRows(leftSize, rightSize);
+		store.put(key, state);
+		return output;
+	}
+
+	/**
+	 * Returns true if the last run only joined the rows that were appended
+	 * since the run before it
+	 *
+	 * @return Incremental
+	 */
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	/**
+	 * Returns the number of left rows the last run read
+	 *
+	 * @return New left rows
+	 */
+	public long getNewLeftRows() {
+		return newLeftRows;
+	}
+
+	/**
+	 * Returns the number of right rows the last run read
+	 *
+	 * @return New right rows
+	 */
+	public long getNewRightRows() {
+		return newRightRows;
+	}
+
+	/**
+	 * Checks in with the progress every few thousand rows that are read, so a
+	 * long run can be cancelled
+	 */
+	private void checkpoint() throws ResultSetException {
+		readRows++;
+		if ((readRows % CHECKPOINT_ROWS) == 0) {
+			progress.checkpoint();
+		}
+	}
+
+	/**
+	 * Reads the rows that were joined in the last run, so the next row read
+	 * is the first new one, and returns the sum of their fingerprints. The
+	 * result set interface cannot move to a row directly, so every run reads
+	 * all the rows once even though only the new rows are joined.
+	 */
+	private long skipRows(ResultSet resultSet, int columnCount, long rows)
+			throws ResultSetException {
+		long fingerprint = 0;
+		resultSet.beforeFirst();
+		for (long rowI = 0; (rowI < rows) && resultSet.next(); rowI++) {
+			checkpoint();
+			fingerprint += RowFingerprints.row(resultSet.getCurrentRow(),
+					columnCount, rowI);
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Adds a column to the output unless the projection leaves it out
+	 *
+	 * @return Index of the column in the output, or -1 if it is left out
+	 */
+	private int addColumn(List<Column> outputColumns, Column column) {
+		if ((projection != null) && !projection.contains(column.getName())) {
+			return -1;
+		}
+		outputColumns.add(column);
+		return outputColumns.size() - 1;
+	}
+
+	private void writeRow(ResultSet output, Row leftRow, Row rightRow)
+			throws ResultSetException, PersistableException {
+		output.appendRow();
+		copyRow(output, leftRow, leftTargets);
+		copyRow(output, rightRow, rightTargets);
+		progress.addRowsEmitted(1);
+	}
+
+	private void copyRow(ResultSet output, Row row, int[] targets)
+			throws ResultSetException {
+		for (int columnI = 0; columnI < targets.length; columnI++) {
+			if (targets[columnI] >= 0) {
+				output.updateObject(targets[columnI], row.getColumn(columnI));
+			}
+		}
+	}
+}
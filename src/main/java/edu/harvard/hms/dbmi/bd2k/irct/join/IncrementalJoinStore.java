@@ -0,0 +1,251 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
+
+/**
+ * Keeps the hash tables of incremental joins between runs, so a join that is
+ * run again after rows were appended to its result sets only has to join the
+ * new rows. The store is shared by all the incremental joins and holds at
+ * most a set number of bytes of tables. When it is full the tables that were
+ * used least recently are dropped.
+ *
+ * A join takes its state out of the store while it runs and puts it back
+ * once it is done, so two runs of the same join never change the same state,
+ * and a run that fails leaves nothing behind.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+final class IncrementalJoinStore {
+	private static final IncrementalJoinStore INSTANCE = new IncrementalJoinStore();
+
+	private final LinkedHashMap<String, State> states = new LinkedHashMap<String, State>(
+			16, 0.75f, true);
+	private long maxBytes;
+	private long bytes;
+
+	private IncrementalJoinStore() {
+	}
+
+	/**
+	 * Returns the store shared by all the incremental joins
+	 *
+	 * @return Incremental join store
+	 */
+	static IncrementalJoinStore getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Sets the number of bytes of tables the store may hold, dropping tables
+	 * if it holds more
+	 *
+	 * @param maxBytes
+	 *            Maximum bytes
+	 */
+	synchronized void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		evict();
+	}
+
+	/**
+	 * Removes the state of a join from the store and returns it
+	 *
+	 * @param key
+	 *            Join key
+	 * @return State, or null if the store does not hold one
+	 */
+	synchronized State take(String key) {
+		State state = states.remove(key);
+		if (state != null) {
+			bytes -= state.bytes;
+		}
+		return state;
+	}
+
+	/**
+	 * Puts the state of a join in the store. A state larger than the store is
+	 * not kept.
+	 *
+	 * @param key
+	 *            Join key
+	 * @param state
+	 *            State
+	 */
+	synchronized void put(String key, State state) {
+		take(key);
+		if (state.bytes > maxBytes) {
+			return;
+		}
+		states.put(key, state);
+		bytes += state.bytes;
+		evict();
+	}
+
+	/**
+	 * Drops the state of every join
+	 */
+	synchronized void clear() {
+		states.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Returns the number of bytes of tables in the store
+	 *
+	 * @return Bytes
+	 */
+	synchronized long getBytes() {
+		return bytes;
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<String, State>> iterator = states.entrySet()
+				.iterator();
+		while ((bytes > maxBytes) && iterator.hasNext()) {
+			bytes -= iterator.next().getValue().bytes;
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * The rows of both result sets of a join that have been joined so far,
+	 * held in a hash table for each result set on the key of their join
+	 * columns. Rows without a key can never match and are only counted. The
+	 * fingerprints of the columns and of the rows that were joined are kept so
+	 * a result set that was changed under the same id is not taken for one
+	 * that had rows appended.
+	 */
+	static final class State {
+		private final Map<Object, List<Row>> leftTable = new HashMap<Object, List<Row>>();
+		private final Map<Object, List<Row>> rightTable = new HashMap<Object, List<Row>>();
+		private final long leftColumns;
+		private final long rightColumns;
+		private long leftRows;
+		private long rightRows;
+		private long leftFingerprint;
+		private long rightFingerprint;
+		private long bytes;
+
+		/**
+		 * Creates an empty state for two result sets
+		 *
+		 * @param leftColumns
+		 *            Fingerprint of the columns of the left result set
+		 * @param rightColumns
+		 *            Fingerprint of the columns of the right result set
+		 */
+		State(long leftColumns, long rightColumns) {
+			this.leftColumns = leftColumns;
+			this.rightColumns = rightColumns;
+		}
+
+		/**
+		 * Returns true if the result sets can be the ones the state was built
+		 * from with rows appended to them. Result sets that have fewer rows
+		 * or other columns have changed in some other way. The rows that
+		 * were joined before are checked against their fingerprints as they
+		 * are read again.
+		 *
+		 * @param left
+		 *            Left result set
+		 * @param right
+		 *            Right result set
+		 * @return True if only the rows after the ones in the state can be
+		 *         new
+		 * @throws ResultSetException
+		 *             An error occurred reading the size of a result set
+		 */
+		boolean isAppendedTo(ResultSet left, ResultSet right)
+				throws ResultSetException {
+			return (left.getSize() >= leftRows)
+					&& (right.getSize() >= rightRows)
+					&& (RowFingerprints.columns(left) == leftColumns)
+					&& (RowFingerprints.columns(right) == rightColumns);
+		}
+
+		Map<Object, List<Row>> getLeftTable() {
+			return leftTable;
+		}
+
+		Map<Object, List<Row>> getRightTable() {
+			return rightTable;
+		}
+
+		long getLeftRows() {
+			return leftRows;
+		}
+
+		long getRightRows() {
+			return rightRows;
+		}
+
+		/**
+		 * Returns the sum of the fingerprints of the left rows that were
+		 * joined
+		 *
+		 * @return Left fingerprint
+		 */
+		long getLeftFingerprint() {
+			return leftFingerprint;
+		}
+
+		/**
+		 * Returns the sum of the fingerprints of the right rows that were
+		 * joined
+		 *
+		 * @return Right fingerprint
+		 */
+		long getRightFingerprint() {
+			return rightFingerprint;
+		}
+
+		void setRows(long leftRows, long rightRows) {
+			this.leftRows = leftRows;
+			this.rightRows = rightRows;
+		}
+
+		void addLeftFingerprint(long fingerprint) {
+			leftFingerprint += fingerprint;
+		}
+
+		void addRightFingerprint(long fingerprint) {
+			rightFingerprint += fingerprint;
+		}
+
+		/**
+		 * Adds a row to one of the tables
+		 *
+		 * @param table
+		 *            Left or right table
+		 * @param key
+		 *            Key of the join columns of the row
+		 * @param row
+		 *            Row
+		 * @param rowBytes
+		 *            Estimated size of the row in the table
+		 */
+		void add(Map<Object, List<Row>> table, Object key, Row row,
+				long rowBytes) {
+			List<Row> rows = table.get(key);
+			if (rows == null) {
+				rows = new ArrayList<Row>(2);
+				table.put(key, rows);
+			}
+			rows.add(row);
+			bytes += rowBytes;
+		}
+	}
+}
@@ -3,6 +3,8 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package edu.harvard.hms.dbmi.bd2k.irct.join;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 import edu.harvard.hms.dbmi.bd2k.irct.exception.JoinActionSetupException;
@@ -21,17 +23,25 @@ import edu.harvard.hms.dbmi.bd2k.irct.model.security.SecureSession;
  * Performs a inner join between two result sets using the hybrid hash
  * join implementation
  * 
+ * If the Incremental field is true the join is run by the incremental join
+ * implementation instead. Its hash tables are kept under the result ids of
+ * LeftResultSet and RightResultSet and the join columns, so running the join
+ * again after rows were appended to the results only joins the new rows, and
+ * the output holds only the joined rows that are new. The maxOutputRows
+ * check, the Columns field and cancellation work the same way in both modes.
+ * A join whose state is estimated to be larger than incrementalStateBytes is
+ * run as a hash join over every row instead, and no state is kept for it.
  * 
  * @author Jeremy R. Easton-Marks
  *
  */
 public class InnerHashJoin implements JoinImplementation {
-	private long blockSize;
+	private HashJoinOptions options;
 
 	@Override
 	public void setup(Map<String, Object> parameters)
 			throws JoinActionSetupException {
-		this.blockSize = 100000L;
+		this.options = HashJoinOptions.fromParameters(parameters);
 	}
 
 	@Override
@@ -87,14 +97,161 @@ public class InnerHashJoin implements JoinImplementation {
 			return result;
 		}
 
-		HashJoinImpl hashJoin = new HashJoinImpl(leftResultSet, rightResultSet, leftColumns, rightColumns, HashJoinImplType.INNERJOIN, this.blockSize);
+		// Reject the join before it runs if it would output too many rows
+		if (this.options.getMaxOutputRows() > 0) {
+			JoinEstimate estimate = JoinEstimate.estimate(leftResultSet,
+					rightResultSet, leftColumns, rightColumns);
+			long outputRows = estimate.getOutputRows(HashJoinImplType.INNERJOIN);
+			if (outputRows > this.options.getMaxOutputRows()) {
+				result.setResultStatus(ResultStatus.ERROR);
+				result.setMessage("Estimated output rows : " + outputRows
+						+ " is more than maxOutputRows : "
+						+ this.options.getMaxOutputRows() + " (" + estimate + ")");
+				return result;
+			}
+		}
+
+		// Keep only the output columns that were asked for
+		List<String> projection = null;
+		String columnsValue = join.getStringValues().get("Columns");
+		if ((columnsValue != null) && !columnsValue.trim().isEmpty()) {
+			projection = Arrays.asList(columnsValue.split(","));
+		}
+
+		String incrementalValue = join.getStringValues().get("Incremental");
+		if ((incrementalValue != null)
+				&& Boolean.valueOf(incrementalValue.trim())) {
+			return runIncremental(join, result, leftResultSet,
+					rightResultSet, leftColumns, rightColumns, projection);
+		}
+
+		return runHashJoin(join, result, leftResultSet, rightResultSet,
+				leftColumns, rightColumns, projection);
+	}
+
+	/**
+	 * Runs the join with the hybrid hash join implementation
+	 */
+	private Result runHashJoin(Join join, Result result,
+			ResultSet leftResultSet, ResultSet rightResultSet,
+			int[] leftColumns, int[] rightColumns, List<String> projection)
+			throws ResultSetException, PersistableException {
+		HashJoinImpl hashJoin = new HashJoinImpl(leftResultSet, rightResultSet, leftColumns, rightColumns, HashJoinImplType.INNERJOIN, this.options);
+		hashJoin.setResultIds(JoinParameters.getResultId(join, "LeftResultSet"),
+				JoinParameters.getResultId(join, "RightResultSet"));
+
+		if (projection != null) {
+			hashJoin.setProjection(projection);
+			try {
+				hashJoin.getColumns();
+			} catch (ResultSetException rse) {
+				result.setResultStatus(ResultStatus.ERROR);
+				result.setMessage("Columns : " + rse.getMessage());
+				return result;
+			}
+		}
+
+		JoinProgress progress = JoinProgress.start(result);
+		hashJoin.setProgress(progress);
 
 		ResultSet outputResult = (ResultSet) result.getData();
 		
-		hashJoin.join(outputResult);
+		try {
+			if (this.options.isPipelined()) {
+				hashJoin.join(outputResult, this.options.getOutputQueueSize());
+			} else {
+				hashJoin.join(outputResult);
+			}
+		} catch (ResultSetException rse) {
+			if (!progress.isCancelled()) {
+				throw rse;
+			}
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("Join was cancelled : " + progress);
+			return result;
+		} finally {
+			progress.finish();
+		}
+
+		outputResult.beforeFirst();
+		result.setResultStatus(ResultStatus.COMPLETE);
+		result.setMessage(hashJoin.getStatistics().toString());
+		result.setData(outputResult);
+		return result;
+	}
+
+	/**
+	 * Runs the join with the incremental join implementation, keeping its
+	 * state under the result ids of the result sets and the join columns
+	 */
+	private Result runIncremental(Join join, Result result,
+			ResultSet leftResultSet, ResultSet rightResultSet,
+			int[] leftColumns, int[] rightColumns, List<String> projection)
+			throws ResultSetException, PersistableException {
+		String leftId = JoinParameters.getResultId(join, "LeftResultSet");
+		String rightId = JoinParameters.getResultId(join, "RightResultSet");
+		if ((leftId == null) || (rightId == null)) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("Incremental : LeftResultSet and RightResultSet have no result ids");
+			return result;
+		}
+		String key = leftId + Arrays.toString(leftColumns) + ":" + rightId
+				+ Arrays.toString(rightColumns);
+
+		IncrementalJoinImpl incrementalJoin = new IncrementalJoinImpl(
+				leftResultSet, rightResultSet, leftColumns, rightColumns, key,
+				this.options.getIncrementalStateBytes());
+
+		// A state that would not be kept is not built, and the old one no
+		// longer matches the output of this run
+		if (incrementalJoin.getEstimatedStateBytes() > this.options
+				.getIncrementalStateBytes()) {
+			incrementalJoin.dropState();
+			runHashJoin(join, result, leftResultSet, rightResultSet,
+					leftColumns, rightColumns, projection);
+			if (result.getResultStatus() == ResultStatus.COMPLETE) {
+				result.setMessage("Full : State does not fit in incrementalStateBytes : "
+						+ result.getMessage());
+			}
+			return result;
+		}
+
+		if (projection != null) {
+			incrementalJoin.setProjection(projection);
+			try {
+				incrementalJoin.getColumns();
+			} catch (ResultSetException rse) {
+				result.setResultStatus(ResultStatus.ERROR);
+				result.setMessage("Columns : " + rse.getMessage());
+				return result;
+			}
+		}
+
+		JoinProgress progress = JoinProgress.start(result);
+		incrementalJoin.setProgress(progress);
+
+		ResultSet outputResult = (ResultSet) result.getData();
+
+		try {
+			incrementalJoin.join(outputResult);
+		} catch (ResultSetException rse) {
+			if (!progress.isCancelled()) {
+				throw rse;
+			}
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("Join was cancelled : " + progress);
+			return result;
+		} finally {
+			progress.finish();
+		}
 
 		outputResult.beforeFirst();
 		result.setResultStatus(ResultStatus.COMPLETE);
+		result.setMessage((incrementalJoin.isIncremental() ? "Incremental"
+				: "Full")
+				+ " : New left rows : "
+				+ incrementalJoin.getNewLeftRows()
+				+ ", New right rows : " + incrementalJoin.getNewRightRows());
 		result.setData(outputResult);
 		return result;
 	}
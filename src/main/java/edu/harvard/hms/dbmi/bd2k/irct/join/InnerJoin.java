@@ -17,6 +17,7 @@ import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableExceptio
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSetImpl;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
 import edu.harvard.hms.dbmi.bd2k.irct.model.security.SecureSession;
 
 /**
@@ -88,28 +89,30 @@ public class InnerJoin implements JoinImplementation {
 		
 		int baseColumn = leftResultSet.getColumnSize();
 
+		// Find the right rows that match each left row
+		ColumnHashIndex.RowMatches rightMatches = ColumnHashIndex.matchRows(
+				leftResultSet, leftColumnIndex, rightResultSet,
+				rightColumnIndex);
+
+		int leftRowIndex = 0;
 		leftResultSet.beforeFirst();
 		while (leftResultSet.next()) {
-			Object leftRowMatchObj = ((ResultSetImpl) leftResultSet)
-					.getObject(leftColumnIndex);
-			rightResultSet.beforeFirst();
-			while (rightResultSet.next()) {
-				if (((ResultSetImpl) rightResultSet).getObject(rightColumnIndex).equals(leftRowMatchObj)) {
-					// Add a new row
-					computedResults.appendRow();
-
-					// Copy Left values over
-					for (int leftColumnIterator = 0; leftColumnIterator < leftResultSet.getColumnSize(); leftColumnIterator++) {
-						computedResults.updateObject(leftColumnIterator, ((ResultSetImpl) leftResultSet).getObject(leftColumnIterator));
-					}
+			for (Row rightRow : rightMatches.get(leftRowIndex,
+					leftResultSet.getCurrentRow())) {
+				// Add a new row
+				computedResults.appendRow();
 
-					// Copy Right values over
-					for(int rightColumnIterator = 0; rightColumnIterator < rightColumns.size(); rightColumnIterator++) {
-						computedResults.updateObject(baseColumn + rightColumnIterator, ((ResultSetImpl) rightResultSet).getObject(rightColumns.get(rightColumnIterator)));
-					}
+				// Copy Left values over
+				for (int leftColumnIterator = 0; leftColumnIterator < leftResultSet.getColumnSize(); leftColumnIterator++) {
+					computedResults.updateObject(leftColumnIterator, ((ResultSetImpl) leftResultSet).getObject(leftColumnIterator));
+				}
 
+				// Copy Right values over
+				for(int rightColumnIterator = 0; rightColumnIterator < rightColumns.size(); rightColumnIterator++) {
+					computedResults.updateObject(baseColumn + rightColumnIterator, rightRow.getColumn(rightColumns.get(rightColumnIterator)));
 				}
 			}
+			leftRowIndex++;
 		}
 		computedResults.beforeFirst();
 		result.setResultStatus(ResultStatus.COMPLETE);
@@ -0,0 +1,126 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.io.File;
+import java.util.Map;
+
+import edu.harvard.hms.dbmi.bd2k.irct.exception.JoinActionSetupException;
+import edu.harvard.hms.dbmi.bd2k.irct.join.SetOperationImpl.SetOperationImplType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.join.Join;
+import edu.harvard.hms.dbmi.bd2k.irct.model.join.JoinImplementation;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.Result;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultStatus;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Column;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.security.SecureSession;
+
+/**
+ * Performs an intersect between two result sets with the same columns. Every
+ * distinct row of the left result set that is also in the right result set is
+ * kept.
+ * 
+ * The setup parameters memoryBudget and tempDirectory control how many bytes
+ * of rows are compared in memory before the result sets are partitioned to
+ * disk, and where the partitions are written.
+ * 
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+public class IntersectJoin implements JoinImplementation {
+	private long memoryBudget = Runtime.getRuntime().maxMemory() / 4;
+	private File tempDirectory;
+
+	@Override
+	public void setup(Map<String, Object> parameters)
+			throws JoinActionSetupException {
+		this.memoryBudget = JoinParameters.getLong(parameters, "memoryBudget",
+				Runtime.getRuntime().maxMemory() / 4);
+		if (this.memoryBudget < 1) {
+			throw new JoinActionSetupException(
+					"memoryBudget must be at least 1");
+		}
+		this.tempDirectory = JoinParameters.getDirectory(parameters,
+				"tempDirectory");
+	}
+
+	@Override
+	public Result run(SecureSession session, Join join, Result result)
+			throws ResultSetException, PersistableException {
+
+		ResultSet leftResultSet = (ResultSet) join.getObjectValues().get(
+				"LeftResultSet");
+
+		if (leftResultSet == null) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("LeftResultSet is null");
+			return result;
+		}
+		ResultSet rightResultSet = (ResultSet) join.getObjectValues().get(
+				"RightResultSet");
+		if (rightResultSet == null) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("RightResultSet is null");
+			return result;
+		}
+
+		//Check that columns match
+		if(leftResultSet.getColumnSize() != rightResultSet.getColumnSize()) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("Result sets have unequal number of columns");
+			return result;
+		}
+		
+		for (int columnIterator = 0; columnIterator < rightResultSet.getColumnSize(); columnIterator++) {
+			Column rightColumn = rightResultSet.getColumn(columnIterator);
+			Column leftColumn = leftResultSet.getColumn(columnIterator);
+			if(!rightColumn.getName().equals(leftColumn.getName()) || (rightColumn.getDataType() != leftColumn.getDataType())) {
+				result.setResultStatus(ResultStatus.ERROR);
+				result.setMessage("Left Column " + leftColumn.getName() + "(" + leftColumn.getDataType() + ") is not equal to Right Column " + rightColumn.getName() + "(" + rightColumn.getDataType() + ")");
+				return result;
+			}
+		}
+		
+		
+		SetOperationImpl setOperation = new SetOperationImpl(leftResultSet,
+				rightResultSet, SetOperationImplType.INTERSECT, this.memoryBudget,
+				this.tempDirectory);
+
+		ResultSet computedResults = (ResultSet) result.getData();
+
+		JoinProgress progress = JoinProgress.start(result);
+		setOperation.setProgress(progress);
+		try {
+			setOperation.join(computedResults);
+		} catch (ResultSetException rse) {
+			if (!progress.isCancelled()) {
+				throw rse;
+			}
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("Join was cancelled : " + progress);
+			return result;
+		} finally {
+			progress.finish();
+		}
+
+		computedResults.beforeFirst();
+
+		result.setResultStatus(ResultStatus.COMPLETE);
+		result.setData(computedResults);
+		return result;
+	}
+
+	@Override
+	public Result getResults(Result result) {
+		return result;
+	}
+
+	@Override
+	public ResultDataType getJoinDataType() {
+		return ResultDataType.TABULAR;
+	}
+}
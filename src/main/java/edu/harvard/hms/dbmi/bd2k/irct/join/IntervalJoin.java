@@ -0,0 +1,214 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.util.Map;
+
+import edu.harvard.hms.dbmi.bd2k.irct.exception.JoinActionSetupException;
+import edu.harvard.hms.dbmi.bd2k.irct.join.IntervalJoinImpl.IntervalJoinImplType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.join.Join;
+import edu.harvard.hms.dbmi.bd2k.irct.model.join.JoinImplementation;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.Result;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultStatus;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.security.SecureSession;
+
+/**
+ * Performs an interval join between two result sets. Rows match if their
+ * LeftColumn and RightColumn values are equal and the RightRangeColumn value
+ * lies between the LeftRangeColumn value plus MinOffset and the
+ * LeftRangeColumn value plus MaxOffset. Both offsets default to 0 and are a
+ * number of days when the range columns hold dates. For example lab results
+ * within 30 days after a diagnosis of the same patient are found by joining
+ * on the patient with a MinOffset of 0 and a MaxOffset of 30.
+ *
+ * The type of join is set by the JoinType field and can be inner or leftOuter
+ * (default: inner).
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+public class IntervalJoin implements JoinImplementation {
+
+	@Override
+	public void setup(Map<String, Object> parameters)
+			throws JoinActionSetupException {
+	}
+
+	@Override
+	public Result run(SecureSession session, Join join, Result result)
+			throws ResultSetException, PersistableException {
+
+		ResultSet leftResultSet = (ResultSet) join.getObjectValues().get(
+				"LeftResultSet");
+
+		if (leftResultSet == null) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("LeftResultSet is null");
+			return result;
+		}
+
+		ResultSet rightResultSet = (ResultSet) join.getObjectValues().get(
+				"RightResultSet");
+		if (rightResultSet == null) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("RightResultSet is null");
+			return result;
+		}
+
+		IntervalJoinImplType joinType = getJoinType(join.getStringValues()
+				.get("JoinType"));
+		if (joinType == null) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("JoinType : Unknown join type "
+					+ join.getStringValues().get("JoinType"));
+			return result;
+		}
+
+		// Get Left Matching Column Ids
+		String[] leftStringColumnNames = join.getStringValues()
+				.get("LeftColumn").split(",");
+		int[] leftColumns = new int[leftStringColumnNames.length];
+
+		int counter = 0;
+		try {
+			for (String columnName : leftStringColumnNames) {
+				leftColumns[counter] = leftResultSet.findColumn(columnName);
+				counter++;
+			}
+		} catch (ResultSetException rse) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("LeftColumn : " + rse.getMessage());
+			return result;
+		}
+
+		// Get Right Matching Column Ids
+		String[] rightStringColumnNames = join.getStringValues()
+				.get("RightColumn").split(",");
+		int[] rightColumns = new int[rightStringColumnNames.length];
+
+		counter = 0;
+		try {
+			for (String columnName : rightStringColumnNames) {
+				rightColumns[counter] = rightResultSet.findColumn(columnName);
+				counter++;
+			}
+		} catch (ResultSetException rse) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("RightColumn : " + rse.getMessage());
+			return result;
+		}
+
+		if (leftColumns.length != rightColumns.length) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("LeftColumn and RightColumn have a different number of columns");
+			return result;
+		}
+
+		// Get the range columns
+		int leftRangeColumn;
+		try {
+			leftRangeColumn = leftResultSet.findColumn(join.getStringValues()
+					.get("LeftRangeColumn"));
+		} catch (ResultSetException rse) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("LeftRangeColumn : " + rse.getMessage());
+			return result;
+		}
+
+		int rightRangeColumn;
+		try {
+			rightRangeColumn = rightResultSet.findColumn(join
+					.getStringValues().get("RightRangeColumn"));
+		} catch (ResultSetException rse) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("RightRangeColumn : " + rse.getMessage());
+			return result;
+		}
+
+		// Get the window
+		double minOffset;
+		double maxOffset;
+		try {
+			minOffset = getOffset(join.getStringValues().get("MinOffset"));
+		} catch (NumberFormatException nfe) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("MinOffset : Not a number "
+					+ join.getStringValues().get("MinOffset"));
+			return result;
+		}
+		try {
+			maxOffset = getOffset(join.getStringValues().get("MaxOffset"));
+		} catch (NumberFormatException nfe) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("MaxOffset : Not a number "
+					+ join.getStringValues().get("MaxOffset"));
+			return result;
+		}
+		if (minOffset > maxOffset) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("MinOffset is greater than MaxOffset");
+			return result;
+		}
+
+		IntervalJoinImpl intervalJoin = new IntervalJoinImpl(leftResultSet,
+				rightResultSet, leftColumns, rightColumns, leftRangeColumn,
+				rightRangeColumn, minOffset, maxOffset, joinType);
+
+		ResultSet outputResult = (ResultSet) result.getData();
+		JoinProgress progress = JoinProgress.start(result);
+		intervalJoin.setProgress(progress);
+		try {
+			intervalJoin.join(outputResult);
+		} catch (ResultSetException rse) {
+			if (!progress.isCancelled()) {
+				throw rse;
+			}
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("Join was cancelled : " + progress);
+			return result;
+		} finally {
+			progress.finish();
+		}
+
+		outputResult.beforeFirst();
+		result.setResultStatus(ResultStatus.COMPLETE);
+		result.setData(outputResult);
+		return result;
+	}
+
+	private double getOffset(String offset) {
+		if ((offset == null) || offset.trim().isEmpty()) {
+			return 0;
+		}
+		return Double.parseDouble(offset.trim());
+	}
+
+	private IntervalJoinImplType getJoinType(String joinType) {
+		if ((joinType == null) || joinType.trim().isEmpty()) {
+			return IntervalJoinImplType.INNERJOIN;
+		}
+		switch (joinType.trim().toLowerCase()) {
+		case "inner":
+			return IntervalJoinImplType.INNERJOIN;
+		case "leftouter":
+			return IntervalJoinImplType.LEFTOUTER;
+		default:
+			return null;
+		}
+	}
+
+	@Override
+	public Result getResults(Result result) {
+		return result;
+	}
+
+	@Override
+	public ResultDataType getJoinDataType() {
+		return ResultDataType.TABULAR;
+	}
+}
@@ -0,0 +1,344 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Column;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
+
+/**
+ * An interval join implementation. A left row matches a right row if their
+ * join columns are equal and the range column of the right row lies within a
+ * window around the range column of the left row:
+ *
+ * left range + minimum offset &lt;= right range &lt;= left range + maximum
+ * offset
+ *
+ * The rows of the right result set are grouped by their join columns and each
+ * group is sorted on its range column. Every left row then finds the start of
+ * its window in its group with a binary search and reads the group up to the
+ * end of the window, so the join takes O((n + m) log m) time plus the time to
+ * write the matches instead of comparing every pair of rows.
+ *
+ * Range columns may hold numbers or dates. Dates are compared by their time
+ * and the offsets are then read as a number of days. Rows where a join column
+ * or the range column is null, or where the range column is not a number or
+ * a date, never match.
+ *
+ * The output has the columns of the left result set followed by the columns
+ * of the right result set that do not share a name with a left column. Rows
+ * are written in the order of the left result set, and the matches of a left
+ * row in the order of their range column.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+public class IntervalJoinImpl {
+	enum IntervalJoinImplType {
+		INNERJOIN, LEFTOUTER
+	}
+
+	private static final double MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+	// Number of rows read between two progress checkpoints
+	private static final int CHECKPOINT_ROWS = 4096;
+
+	private ResultSet leftResultSet;
+	private ResultSet rightResultSet;
+	private int[] leftColumns;
+	private int[] rightColumns;
+	private int leftRangeColumn;
+	private int rightRangeColumn;
+	private double minOffset;
+	private double maxOffset;
+	private IntervalJoinImplType joinType;
+
+	private int leftColumnCount;
+	private boolean[] ignoreRightColumns;
+
+	private JoinProgress progress = new JoinProgress();
+	private long readRows;
+
+	/**
+	 * Creates an interval join between two result sets
+	 *
+	 * @param leftResultSet
+	 *            Left result set
+	 * @param rightResultSet
+	 *            Right result set
+	 * @param leftColumns
+	 *            Join columns of the left result set
+	 * @param rightColumns
+	 *            Join columns of the right result set
+	 * @param leftRangeColumn
+	 *            Range column of the left result set
+	 * @param rightRangeColumn
+	 *            Range column of the right result set
+	 * @param minOffset
+	 *            Smallest difference between the right and left range columns
+	 *            of a match
+	 * @param maxOffset
+	 *            Largest difference between the right and left range columns
+	 *            of a match
+	 * @param joinType
+	 *            Type of join
+	 */
+	public IntervalJoinImpl(ResultSet leftResultSet, ResultSet rightResultSet,
+			int[] leftColumns, int[] rightColumns, int leftRangeColumn,
+			int rightRangeColumn, double minOffset, double maxOffset,
+			IntervalJoinImplType joinType) {
+		this.leftResultSet = leftResultSet;
+		this.rightResultSet = rightResultSet;
+		this.leftColumns = leftColumns;
+		this.rightColumns = rightColumns;
+		this.leftRangeColumn = leftRangeColumn;
+		this.rightRangeColumn = rightRangeColumn;
+		this.minOffset = minOffset;
+		this.maxOffset = maxOffset;
+		this.joinType = joinType;
+	}
+
+	/**
+	 * Sets the progress the join reports to and checks for cancellation
+	 *
+	 * @param progress
+	 *            Join progress
+	 */
+	public void setProgress(JoinProgress progress) {
+		this.progress = progress;
+	}
+
+	public ResultSet join(ResultSet output) throws ResultSetException,
+			PersistableException {
+		// Set up columns for output
+		List<String> columnNames = new ArrayList<String>();
+		leftColumnCount = leftResultSet.getColumnSize();
+		for (int columnI = 0; columnI < leftColumnCount; columnI++) {
+			Column column = leftResultSet.getColumn(columnI);
+			columnNames.add(column.getName());
+			output.appendColumn(column);
+		}
+		ignoreRightColumns = new boolean[rightResultSet.getColumnSize()];
+		for (int columnI = 0; columnI < ignoreRightColumns.length; columnI++) {
+			Column column = rightResultSet.getColumn(columnI);
+			if (columnNames.contains(column.getName())) {
+				ignoreRightColumns[columnI] = true;
+			} else {
+				output.appendColumn(column);
+			}
+		}
+
+		Map<Object, RangeGroup> groups = groupRightRows();
+		boolean[] leftNumeric = JoinKeys.getNumericColumns(leftResultSet,
+				leftColumns);
+
+		if (leftResultSet.getSize() == 0) {
+			return output;
+		}
+		leftResultSet.beforeFirst();
+		while (leftResultSet.next()) {
+			Row leftRow = leftResultSet.getCurrentRow();
+			boolean matched = false;
+			progress.addRowsProbed(1);
+			readRow();
+
+			Object leftRange = leftRow.getColumn(leftRangeColumn);
+			double leftValue = rangeValue(leftRange);
+			RangeGroup group = null;
+			if (!Double.isNaN(leftValue)
+					&& JoinKeys.hasKey(leftRow, leftColumns)) {
+				group = groups.get(JoinKeys.hashKey(leftRow, leftColumns,
+						leftNumeric));
+			}
+
+			if (group != null) {
+				double scale = (leftRange instanceof Date) ? MILLIS_PER_DAY : 1;
+				double low = leftValue + (minOffset * scale);
+				double high = leftValue + (maxOffset * scale);
+				for (int rowI = group.find(low); (rowI < group.size())
+						&& (group.getValue(rowI) <= high); rowI++) {
+					writeRow(output, leftRow, group.getRow(rowI));
+					matched = true;
+				}
+			}
+
+			if (!matched && (joinType == IntervalJoinImplType.LEFTOUTER)) {
+				writeRow(output, leftRow, null);
+			}
+		}
+
+		return output;
+	}
+
+	/**
+	 * Reads the right result set into groups of rows that share their join
+	 * columns, each sorted on its range column
+	 *
+	 * @return Groups by the hash key of their join columns
+	 * @throws ResultSetException
+	 *             An error occurred reading the right result set
+	 */
+	private Map<Object, RangeGroup> groupRightRows() throws ResultSetException {
+		Map<Object, RangeGroup> groups = new HashMap<Object, RangeGroup>();
+		if (rightResultSet.getSize() == 0) {
+			return groups;
+		}
+
+		boolean[] rightNumeric = JoinKeys.getNumericColumns(rightResultSet,
+				rightColumns);
+		rightResultSet.beforeFirst();
+		while (rightResultSet.next()) {
+			Row rightRow = rightResultSet.getCurrentRow();
+			progress.addRowsBuilt(1);
+			readRow();
+			double value = rangeValue(rightRow.getColumn(rightRangeColumn));
+			if (Double.isNaN(value) || !JoinKeys.hasKey(rightRow, rightColumns)) {
+				continue;
+			}
+			Object key = JoinKeys.hashKey(rightRow, rightColumns,
+					rightNumeric);
+			RangeGroup group = groups.get(key);
+			if (group == null) {
+				group = new RangeGroup();
+				groups.put(key, group);
+			}
+			group.add(value, rightRow);
+		}
+
+		progress.checkpoint();
+		for (RangeGroup group : groups.values()) {
+			group.sort();
+		}
+		return groups;
+	}
+
+	/**
+	 * Returns the value of a range column as a number, or NaN if it can not
+	 * be compared
+	 */
+	private static double rangeValue(Object value) {
+		if (value instanceof Number) {
+			return ((Number) value).doubleValue();
+		}
+		if (value instanceof Date) {
+			return ((Date) value).getTime();
+		}
+		if (value != null) {
+			try {
+				return Double.parseDouble(value.toString().trim());
+			} catch (NumberFormatException nfe) {
+				// Not a number, so the row never matches
+			}
+		}
+		return Double.NaN;
+	}
+
+	private void readRow() throws ResultSetException {
+		readRows++;
+		if ((readRows % CHECKPOINT_ROWS) == 0) {
+			progress.checkpoint();
+		}
+	}
+
+	private void writeRow(ResultSet output, Row leftRow, Row rightRow)
+			throws ResultSetException, PersistableException {
+		progress.addRowsEmitted(1);
+		output.appendRow();
+		for (int columnI = 0; columnI < leftColumnCount; columnI++) {
+			output.updateObject(columnI, leftRow.getColumn(columnI));
+		}
+		if (rightRow != null) {
+			int outputColumn = leftColumnCount;
+			for (int columnI = 0; columnI < ignoreRightColumns.length; columnI++) {
+				if (!ignoreRightColumns[columnI]) {
+					output.updateObject(outputColumn,
+							rightRow.getColumn(columnI));
+					outputColumn++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The right rows that share their join columns, sorted on their range
+	 * column. Rows with the same range value stay in the order they were
+	 * read.
+	 */
+	private static class RangeGroup {
+		private List<RangeEntry> entries = new ArrayList<RangeEntry>();
+		private double[] values;
+		private Row[] rows;
+
+		void add(double value, Row row) {
+			entries.add(new RangeEntry(value, row));
+		}
+
+		void sort() {
+			RangeEntry[] sorted = entries.toArray(new RangeEntry[entries
+					.size()]);
+			Arrays.sort(sorted, new Comparator<RangeEntry>() {
+				@Override
+				public int compare(RangeEntry entry1, RangeEntry entry2) {
+					return Double.compare(entry1.value, entry2.value);
+				}
+			});
+			values = new double[sorted.length];
+			rows = new Row[sorted.length];
+			for (int entryI = 0; entryI < sorted.length; entryI++) {
+				values[entryI] = sorted[entryI].value;
+				rows[entryI] = sorted[entryI].row;
+			}
+			entries = null;
+		}
+
+		/**
+		 * Returns the index of the first row whose range value is at least
+		 * the given value
+		 */
+		int find(double value) {
+			int low = 0;
+			int high = values.length;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (values[middle] < value) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+
+		int size() {
+			return values.length;
+		}
+
+		double getValue(int index) {
+			return values[index];
+		}
+
+		Row getRow(int index) {
+			return rows[index];
+		}
+	}
+
+	private static class RangeEntry {
+		private final double value;
+		private final Row row;
+
+		RangeEntry(double value, Row row) {
+			this.value = value;
+			this.row = row;
+		}
+	}
+}
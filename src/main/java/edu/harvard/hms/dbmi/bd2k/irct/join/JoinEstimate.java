@@ -0,0 +1,382 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import edu.harvard.hms.dbmi.bd2k.irct.join.HashJoinImpl.HashJoinImplType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
+
+/**
+ * An estimate of how many rows a join of two result sets will output, made
+ * before the join is run. Each result set is read once and the keys of its
+ * join columns are added to a HyperLogLog sketch, which estimates the number
+ * of distinct keys in it. The union of the two sketches estimates the number
+ * of distinct keys in both result sets together, so the number of keys the
+ * result sets share is the sum of their distinct keys less the union.
+ *
+ * Keys that hold many more rows than the average key are found with a
+ * FrequentKeys summary of each result set, and are counted on their own. The
+ * right rows of a key that is frequent on the left are counted exactly while
+ * the right result set is read. A key that is only frequent on the right is
+ * matched to its count in the left summary, or to the average left key if the
+ * summary dropped it. Each of these keys adds the product of its rows on both
+ * sides to the inner join.
+ *
+ * Every other shared key is assumed to match the average number of rows of the
+ * other keys on each side. The estimate is meant to tell a join of a million
+ * rows from a join of a billion rows and not to size the output exactly. The
+ * sketches use a few kilobytes whatever the size of the result sets.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+public class JoinEstimate {
+	// How many times more rows than the average key a key needs to be counted
+	// on its own
+	private static final double HEAVY_KEY_FACTOR = 4.0;
+
+	private long leftRows;
+	private long rightRows;
+	private long leftKeyedRows;
+	private long rightKeyedRows;
+	private double leftDistinctKeys;
+	private double rightDistinctKeys;
+	private double sharedKeys;
+
+	private long heavyKeys;
+	private double heavyInnerRows;
+	private double leftHeavyRows;
+	private double rightHeavyRows;
+	private double leftHeavyKeys;
+	private double rightHeavyKeys;
+	private double heavySharedKeys;
+	private double leftHeavyUnmatchedRows;
+	private double rightHeavyUnmatchedRows;
+
+	private JoinEstimate() {
+	}
+
+	/**
+	 * Estimates the output of joining two result sets. The result sets are
+	 * each read once and are left positioned before their first row.
+	 *
+	 * @param leftResultSet
+	 *            Left result set
+	 * @param rightResultSet
+	 *            Right result set
+	 * @param leftColumns
+	 *            Join columns of the left result set
+	 * @param rightColumns
+	 *            Join columns of the right result set
+	 * @return Join estimate
+	 * @throws ResultSetException
+	 *             An error occurred reading a result set
+	 */
+	public static JoinEstimate estimate(ResultSet leftResultSet,
+			ResultSet rightResultSet, int[] leftColumns, int[] rightColumns)
+			throws ResultSetException {
+		JoinEstimate estimate = new JoinEstimate();
+		HashFunction hashFunction = Hashing.murmur3_128();
+
+		HyperLogLog leftSketch = new HyperLogLog();
+		FrequentKeys leftFrequentKeys = new FrequentKeys();
+		estimate.leftRows = leftResultSet.getSize();
+		estimate.leftKeyedRows = addKeys(leftResultSet, leftColumns,
+				hashFunction, leftSketch, leftFrequentKeys, null);
+		// A result set can not have more distinct keys than rows with a key
+		estimate.leftDistinctKeys = Math.min(leftSketch.estimate(),
+				estimate.leftKeyedRows);
+
+		// The right rows of the keys that are frequent on the left are
+		// counted exactly
+		Map<Long, long[]> rightCounts = new HashMap<Long, long[]>();
+		for (Long hash : leftFrequentKeys.getHashes(HEAVY_KEY_FACTOR
+				* rowsPerKey(estimate.leftKeyedRows, estimate.leftDistinctKeys))) {
+			rightCounts.put(hash, new long[1]);
+		}
+
+		HyperLogLog rightSketch = new HyperLogLog();
+		FrequentKeys rightFrequentKeys = new FrequentKeys();
+		estimate.rightRows = rightResultSet.getSize();
+		estimate.rightKeyedRows = addKeys(rightResultSet, rightColumns,
+				hashFunction, rightSketch, rightFrequentKeys, rightCounts);
+		estimate.rightDistinctKeys = Math.min(rightSketch.estimate(),
+				estimate.rightKeyedRows);
+		double unionKeys = leftSketch.union(rightSketch).estimate();
+		double sharedKeys = estimate.leftDistinctKeys
+				+ estimate.rightDistinctKeys - unionKeys;
+		estimate.sharedKeys = Math.max(0, Math.min(sharedKeys,
+				Math.min(estimate.leftDistinctKeys,
+						estimate.rightDistinctKeys)));
+
+		estimate.addHeavyKeys(leftFrequentKeys, rightFrequentKeys,
+				rightCounts);
+		return estimate;
+	}
+
+	/**
+	 * Counts the rows of the keys that are frequent on either side on their
+	 * own
+	 *
+	 * @param leftFrequentKeys
+	 *            Frequent keys of the left result set
+	 * @param rightFrequentKeys
+	 *            Frequent keys of the right result set
+	 * @param rightCounts
+	 *            Right rows of each key that is frequent on the left
+	 */
+	private void addHeavyKeys(FrequentKeys leftFrequentKeys,
+			FrequentKeys rightFrequentKeys, Map<Long, long[]> rightCounts) {
+		Set<Long> hashes = new HashSet<Long>(rightCounts.keySet());
+		hashes.addAll(rightFrequentKeys.getHashes(HEAVY_KEY_FACTOR
+				* rowsPerKey(rightKeyedRows, rightDistinctKeys)));
+
+		for (Long hash : hashes) {
+			long[] rightCount = rightCounts.get(hash);
+			double right = (rightCount != null) ? rightCount[0]
+					: rightFrequentKeys.count(hash);
+			double left;
+			if (leftFrequentKeys.contains(hash)) {
+				left = leftFrequentKeys.count(hash);
+			} else {
+				// Only a key with no more rows than the most a count can be
+				// off may have been dropped from the summary
+				double sharedFraction = (rightDistinctKeys < 1) ? 0
+						: sharedKeys / rightDistinctKeys;
+				left = Math.min(leftFrequentKeys.getMaxError(), sharedFraction
+						* rowsPerKey(leftKeyedRows, leftDistinctKeys));
+			}
+
+			heavyKeys++;
+			heavyInnerRows += left * right;
+			leftHeavyRows += left;
+			rightHeavyRows += right;
+			leftHeavyKeys += Math.min(1, left);
+			rightHeavyKeys += Math.min(1, right);
+			heavySharedKeys += Math.min(1, left) * Math.min(1, right);
+			leftHeavyUnmatchedRows += left * (1 - Math.min(1, right));
+			rightHeavyUnmatchedRows += right * (1 - Math.min(1, left));
+		}
+	}
+
+	/**
+	 * Adds the keys of the rows of a result set to a sketch and a summary of
+	 * its frequent keys, and counts the rows of some keys exactly
+	 *
+	 * @param counts
+	 *            Counters of the keys to count exactly, or null
+	 * @return Number of rows with a key
+	 */
+	private static long addKeys(ResultSet resultSet, int[] columns,
+			HashFunction hashFunction, HyperLogLog sketch,
+			FrequentKeys frequentKeys, Map<Long, long[]> counts)
+			throws ResultSetException {
+		PrimitiveDataType[] dataTypes = new PrimitiveDataType[columns.length];
+		for (int columnI = 0; columnI < columns.length; columnI++) {
+			dataTypes[columnI] = resultSet.getColumn(columns[columnI])
+					.getDataType();
+		}
+		KeyEncoder encoder = new KeyEncoder(columns, dataTypes);
+
+		long keyedRows = 0;
+		if (resultSet.getSize() == 0) {
+			return keyedRows;
+		}
+		resultSet.beforeFirst();
+		while (resultSet.next()) {
+			Row row = resultSet.getCurrentRow();
+			if (!JoinKeys.hasKey(row, columns)) {
+				continue;
+			}
+			long hash = hashFunction.hashBytes(encoder.encode(row)).asLong();
+			sketch.add(hash);
+			frequentKeys.add(hash);
+			if ((counts != null) && !counts.isEmpty()) {
+				long[] count = counts.get(hash);
+				if (count != null) {
+					count[0]++;
+				}
+			}
+			keyedRows++;
+		}
+		resultSet.beforeFirst();
+		return keyedRows;
+	}
+
+	/**
+	 * Returns the number of rows in the left result set
+	 *
+	 * @return Left rows
+	 */
+	public long getLeftRows() {
+		return leftRows;
+	}
+
+	/**
+	 * Returns the number of rows in the right result set
+	 *
+	 * @return Right rows
+	 */
+	public long getRightRows() {
+		return rightRows;
+	}
+
+	/**
+	 * Returns the estimated number of distinct keys in the left result set
+	 *
+	 * @return Left distinct keys
+	 */
+	public long getLeftDistinctKeys() {
+		return Math.round(leftDistinctKeys);
+	}
+
+	/**
+	 * Returns the estimated number of distinct keys in the right result set
+	 *
+	 * @return Right distinct keys
+	 */
+	public long getRightDistinctKeys() {
+		return Math.round(rightDistinctKeys);
+	}
+
+	/**
+	 * Returns the estimated number of distinct keys that are in both result
+	 * sets
+	 *
+	 * @return Shared keys
+	 */
+	public long getSharedKeys() {
+		return Math.round(sharedKeys);
+	}
+
+	/**
+	 * Returns the number of keys that hold many more rows than the average
+	 * key on either side, and were counted on their own
+	 *
+	 * @return Heavy keys
+	 */
+	public long getHeavyKeys() {
+		return heavyKeys;
+	}
+
+	/**
+	 * Returns the estimated number of rows an inner join outputs
+	 *
+	 * @return Inner join rows
+	 */
+	public long getInnerRows() {
+		return Math.round(innerRows());
+	}
+
+	/**
+	 * Returns the estimated number of rows a left outer join outputs
+	 *
+	 * @return Left outer join rows
+	 */
+	public long getLeftOuterRows() {
+		return Math.round(innerRows() + leftUnmatchedRows());
+	}
+
+	/**
+	 * Returns the estimated number of rows a right outer join outputs
+	 *
+	 * @return Right outer join rows
+	 */
+	public long getRightOuterRows() {
+		return Math.round(innerRows() + rightUnmatchedRows());
+	}
+
+	/**
+	 * Returns the estimated number of rows a full outer join outputs
+	 *
+	 * @return Full outer join rows
+	 */
+	public long getFullOuterRows() {
+		return Math.round(innerRows() + leftUnmatchedRows()
+				+ rightUnmatchedRows());
+	}
+
+	/**
+	 * Returns the estimated number of rows a join of the given type outputs
+	 *
+	 * @param joinType
+	 *            Join type
+	 * @return Output rows
+	 */
+	long getOutputRows(HashJoinImplType joinType) {
+		switch (joinType) {
+		case LEFTOUTER:
+			return getLeftOuterRows();
+		case RIGHTOUTER:
+			return getRightOuterRows();
+		case FULLOUTER:
+			return getFullOuterRows();
+		default:
+			return getInnerRows();
+		}
+	}
+
+	private double innerRows() {
+		return heavyInnerRows + otherSharedKeys() * leftOtherRowsPerKey()
+				* rightOtherRowsPerKey();
+	}
+
+	private double leftUnmatchedRows() {
+		return (leftRows - leftKeyedRows) + leftHeavyUnmatchedRows
+				+ Math.max(0, leftDistinctKeys - leftHeavyKeys
+						- otherSharedKeys()) * leftOtherRowsPerKey();
+	}
+
+	private double rightUnmatchedRows() {
+		return (rightRows - rightKeyedRows) + rightHeavyUnmatchedRows
+				+ Math.max(0, rightDistinctKeys - rightHeavyKeys
+						- otherSharedKeys()) * rightOtherRowsPerKey();
+	}
+
+	/**
+	 * Returns the estimated number of shared keys that were not counted on
+	 * their own
+	 */
+	private double otherSharedKeys() {
+		return Math.max(0, sharedKeys - heavySharedKeys);
+	}
+
+	private double leftOtherRowsPerKey() {
+		return rowsPerKey(Math.max(0, leftKeyedRows - leftHeavyRows),
+				leftDistinctKeys - leftHeavyKeys);
+	}
+
+	private double rightOtherRowsPerKey() {
+		return rowsPerKey(Math.max(0, rightKeyedRows - rightHeavyRows),
+				rightDistinctKeys - rightHeavyKeys);
+	}
+
+	private static double rowsPerKey(double keyedRows, double distinctKeys) {
+		if (distinctKeys < 1) {
+			return 0;
+		}
+		return keyedRows / distinctKeys;
+	}
+
+	@Override
+	public String toString() {
+		return "Left rows : " + leftRows + ", Right rows : " + rightRows
+				+ ", Left distinct keys : " + getLeftDistinctKeys()
+				+ ", Right distinct keys : " + getRightDistinctKeys()
+				+ ", Shared keys : " + getSharedKeys()
+				+ ", Heavy keys : " + heavyKeys
+				+ ", Estimated inner rows : " + getInnerRows()
+				+ ", Estimated full outer rows : " + getFullOuterRows();
+	}
+}
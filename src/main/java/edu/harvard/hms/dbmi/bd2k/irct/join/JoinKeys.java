@@ -0,0 +1,276 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
+
+/**
+ * Utility methods for matching and ordering rows by their join columns. Every
+ * join uses them, so two values match in one join exactly when they match in
+ * any other.
+ *
+ * Before values are compared they are normalized. Numbers become a long if
+ * they are whole and a double otherwise, so an integer, a long and a double
+ * with the same value match. Text in a column of a numeric data type is read
+ * as a number if it is one. Booleans and dates are kept, and everything else
+ * becomes its string value. Values of different normalized types never
+ * match, and sort numbers first, then booleans, dates and text. Nulls sort
+ * before all other values.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+final class JoinKeys {
+	private static final int NUMBER_RANK = 0;
+	private static final int BOOLEAN_RANK = 1;
+	private static final int DATE_RANK = 2;
+	private static final int STRING_RANK = 3;
+
+	private JoinKeys() {
+	}
+
+	/**
+	 * Returns which of the join columns of a result set have a numeric data
+	 * type
+	 *
+	 * @param resultSet
+	 *            Result set
+	 * @param columns
+	 *            Join columns
+	 * @return True for each numeric join column
+	 * @throws ResultSetException
+	 *             An error occurred reading the columns of the result set
+	 */
+	static boolean[] getNumericColumns(ResultSet resultSet, int[] columns)
+			throws ResultSetException {
+		boolean[] numericColumns = new boolean[columns.length];
+		for (int columnI = 0; columnI < columns.length; columnI++) {
+			numericColumns[columnI] = isNumeric(resultSet.getColumn(
+					columns[columnI]).getDataType());
+		}
+		return numericColumns;
+	}
+
+	/**
+	 * Returns true if text in a column of the data type is read as a number
+	 *
+	 * @param dataType
+	 *            Data type, which may be null
+	 * @return True if the data type is numeric
+	 */
+	static boolean isNumeric(PrimitiveDataType dataType) {
+		if (dataType == null) {
+			return false;
+		}
+		switch (dataType.getName()) {
+		case "byte":
+		case "double":
+		case "float":
+		case "integer":
+		case "long":
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Turns a value into a Long, Double, Boolean, Date or String so values
+	 * that match share the same form
+	 *
+	 * @param value
+	 *            Value, which may be null
+	 * @param numericColumn
+	 *            True if the value is from a column with a numeric data type
+	 * @return Normalized value, or null if the value is null
+	 */
+	static Object normalize(Object value, boolean numericColumn) {
+		if (value == null) {
+			return null;
+		}
+		if (value instanceof Number) {
+			return normalizeNumber((Number) value);
+		}
+		if (value instanceof Boolean) {
+			return value;
+		}
+		if (value instanceof Date) {
+			// Subclasses such as timestamps do not equal a date of the same
+			// time
+			if (value.getClass() == Date.class) {
+				return value;
+			}
+			return new Date(((Date) value).getTime());
+		}
+		String text = value.toString();
+		if (numericColumn) {
+			try {
+				return Long.valueOf(text.trim());
+			} catch (NumberFormatException nfe) {
+				try {
+					return normalizeNumber(Double.valueOf(text.trim()));
+				} catch (NumberFormatException nfe2) {
+					// Not a number, so it is matched by its text
+				}
+			}
+		}
+		return text;
+	}
+
+	private static Object normalizeNumber(Number value) {
+		if (isWholeNumber(value)) {
+			return value.longValue();
+		}
+		double doubleValue = value.doubleValue();
+		if ((doubleValue == Math.rint(doubleValue))
+				&& (Math.abs(doubleValue) < Long.MAX_VALUE)) {
+			return (long) doubleValue;
+		}
+		return doubleValue;
+	}
+
+	/**
+	 * Compares the join columns of two rows
+	 *
+	 * @param leftRow
+	 *            First row
+	 * @param leftColumns
+	 *            Join columns of the first row
+	 * @param leftNumeric
+	 *            Numeric join columns of the first row
+	 * @param rightRow
+	 *            Second row
+	 * @param rightColumns
+	 *            Join columns of the second row
+	 * @param rightNumeric
+	 *            Numeric join columns of the second row
+	 * @return A negative number, zero, or a positive number if the first row
+	 *         sorts before, with, or after the second row
+	 */
+	static int compare(Row leftRow, int[] leftColumns, boolean[] leftNumeric,
+			Row rightRow, int[] rightColumns, boolean[] rightNumeric) {
+		for (int columnI = 0; columnI < leftColumns.length; columnI++) {
+			int compare = compareValues(
+					normalize(leftRow.getColumn(leftColumns[columnI]),
+							leftNumeric[columnI]),
+					normalize(rightRow.getColumn(rightColumns[columnI]),
+							rightNumeric[columnI]));
+			if (compare != 0) {
+				return compare;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Compares two normalized values
+	 *
+	 * @param left
+	 *            First value
+	 * @param right
+	 *            Second value
+	 * @return A negative number, zero, or a positive number if the first value
+	 *         sorts before, with, or after the second value
+	 */
+	static int compareValues(Object left, Object right) {
+		if ((left == null) || (right == null)) {
+			if (left == right) {
+				return 0;
+			}
+			return left == null ? -1 : 1;
+		}
+		int leftRank = getRank(left);
+		int rightRank = getRank(right);
+		if (leftRank != rightRank) {
+			return Integer.compare(leftRank, rightRank);
+		}
+		switch (leftRank) {
+		case NUMBER_RANK:
+			if ((left instanceof Long) && (right instanceof Long)) {
+				return Long.compare((Long) left, (Long) right);
+			}
+			int compare = Double.compare(((Number) left).doubleValue(),
+					((Number) right).doubleValue());
+			if ((compare == 0) && (left.getClass() != right.getClass())) {
+				// A long that rounds to the same double still does not match
+				return (left instanceof Long) ? -1 : 1;
+			}
+			return compare;
+		case BOOLEAN_RANK:
+			return ((Boolean) left).compareTo((Boolean) right);
+		case DATE_RANK:
+			return Long.compare(((Date) left).getTime(),
+					((Date) right).getTime());
+		default:
+			return ((String) left).compareTo((String) right);
+		}
+	}
+
+	private static int getRank(Object value) {
+		if (value instanceof Number) {
+			return NUMBER_RANK;
+		}
+		if (value instanceof Boolean) {
+			return BOOLEAN_RANK;
+		}
+		if (value instanceof Date) {
+			return DATE_RANK;
+		}
+		return STRING_RANK;
+	}
+
+	/**
+	 * Returns true if none of the join columns of the row are null. A row
+	 * without a key never matches another row.
+	 *
+	 * @param row
+	 *            Row
+	 * @param columns
+	 *            Join columns
+	 * @return True if the row has a key
+	 */
+	static boolean hasKey(Row row, int[] columns) {
+		for (int column : columns) {
+			if (row.getColumn(column) == null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns a key for the join columns of a row that can be used in a hash
+	 * map. Rows whose join columns match have equal keys.
+	 *
+	 * @param row
+	 *            Row
+	 * @param columns
+	 *            Join columns
+	 * @param numericColumns
+	 *            Numeric join columns
+	 * @return Key
+	 */
+	static Object hashKey(Row row, int[] columns, boolean[] numericColumns) {
+		if (columns.length == 1) {
+			return normalize(row.getColumn(columns[0]), numericColumns[0]);
+		}
+		Object[] values = new Object[columns.length];
+		for (int columnI = 0; columnI < columns.length; columnI++) {
+			values[columnI] = normalize(row.getColumn(columns[columnI]),
+					numericColumns[columnI]);
+		}
+		return Arrays.asList(values);
+	}
+
+	private static boolean isWholeNumber(Object value) {
+		return (value instanceof Integer) || (value instanceof Long)
+				|| (value instanceof Short) || (value instanceof Byte);
+	}
+}
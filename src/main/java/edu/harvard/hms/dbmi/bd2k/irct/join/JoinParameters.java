@@ -0,0 +1,151 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.io.File;
+import java.util.Map;
+
+import edu.harvard.hms.dbmi.bd2k.irct.exception.JoinActionSetupException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.join.Join;
+
+/**
+ * Utility methods for reading the optional parameters that are passed to a
+ * join implementation during setup. Parameters may be supplied either as
+ * strings or as their native types, and a missing parameter map is treated
+ * the same as an empty one.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+final class JoinParameters {
+
+	private JoinParameters() {
+	}
+
+	/**
+	 * Returns the string value of a parameter or the default value if it has
+	 * not been set
+	 *
+	 * @param parameters
+	 *            Setup parameters
+	 * @param name
+	 *            Parameter name
+	 * @param defaultValue
+	 *            Value to return if the parameter is not set
+	 * @return Parameter value
+	 */
+	static String getString(Map<String, Object> parameters, String name,
+			String defaultValue) {
+		if ((parameters == null) || (parameters.get(name) == null)) {
+			return defaultValue;
+		}
+		String value = parameters.get(name).toString().trim();
+		if (value.isEmpty()) {
+			return defaultValue;
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the long value of a parameter or the default value if it has
+	 * not been set
+	 *
+	 * @param parameters
+	 *            Setup parameters
+	 * @param name
+	 *            Parameter name
+	 * @param defaultValue
+	 *            Value to return if the parameter is not set
+	 * @return Parameter value
+	 * @throws JoinActionSetupException
+	 *             The parameter is not a number
+	 */
+	static long getLong(Map<String, Object> parameters, String name,
+			long defaultValue) throws JoinActionSetupException {
+		if ((parameters != null) && (parameters.get(name) instanceof Number)) {
+			return ((Number) parameters.get(name)).longValue();
+		}
+		String value = getString(parameters, name, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException nfe) {
+			throw new JoinActionSetupException(name + " is not a number : "
+					+ value);
+		}
+	}
+
+	/**
+	 * Returns the boolean value of a parameter or the default value if it has
+	 * not been set
+	 *
+	 * @param parameters
+	 *            Setup parameters
+	 * @param name
+	 *            Parameter name
+	 * @param defaultValue
+	 *            Value to return if the parameter is not set
+	 * @return Parameter value
+	 * @throws JoinActionSetupException
+	 *             The parameter is not true or false
+	 */
+	static boolean getBoolean(Map<String, Object> parameters, String name,
+			boolean defaultValue) throws JoinActionSetupException {
+		String value = getString(parameters, name, null);
+		if (value == null) {
+			return defaultValue;
+		} else if ("true".equalsIgnoreCase(value)) {
+			return true;
+		} else if ("false".equalsIgnoreCase(value)) {
+			return false;
+		}
+		throw new JoinActionSetupException(name + " is not true or false : "
+				+ value);
+	}
+
+	/**
+	 * Returns the directory a join should write temporary files to. If no
+	 * directory is set the system temporary directory is used.
+	 *
+	 * @param parameters
+	 *            Setup parameters
+	 * @param name
+	 *            Parameter name
+	 * @return Temporary directory
+	 * @throws JoinActionSetupException
+	 *             The directory does not exist or is not writable
+	 */
+	static File getDirectory(Map<String, Object> parameters, String name)
+			throws JoinActionSetupException {
+		File directory = new File(getString(parameters, name,
+				System.getProperty("java.io.tmpdir")));
+		if (!directory.isDirectory() || !directory.canWrite()) {
+			throw new JoinActionSetupException(name + " is not a writable directory : "
+					+ directory.getAbsolutePath());
+		}
+		return directory;
+	}
+
+	/**
+	 * Returns the id of the result a result set field of a join was set to.
+	 * The field holds the id of the result as a string value, and the result
+	 * set of that result as an object value. The result set itself does not
+	 * carry the id, so this is the only place the id can be read from.
+	 *
+	 * @param join
+	 *            Join
+	 * @param field
+	 *            Result set field, such as LeftResultSet
+	 * @return Result id, or null if the field has no id
+	 */
+	static String getResultId(Join join, String field) {
+		String resultId = join.getStringValues().get(field);
+		if ((resultId == null) || resultId.trim().isEmpty()) {
+			return null;
+		}
+		return resultId.trim();
+	}
+}
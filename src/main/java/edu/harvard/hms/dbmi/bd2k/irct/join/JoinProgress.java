@@ -0,0 +1,203 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.Result;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+
+/**
+ * The progress of a running join. The join counts the rows it has put in the
+ * hash table, probed against it and written to the output, along with the
+ * block it is on, and calls checkpoint between batches of rows. A checkpoint
+ * publishes the counts to the message of the result at most once every
+ * publish interval, and stops the join if it has been cancelled.
+ *
+ * Joins that are started for a result with an id are registered under that
+ * id while they run, so a join can be looked up and cancelled from another
+ * thread by the id of its result.
+ *
+ * The counts are only changed by the thread that runs the join, but they can
+ * be read and the join can be cancelled from any thread.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+public class JoinProgress {
+	// Time between two updates of the message of the result
+	private static final long PUBLISH_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+	private static final ConcurrentMap<Long, JoinProgress> RUNNING = new ConcurrentHashMap<Long, JoinProgress>();
+
+	private final Result result;
+	private volatile boolean cancelled;
+	private volatile long block;
+	private volatile long rowsBuilt;
+	private volatile long rowsProbed;
+	private volatile long rowsEmitted;
+	private long lastPublished;
+
+	/**
+	 * Creates the progress of a join that does not report to a result
+	 */
+	public JoinProgress() {
+		this(null);
+	}
+
+	private JoinProgress(Result result) {
+		this.result = result;
+		this.lastPublished = System.nanoTime();
+	}
+
+	/**
+	 * Creates the progress of a join that writes to a result. If the result
+	 * has an id the join is registered under it until finish is called.
+	 *
+	 * @param result
+	 *            Result of the join
+	 * @return Join progress
+	 */
+	public static JoinProgress start(Result result) {
+		JoinProgress progress = new JoinProgress(result);
+		if (result.getId() != null) {
+			RUNNING.put(result.getId(), progress);
+		}
+		return progress;
+	}
+
+	/**
+	 * Returns the progress of the join running for a result
+	 *
+	 * @param resultId
+	 *            Result id
+	 * @return Join progress, or null if no join is running for the result
+	 */
+	public static JoinProgress get(Long resultId) {
+		return RUNNING.get(resultId);
+	}
+
+	/**
+	 * Cancels the join running for a result. The join stops at its next
+	 * checkpoint.
+	 *
+	 * @param resultId
+	 *            Result id
+	 * @return True if a join was running for the result
+	 */
+	public static boolean cancel(Long resultId) {
+		JoinProgress progress = RUNNING.get(resultId);
+		if (progress == null) {
+			return false;
+		}
+		progress.cancel();
+		return true;
+	}
+
+	/**
+	 * Removes the join from the running joins once it has ended
+	 */
+	public void finish() {
+		if ((result != null) && (result.getId() != null)) {
+			RUNNING.remove(result.getId(), this);
+		}
+	}
+
+	/**
+	 * Cancels the join. The join stops at its next checkpoint.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Returns true if the join has been cancelled
+	 *
+	 * @return Cancelled
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Returns the number of the block the join is on, starting at 1
+	 *
+	 * @return Block
+	 */
+	public long getBlock() {
+		return block;
+	}
+
+	/**
+	 * Returns the number of rows that have been put in the hash table
+	 *
+	 * @return Rows built
+	 */
+	public long getRowsBuilt() {
+		return rowsBuilt;
+	}
+
+	/**
+	 * Returns the number of rows that have been probed against the hash table
+	 *
+	 * @return Rows probed
+	 */
+	public long getRowsProbed() {
+		return rowsProbed;
+	}
+
+	/**
+	 * Returns the number of rows that have been written to the output
+	 *
+	 * @return Rows emitted
+	 */
+	public long getRowsEmitted() {
+		return rowsEmitted;
+	}
+
+	void setBlock(long block) {
+		this.block = block;
+	}
+
+	void addRowsBuilt(long rows) {
+		rowsBuilt += rows;
+	}
+
+	void addRowsProbed(long rows) {
+		rowsProbed += rows;
+	}
+
+	void addRowsEmitted(long rows) {
+		rowsEmitted += rows;
+	}
+
+	/**
+	 * Publishes the progress to the result if it has not been published for a
+	 * while, and stops the join if it has been cancelled
+	 *
+	 * @throws ResultSetException
+	 *             The join has been cancelled
+	 */
+	void checkpoint() throws ResultSetException {
+		if (cancelled) {
+			throw new ResultSetException("Join was cancelled");
+		}
+		if (result != null) {
+			long now = System.nanoTime();
+			if (now - lastPublished >= PUBLISH_INTERVAL) {
+				result.setMessage("Running : " + toString());
+				lastPublished = now;
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Block : " + block + ", Rows built : " + rowsBuilt
+				+ ", Rows probed : " + rowsProbed + ", Rows emitted : "
+				+ rowsEmitted;
+	}
+}
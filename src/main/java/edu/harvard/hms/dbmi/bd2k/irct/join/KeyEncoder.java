@@ -0,0 +1,121 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import com.google.common.base.Charsets;
+
+import edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
+
+/**
+ * Encodes the join columns of a row into a normalized byte key. Two rows
+ * have equal byte keys exactly when their join columns hold the same values,
+ * so the key is used both to hash a row and to check that two rows with the
+ * same hash really match, without comparing the boxed cells again.
+ *
+ * Each value is normalized the same way JoinKeys normalizes it for the other
+ * joins, and written with a one byte tag followed by its normalized form.
+ * Whole numbers are written as a long and other numbers as a double.
+ * Booleans and dates are written as fixed width values, and text is written
+ * as its length prefixed UTF-8 value.
+ *
+ * The encoder does not keep any state between rows so it can be used by
+ * several threads at once.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+final class KeyEncoder {
+	private static final byte WHOLE = 1;
+	private static final byte DECIMAL = 2;
+	private static final byte BOOLEAN = 3;
+	private static final byte DATE = 4;
+	private static final byte STRING = 5;
+
+	private final int[] columns;
+	private final boolean[] numericColumns;
+
+	/**
+	 * Creates an encoder for the join columns of a result set
+	 *
+	 * @param columns
+	 *            Join columns
+	 * @param dataTypes
+	 *            Data types of the join columns
+	 */
+	KeyEncoder(int[] columns, PrimitiveDataType[] dataTypes) {
+		this.columns = columns;
+		this.numericColumns = new boolean[columns.length];
+		for (int columnI = 0; columnI < columns.length; columnI++) {
+			this.numericColumns[columnI] = JoinKeys
+					.isNumeric(dataTypes[columnI]);
+		}
+	}
+
+	/**
+	 * Encodes the join columns of a row. The row must have a key, that is none
+	 * of its join columns may be null.
+	 *
+	 * @param row
+	 *            Row
+	 * @return Byte key
+	 */
+	byte[] encode(Row row) {
+		byte[] key = new byte[16 * columns.length];
+		int length = 0;
+		for (int columnI = 0; columnI < columns.length; columnI++) {
+			Object value = JoinKeys.normalize(row.getColumn(columns[columnI]),
+					numericColumns[columnI]);
+			byte[] bytes = null;
+			int size;
+			if (value instanceof String) {
+				bytes = ((String) value).getBytes(Charsets.UTF_8);
+				size = 5 + bytes.length;
+			} else if (value instanceof Boolean) {
+				size = 2;
+			} else {
+				size = 9;
+			}
+			if (length + size > key.length) {
+				key = Arrays.copyOf(key, Math.max(key.length * 2, length + size));
+			}
+
+			if (bytes != null) {
+				key[length] = STRING;
+				putInt(key, length + 1, bytes.length);
+				System.arraycopy(bytes, 0, key, length + 5, bytes.length);
+			} else if (value instanceof Boolean) {
+				key[length] = BOOLEAN;
+				key[length + 1] = (byte) (((Boolean) value) ? 1 : 0);
+			} else if (value instanceof Long) {
+				key[length] = WHOLE;
+				putLong(key, length + 1, (Long) value);
+			} else if (value instanceof Double) {
+				key[length] = DECIMAL;
+				putLong(key, length + 1,
+						Double.doubleToLongBits((Double) value));
+			} else {
+				key[length] = DATE;
+				putLong(key, length + 1, ((Date) value).getTime());
+			}
+			length += size;
+		}
+		return (length == key.length) ? key : Arrays.copyOf(key, length);
+	}
+
+	private static void putInt(byte[] key, int offset, int value) {
+		key[offset] = (byte) (value >>> 24);
+		key[offset + 1] = (byte) (value >>> 16);
+		key[offset + 2] = (byte) (value >>> 8);
+		key[offset + 3] = (byte) value;
+	}
+
+	private static void putLong(byte[] key, int offset, long value) {
+		putInt(key, offset, (int) (value >>> 32));
+		putInt(key, offset + 4, (int) value);
+	}
+}
@@ -3,6 +3,7 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package edu.harvard.hms.dbmi.bd2k.irct.join;
 
+import java.util.Arrays;
 import java.util.Map;
 
 import edu.harvard.hms.dbmi.bd2k.irct.exception.JoinActionSetupException;
@@ -26,12 +27,12 @@ import edu.harvard.hms.dbmi.bd2k.irct.model.security.SecureSession;
  *
  */
 public class LeftOuterHashJoin implements JoinImplementation {
-	private long blockSize;
+	private HashJoinOptions options;
 
 	@Override
 	public void setup(Map<String, Object> parameters)
 			throws JoinActionSetupException {
-		this.blockSize = 100000L;
+		this.options = HashJoinOptions.fromParameters(parameters);
 	}
 
 	@Override
@@ -86,14 +87,63 @@ public class LeftOuterHashJoin implements JoinImplementation {
 			return result;
 		}
 
-		HashJoinImpl hashJoin = new HashJoinImpl(leftResultSet, rightResultSet, leftColumns, rightColumns, HashJoinImplType.LEFTOUTER, this.blockSize);
+		// Reject the join before it runs if it would output too many rows
+		if (this.options.getMaxOutputRows() > 0) {
+			JoinEstimate estimate = JoinEstimate.estimate(leftResultSet,
+					rightResultSet, leftColumns, rightColumns);
+			long outputRows = estimate.getOutputRows(HashJoinImplType.LEFTOUTER);
+			if (outputRows > this.options.getMaxOutputRows()) {
+				result.setResultStatus(ResultStatus.ERROR);
+				result.setMessage("Estimated output rows : " + outputRows
+						+ " is more than maxOutputRows : "
+						+ this.options.getMaxOutputRows() + " (" + estimate + ")");
+				return result;
+			}
+		}
+
+		HashJoinImpl hashJoin = new HashJoinImpl(leftResultSet, rightResultSet, leftColumns, rightColumns, HashJoinImplType.LEFTOUTER, this.options);
+		hashJoin.setResultIds(JoinParameters.getResultId(join, "LeftResultSet"),
+				JoinParameters.getResultId(join, "RightResultSet"));
+
+		// Keep only the output columns that were asked for
+		String columnsValue = join.getStringValues().get("Columns");
+		if ((columnsValue != null) && !columnsValue.trim().isEmpty()) {
+			hashJoin.setProjection(Arrays.asList(columnsValue.split(",")));
+			try {
+				hashJoin.getColumns();
+			} catch (ResultSetException rse) {
+				result.setResultStatus(ResultStatus.ERROR);
+				result.setMessage("Columns : " + rse.getMessage());
+				return result;
+			}
+		}
+
+		JoinProgress progress = JoinProgress.start(result);
+		hashJoin.setProgress(progress);
 
 		ResultSet outputResult = (ResultSet) result.getData();
 		
-		outputResult = hashJoin.join(outputResult);
+		try {
+			if (this.options.isPipelined()) {
+				outputResult = hashJoin.join(outputResult,
+						this.options.getOutputQueueSize());
+			} else {
+				outputResult = hashJoin.join(outputResult);
+			}
+		} catch (ResultSetException rse) {
+			if (!progress.isCancelled()) {
+				throw rse;
+			}
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("Join was cancelled : " + progress);
+			return result;
+		} finally {
+			progress.finish();
+		}
 
 		outputResult.beforeFirst();
 		result.setResultStatus(ResultStatus.COMPLETE);
+		result.setMessage(hashJoin.getStatistics().toString());
 		result.setData(outputResult);
 		
 		return result;
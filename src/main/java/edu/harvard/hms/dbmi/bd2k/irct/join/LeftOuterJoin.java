@@ -17,6 +17,7 @@ import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableExceptio
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSetImpl;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
 import edu.harvard.hms.dbmi.bd2k.irct.model.security.SecureSession;
 
 /**
@@ -90,10 +91,17 @@ public class LeftOuterJoin implements JoinImplementation {
 		}
 		int baseColumn = leftResultSet.getColumnSize();
 
+		// Find the right rows that match each left row
+		ColumnHashIndex.RowMatches rightMatches = ColumnHashIndex.matchRows(
+				leftResultSet, leftColumnIndex, rightResultSet,
+				rightColumnIndex);
+
+		int leftRowIndex = 0;
 		leftResultSet.beforeFirst();
 		while (leftResultSet.next()) {
-			Object leftRowMatchObj = ((ResultSetImpl) leftResultSet)
-					.getObject(leftColumnIndex);
+			List<Row> leftRowMatches = rightMatches.get(leftRowIndex,
+					leftResultSet.getCurrentRow());
+			leftRowIndex++;
 
 			// Add a new row
 			computedResults.appendRow();
@@ -106,20 +114,15 @@ public class LeftOuterJoin implements JoinImplementation {
 								.getObject(leftColumnIterator));
 			}
 
-			rightResultSet.beforeFirst();
-			while (rightResultSet.next()) {
-				if (((ResultSetImpl) rightResultSet)
-						.getObject(rightColumnIndex).equals(leftRowMatchObj)) {
-					// Copy Right values over
-					for (int rightColumnIterator = 0; rightColumnIterator < rightColumns
-							.size(); rightColumnIterator++) {
-						computedResults.updateObject(baseColumn
-								+ rightColumnIterator,
-								((ResultSetImpl) rightResultSet)
-										.getObject(rightColumns
-												.get(rightColumnIterator)));
-					}
-
+			// Copy Right values over, the last match wins
+			if (!leftRowMatches.isEmpty()) {
+				Row rightRow = leftRowMatches.get(leftRowMatches.size() - 1);
+				for (int rightColumnIterator = 0; rightColumnIterator < rightColumns
+						.size(); rightColumnIterator++) {
+					computedResults.updateObject(baseColumn
+							+ rightColumnIterator,
+							rightRow.getColumn(rightColumns
+									.get(rightColumnIterator)));
 				}
 			}
 		}
@@ -0,0 +1,565 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
+
+/**
+ * An open addressing hash table that maps long keys to the rows that share
+ * that key. Keys are stored in primitive arrays and the rows for a key are
+ * kept in insertion order as a chain of row indexes, so looking up a key does
+ * not allocate any objects.
+ *
+ * Rows are identified by the order they were added to the table, starting at
+ * zero. A lookup returns the index of the first row for a key and the rest
+ * of the rows are found by following the chain with nextRow. A row can also
+ * be stored with the byte key of its join columns, which is used to tell
+ * apart rows whose long keys collide.
+ *
+ * The table also counts the rows of every key, so keys that are shared by a
+ * very large number of rows can be found once the table is built.
+ *
+ * The rows can be kept outside of the heap in an OffHeapRowStore, in which
+ * case the table only holds the address of each row and the row is read back
+ * from the store when it is asked for.
+ *
+ * The slots are split into radix partitions chosen by the top bits of the
+ * hashed key. A table that is filled with putAll is built by several threads
+ * at once: the rows are first scattered into their partitions and then each
+ * partition is built by its own task. Partitions never share slots or rows so
+ * no locking is needed, and each partition is small enough to stay in cache
+ * while it is being built.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+class LongHashTable {
+	static final int NO_ROW = -1;
+
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+	// Target number of rows in a partition built by putAll
+	private static final int PARTITION_ROWS = 4096;
+	private static final int MAX_PARTITION_BITS = 10;
+
+	// Slots
+	private Partition[] partitions;
+	private int partitionBits;
+
+	// Rows
+	private Row[] rows;
+	private OffHeapRowStore rowStore;
+	private long[] rowAddresses;
+	private long[] rowKeys;
+	private byte[][] rowKeyBytes;
+	private int[] nextRows;
+	private int rowCount;
+
+	LongHashTable() {
+		this(null);
+	}
+
+	/**
+	 * Creates a table that keeps its rows in the given store
+	 *
+	 * @param rowStore
+	 *            Store to keep the rows in, or null to keep them on the heap
+	 */
+	LongHashTable(OffHeapRowStore rowStore) {
+		this.rowStore = rowStore;
+		partitions = new Partition[] { new Partition(INITIAL_CAPACITY, 0) };
+		if (rowStore == null) {
+			rows = new Row[INITIAL_CAPACITY];
+		} else {
+			rowAddresses = new long[INITIAL_CAPACITY];
+		}
+		rowKeys = new long[INITIAL_CAPACITY];
+		rowKeyBytes = new byte[INITIAL_CAPACITY][];
+		nextRows = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Adds a row to the table
+	 *
+	 * @param key
+	 *            Key of the row
+	 * @param row
+	 *            Row
+	 * @return Index of the row
+	 * @throws ResultSetException
+	 *             The row could not be stored
+	 */
+	int put(long key, Row row) throws ResultSetException {
+		return put(key, null, row);
+	}
+
+	/**
+	 * Adds a row to the table along with its byte key
+	 *
+	 * @param key
+	 *            Key of the row
+	 * @param keyBytes
+	 *            Byte key of the row, or null
+	 * @param row
+	 *            Row
+	 * @return Index of the row
+	 * @throws ResultSetException
+	 *             The row could not be stored
+	 */
+	int put(long key, byte[] keyBytes, Row row) throws ResultSetException {
+		if (rowCount == rowKeys.length) {
+			ensureRowCapacity(rowCount * 2);
+		}
+		int rowIndex = rowCount++;
+		if (rowStore == null) {
+			rows[rowIndex] = row;
+		} else {
+			rowAddresses[rowIndex] = rowStore.add(row);
+		}
+		rowKeys[rowIndex] = key;
+		rowKeyBytes[rowIndex] = keyBytes;
+		nextRows[rowIndex] = NO_ROW;
+
+		partitions[partitionOf(key)].add(key, rowIndex, nextRows);
+		return rowIndex;
+	}
+
+	/**
+	 * Fills an empty table with rows using the threads of the given pool. The
+	 * rows are given the same indexes, and are chained in the same order, as
+	 * if they had been added one at a time with put.
+	 *
+	 * @param keys
+	 *            Keys of the rows
+	 * @param keyBytes
+	 *            Byte keys of the rows, or null
+	 * @param newRows
+	 *            Rows
+	 * @param count
+	 *            Number of rows to add
+	 * @param pool
+	 *            Pool that builds the partitions
+	 * @throws ResultSetException
+	 *             A row could not be stored
+	 */
+	void putAll(final long[] keys, byte[][] keyBytes, Row[] newRows,
+			final int count, ForkJoinPool pool) throws ResultSetException {
+		if (rowCount != 0) {
+			throw new IllegalStateException(
+					"Rows can only be added in bulk to an empty table");
+		}
+		ensureRowCapacity(count);
+		if (rowStore == null) {
+			System.arraycopy(newRows, 0, rows, 0, count);
+		} else {
+			for (int row = 0; row < count; row++) {
+				rowAddresses[row] = rowStore.add(newRows[row]);
+			}
+		}
+		System.arraycopy(keys, 0, rowKeys, 0, count);
+		if (keyBytes != null) {
+			System.arraycopy(keyBytes, 0, rowKeyBytes, 0, count);
+		}
+		Arrays.fill(nextRows, 0, count, NO_ROW);
+		rowCount = count;
+
+		partitionBits = 0;
+		while ((partitionBits < MAX_PARTITION_BITS)
+				&& (((long) PARTITION_ROWS << partitionBits) < count)) {
+			partitionBits++;
+		}
+		final int partitionCount = 1 << partitionBits;
+		partitions = new Partition[partitionCount];
+
+		// Count the rows of each partition in every chunk of rows
+		final int chunkCount = Math.max(1,
+				Math.min(count / PARTITION_ROWS, pool.getParallelism() * 4));
+		final int chunkSize = (count + chunkCount - 1) / chunkCount;
+		final int[] rowPartitions = new int[count];
+		final int[][] chunkOffsets = new int[chunkCount][partitionCount];
+		pool.invoke(new RangeTask(0, chunkCount, new IndexAction() {
+			@Override
+			public void run(int chunk) {
+				int end = Math.min(count, (chunk + 1) * chunkSize);
+				for (int row = chunk * chunkSize; row < end; row++) {
+					int partition = partitionOf(keys[row]);
+					rowPartitions[row] = partition;
+					chunkOffsets[chunk][partition]++;
+				}
+			}
+		}));
+
+		// Turn the counts into the position each chunk writes its rows of a
+		// partition to, so the chunks can scatter their rows at the same time
+		final int[] partitionStarts = new int[partitionCount + 1];
+		int offset = 0;
+		for (int partition = 0; partition < partitionCount; partition++) {
+			partitionStarts[partition] = offset;
+			for (int chunk = 0; chunk < chunkCount; chunk++) {
+				int chunkRows = chunkOffsets[chunk][partition];
+				chunkOffsets[chunk][partition] = offset;
+				offset += chunkRows;
+			}
+		}
+		partitionStarts[partitionCount] = offset;
+
+		final int[] partitionedRows = new int[count];
+		pool.invoke(new RangeTask(0, chunkCount, new IndexAction() {
+			@Override
+			public void run(int chunk) {
+				int[] offsets = chunkOffsets[chunk];
+				int end = Math.min(count, (chunk + 1) * chunkSize);
+				for (int row = chunk * chunkSize; row < end; row++) {
+					partitionedRows[offsets[rowPartitions[row]]++] = row;
+				}
+			}
+		}));
+
+		// Build each partition from its rows
+		pool.invoke(new RangeTask(0, partitionCount, new IndexAction() {
+			@Override
+			public void run(int partitionIndex) {
+				int start = partitionStarts[partitionIndex];
+				int end = partitionStarts[partitionIndex + 1];
+				Partition partition = new Partition(Math.max(16,
+						Integer.highestOneBit(Math.max(1, end - start)) * 4),
+						partitionBits);
+				for (int position = start; position < end; position++) {
+					int row = partitionedRows[position];
+					partition.add(keys[row], row, nextRows);
+				}
+				partitions[partitionIndex] = partition;
+			}
+		}));
+	}
+
+	/**
+	 * Returns the index of the first row with the given key
+	 *
+	 * @param key
+	 *            Key
+	 * @return Row index or NO_ROW if there are no rows with that key
+	 */
+	int find(long key) {
+		return partitions[partitionOf(key)].find(key);
+	}
+
+	/**
+	 * Returns the index of the next row with the same key as the given row
+	 *
+	 * @param rowIndex
+	 *            Row index
+	 * @return Row index or NO_ROW if it is the last row with that key
+	 */
+	int nextRow(int rowIndex) {
+		return nextRows[rowIndex];
+	}
+
+	/**
+	 * Returns the number of rows with the given key
+	 *
+	 * @param key
+	 *            Key
+	 * @return Number of rows
+	 */
+	int getRowCount(long key) {
+		return partitions[partitionOf(key)].getRowCount(key);
+	}
+
+	/**
+	 * Returns the largest number of rows that share a single key
+	 *
+	 * @return Number of rows
+	 */
+	int getMaxKeyRows() {
+		int maxRows = 0;
+		for (Partition partition : partitions) {
+			maxRows = Math.max(maxRows, partition.getMaxKeyRows());
+		}
+		return maxRows;
+	}
+
+	/**
+	 * Returns the keys that are shared by at least the given number of rows
+	 *
+	 * @param minRows
+	 *            Minimum number of rows
+	 * @return Keys
+	 */
+	long[] getHeavyKeys(int minRows) {
+		KeyList keys = new KeyList();
+		for (Partition partition : partitions) {
+			partition.addHeavyKeys(minRows, keys);
+		}
+		return keys.toArray();
+	}
+
+	/**
+	 * Returns the row at the given index
+	 *
+	 * @param rowIndex
+	 *            Row index
+	 * @return Row
+	 */
+	Row getRow(int rowIndex) {
+		if (rowStore != null) {
+			return rowStore.get(rowAddresses[rowIndex]);
+		}
+		return rows[rowIndex];
+	}
+
+	/**
+	 * Returns the key of the row at the given index
+	 *
+	 * @param rowIndex
+	 *            Row index
+	 * @return Key
+	 */
+	long getKey(int rowIndex) {
+		return rowKeys[rowIndex];
+	}
+
+	/**
+	 * Returns the byte key of the row at the given index
+	 *
+	 * @param rowIndex
+	 *            Row index
+	 * @return Byte key, or null if the row was added without one
+	 */
+	byte[] getKeyBytes(int rowIndex) {
+		return rowKeyBytes[rowIndex];
+	}
+
+	/**
+	 * Returns the number of radix partitions the slots are split into
+	 *
+	 * @return Number of partitions
+	 */
+	int getPartitionCount() {
+		return partitions.length;
+	}
+
+	/**
+	 * Returns the number of rows in the table
+	 *
+	 * @return Number of rows
+	 */
+	int size() {
+		return rowCount;
+	}
+
+	/**
+	 * Removes all the rows from the table while keeping its capacity
+	 */
+	void clear() {
+		for (Partition partition : partitions) {
+			partition.clear();
+		}
+		if (rowStore == null) {
+			Arrays.fill(rows, 0, rowCount, null);
+		} else {
+			rowStore.clear();
+		}
+		Arrays.fill(rowKeyBytes, 0, rowCount, null);
+		rowCount = 0;
+	}
+
+	/**
+	 * Removes all the rows from the table and frees the memory of the store
+	 * the rows are kept in, if any
+	 */
+	void release() {
+		clear();
+		if (rowStore != null) {
+			rowStore.release();
+		}
+	}
+
+	private int partitionOf(long key) {
+		// Shifting by 64 would leave the hash unchanged, so the shift is split
+		// in two to give partition 0 when there is a single partition
+		return (int) (((key * GOLDEN_RATIO) >>> 1) >>> (63 - partitionBits));
+	}
+
+	private void ensureRowCapacity(int capacity) {
+		if (capacity > rowKeys.length) {
+			if (rowStore == null) {
+				rows = Arrays.copyOf(rows, capacity);
+			} else {
+				rowAddresses = Arrays.copyOf(rowAddresses, capacity);
+			}
+			rowKeys = Arrays.copyOf(rowKeys, capacity);
+			rowKeyBytes = Arrays.copyOf(rowKeyBytes, capacity);
+			nextRows = Arrays.copyOf(nextRows, capacity);
+		}
+	}
+
+	/**
+	 * Keys in an array that doubles in size as it fills
+	 */
+	private static class KeyList {
+		private long[] keys = new long[16];
+		private int size;
+
+		void add(long key) {
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+			}
+			keys[size] = key;
+			size++;
+		}
+
+		long[] toArray() {
+			return Arrays.copyOf(keys, size);
+		}
+	}
+
+	/**
+	 * The slots of one radix partition of the table. The top bits of the
+	 * hashed key pick the partition, so a partition picks its slot from the
+	 * bits below them.
+	 */
+	private static class Partition {
+		private long[] slotKeys;
+		private int[] slotFirstRow;
+		private int[] slotLastRow;
+		private int[] slotRowCounts;
+		private int slotBits;
+		private int keyCount;
+		private int partitionBits;
+
+		Partition(int capacity, int partitionBits) {
+			this.partitionBits = partitionBits;
+			allocateSlots(capacity);
+		}
+
+		void add(long key, int rowIndex, int[] nextRows) {
+			int slot = findSlot(key);
+			if (slotFirstRow[slot] == NO_ROW) {
+				slotKeys[slot] = key;
+				slotFirstRow[slot] = rowIndex;
+				slotRowCounts[slot] = 1;
+				keyCount++;
+			} else {
+				nextRows[slotLastRow[slot]] = rowIndex;
+				slotRowCounts[slot]++;
+			}
+			slotLastRow[slot] = rowIndex;
+
+			// Keep the partition at most half full so runs of occupied slots
+			// stay short
+			if (keyCount * 2 > slotKeys.length) {
+				allocateSlots(slotKeys.length * 2);
+			}
+		}
+
+		int find(long key) {
+			return slotFirstRow[findSlot(key)];
+		}
+
+		int getRowCount(long key) {
+			int slot = findSlot(key);
+			return (slotFirstRow[slot] == NO_ROW) ? 0 : slotRowCounts[slot];
+		}
+
+		int getMaxKeyRows() {
+			int maxRows = 0;
+			for (int slot = 0; slot < slotKeys.length; slot++) {
+				if (slotFirstRow[slot] != NO_ROW) {
+					maxRows = Math.max(maxRows, slotRowCounts[slot]);
+				}
+			}
+			return maxRows;
+		}
+
+		void addHeavyKeys(int minRows, KeyList keys) {
+			for (int slot = 0; slot < slotKeys.length; slot++) {
+				if ((slotFirstRow[slot] != NO_ROW)
+						&& (slotRowCounts[slot] >= minRows)) {
+					keys.add(slotKeys[slot]);
+				}
+			}
+		}
+
+		void clear() {
+			Arrays.fill(slotFirstRow, NO_ROW);
+			keyCount = 0;
+		}
+
+		private int findSlot(long key) {
+			int mask = slotKeys.length - 1;
+			long hash = (key * GOLDEN_RATIO) << partitionBits;
+			int slot = (int) (hash >>> (64 - slotBits));
+			while ((slotFirstRow[slot] != NO_ROW) && (slotKeys[slot] != key)) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		private void allocateSlots(int capacity) {
+			long[] oldKeys = slotKeys;
+			int[] oldFirstRow = slotFirstRow;
+			int[] oldLastRow = slotLastRow;
+			int[] oldRowCounts = slotRowCounts;
+
+			slotKeys = new long[capacity];
+			slotFirstRow = new int[capacity];
+			slotLastRow = new int[capacity];
+			slotRowCounts = new int[capacity];
+			slotBits = Integer.numberOfTrailingZeros(capacity);
+			Arrays.fill(slotFirstRow, NO_ROW);
+
+			if (oldKeys != null) {
+				for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+					if (oldFirstRow[oldSlot] != NO_ROW) {
+						long oldKey = oldKeys[oldSlot];
+						int slot = findSlot(oldKey);
+						slotKeys[slot] = oldKey;
+						slotFirstRow[slot] = oldFirstRow[oldSlot];
+						slotLastRow[slot] = oldLastRow[oldSlot];
+						slotRowCounts[slot] = oldRowCounts[oldSlot];
+					}
+				}
+			}
+		}
+	}
+
+	private interface IndexAction {
+		void run(int index);
+	}
+
+	/**
+	 * Runs an action for every index in a range, splitting the range between
+	 * the threads of the pool
+	 */
+	private static class RangeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private int from;
+		private int to;
+		private IndexAction action;
+
+		RangeTask(int from, int to, IndexAction action) {
+			this.from = from;
+			this.to = to;
+			this.action = action;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				action.run(from);
+			} else if (to > from) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new RangeTask(from, middle, action), new RangeTask(
+						middle, to, action));
+			}
+		}
+	}
+}
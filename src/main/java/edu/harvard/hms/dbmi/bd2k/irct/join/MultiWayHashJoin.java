@@ -0,0 +1,155 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import edu.harvard.hms.dbmi.bd2k.irct.exception.JoinActionSetupException;
+import edu.harvard.hms.dbmi.bd2k.irct.join.MultiWayHashJoinImpl.MultiWayHashJoinImplType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.join.Join;
+import edu.harvard.hms.dbmi.bd2k.irct.model.join.JoinImplementation;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.Result;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultStatus;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.security.SecureSession;
+
+/**
+ * Joins several result sets on a column they share in one pass using the
+ * multi way hash join implementation. The result sets are passed in the
+ * fields ResultSet1, ResultSet2 and so on, and the Column field names the
+ * join column that each of them has. The JoinType field can be inner or
+ * leftOuter (default: inner). A left outer join keeps every row of
+ * ResultSet1.
+ *
+ * The setup parameter memoryBudget sets how many bytes the hash tables may
+ * use.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+public class MultiWayHashJoin implements JoinImplementation {
+	private long memoryBudget;
+
+	@Override
+	public void setup(Map<String, Object> parameters)
+			throws JoinActionSetupException {
+		this.memoryBudget = JoinParameters.getLong(parameters, "memoryBudget",
+				Runtime.getRuntime().maxMemory() / 4);
+		if (this.memoryBudget < 1) {
+			throw new JoinActionSetupException(
+					"memoryBudget must be at least 1");
+		}
+	}
+
+	@Override
+	public Result run(SecureSession session, Join join, Result result)
+			throws ResultSetException, PersistableException {
+
+		List<ResultSet> resultSets = new ArrayList<ResultSet>();
+		while (join.getObjectValues().get(
+				"ResultSet" + (resultSets.size() + 1)) != null) {
+			resultSets.add((ResultSet) join.getObjectValues().get(
+					"ResultSet" + (resultSets.size() + 1)));
+		}
+
+		if (resultSets.size() < 2) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("ResultSet" + (resultSets.size() + 1)
+					+ " is null");
+			return result;
+		}
+
+		String column = join.getStringValues().get("Column");
+		if (column == null) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("Column is null");
+			return result;
+		}
+
+		MultiWayHashJoinImplType joinType = getJoinType(join.getStringValues()
+				.get("JoinType"));
+		if (joinType == null) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("JoinType : Unknown join type "
+					+ join.getStringValues().get("JoinType"));
+			return result;
+		}
+
+		// Get the Matching Column Ids of each result set
+		String[] stringColumnNames = column.split(",");
+		List<int[]> joinColumns = new ArrayList<int[]>();
+		for (int resultSetI = 0; resultSetI < resultSets.size(); resultSetI++) {
+			int[] columns = new int[stringColumnNames.length];
+			int counter = 0;
+			try {
+				for (String columnName : stringColumnNames) {
+					columns[counter] = resultSets.get(resultSetI).findColumn(
+							columnName);
+					counter++;
+				}
+			} catch (ResultSetException rse) {
+				result.setResultStatus(ResultStatus.ERROR);
+				result.setMessage("Column : ResultSet" + (resultSetI + 1)
+						+ " : " + rse.getMessage());
+				return result;
+			}
+			joinColumns.add(columns);
+		}
+
+		MultiWayHashJoinImpl multiWayHashJoin = new MultiWayHashJoinImpl(
+				resultSets, joinColumns, joinType, this.memoryBudget);
+
+		ResultSet outputResult = (ResultSet) result.getData();
+
+		JoinProgress progress = JoinProgress.start(result);
+		multiWayHashJoin.setProgress(progress);
+		try {
+			multiWayHashJoin.join(outputResult);
+		} catch (ResultSetException rse) {
+			result.setResultStatus(ResultStatus.ERROR);
+			if (progress.isCancelled()) {
+				result.setMessage("Join was cancelled : " + progress);
+			} else {
+				result.setMessage(rse.getMessage());
+			}
+			return result;
+		} finally {
+			progress.finish();
+		}
+
+		outputResult.beforeFirst();
+		result.setResultStatus(ResultStatus.COMPLETE);
+		result.setData(outputResult);
+		return result;
+	}
+
+	private MultiWayHashJoinImplType getJoinType(String joinType) {
+		if ((joinType == null) || joinType.trim().isEmpty()) {
+			return MultiWayHashJoinImplType.INNERJOIN;
+		}
+		switch (joinType.trim().toLowerCase()) {
+		case "inner":
+			return MultiWayHashJoinImplType.INNERJOIN;
+		case "leftouter":
+			return MultiWayHashJoinImplType.LEFTOUTER;
+		default:
+			return null;
+		}
+	}
+
+	@Override
+	public Result getResults(Result result) {
+		return result;
+	}
+
+	@Override
+	public ResultDataType getJoinDataType() {
+		return ResultDataType.TABULAR;
+	}
+}
@@ -0,0 +1,270 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Column;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
+
+/**
+ * A multi way hash join. It joins any number of result sets that share a key
+ * in a single pass without building the intermediate result sets a chain of
+ * binary joins would.
+ *
+ * A hash table is built in memory from every result set but one, and the
+ * remaining result set is then read once and each of its rows is looked up in
+ * all of the hash tables. In an inner join the largest result set is the one
+ * that is read, while in a left outer join it is always the first result set
+ * so every one of its rows is kept.
+ *
+ * The output has the columns of the first result set followed by the columns
+ * of each following result set that do not share a name with a column that is
+ * already in the output. Rows are written in the order of the result set that
+ * is read, and when a key has several rows in a result set a row is written
+ * for every combination of them. Rows where a join column is null never
+ * match.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+public class MultiWayHashJoinImpl {
+	enum MultiWayHashJoinImplType {
+		INNERJOIN, LEFTOUTER
+	}
+
+	// Estimated bytes the hash tables use for each row on top of the row
+	private static final long HASH_TABLE_ROW_SIZE = 48;
+	// Number of rows read between two progress checkpoints
+	private static final int CHECKPOINT_ROWS = 4096;
+
+	private List<ResultSet> resultSets;
+	private List<int[]> joinColumns;
+	private MultiWayHashJoinImplType joinType;
+	private long memoryBudget;
+
+	private List<Map<Object, List<Row>>> hashTables;
+	private int probeResultSet;
+	private int[][] outputColumns;
+	private int columnCount;
+
+	private JoinProgress progress = new JoinProgress();
+	private long readRows;
+
+	/**
+	 * Creates a multi way hash join
+	 *
+	 * @param resultSets
+	 *            Result sets to join, at least two
+	 * @param joinColumns
+	 *            Join columns of each result set
+	 * @param joinType
+	 *            Type of join
+	 * @param memoryBudget
+	 *            Number of bytes of rows the hash tables may use
+	 */
+	public MultiWayHashJoinImpl(List<ResultSet> resultSets,
+			List<int[]> joinColumns, MultiWayHashJoinImplType joinType,
+			long memoryBudget) {
+		this.resultSets = resultSets;
+		this.joinColumns = joinColumns;
+		this.joinType = joinType;
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * Sets the progress the join reports to and checks for cancellation
+	 *
+	 * @param progress
+	 *            Join progress
+	 */
+	public void setProgress(JoinProgress progress) {
+		this.progress = progress;
+	}
+
+	public ResultSet join(ResultSet output) throws ResultSetException,
+			PersistableException {
+		// Set up columns for output
+		List<String> columnNames = new ArrayList<String>();
+		outputColumns = new int[resultSets.size()][];
+		columnCount = 0;
+		for (int resultSetI = 0; resultSetI < resultSets.size(); resultSetI++) {
+			ResultSet resultSet = resultSets.get(resultSetI);
+			outputColumns[resultSetI] = new int[resultSet.getColumnSize()];
+			for (int columnI = 0; columnI < resultSet.getColumnSize(); columnI++) {
+				Column column = resultSet.getColumn(columnI);
+				if (columnNames.contains(column.getName())) {
+					outputColumns[resultSetI][columnI] = -1;
+				} else {
+					columnNames.add(column.getName());
+					output.appendColumn(column);
+					outputColumns[resultSetI][columnI] = columnCount;
+					columnCount++;
+				}
+			}
+		}
+
+		probeResultSet = 0;
+		if (joinType == MultiWayHashJoinImplType.INNERJOIN) {
+			for (int resultSetI = 1; resultSetI < resultSets.size(); resultSetI++) {
+				if (resultSets.get(resultSetI).getSize() > resultSets.get(
+						probeResultSet).getSize()) {
+					probeResultSet = resultSetI;
+				}
+			}
+		}
+
+		try {
+			buildHashTables();
+			probe(new ResultSetRowSink(output, columnCount));
+		} finally {
+			hashTables = null;
+		}
+		return output;
+	}
+
+	private void buildHashTables() throws ResultSetException {
+		hashTables = new ArrayList<Map<Object, List<Row>>>();
+		long bytes = 0;
+		for (int resultSetI = 0; resultSetI < resultSets.size(); resultSetI++) {
+			Map<Object, List<Row>> hashTable = new HashMap<Object, List<Row>>();
+			hashTables.add(hashTable);
+			ResultSet resultSet = resultSets.get(resultSetI);
+			if ((resultSetI == probeResultSet) || (resultSet.getSize() == 0)) {
+				continue;
+			}
+			int[] columns = joinColumns.get(resultSetI);
+			boolean[] numericColumns = JoinKeys.getNumericColumns(resultSet,
+					columns);
+			int resultSetColumns = resultSet.getColumnSize();
+
+			resultSet.beforeFirst();
+			while (resultSet.next()) {
+				Row row = resultSet.getCurrentRow();
+				progress.addRowsBuilt(1);
+				readRow();
+				if (!JoinKeys.hasKey(row, columns)) {
+					continue;
+				}
+				bytes += RowSizes.estimateRow(row, resultSetColumns)
+						+ HASH_TABLE_ROW_SIZE;
+				if (bytes > memoryBudget) {
+					throw new ResultSetException(
+							"The result sets do not fit in the memory budget of "
+									+ memoryBudget + " bytes");
+				}
+				Object key = JoinKeys.hashKey(row, columns, numericColumns);
+				List<Row> rows = hashTable.get(key);
+				if (rows == null) {
+					rows = new ArrayList<Row>(1);
+					hashTable.put(key, rows);
+				}
+				rows.add(row);
+			}
+			resultSet.beforeFirst();
+		}
+	}
+
+	private void probe(RowSink output) throws ResultSetException,
+			PersistableException {
+		ResultSet resultSet = resultSets.get(probeResultSet);
+		if (resultSet.getSize() == 0) {
+			return;
+		}
+		int[] columns = joinColumns.get(probeResultSet);
+		boolean[] numericColumns = JoinKeys.getNumericColumns(resultSet,
+				columns);
+		List<List<Row>> matches = new ArrayList<List<Row>>();
+		List<Row> unmatched = Collections.singletonList(null);
+
+		resultSet.beforeFirst();
+		while (resultSet.next()) {
+			Row row = resultSet.getCurrentRow();
+			progress.addRowsProbed(1);
+			readRow();
+			boolean hasKey = JoinKeys.hasKey(row, columns);
+			if (!hasKey && (joinType == MultiWayHashJoinImplType.INNERJOIN)) {
+				continue;
+			}
+			Object key = hasKey ? JoinKeys.hashKey(row, columns,
+					numericColumns) : null;
+
+			// Look up the rows of every other result set with the key
+			matches.clear();
+			boolean matched = true;
+			for (int resultSetI = 0; resultSetI < resultSets.size(); resultSetI++) {
+				if (resultSetI == probeResultSet) {
+					matches.add(Collections.singletonList(row));
+					continue;
+				}
+				List<Row> rows = (key == null) ? null : hashTables.get(
+						resultSetI).get(key);
+				if (rows == null) {
+					if (joinType == MultiWayHashJoinImplType.INNERJOIN) {
+						matched = false;
+						break;
+					}
+					rows = unmatched;
+				}
+				matches.add(rows);
+			}
+			if (matched) {
+				writeRows(output, matches);
+			}
+		}
+		resultSet.beforeFirst();
+	}
+
+	private void readRow() throws ResultSetException {
+		readRows++;
+		if ((readRows % CHECKPOINT_ROWS) == 0) {
+			progress.checkpoint();
+		}
+	}
+
+	/**
+	 * Writes a row for every combination of the matching rows of each result
+	 * set. The rows of the later result sets change fastest.
+	 */
+	private void writeRows(RowSink output, List<List<Row>> matches)
+			throws ResultSetException, PersistableException {
+		int[] positions = new int[matches.size()];
+		while (true) {
+			Row outputRow = new Row(columnCount);
+			for (int resultSetI = 0; resultSetI < matches.size(); resultSetI++) {
+				Row row = matches.get(resultSetI).get(positions[resultSetI]);
+				if (row != null) {
+					int[] columns = outputColumns[resultSetI];
+					for (int columnI = 0; columnI < columns.length; columnI++) {
+						if (columns[columnI] != -1) {
+							outputRow.setColumn(columns[columnI],
+									row.getColumn(columnI));
+						}
+					}
+				}
+			}
+			progress.addRowsEmitted(1);
+			output.write(outputRow);
+
+			// Move on to the next combination
+			int resultSetI = matches.size() - 1;
+			while ((resultSetI >= 0)
+					&& (++positions[resultSetI] == matches.get(resultSetI)
+							.size())) {
+				positions[resultSetI] = 0;
+				resultSetI--;
+			}
+			if (resultSetI < 0) {
+				return;
+			}
+		}
+	}
+}
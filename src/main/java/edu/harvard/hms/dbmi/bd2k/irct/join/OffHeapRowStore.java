@@ -0,0 +1,152 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
+
+/**
+ * Stores rows outside of the Java heap. Each row is written in the format of
+ * RowCodec into direct byte buffers that are allocated in large chunks, and is
+ * identified by the address it was written to. A row is read back into a new
+ * Row object every time it is asked for, so only the rows that are in use are
+ * on the heap and the garbage collector does not have to walk the stored
+ * rows.
+ *
+ * Rows are added by a single thread, but once they are added they can be read
+ * by several threads at once. Clearing the store keeps its chunks so they are
+ * reused by the rows added next.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+class OffHeapRowStore {
+	private static final int CHUNK_SIZE = 1 << 20;
+
+	private final int columnCount;
+	private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+	private int currentChunk;
+	private long bytes;
+
+	private final ByteArrayOutputStream rowBytes = new ByteArrayOutputStream();
+	private final DataOutputStream rowOut = new DataOutputStream(rowBytes);
+
+	/**
+	 * Creates an empty store
+	 *
+	 * @param columnCount
+	 *            Number of cells in each row
+	 */
+	OffHeapRowStore(int columnCount) {
+		this.columnCount = columnCount;
+	}
+
+	/**
+	 * Writes a row to the store
+	 *
+	 * @param row
+	 *            Row
+	 * @return Address of the row
+	 * @throws ResultSetException
+	 *             The row could not be written
+	 */
+	long add(Row row) throws ResultSetException {
+		rowBytes.reset();
+		try {
+			RowCodec.writeRow(rowOut, row, columnCount);
+			rowOut.flush();
+		} catch (IOException e) {
+			throw new ResultSetException("Unable to store row : "
+					+ e.getMessage());
+		}
+		int length = rowBytes.size();
+
+		ByteBuffer chunk = chunkFor(4 + length);
+		long address = ((long) currentChunk << 32) | chunk.position();
+		chunk.putInt(length);
+		chunk.put(rowBytes.toByteArray());
+		bytes += 4 + length;
+		return address;
+	}
+
+	/**
+	 * Reads the row at an address
+	 *
+	 * @param address
+	 *            Address returned when the row was added
+	 * @return Row
+	 */
+	Row get(long address) {
+		ByteBuffer chunk = chunks.get((int) (address >>> 32)).duplicate();
+		chunk.position((int) address);
+		byte[] row = new byte[chunk.getInt()];
+		chunk.get(row);
+		try {
+			return RowCodec.readRow(new DataInputStream(
+					new ByteArrayInputStream(row)), columnCount);
+		} catch (IOException e) {
+			// The bytes were written by add so they can always be read
+			throw new IllegalStateException("Unable to read stored row : "
+					+ e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Returns the number of bytes the stored rows use
+	 *
+	 * @return Bytes
+	 */
+	long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Removes all the rows while keeping the chunks for reuse
+	 */
+	void clear() {
+		for (ByteBuffer chunk : chunks) {
+			chunk.clear();
+		}
+		currentChunk = 0;
+		bytes = 0;
+	}
+
+	/**
+	 * Removes all the rows and lets go of the chunks so their memory can be
+	 * freed
+	 */
+	void release() {
+		chunks.clear();
+		currentChunk = 0;
+		bytes = 0;
+	}
+
+	/**
+	 * Returns a chunk with room for the given number of bytes, moving on to
+	 * the next chunk or allocating a new one if the current one is full
+	 */
+	private ByteBuffer chunkFor(int length) {
+		while (currentChunk < chunks.size()) {
+			ByteBuffer chunk = chunks.get(currentChunk);
+			if (chunk.remaining() >= length) {
+				return chunk;
+			}
+			currentChunk++;
+		}
+		ByteBuffer chunk = ByteBuffer.allocateDirect(Math.max(CHUNK_SIZE,
+				length));
+		chunks.add(chunk);
+		currentChunk = chunks.size() - 1;
+		return chunk;
+	}
+}
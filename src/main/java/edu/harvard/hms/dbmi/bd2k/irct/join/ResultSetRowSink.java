@@ -0,0 +1,38 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
+
+/**
+ * Writes rows straight to the end of a result set
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+class ResultSetRowSink implements RowSink {
+	private ResultSet resultSet;
+	private int columnCount;
+
+	ResultSetRowSink(ResultSet resultSet, int columnCount) {
+		this.resultSet = resultSet;
+		this.columnCount = columnCount;
+	}
+
+	@Override
+	public void write(Row row) throws ResultSetException, PersistableException {
+		resultSet.appendRow();
+		// A new row starts out empty so only the values that are set are
+		// written
+		for (int column = 0; column < columnCount; column++) {
+			Object value = row.getColumn(column);
+			if (value != null) {
+				resultSet.updateObject(column, value);
+			}
+		}
+	}
+}
@@ -17,6 +17,7 @@ import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableExceptio
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSetImpl;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
 import edu.harvard.hms.dbmi.bd2k.irct.model.security.SecureSession;
 
 /**
@@ -87,9 +88,14 @@ public class RightOuterJoin implements JoinImplementation {
 		
 		int baseColumn = leftColumns.size();
 
+		// Find the left rows that match each right row
+		ColumnHashIndex.RowMatches leftMatches = ColumnHashIndex.matchRows(rightResultSet, rightColumnIndex, leftResultSet, leftColumnIndex);
+
+		int rightRowIndex = 0;
 		rightResultSet.beforeFirst();
 		while (rightResultSet.next()) {
-			Object rightRowMatchObj = ((ResultSetImpl) rightResultSet).getObject(rightColumnIndex);
+			List<Row> rightRowMatches = leftMatches.get(rightRowIndex, rightResultSet.getCurrentRow());
+			rightRowIndex++;
 
 			// Add a new row
 			computedResults.appendRow();
@@ -99,15 +105,11 @@ public class RightOuterJoin implements JoinImplementation {
 				computedResults.updateObject(baseColumn + rightColumnIterator, ((ResultSetImpl) rightResultSet).getObject(rightColumnIterator));
 			}
 
-			leftResultSet.beforeFirst();
-			while (leftResultSet.next()) {
-				if (((ResultSetImpl) leftResultSet).getObject(leftColumnIndex).equals(rightRowMatchObj)) {
-
-					// Copy Left values over
-					for(int leftColumnIterator = 0; leftColumnIterator < leftColumns.size(); leftColumnIterator++) {
-						computedResults.updateObject(leftColumnIterator, ((ResultSetImpl) leftResultSet).getObject(leftColumns.get(leftColumnIterator)));
-					}
-
+			// Copy Left values over, the last match wins
+			if (!rightRowMatches.isEmpty()) {
+				Row leftRow = rightRowMatches.get(rightRowMatches.size() - 1);
+				for(int leftColumnIterator = 0; leftColumnIterator < leftColumns.size(); leftColumnIterator++) {
+					computedResults.updateObject(leftColumnIterator, leftRow.getColumn(leftColumns.get(leftColumnIterator)));
 				}
 			}
 		}
@@ -0,0 +1,171 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Date;
+
+import com.google.common.base.Charsets;
+
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
+
+/**
+ * Writes and reads rows in a compact binary format. Each cell is written with
+ * a one byte type tag so the row can be read back with the same Java types
+ * it was written with. This allows rows to be spilled out of memory and
+ * compared after they are read back in.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+final class RowCodec {
+	private static final byte NULL = 0;
+	private static final byte BOOLEAN = 1;
+	private static final byte BYTE = 2;
+	private static final byte SHORT = 3;
+	private static final byte INTEGER = 4;
+	private static final byte LONG = 5;
+	private static final byte FLOAT = 6;
+	private static final byte DOUBLE = 7;
+	private static final byte STRING = 8;
+	private static final byte DATE = 9;
+	private static final byte SERIALIZED = 10;
+
+	private RowCodec() {
+	}
+
+	/**
+	 * Writes the cells of a row
+	 *
+	 * @param out
+	 *            Output to write to
+	 * @param row
+	 *            Row to write
+	 * @param columnCount
+	 *            Number of cells in the row
+	 * @throws IOException
+	 *             An error occurred writing the row
+	 */
+	static void writeRow(DataOutput out, Row row, int columnCount)
+			throws IOException {
+		for (int column = 0; column < columnCount; column++) {
+			writeCell(out, row.getColumn(column));
+		}
+	}
+
+	/**
+	 * Reads a row that was written by writeRow
+	 *
+	 * @param in
+	 *            Input to read from
+	 * @param columnCount
+	 *            Number of cells in the row
+	 * @return Row
+	 * @throws IOException
+	 *             An error occurred reading the row
+	 */
+	static Row readRow(DataInput in, int columnCount) throws IOException {
+		Row row = new Row(columnCount);
+		for (int column = 0; column < columnCount; column++) {
+			row.setColumn(column, readCell(in));
+		}
+		return row;
+	}
+
+	private static void writeCell(DataOutput out, Object cell)
+			throws IOException {
+		if (cell == null) {
+			out.writeByte(NULL);
+		} else if (cell instanceof String) {
+			byte[] bytes = ((String) cell).getBytes(Charsets.UTF_8);
+			out.writeByte(STRING);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		} else if (cell instanceof Integer) {
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) cell);
+		} else if (cell instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) cell);
+		} else if (cell instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) cell);
+		} else if (cell instanceof Float) {
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) cell);
+		} else if (cell instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) cell);
+		} else if (cell instanceof Byte) {
+			out.writeByte(BYTE);
+			out.writeByte((Byte) cell);
+		} else if (cell instanceof Short) {
+			out.writeByte(SHORT);
+			out.writeShort((Short) cell);
+		} else if (cell.getClass() == Date.class) {
+			out.writeByte(DATE);
+			out.writeLong(((Date) cell).getTime());
+		} else if (cell instanceof Serializable) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+			objectOut.writeObject(cell);
+			objectOut.close();
+			out.writeByte(SERIALIZED);
+			out.writeInt(bytes.size());
+			out.write(bytes.toByteArray());
+		} else {
+			throw new IOException("Unable to write cell of type "
+					+ cell.getClass().getName());
+		}
+	}
+
+	private static Object readCell(DataInput in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+		case NULL:
+			return null;
+		case STRING:
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			return new String(bytes, Charsets.UTF_8);
+		case INTEGER:
+			return in.readInt();
+		case LONG:
+			return in.readLong();
+		case DOUBLE:
+			return in.readDouble();
+		case FLOAT:
+			return in.readFloat();
+		case BOOLEAN:
+			return in.readBoolean();
+		case BYTE:
+			return in.readByte();
+		case SHORT:
+			return in.readShort();
+		case DATE:
+			return new Date(in.readLong());
+		case SERIALIZED:
+			byte[] objectBytes = new byte[in.readInt()];
+			in.readFully(objectBytes);
+			ObjectInputStream objectIn = new ObjectInputStream(
+					new ByteArrayInputStream(objectBytes));
+			try {
+				return objectIn.readObject();
+			} catch (ClassNotFoundException cnfe) {
+				throw new IOException(cnfe.getMessage());
+			} finally {
+				objectIn.close();
+			}
+		default:
+			throw new IOException("Unknown cell type " + type);
+		}
+	}
+}
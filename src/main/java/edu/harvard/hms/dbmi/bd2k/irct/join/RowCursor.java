@@ -0,0 +1,37 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
+
+/**
+ * A forward only cursor over a sequence of rows
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+interface RowCursor {
+
+	/**
+	 * Moves the cursor to the next row
+	 *
+	 * @return True if there is a row
+	 * @throws ResultSetException
+	 *             An error occurred reading the row
+	 */
+	boolean next() throws ResultSetException;
+
+	/**
+	 * Returns the row the cursor is on
+	 *
+	 * @return Row
+	 */
+	Row getRow();
+
+	/**
+	 * Releases any resources held by the cursor
+	 */
+	void close();
+}
@@ -0,0 +1,95 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Column;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
+
+/**
+ * Fingerprints of the columns and rows of result sets, used to check that a
+ * result set is still the one some state was kept for.
+ *
+ * The fingerprint of a row includes its position, and the fingerprints of
+ * rows are added up. The fingerprint of the first rows of a result set can
+ * then be carried on as more rows are read, and rows that were moved or
+ * changed give a different sum.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+final class RowFingerprints {
+	private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+	private RowFingerprints() {
+	}
+
+	/**
+	 * Returns a fingerprint of the names and data types of the columns of a
+	 * result set
+	 *
+	 * @param resultSet
+	 *            Result set
+	 * @return Fingerprint
+	 * @throws ResultSetException
+	 *             An error occurred reading the columns of the result set
+	 */
+	static long columns(ResultSet resultSet) throws ResultSetException {
+		Hasher hasher = HASH_FUNCTION.newHasher();
+		int columnCount = resultSet.getColumnSize();
+		hasher.putInt(columnCount);
+		for (int columnI = 0; columnI < columnCount; columnI++) {
+			Column column = resultSet.getColumn(columnI);
+			putText(hasher, column.getName());
+			putText(hasher, (column.getDataType() == null) ? null : column
+					.getDataType().getName());
+		}
+		return hasher.hash().asLong();
+	}
+
+	/**
+	 * Returns a fingerprint of a row at a position in a result set
+	 *
+	 * @param row
+	 *            Row
+	 * @param columnCount
+	 *            Number of columns of the row
+	 * @param rowIndex
+	 *            Position of the row, starting at 0
+	 * @return Fingerprint
+	 */
+	static long row(Row row, int columnCount, long rowIndex) {
+		Hasher hasher = HASH_FUNCTION.newHasher();
+		hasher.putLong(rowIndex);
+		for (int columnI = 0; columnI < columnCount; columnI++) {
+			Object value = row.getColumn(columnI);
+			if (value == null) {
+				hasher.putByte((byte) 0);
+			} else {
+				// The class keeps 1 and "1" apart
+				hasher.putByte((byte) 1).putUnencodedChars(
+						value.getClass().getName());
+				putText(hasher, value.toString());
+			}
+		}
+		return hasher.hash().asLong();
+	}
+
+	/**
+	 * Hashes a text with its length, so two texts in a row do not run
+	 * together
+	 */
+	private static void putText(Hasher hasher, String text) {
+		if (text == null) {
+			hasher.putInt(-1);
+		} else {
+			hasher.putInt(text.length()).putUnencodedChars(text);
+		}
+	}
+}
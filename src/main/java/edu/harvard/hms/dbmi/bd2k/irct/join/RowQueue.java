@@ -0,0 +1,156 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Column;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
+
+/**
+ * A bounded queue of joined rows. A join running on its own thread writes
+ * rows into the queue as soon as they are found, and a reader takes them out
+ * in the same order. The join waits while the queue is full, so no more than
+ * the capacity of the queue is held in memory between the two.
+ *
+ * If the join fails the error is thrown to the reader once it has read the
+ * rows written before the failure. Closing the queue early stops the join the
+ * next time it writes a row.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+public class RowQueue implements RowSink, RowCursor {
+	// Marks the end of the rows
+	private static final Row END = new Row(0);
+	// How often a blocked writer checks if the queue has been closed
+	private static final long WRITE_WAIT_MILLISECONDS = 100;
+
+	private final List<Column> columns;
+	private final BlockingQueue<Row> queue;
+	private volatile boolean closed;
+	private volatile Throwable error;
+
+	private Row row;
+	private boolean finished;
+
+	/**
+	 * Creates a row queue
+	 *
+	 * @param columns
+	 *            Columns of the rows
+	 * @param capacity
+	 *            Maximum number of rows held in the queue
+	 */
+	RowQueue(List<Column> columns, int capacity) {
+		this.columns = Collections.unmodifiableList(columns);
+		this.queue = new ArrayBlockingQueue<Row>(capacity);
+	}
+
+	/**
+	 * Returns the columns of the rows in the queue
+	 *
+	 * @return Columns
+	 */
+	public List<Column> getColumns() {
+		return columns;
+	}
+
+	@Override
+	public void write(Row row) throws ResultSetException {
+		if (closed) {
+			throw new ResultSetException("Row queue is closed");
+		}
+		try {
+			while (!queue.offer(row, WRITE_WAIT_MILLISECONDS,
+					TimeUnit.MILLISECONDS)) {
+				if (closed) {
+					throw new ResultSetException("Row queue is closed");
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ResultSetException(
+					"Interrupted while writing to the row queue");
+		}
+	}
+
+	/**
+	 * Marks the end of the rows. Called by the writer once it is done.
+	 *
+	 * @param error
+	 *            Error the writer failed with, or null if it succeeded
+	 */
+	void finish(Throwable error) {
+		this.error = error;
+		try {
+			while (!queue.offer(END, WRITE_WAIT_MILLISECONDS,
+					TimeUnit.MILLISECONDS)) {
+				if (closed) {
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Moves to the next row, waiting for the writer if the queue is empty
+	 *
+	 * @return True if there is a row, false once all the rows have been read
+	 * @throws ResultSetException
+	 *             The writer failed, or the reader was interrupted
+	 */
+	@Override
+	public boolean next() throws ResultSetException {
+		if (finished) {
+			return false;
+		}
+		try {
+			row = queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ResultSetException(
+					"Interrupted while reading from the row queue");
+		}
+		if (row != END) {
+			return true;
+		}
+		row = null;
+		finished = true;
+		if (error instanceof ResultSetException) {
+			throw (ResultSetException) error;
+		}
+		if (error != null) {
+			ResultSetException exception = new ResultSetException(
+					error.getMessage());
+			exception.initCause(error);
+			throw exception;
+		}
+		return false;
+	}
+
+	@Override
+	public Row getRow() {
+		return row;
+	}
+
+	/**
+	 * Stops reading from the queue. A writer that is still running fails the
+	 * next time it writes a row.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		finished = true;
+		row = null;
+		queue.clear();
+	}
+}
@@ -0,0 +1,29 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
+
+/**
+ * A destination for the rows a join writes out
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+interface RowSink {
+
+	/**
+	 * Writes a row. The sink owns the row once it is written.
+	 *
+	 * @param row
+	 *            Row with a value for each output column
+	 * @throws ResultSetException
+	 *             An error occurred writing the row
+	 * @throws PersistableException
+	 *             An error occurred persisting the row
+	 */
+	void write(Row row) throws ResultSetException, PersistableException;
+}
@@ -0,0 +1,108 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.util.Date;
+
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
+
+/**
+ * Estimates how many bytes of heap memory a row takes up. The estimates are
+ * based on the object layout of a 64 bit JVM with compressed references and
+ * are only meant to be used to compare and budget rows, not to measure them
+ * exactly.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+final class RowSizes {
+	// Row object and the array that holds its cells
+	private static final long ROW_OVERHEAD = 32;
+	private static final long REFERENCE_SIZE = 8;
+	private static final long BOXED_SMALL_SIZE = 16;
+	private static final long BOXED_LARGE_SIZE = 24;
+	private static final long STRING_OVERHEAD = 40;
+	private static final long OBJECT_SIZE = 32;
+	// Length assumed for strings when only the column type is known
+	private static final long TYPICAL_STRING_LENGTH = 16;
+
+	private RowSizes() {
+	}
+
+	/**
+	 * Returns the estimated size of a row and the values it holds
+	 *
+	 * @param row
+	 *            Row
+	 * @param columnCount
+	 *            Number of columns in the row
+	 * @return Estimated size in bytes
+	 */
+	static long estimateRow(Row row, int columnCount) {
+		long size = ROW_OVERHEAD + (columnCount * REFERENCE_SIZE);
+		for (int column = 0; column < columnCount; column++) {
+			size += estimateCell(row.getColumn(column));
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the estimated size of a row of a result set from the data types
+	 * of its columns
+	 *
+	 * @param resultSet
+	 *            Result set
+	 * @return Estimated size in bytes
+	 * @throws ResultSetException
+	 *             An error occurred reading the columns
+	 */
+	static long estimateRow(ResultSet resultSet) throws ResultSetException {
+		int columnCount = resultSet.getColumnSize();
+		long size = ROW_OVERHEAD + (columnCount * REFERENCE_SIZE);
+		for (int column = 0; column < columnCount; column++) {
+			switch (resultSet.getColumn(column).getDataType().getName()) {
+			case "boolean":
+			case "byte":
+			case "float":
+			case "integer":
+				size += BOXED_SMALL_SIZE;
+				break;
+			case "double":
+			case "long":
+			case "date":
+			case "dateTime":
+			case "time":
+				size += BOXED_LARGE_SIZE;
+				break;
+			default:
+				size += STRING_OVERHEAD + (2 * TYPICAL_STRING_LENGTH);
+				break;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the estimated size of a single cell value
+	 *
+	 * @param cell
+	 *            Cell value
+	 * @return Estimated size in bytes
+	 */
+	static long estimateCell(Object cell) {
+		if (cell == null) {
+			return 0;
+		} else if (cell instanceof String) {
+			return STRING_OVERHEAD + (2L * ((String) cell).length());
+		} else if ((cell instanceof Long) || (cell instanceof Double)
+				|| (cell instanceof Date)) {
+			return BOXED_LARGE_SIZE;
+		} else if ((cell instanceof Number) || (cell instanceof Boolean)) {
+			return BOXED_SMALL_SIZE;
+		}
+		return OBJECT_SIZE;
+	}
+}
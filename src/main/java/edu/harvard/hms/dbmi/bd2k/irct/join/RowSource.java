@@ -0,0 +1,73 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
+
+/**
+ * A rewindable source of rows along with the key of their join columns.
+ * This lets the hash join treat a result set and a spilled partition of a
+ * result set the same way.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+interface RowSource {
+
+	/**
+	 * Moves the cursor to before the first row
+	 *
+	 * @throws ResultSetException
+	 *             An error occurred rewinding the source
+	 */
+	void beforeFirst() throws ResultSetException;
+
+	/**
+	 * Moves the cursor to the next row
+	 *
+	 * @return True if there is a row at the cursor
+	 * @throws ResultSetException
+	 *             An error occurred reading the source
+	 */
+	boolean next() throws ResultSetException;
+
+	/**
+	 * Returns false if any of the join columns of the current row are null.
+	 * A row without a key can never match another row.
+	 *
+	 * @return True if the current row has a key
+	 * @throws ResultSetException
+	 *             An error occurred reading the source
+	 */
+	boolean hasKey() throws ResultSetException;
+
+	/**
+	 * Returns the key of the join columns of the current row
+	 *
+	 * @return Key
+	 * @throws ResultSetException
+	 *             An error occurred reading the source
+	 */
+	long getKey() throws ResultSetException;
+
+	/**
+	 * Returns the normalized byte key of the join columns of the current row,
+	 * if the source keeps one
+	 *
+	 * @return Byte key, or null
+	 * @throws ResultSetException
+	 *             An error occurred reading the source
+	 */
+	byte[] getKeyBytes() throws ResultSetException;
+
+	/**
+	 * Returns the current row
+	 *
+	 * @return Row
+	 * @throws ResultSetException
+	 *             An error occurred reading the source
+	 */
+	Row getRow() throws ResultSetException;
+}
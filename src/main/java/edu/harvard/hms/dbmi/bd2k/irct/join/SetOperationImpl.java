@@ -0,0 +1,451 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
+
+/**
+ * Performs set operations between two result sets with the same columns.
+ * Union all writes every row of both result sets. The other operations
+ * remove duplicate rows: union writes every distinct row of either result
+ * set, intersect the distinct rows of the left result set that are also in
+ * the right one, and except the distinct rows of the left result set that are
+ * not in the right one.
+ *
+ * Rows are compared on all of their columns, with values matched the same way
+ * the joins match their join columns, and are kept in a hash set while they
+ * are compared. Rows are written out as soon as they are known to be
+ * part of the result. If the hash set is estimated not to fit into the memory
+ * budget, both result sets are first partitioned on the hash of their rows
+ * into temporary files. Equal rows always fall into the same partition, so
+ * each pair of partitions can then be handled on its own. A partition that is
+ * still too large is partitioned again.
+ *
+ * Left semi and left anti joins are handled the same way as intersect and
+ * except, but rows are compared on their join columns and every row of the
+ * left result set is kept, duplicates included. A semi join writes the left
+ * rows that have a match in the right result set, and an anti join the left
+ * rows that do not. Only the keys of the right result set are held in
+ * memory. Rows where a join column is null never match.
+ *
+ * When everything fits into memory the rows keep the order of the result
+ * sets, left before right. Otherwise they are written partition by partition.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+public class SetOperationImpl {
+	enum SetOperationImplType {
+		UNIONALL, UNION, INTERSECT, EXCEPT, LEFTSEMI, LEFTANTI
+	}
+
+	// Estimated bytes the hash set uses for each row on top of the row
+	private static final long HASH_SET_ROW_SIZE = 48;
+	// Upper bound on the number of partitions at each level
+	private static final int MAX_PARTITIONS = 256;
+	// Number of times a partition is partitioned again before it is handled
+	// in memory regardless of its size
+	private static final int MAX_DEPTH = 3;
+	// Number of rows read between two progress checkpoints
+	private static final int CHECKPOINT_ROWS = 4096;
+	// A source without any rows, used for partitions no row fell into
+	private static final RowSource EMPTY_SOURCE = new RowSource() {
+		@Override
+		public void beforeFirst() {
+		}
+
+		@Override
+		public boolean next() {
+			return false;
+		}
+
+		@Override
+		public boolean hasKey() {
+			return false;
+		}
+
+		@Override
+		public long getKey() {
+			return 0;
+		}
+
+		@Override
+		public byte[] getKeyBytes() {
+			return null;
+		}
+
+		@Override
+		public Row getRow() {
+			return null;
+		}
+	};
+
+	private ResultSet leftResultSet;
+	private ResultSet rightResultSet;
+	private SetOperationImplType operation;
+	private long memoryBudget;
+	private File tempDirectory;
+
+	private int[] leftColumns;
+	private int[] rightColumns;
+	private boolean[] leftNumeric;
+	private boolean[] rightNumeric;
+	private long rowBytes;
+
+	private JoinProgress progress = new JoinProgress();
+	private long readRows;
+
+	/**
+	 * Creates a set operation between two result sets
+	 *
+	 * @param leftResultSet
+	 *            Left result set
+	 * @param rightResultSet
+	 *            Right result set, with the same columns as the left
+	 * @param operation
+	 *            Set operation
+	 * @param memoryBudget
+	 *            Number of bytes of rows the hash set may use
+	 * @param tempDirectory
+	 *            Directory to write partitions to
+	 */
+	public SetOperationImpl(ResultSet leftResultSet, ResultSet rightResultSet,
+			SetOperationImplType operation, long memoryBudget,
+			File tempDirectory) {
+		this.leftResultSet = leftResultSet;
+		this.rightResultSet = rightResultSet;
+		this.operation = operation;
+		this.memoryBudget = memoryBudget;
+		this.tempDirectory = tempDirectory;
+	}
+
+	/**
+	 * Creates a left semi or left anti join between two result sets
+	 *
+	 * @param leftResultSet
+	 *            Left result set
+	 * @param rightResultSet
+	 *            Right result set
+	 * @param leftColumns
+	 *            Join columns of the left result set
+	 * @param rightColumns
+	 *            Join columns of the right result set
+	 * @param operation
+	 *            LEFTSEMI or LEFTANTI
+	 * @param memoryBudget
+	 *            Number of bytes of keys the hash set may use
+	 * @param tempDirectory
+	 *            Directory to write partitions to
+	 */
+	public SetOperationImpl(ResultSet leftResultSet, ResultSet rightResultSet,
+			int[] leftColumns, int[] rightColumns,
+			SetOperationImplType operation, long memoryBudget,
+			File tempDirectory) {
+		this(leftResultSet, rightResultSet, operation, memoryBudget,
+				tempDirectory);
+		this.leftColumns = leftColumns;
+		this.rightColumns = rightColumns;
+	}
+
+	/**
+	 * Sets the progress the operation reports to and checks for
+	 * cancellation
+	 *
+	 * @param progress
+	 *            Join progress
+	 */
+	public void setProgress(JoinProgress progress) {
+		this.progress = progress;
+	}
+
+	public ResultSet join(ResultSet output) throws ResultSetException,
+			PersistableException {
+		int columnCount = leftResultSet.getColumnSize();
+		for (int columnI = 0; columnI < columnCount; columnI++) {
+			output.appendColumn(leftResultSet.getColumn(columnI));
+		}
+		if (leftColumns == null) {
+			// Set operations compare every column
+			leftColumns = new int[columnCount];
+			for (int columnI = 0; columnI < columnCount; columnI++) {
+				leftColumns[columnI] = columnI;
+			}
+			rightColumns = leftColumns;
+		}
+		leftNumeric = JoinKeys.getNumericColumns(leftResultSet, leftColumns);
+		rightNumeric = JoinKeys.getNumericColumns(rightResultSet,
+				rightColumns);
+		rowBytes = Math.max(RowSizes.estimateRow(leftResultSet),
+				RowSizes.estimateRow(rightResultSet))
+				+ HASH_SET_ROW_SIZE;
+
+		execute(new ResultSetRowSource(leftResultSet, leftColumns,
+				leftNumeric), leftResultSet.getSize(), new ResultSetRowSource(
+				rightResultSet, rightColumns, rightNumeric),
+				rightResultSet.getSize(), 0,
+				new ResultSetRowSink(output, columnCount));
+		return output;
+	}
+
+	private void execute(RowSource left, long leftRows, RowSource right,
+			long rightRows, int depth, RowSink output)
+			throws ResultSetException, PersistableException {
+		if ((operation == SetOperationImplType.UNIONALL)
+				|| (depth == MAX_DEPTH)
+				|| (estimateBytes(leftRows, rightRows) <= memoryBudget)) {
+			executeInMemory(left, right, output);
+			return;
+		}
+
+		int partitions = (int) Math.min(MAX_PARTITIONS,
+				(estimateBytes(leftRows, rightRows) / memoryBudget) + 2);
+		SpillFile[] leftPartitions = new SpillFile[partitions];
+		SpillFile[] rightPartitions = new SpillFile[partitions];
+		try {
+			partition(left, leftPartitions, leftResultSet.getColumnSize(),
+					depth);
+			partition(right, rightPartitions,
+					rightResultSet.getColumnSize(), depth);
+			for (int partition = 0; partition < partitions; partition++) {
+				SpillFile leftPartition = leftPartitions[partition];
+				SpillFile rightPartition = rightPartitions[partition];
+				if ((leftPartition != null) || (rightPartition != null)) {
+					execute(nonNullSource(leftPartition),
+							(leftPartition == null) ? 0 : leftPartition
+									.getSize(), nonNullSource(rightPartition),
+							(rightPartition == null) ? 0 : rightPartition
+									.getSize(), depth + 1, output);
+				}
+				deletePartition(leftPartitions, partition);
+				deletePartition(rightPartitions, partition);
+			}
+		} finally {
+			for (int partition = 0; partition < partitions; partition++) {
+				deletePartition(leftPartitions, partition);
+				deletePartition(rightPartitions, partition);
+			}
+		}
+	}
+
+	private void executeInMemory(RowSource left, RowSource right,
+			RowSink output) throws ResultSetException, PersistableException {
+		Set<Object> rows = new HashSet<Object>();
+		switch (operation) {
+		case UNIONALL:
+			writeRows(left, leftColumns, leftNumeric, null, output);
+			writeRows(right, rightColumns, rightNumeric, null, output);
+			break;
+		case UNION:
+			writeRows(left, leftColumns, leftNumeric, rows, output);
+			writeRows(right, rightColumns, rightNumeric, rows, output);
+			break;
+		case INTERSECT:
+			// A right row is removed once it has been written so it is only
+			// written once
+			addRows(right, rows);
+			left.beforeFirst();
+			while (left.next()) {
+				progress.addRowsProbed(1);
+				readRow();
+				if (rows.remove(JoinKeys.hashKey(left.getRow(), leftColumns,
+						leftNumeric))) {
+					writeRow(output, left.getRow());
+				}
+			}
+			break;
+		case EXCEPT:
+			// A left row is added to the right rows once it has been written
+			// so it is only written once
+			addRows(right, rows);
+			writeRows(left, leftColumns, leftNumeric, rows, output);
+			break;
+		case LEFTSEMI:
+		case LEFTANTI:
+			addRows(right, rows);
+			boolean semi = operation == SetOperationImplType.LEFTSEMI;
+			left.beforeFirst();
+			while (left.next()) {
+				Row row = left.getRow();
+				progress.addRowsProbed(1);
+				readRow();
+				boolean matched = JoinKeys.hasKey(row, leftColumns)
+						&& rows.contains(JoinKeys.hashKey(row, leftColumns,
+								leftNumeric));
+				if (matched == semi) {
+					writeRow(output, row);
+				}
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Writes the rows of a source that are not already in the set of rows,
+	 * adding them to it. If there is no set every row is written. Only used by
+	 * the set operations, where both sides are compared on every column.
+	 */
+	private void writeRows(RowSource source, int[] columns,
+			boolean[] numericColumns, Set<Object> rows, RowSink output)
+			throws ResultSetException, PersistableException {
+		source.beforeFirst();
+		while (source.next()) {
+			Row row = source.getRow();
+			progress.addRowsProbed(1);
+			readRow();
+			if ((rows == null)
+					|| rows.add(JoinKeys.hashKey(row, columns,
+							numericColumns))) {
+				writeRow(output, row);
+			}
+		}
+	}
+
+	/**
+	 * Adds the keys of the right rows to the set of rows. In a semi or anti
+	 * join right rows without a key are left out as they can not match.
+	 */
+	private void addRows(RowSource right, Set<Object> rows)
+			throws ResultSetException {
+		boolean skipNulls = (operation == SetOperationImplType.LEFTSEMI)
+				|| (operation == SetOperationImplType.LEFTANTI);
+		right.beforeFirst();
+		while (right.next()) {
+			Row row = right.getRow();
+			progress.addRowsBuilt(1);
+			readRow();
+			if (!skipNulls || JoinKeys.hasKey(row, rightColumns)) {
+				rows.add(JoinKeys.hashKey(row, rightColumns, rightNumeric));
+			}
+		}
+	}
+
+	private void partition(RowSource source, SpillFile[] partitionFiles,
+			int columnCount, int depth) throws ResultSetException {
+		source.beforeFirst();
+		while (source.next()) {
+			readRow();
+			long key = source.getKey();
+			int partition = getPartition(key, depth, partitionFiles.length);
+			if (partitionFiles[partition] == null) {
+				partitionFiles[partition] = new SpillFile(tempDirectory,
+						columnCount);
+			}
+			partitionFiles[partition].write(key, source.getRow());
+		}
+	}
+
+	private void readRow() throws ResultSetException {
+		readRows++;
+		if ((readRows % CHECKPOINT_ROWS) == 0) {
+			progress.checkpoint();
+		}
+	}
+
+	private void writeRow(RowSink output, Row row) throws ResultSetException,
+			PersistableException {
+		progress.addRowsEmitted(1);
+		output.write(row);
+	}
+
+	private long estimateBytes(long leftRows, long rightRows) {
+		switch (operation) {
+		case INTERSECT:
+		case LEFTSEMI:
+		case LEFTANTI:
+			return rightRows * rowBytes;
+		default:
+			return (leftRows + rightRows) * rowBytes;
+		}
+	}
+
+	private int getPartition(long key, int depth, int partitions) {
+		// Mix the key differently at each depth so a partition that is
+		// partitioned again is split up
+		key += depth * 0x9e3779b97f4a7c15L;
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) ((key >>> 1) % partitions);
+	}
+
+	private RowSource nonNullSource(SpillFile partitionFile) {
+		if (partitionFile == null) {
+			return EMPTY_SOURCE;
+		}
+		return partitionFile;
+	}
+
+	private void deletePartition(SpillFile[] partitionFiles, int partition) {
+		if (partitionFiles[partition] != null) {
+			partitionFiles[partition].delete();
+			partitionFiles[partition] = null;
+		}
+	}
+
+	/**
+	 * Reads the rows of a result set along with the hash of the columns they
+	 * are compared on
+	 */
+	private static class ResultSetRowSource implements RowSource {
+		private ResultSet resultSet;
+		private int[] columns;
+		private boolean[] numericColumns;
+		private boolean empty;
+		private Row row;
+
+		ResultSetRowSource(ResultSet resultSet, int[] columns,
+				boolean[] numericColumns) throws ResultSetException {
+			this.resultSet = resultSet;
+			this.columns = columns;
+			this.numericColumns = numericColumns;
+			this.empty = resultSet.getSize() == 0;
+		}
+
+		@Override
+		public void beforeFirst() throws ResultSetException {
+			row = null;
+			resultSet.beforeFirst();
+		}
+
+		@Override
+		public boolean next() throws ResultSetException {
+			if (empty || !resultSet.next()) {
+				row = null;
+				return false;
+			}
+			row = resultSet.getCurrentRow();
+			return true;
+		}
+
+		@Override
+		public boolean hasKey() {
+			return true;
+		}
+
+		@Override
+		public long getKey() {
+			Object key = JoinKeys.hashKey(row, columns, numericColumns);
+			return (key == null) ? 0 : key.hashCode();
+		}
+
+		@Override
+		public byte[] getKeyBytes() {
+			return null;
+		}
+
+		@Override
+		public Row getRow() {
+			return row;
+		}
+	}
+}
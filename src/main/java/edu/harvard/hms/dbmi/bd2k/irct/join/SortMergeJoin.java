@@ -0,0 +1,183 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.io.File;
+import java.util.Map;
+
+import edu.harvard.hms.dbmi.bd2k.irct.exception.JoinActionSetupException;
+import edu.harvard.hms.dbmi.bd2k.irct.join.SortMergeJoinImpl.SortMergeJoinImplType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.join.Join;
+import edu.harvard.hms.dbmi.bd2k.irct.model.join.JoinImplementation;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.Result;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultStatus;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.security.SecureSession;
+
+/**
+ * Performs a join between two result sets using the sort merge join
+ * implementation. The type of join is set by the JoinType field and can be
+ * inner, leftOuter, rightOuter or fullOuter (default: inner). The Sorted field
+ * tells the join whether the result sets are already sorted on their join
+ * columns. If it is not set the join checks each result set, and sorts it if
+ * needed.
+ *
+ * The setup parameters memoryBudget and tempDirectory control how much memory
+ * a sort may use before it spills to disk, and where it spills to.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+public class SortMergeJoin implements JoinImplementation {
+	private long memoryBudget;
+	private File tempDirectory;
+
+	@Override
+	public void setup(Map<String, Object> parameters)
+			throws JoinActionSetupException {
+		this.memoryBudget = JoinParameters.getLong(parameters, "memoryBudget",
+				Runtime.getRuntime().maxMemory() / 4);
+		if (this.memoryBudget < 1) {
+			throw new JoinActionSetupException(
+					"memoryBudget must be at least 1");
+		}
+		this.tempDirectory = JoinParameters.getDirectory(parameters,
+				"tempDirectory");
+	}
+
+	@Override
+	public Result run(SecureSession session, Join join, Result result)
+			throws ResultSetException, PersistableException {
+
+		ResultSet leftResultSet = (ResultSet) join.getObjectValues().get(
+				"LeftResultSet");
+
+		if (leftResultSet == null) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("LeftResultSet is null");
+			return result;
+		}
+
+		ResultSet rightResultSet = (ResultSet) join.getObjectValues().get(
+				"RightResultSet");
+		if (rightResultSet == null) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("RightResultSet is null");
+			return result;
+		}
+
+		SortMergeJoinImplType joinType = getJoinType(join.getStringValues()
+				.get("JoinType"));
+		if (joinType == null) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("JoinType : Unknown join type "
+					+ join.getStringValues().get("JoinType"));
+			return result;
+		}
+
+		Boolean sorted = null;
+		String sortedValue = join.getStringValues().get("Sorted");
+		if ((sortedValue != null) && !sortedValue.trim().isEmpty()) {
+			sorted = Boolean.valueOf(sortedValue.trim());
+		}
+
+		// Get Left Matching Column Ids
+		String[] leftStringColumnNames = join.getStringValues()
+				.get("LeftColumn").split(",");
+		int[] leftColumns = new int[leftStringColumnNames.length];
+
+		int counter = 0;
+		try {
+			for (String columnName : leftStringColumnNames) {
+				leftColumns[counter] = leftResultSet.findColumn(columnName);
+				counter++;
+			}
+		} catch (ResultSetException rse) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("LeftColumn : " + rse.getMessage());
+			return result;
+		}
+
+		// Get Right Matching Column Ids
+		String[] rightStringColumnNames = join.getStringValues()
+				.get("RightColumn").split(",");
+		int[] rightColumns = new int[rightStringColumnNames.length];
+
+		counter = 0;
+		try {
+			for (String columnName : rightStringColumnNames) {
+				rightColumns[counter] = rightResultSet.findColumn(columnName);
+				counter++;
+			}
+		} catch (ResultSetException rse) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("RightColumn : " + rse.getMessage());
+			return result;
+		}
+
+		if (leftColumns.length != rightColumns.length) {
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("LeftColumn and RightColumn have a different number of columns");
+			return result;
+		}
+
+		SortMergeJoinImpl sortMergeJoin = new SortMergeJoinImpl(leftResultSet,
+				rightResultSet, leftColumns, rightColumns, joinType, sorted,
+				this.memoryBudget, this.tempDirectory);
+
+		ResultSet outputResult = (ResultSet) result.getData();
+
+		JoinProgress progress = JoinProgress.start(result);
+		sortMergeJoin.setProgress(progress);
+		try {
+			sortMergeJoin.join(outputResult);
+		} catch (ResultSetException rse) {
+			result.setResultStatus(ResultStatus.ERROR);
+			if (progress.isCancelled()) {
+				result.setMessage("Join was cancelled : " + progress);
+			} else {
+				result.setMessage(rse.getMessage());
+			}
+			return result;
+		} finally {
+			progress.finish();
+		}
+
+		outputResult.beforeFirst();
+		result.setResultStatus(ResultStatus.COMPLETE);
+		result.setData(outputResult);
+		return result;
+	}
+
+	private SortMergeJoinImplType getJoinType(String joinType) {
+		if ((joinType == null) || joinType.trim().isEmpty()) {
+			return SortMergeJoinImplType.INNERJOIN;
+		}
+		switch (joinType.trim().toLowerCase()) {
+		case "inner":
+			return SortMergeJoinImplType.INNERJOIN;
+		case "leftouter":
+			return SortMergeJoinImplType.LEFTOUTER;
+		case "rightouter":
+			return SortMergeJoinImplType.RIGHTOUTER;
+		case "fullouter":
+			return SortMergeJoinImplType.FULLOUTER;
+		default:
+			return null;
+		}
+	}
+
+	@Override
+	public Result getResults(Result result) {
+		return result;
+	}
+
+	@Override
+	public ResultDataType getJoinDataType() {
+		return ResultDataType.TABULAR;
+	}
+}
@@ -0,0 +1,391 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Column;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
+
+/**
+ * A sort merge join implementation. Both result sets are read in the order
+ * of their join columns and merged in a single pass, so only the rows of the
+ * right result set that share the current key are held in memory. Result sets
+ * that are already sorted are read directly, and any other result set is
+ * sorted first with an external sort.
+ *
+ * The output has the columns of the left result set followed by the columns
+ * of the right result set that do not share a name with a left column. Rows
+ * are written in the order of their join columns. Rows where a join column is
+ * null never match.
+ *
+ * The join counts the rows it sorts, spills and merges, and checks a
+ * JoinProgress for cancellation as it goes.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+public class SortMergeJoinImpl {
+	enum SortMergeJoinImplType {
+		FULLOUTER, INNERJOIN, LEFTOUTER, RIGHTOUTER
+	}
+
+	// Number of rows read or written between two progress checkpoints
+	private static final int CHECKPOINT_ROWS = 4096;
+
+	private ResultSet leftResultSet;
+	private ResultSet rightResultSet;
+	private int[] leftColumns;
+	private int[] rightColumns;
+	private SortMergeJoinImplType joinType;
+	private Boolean sorted;
+	private long memoryBudget;
+	private File tempDirectory;
+
+	private boolean[] leftNumeric;
+	private boolean[] rightNumeric;
+	private int leftColumnCount;
+	private boolean[] ignoreRightColumns;
+
+	private RowCursor leftCursor;
+	private RowCursor rightCursor;
+	private Row previousLeftRow;
+	private Row previousRightRow;
+
+	private JoinProgress progress = new JoinProgress();
+	private long leftSortedRows;
+	private long rightSortedRows;
+	private long spilledRows;
+	private long mergedRows;
+
+	/**
+	 * Creates a sort merge join between two result sets
+	 *
+	 * @param leftResultSet
+	 *            Left result set
+	 * @param rightResultSet
+	 *            Right result set
+	 * @param leftColumns
+	 *            Join columns of the left result set
+	 * @param rightColumns
+	 *            Join columns of the right result set
+	 * @param joinType
+	 *            Type of join
+	 * @param sorted
+	 *            True if both result sets are sorted on their join columns,
+	 *            false if they need to be sorted, or null to check
+	 * @param memoryBudget
+	 *            Number of bytes of rows an external sort may hold in memory
+	 * @param tempDirectory
+	 *            Directory an external sort writes its runs to
+	 */
+	public SortMergeJoinImpl(ResultSet leftResultSet,
+			ResultSet rightResultSet, int[] leftColumns, int[] rightColumns,
+			SortMergeJoinImplType joinType, Boolean sorted, long memoryBudget,
+			File tempDirectory) {
+		this.leftResultSet = leftResultSet;
+		this.rightResultSet = rightResultSet;
+		this.leftColumns = leftColumns;
+		this.rightColumns = rightColumns;
+		this.joinType = joinType;
+		this.sorted = sorted;
+		this.memoryBudget = memoryBudget;
+		this.tempDirectory = tempDirectory;
+	}
+
+	/**
+	 * Sets the progress the join reports to and checks for cancellation
+	 *
+	 * @param progress
+	 *            Join progress
+	 */
+	public void setProgress(JoinProgress progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Returns the number of left rows that had to be sorted
+	 *
+	 * @return Sorted rows
+	 */
+	long getLeftSortedRows() {
+		return leftSortedRows;
+	}
+
+	/**
+	 * Returns the number of right rows that had to be sorted
+	 *
+	 * @return Sorted rows
+	 */
+	long getRightSortedRows() {
+		return rightSortedRows;
+	}
+
+	/**
+	 * Returns the number of rows the sorts wrote to temporary files
+	 *
+	 * @return Spilled rows
+	 */
+	long getSpilledRows() {
+		return spilledRows;
+	}
+
+	/**
+	 * Returns the number of rows that were read while merging
+	 *
+	 * @return Merged rows
+	 */
+	long getMergedRows() {
+		return mergedRows;
+	}
+
+	public ResultSet join(ResultSet output) throws ResultSetException,
+			PersistableException {
+		// Set up columns for output
+		List<String> columnNames = new ArrayList<String>();
+		leftColumnCount = leftResultSet.getColumnSize();
+		for (int columnI = 0; columnI < leftColumnCount; columnI++) {
+			Column column = leftResultSet.getColumn(columnI);
+			columnNames.add(column.getName());
+			output.appendColumn(column);
+		}
+		ignoreRightColumns = new boolean[rightResultSet.getColumnSize()];
+		for (int columnI = 0; columnI < ignoreRightColumns.length; columnI++) {
+			Column column = rightResultSet.getColumn(columnI);
+			if (columnNames.contains(column.getName())) {
+				ignoreRightColumns[columnI] = true;
+			} else {
+				output.appendColumn(column);
+			}
+		}
+
+		leftNumeric = JoinKeys.getNumericColumns(leftResultSet, leftColumns);
+		rightNumeric = JoinKeys.getNumericColumns(rightResultSet,
+				rightColumns);
+		try {
+			leftCursor = openCursor(leftResultSet, leftColumns);
+			if (!(leftCursor instanceof ResultSetCursor)) {
+				leftSortedRows = leftResultSet.getSize();
+			}
+			rightCursor = openCursor(rightResultSet, rightColumns);
+			if (!(rightCursor instanceof ResultSetCursor)) {
+				rightSortedRows = rightResultSet.getSize();
+			}
+			merge(output);
+		} finally {
+			if (leftCursor != null) {
+				leftCursor.close();
+			}
+			if (rightCursor != null) {
+				rightCursor.close();
+			}
+		}
+
+		return output;
+	}
+
+	private void merge(ResultSet output) throws ResultSetException,
+			PersistableException {
+		List<Row> rightGroup = new ArrayList<Row>();
+		Row leftRow = nextLeftRow(output);
+		Row rightRow = nextRightRow(output);
+
+		while ((leftRow != null) && (rightRow != null)) {
+			int compare = JoinKeys.compare(leftRow, leftColumns, leftNumeric,
+					rightRow, rightColumns, rightNumeric);
+			if (compare < 0) {
+				if (isLeftPreserved()) {
+					writeRow(output, leftRow, null);
+				}
+				leftRow = nextLeftRow(output);
+			} else if (compare > 0) {
+				if (isRightPreserved()) {
+					writeRow(output, null, rightRow);
+				}
+				rightRow = nextRightRow(output);
+			} else {
+				// Collect the right rows that share the key
+				rightGroup.clear();
+				Row groupRow = rightRow;
+				while ((rightRow != null)
+						&& (JoinKeys.compare(groupRow, rightColumns,
+								rightNumeric, rightRow, rightColumns,
+								rightNumeric) == 0)) {
+					rightGroup.add(rightRow);
+					rightRow = nextRightRow(output);
+				}
+
+				// Join every left row with that key to the group
+				while ((leftRow != null)
+						&& (JoinKeys.compare(leftRow, leftColumns,
+								leftNumeric, groupRow, rightColumns,
+								rightNumeric) == 0)) {
+					for (Row groupMember : rightGroup) {
+						writeRow(output, leftRow, groupMember);
+					}
+					leftRow = nextLeftRow(output);
+				}
+			}
+		}
+
+		// Write out what is left of either side
+		while (leftRow != null) {
+			if (isLeftPreserved()) {
+				writeRow(output, leftRow, null);
+			}
+			leftRow = nextLeftRow(output);
+		}
+		while (rightRow != null) {
+			if (isRightPreserved()) {
+				writeRow(output, null, rightRow);
+			}
+			rightRow = nextRightRow(output);
+		}
+	}
+
+	/**
+	 * Returns the next left row that has a key. Rows without a key are written
+	 * to the output straight away if the left side is preserved.
+	 */
+	private Row nextLeftRow(ResultSet output) throws ResultSetException,
+			PersistableException {
+		while (leftCursor.next()) {
+			Row row = leftCursor.getRow();
+			readRow();
+			if (!JoinKeys.hasKey(row, leftColumns)) {
+				if (isLeftPreserved()) {
+					writeRow(output, row, null);
+				}
+				continue;
+			}
+			if ((previousLeftRow != null)
+					&& (JoinKeys.compare(previousLeftRow, leftColumns,
+							leftNumeric, row, leftColumns, leftNumeric) > 0)) {
+				throw new ResultSetException(
+						"LeftResultSet is not sorted on the join columns");
+			}
+			previousLeftRow = row;
+			return row;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the next right row that has a key. Rows without a key are
+	 * written to the output straight away if the right side is preserved.
+	 */
+	private Row nextRightRow(ResultSet output) throws ResultSetException,
+			PersistableException {
+		while (rightCursor.next()) {
+			Row row = rightCursor.getRow();
+			readRow();
+			if (!JoinKeys.hasKey(row, rightColumns)) {
+				if (isRightPreserved()) {
+					writeRow(output, null, row);
+				}
+				continue;
+			}
+			if ((previousRightRow != null)
+					&& (JoinKeys.compare(previousRightRow, rightColumns,
+							rightNumeric, row, rightColumns, rightNumeric) > 0)) {
+				throw new ResultSetException(
+						"RightResultSet is not sorted on the join columns");
+			}
+			previousRightRow = row;
+			return row;
+		}
+		return null;
+	}
+
+	private RowCursor openCursor(ResultSet resultSet, int[] columns)
+			throws ResultSetException {
+		ExternalSort sort = new ExternalSort(columns, memoryBudget,
+				tempDirectory);
+		if (Boolean.TRUE.equals(sorted)
+				|| ((sorted == null) && sort.isSorted(resultSet))) {
+			return new ResultSetCursor(resultSet);
+		}
+		progress.checkpoint();
+		RowCursor cursor = sort.sort(resultSet);
+		spilledRows += sort.getSpilledRows();
+		return cursor;
+	}
+
+	private void readRow() throws ResultSetException {
+		mergedRows++;
+		if ((mergedRows % CHECKPOINT_ROWS) == 0) {
+			progress.checkpoint();
+		}
+	}
+
+	private boolean isLeftPreserved() {
+		return (joinType == SortMergeJoinImplType.LEFTOUTER)
+				|| (joinType == SortMergeJoinImplType.FULLOUTER);
+	}
+
+	private boolean isRightPreserved() {
+		return (joinType == SortMergeJoinImplType.RIGHTOUTER)
+				|| (joinType == SortMergeJoinImplType.FULLOUTER);
+	}
+
+	private void writeRow(ResultSet output, Row leftRow, Row rightRow)
+			throws ResultSetException, PersistableException {
+		progress.addRowsEmitted(1);
+		output.appendRow();
+		if (leftRow != null) {
+			for (int columnI = 0; columnI < leftColumnCount; columnI++) {
+				output.updateObject(columnI, leftRow.getColumn(columnI));
+			}
+		}
+		if (rightRow != null) {
+			int outputColumn = leftColumnCount;
+			for (int columnI = 0; columnI < ignoreRightColumns.length; columnI++) {
+				if (!ignoreRightColumns[columnI]) {
+					output.updateObject(outputColumn,
+							rightRow.getColumn(columnI));
+					outputColumn++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the rows of a result set that is already sorted
+	 */
+	private static class ResultSetCursor implements RowCursor {
+		private ResultSet resultSet;
+		private boolean empty;
+		private Row row;
+
+		ResultSetCursor(ResultSet resultSet) throws ResultSetException {
+			this.resultSet = resultSet;
+			this.empty = resultSet.getSize() == 0;
+			resultSet.beforeFirst();
+		}
+
+		@Override
+		public boolean next() throws ResultSetException {
+			if (empty || !resultSet.next()) {
+				row = null;
+				return false;
+			}
+			row = resultSet.getCurrentRow();
+			return true;
+		}
+
+		@Override
+		public Row getRow() {
+			return row;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
+
+/**
+ * A temporary file that rows are spilled to when they do not fit in memory.
+ * Each row is stored with the key of its join columns, and optionally the
+ * byte key of its join columns, so the keys do not need to be computed again
+ * when it is read back. Only rows that have a key
+ * are spilled. Rows are first written to the file, and once the file has
+ * been read from no more rows can be written.
+ *
+ * @author Jeremy R. Easton-Marks
+ *
+ */
+class SpillFile implements RowSource {
+	private static final int BUFFER_SIZE = 16384;
+
+	private File file;
+	private int columnCount;
+	private long size;
+
+	private DataOutputStream out;
+	private DataInputStream in;
+	private long position;
+
+	private long currentKey;
+	private byte[] currentKeyBytes;
+	private Row currentRow;
+
+	/**
+	 * Creates a new spill file in the given directory
+	 *
+	 * @param directory
+	 *            Directory to create the file in
+	 * @param columnCount
+	 *            Number of columns in each row
+	 * @throws ResultSetException
+	 *             The file could not be created
+	 */
+	SpillFile(File directory, int columnCount) throws ResultSetException {
+		this.columnCount = columnCount;
+		try {
+			this.file = File.createTempFile("irct-join-", ".spill", directory);
+			this.file.deleteOnExit();
+			this.out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(this.file), BUFFER_SIZE));
+		} catch (IOException e) {
+			throw new ResultSetException("Unable to create spill file : "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * Appends a row to the end of the file
+	 *
+	 * @param key
+	 *            Key of the join columns of the row
+	 * @param row
+	 *            Row
+	 * @throws ResultSetException
+	 *             The row could not be written
+	 */
+	void write(long key, Row row) throws ResultSetException {
+		write(key, null, row);
+	}
+
+	/**
+	 * Appends a row to the end of the file along with its byte key
+	 *
+	 * @param key
+	 *            Key of the join columns of the row
+	 * @param keyBytes
+	 *            Byte key of the join columns of the row, or null
+	 * @param row
+	 *            Row
+	 * @throws ResultSetException
+	 *             The row could not be written
+	 */
+	void write(long key, byte[] keyBytes, Row row) throws ResultSetException {
+		if (out == null) {
+			throw new ResultSetException("Spill file is not writable");
+		}
+		try {
+			out.writeLong(key);
+			if (keyBytes == null) {
+				out.writeInt(-1);
+			} else {
+				out.writeInt(keyBytes.length);
+				out.write(keyBytes);
+			}
+			RowCodec.writeRow(out, row, columnCount);
+			size++;
+		} catch (IOException e) {
+			throw new ResultSetException("Unable to write to spill file : "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the number of rows in the file
+	 *
+	 * @return Number of rows
+	 */
+	long getSize() {
+		return size;
+	}
+
+	@Override
+	public void beforeFirst() throws ResultSetException {
+		try {
+			closeStreams();
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file), BUFFER_SIZE));
+			position = 0;
+		} catch (IOException e) {
+			throw new ResultSetException("Unable to read spill file : "
+					+ e.getMessage());
+		}
+	}
+
+	@Override
+	public boolean next() throws ResultSetException {
+		if (in == null) {
+			beforeFirst();
+		}
+		if (position >= size) {
+			currentRow = null;
+			return false;
+		}
+		try {
+			currentKey = in.readLong();
+			int keyLength = in.readInt();
+			if (keyLength < 0) {
+				currentKeyBytes = null;
+			} else {
+				currentKeyBytes = new byte[keyLength];
+				in.readFully(currentKeyBytes);
+			}
+			currentRow = RowCodec.readRow(in, columnCount);
+			position++;
+		} catch (IOException e) {
+			throw new ResultSetException("Unable to read spill file : "
+					+ e.getMessage());
+		}
+		return true;
+	}
+
+	@Override
+	public boolean hasKey() {
+		return true;
+	}
+
+	@Override
+	public long getKey() {
+		return currentKey;
+	}
+
+	@Override
+	public byte[] getKeyBytes() {
+		return currentKeyBytes;
+	}
+
+	@Override
+	public Row getRow() {
+		return currentRow;
+	}
+
+	/**
+	 * Closes the file and removes it from disk
+	 */
+	void delete() {
+		try {
+			closeStreams();
+		} catch (IOException e) {
+			// The file is being removed so there is nothing left to save
+		}
+		file.delete();
+	}
+
+	private void closeStreams() throws IOException {
+		if (out != null) {
+			out.close();
+			out = null;
+		}
+		if (in != null) {
+			in.close();
+			in = null;
+		}
+	}
+}
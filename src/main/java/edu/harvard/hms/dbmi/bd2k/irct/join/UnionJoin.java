@@ -3,9 +3,11 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package edu.harvard.hms.dbmi.bd2k.irct.join;
 
+import java.io.File;
 import java.util.Map;
 
 import edu.harvard.hms.dbmi.bd2k.irct.exception.JoinActionSetupException;
+import edu.harvard.hms.dbmi.bd2k.irct.join.SetOperationImpl.SetOperationImplType;
 import edu.harvard.hms.dbmi.bd2k.irct.model.join.Join;
 import edu.harvard.hms.dbmi.bd2k.irct.model.join.JoinImplementation;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.Result;
@@ -15,20 +17,35 @@ import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableExceptio
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Column;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
-import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSetImpl;
 import edu.harvard.hms.dbmi.bd2k.irct.model.security.SecureSession;
 
 /**
- * Performs a right outer join between two result sets
+ * Performs a union between two result sets with the same columns. By default
+ * every row of both result sets is kept. If the Distinct field is true
+ * duplicate rows are removed.
  * 
+ * The setup parameters memoryBudget and tempDirectory control how many bytes
+ * of rows are compared in memory before the result sets are partitioned to
+ * disk, and where the partitions are written.
  * 
  * @author Jeremy R. Easton-Marks
  *
  */
 public class UnionJoin implements JoinImplementation {
+	private long memoryBudget = Runtime.getRuntime().maxMemory() / 4;
+	private File tempDirectory;
+
 	@Override
 	public void setup(Map<String, Object> parameters)
 			throws JoinActionSetupException {
+		this.memoryBudget = JoinParameters.getLong(parameters, "memoryBudget",
+				Runtime.getRuntime().maxMemory() / 4);
+		if (this.memoryBudget < 1) {
+			throw new JoinActionSetupException(
+					"memoryBudget must be at least 1");
+		}
+		this.tempDirectory = JoinParameters.getDirectory(parameters,
+				"tempDirectory");
 	}
 
 	@Override
@@ -69,29 +86,31 @@ public class UnionJoin implements JoinImplementation {
 		}
 		
 		
-		//Create new computed results with the same columns
-		ResultSetImpl computedResults = (ResultSetImpl) result.getData();
-		
-		for (int rightColumnIterator = 0; rightColumnIterator < rightResultSet.getColumnSize(); rightColumnIterator++) {
-				computedResults.appendColumn(rightResultSet.getColumn(rightColumnIterator));
-		}
-		
-		// Loop through the Left Result Set
-		leftResultSet.beforeFirst();
-		while(leftResultSet.next()) {
-			computedResults.appendRow();
-			for (int leftColumnIterator = 0; leftColumnIterator < leftResultSet.getColumnSize(); leftColumnIterator++) {
-				computedResults.updateObject(leftColumnIterator, ((ResultSetImpl) leftResultSet).getObject(leftColumnIterator));
-			}
+		SetOperationImplType operation = SetOperationImplType.UNIONALL;
+		String distinct = join.getStringValues().get("Distinct");
+		if ((distinct != null) && Boolean.valueOf(distinct.trim())) {
+			operation = SetOperationImplType.UNION;
 		}
-		
-		// Loop through the Right Result Set
-		rightResultSet.beforeFirst();
-		while(rightResultSet.next()) {
-			computedResults.appendRow();
-			for (int rightColumnIterator = 0; rightColumnIterator < rightResultSet.getColumnSize(); rightColumnIterator++) {
-				computedResults.updateObject(rightColumnIterator, ((ResultSetImpl) rightResultSet).getObject(rightColumnIterator));
+
+		SetOperationImpl setOperation = new SetOperationImpl(leftResultSet,
+				rightResultSet, operation, this.memoryBudget,
+				this.tempDirectory);
+
+		ResultSet computedResults = (ResultSet) result.getData();
+
+		JoinProgress progress = JoinProgress.start(result);
+		setOperation.setProgress(progress);
+		try {
+			setOperation.join(computedResults);
+		} catch (ResultSetException rse) {
+			if (!progress.isCancelled()) {
+				throw rse;
 			}
+			result.setResultStatus(ResultStatus.ERROR);
+			result.setMessage("Join was cancelled : " + progress);
+			return result;
+		} finally {
+			progress.finish();
 		}
 
 		computedResults.beforeFirst();
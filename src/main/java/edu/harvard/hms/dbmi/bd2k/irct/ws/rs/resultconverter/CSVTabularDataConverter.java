@@ -16,6 +16,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import edu.harvard.hms.dbmi.bd2k.irct.dataconverter.ResultDataConverter;
+import edu.harvard.hms.dbmi.bd2k.irct.join.ColumnBatch;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.Result;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultDataType;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
@@ -78,12 +79,16 @@ public class CSVTabularDataConverter implements ResultDataConverter {
 					printer.printRecord((Object[]) columnHeaders);
 
 					rs.beforeFirst();
-					while (rs.next()) {
-						String[] row = new String[rs.getColumnSize()];
-						for (int i = 0; i < rs.getColumnSize(); i++) {
-							row[i] = rs.getString(i);
+					ColumnBatch batch = new ColumnBatch(rs,
+							ColumnBatch.DEFAULT_CAPACITY);
+					String[] row = new String[rs.getColumnSize()];
+					while (batch.fill(rs) > 0) {
+						for (int r = 0; r < batch.size(); r++) {
+							for (int i = 0; i < row.length; i++) {
+								row[i] = batch.getString(i, r);
+							}
+							printer.printRecord((Object[]) row);
 						}
-						printer.printRecord((Object[]) row);
 					}
 					printer.flush();
 					
@@ -19,6 +19,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import edu.harvard.hms.dbmi.bd2k.irct.dataconverter.ResultDataConverter;
+import edu.harvard.hms.dbmi.bd2k.irct.join.ColumnBatch;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.Result;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultDataType;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
@@ -87,18 +88,26 @@ public class JSONTabularDataConverter implements ResultDataConverter {
 					jg.writeStartArray("data");
 					
 					rs.beforeFirst();
-					while (rs.next()) {
-						jg.writeStartArray(); //Begin Row Array
-						for (int columnIndex = 0; columnIndex < rs.getColumnSize(); columnIndex++) {
-							String value = rs.getString(columnIndex);
-							if(value != null) {
-								jg.writeStartObject();
-								jg.write(rs.getColumn(columnIndex).getName(), rs.getString(columnIndex));
-								jg.writeEnd();
+					ColumnBatch batch = new ColumnBatch(rs,
+							ColumnBatch.DEFAULT_CAPACITY);
+					String[] columnNames = new String[rs.getColumnSize()];
+					for (int columnIndex = 0; columnIndex < columnNames.length; columnIndex++) {
+						columnNames[columnIndex] = rs.getColumn(columnIndex).getName();
+					}
+					while (batch.fill(rs) > 0) {
+						for (int rowIndex = 0; rowIndex < batch.size(); rowIndex++) {
+							jg.writeStartArray(); //Begin Row Array
+							for (int columnIndex = 0; columnIndex < columnNames.length; columnIndex++) {
+								String value = batch.getString(columnIndex, rowIndex);
+								if(value != null) {
+									jg.writeStartObject();
+									jg.write(columnNames[columnIndex], value);
+									jg.writeEnd();
+								}
+								
 							}
-							
+							jg.writeEnd(); //End Row Array
 						}
-						jg.writeEnd(); //End Row Array
 					}
 					
 					
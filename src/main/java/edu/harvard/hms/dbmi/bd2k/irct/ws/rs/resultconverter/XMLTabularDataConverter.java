@@ -18,6 +18,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import edu.harvard.hms.dbmi.bd2k.irct.dataconverter.ResultDataConverter;
+import edu.harvard.hms.dbmi.bd2k.irct.join.ColumnBatch;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.Result;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultDataType;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
@@ -74,14 +75,22 @@ public class XMLTabularDataConverter implements ResultDataConverter {
 					xtw.writeStartDocument("utf-8", "1.0");
 					xtw.writeStartElement("results");
 					rs.beforeFirst();
-					while (rs.next()) {
-						xtw.writeStartElement("result");
-						for (int i = 0; i < rs.getColumnSize(); i++) {
-							xtw.writeStartElement(rs.getColumn(i).getName().replace(" ", "_"));
-							xtw.writeCharacters(rs.getString(i));
+					ColumnBatch batch = new ColumnBatch(rs,
+							ColumnBatch.DEFAULT_CAPACITY);
+					String[] elementNames = new String[rs.getColumnSize()];
+					for (int i = 0; i < elementNames.length; i++) {
+						elementNames[i] = rs.getColumn(i).getName().replace(" ", "_");
+					}
+					while (batch.fill(rs) > 0) {
+						for (int r = 0; r < batch.size(); r++) {
+							xtw.writeStartElement("result");
+							for (int i = 0; i < elementNames.length; i++) {
+								xtw.writeStartElement(elementNames[i]);
+								xtw.writeCharacters(batch.getString(i, r));
+								xtw.writeEndElement();
+							}
 							xtw.writeEndElement();
 						}
-						xtw.writeEndElement();
 					}
 					xtw.writeEndElement();
 					xtw.writeEndDocument();
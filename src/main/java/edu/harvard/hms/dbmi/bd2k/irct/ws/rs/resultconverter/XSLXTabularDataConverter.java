@@ -19,6 +19,7 @@ import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
 import edu.harvard.hms.dbmi.bd2k.irct.dataconverter.ResultDataConverter;
+import edu.harvard.hms.dbmi.bd2k.irct.join.ColumnBatch;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.Result;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultDataType;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
@@ -90,17 +91,21 @@ public class XSLXTabularDataConverter implements ResultDataConverter {
 
 					// Add data
 					rs.beforeFirst();
+					ColumnBatch batch = new ColumnBatch(rs,
+							ColumnBatch.DEFAULT_CAPACITY);
 					int rowNum = 1;
-					while (rs.next()) {
-						Row row = sh.createRow(rowNum);
-						for (int i = 0; i < rs.getColumnSize(); i++) {
-							String value = rs.getString(i);
-							Cell cell = row.createCell(i);
-							if (value != null) {
-								cell.setCellValue(rs.getString(i));
+					while (batch.fill(rs) > 0) {
+						for (int r = 0; r < batch.size(); r++) {
+							Row row = sh.createRow(rowNum);
+							for (int i = 0; i < batch.getColumnCount(); i++) {
+								String value = batch.getString(i, r);
+								Cell cell = row.createCell(i);
+								if (value != null) {
+									cell.setCellValue(value);
+								}
 							}
+							rowNum++;
 						}
-						rowNum++;
 					}
 					wb.write(outputStream);
 
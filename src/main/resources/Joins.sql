@@ -32,12 +32,97 @@ set @UJID = @LOJID + 5;
 set @UJ_LEFTRESULTSET_ID = @LOJ_LEFTRESULTSET_ID + 20;
 set @UJ_RIGHTRESULTSET_ID = @UJ_LEFTRESULTSET_ID + 1;
 
+-- SORT MERGE JOIN
+set @SMJID = @LOJID + 6;
+set @SMJ_LEFTRESULTSET_ID = @LOJ_LEFTRESULTSET_ID + 22;
+set @SMJ_LEFTCOLUMN_ID = @SMJ_LEFTRESULTSET_ID + 1;
+set @SMJ_RIGHTRESULTSET_ID = @SMJ_LEFTRESULTSET_ID + 2;
+set @SMJ_RIGHTCOLUMN_ID = @SMJ_LEFTRESULTSET_ID + 3;
+set @SMJ_JOINTYPE_ID = @SMJ_LEFTRESULTSET_ID + 4;
+set @SMJ_SORTED_ID = @SMJ_LEFTRESULTSET_ID + 5;
+
+-- MULTI WAY HASH JOIN
+set @MWJID = @LOJID + 7;
+set @MWJ_RESULTSET1_ID = @LOJ_LEFTRESULTSET_ID + 28;
+set @MWJ_RESULTSET2_ID = @MWJ_RESULTSET1_ID + 1;
+set @MWJ_RESULTSET3_ID = @MWJ_RESULTSET1_ID + 2;
+set @MWJ_RESULTSET4_ID = @MWJ_RESULTSET1_ID + 3;
+set @MWJ_RESULTSET5_ID = @MWJ_RESULTSET1_ID + 4;
+set @MWJ_RESULTSET6_ID = @MWJ_RESULTSET1_ID + 5;
+set @MWJ_COLUMN_ID = @MWJ_RESULTSET1_ID + 6;
+set @MWJ_JOINTYPE_ID = @MWJ_RESULTSET1_ID + 7;
+
+-- UNION DISTINCT
+set @UJ_DISTINCT_ID = @LOJ_LEFTRESULTSET_ID + 36;
+
+-- INTERSECT
+set @IXJID = @LOJID + 8;
+set @IXJ_LEFTRESULTSET_ID = @LOJ_LEFTRESULTSET_ID + 37;
+set @IXJ_RIGHTRESULTSET_ID = @IXJ_LEFTRESULTSET_ID + 1;
+
+-- EXCEPT
+set @EXJID = @LOJID + 9;
+set @EXJ_LEFTRESULTSET_ID = @LOJ_LEFTRESULTSET_ID + 39;
+set @EXJ_RIGHTRESULTSET_ID = @EXJ_LEFTRESULTSET_ID + 1;
+
+-- LEFT SEMI JOIN
+set @LSJID = @LOJID + 10;
+set @LSJ_LEFTRESULTSET_ID = @LOJ_LEFTRESULTSET_ID + 41;
+set @LSJ_LEFTCOLUMN_ID = @LSJ_LEFTRESULTSET_ID + 1;
+set @LSJ_RIGHTRESULTSET_ID = @LSJ_LEFTRESULTSET_ID + 2;
+set @LSJ_RIGHTCOLUMN_ID = @LSJ_LEFTRESULTSET_ID + 3;
+
+-- LEFT ANTI JOIN
+set @LAJID = @LOJID + 11;
+set @LAJ_LEFTRESULTSET_ID = @LOJ_LEFTRESULTSET_ID + 45;
+set @LAJ_LEFTCOLUMN_ID = @LAJ_LEFTRESULTSET_ID + 1;
+set @LAJ_RIGHTRESULTSET_ID = @LAJ_LEFTRESULTSET_ID + 2;
+set @LAJ_RIGHTCOLUMN_ID = @LAJ_LEFTRESULTSET_ID + 3;
+
+-- INTERVAL JOIN
+set @IVJID = @LOJID + 12;
+set @IVJ_LEFTRESULTSET_ID = @LOJ_LEFTRESULTSET_ID + 49;
+set @IVJ_LEFTCOLUMN_ID = @IVJ_LEFTRESULTSET_ID + 1;
+set @IVJ_RIGHTRESULTSET_ID = @IVJ_LEFTRESULTSET_ID + 2;
+set @IVJ_RIGHTCOLUMN_ID = @IVJ_LEFTRESULTSET_ID + 3;
+set @IVJ_LEFTRANGECOLUMN_ID = @IVJ_LEFTRESULTSET_ID + 4;
+set @IVJ_RIGHTRANGECOLUMN_ID = @IVJ_LEFTRESULTSET_ID + 5;
+set @IVJ_MINOFFSET_ID = @IVJ_LEFTRESULTSET_ID + 6;
+set @IVJ_MAXOFFSET_ID = @IVJ_LEFTRESULTSET_ID + 7;
+set @IVJ_JOINTYPE_ID = @IVJ_LEFTRESULTSET_ID + 8;
+
+-- ADAPTIVE JOIN
+set @AJID = @LOJID + 13;
+set @AJ_LEFTRESULTSET_ID = @LOJ_LEFTRESULTSET_ID + 58;
+set @AJ_LEFTCOLUMN_ID = @AJ_LEFTRESULTSET_ID + 1;
+set @AJ_RIGHTRESULTSET_ID = @AJ_LEFTRESULTSET_ID + 2;
+set @AJ_RIGHTCOLUMN_ID = @AJ_LEFTRESULTSET_ID + 3;
+set @AJ_JOINTYPE_ID = @AJ_LEFTRESULTSET_ID + 4;
+set @AJ_SORTED_ID = @AJ_LEFTRESULTSET_ID + 5;
+
+-- OUTPUT COLUMNS OF THE HASH JOINS
+set @LOJ_COLUMNS_ID = @LOJ_LEFTRESULTSET_ID + 64;
+set @ROJ_COLUMNS_ID = @LOJ_LEFTRESULTSET_ID + 65;
+set @FOJ_COLUMNS_ID = @LOJ_LEFTRESULTSET_ID + 66;
+set @IJ_COLUMNS_ID = @LOJ_LEFTRESULTSET_ID + 67;
+
+-- INCREMENTAL INNER JOIN
+set @IJ_INCREMENTAL_ID = @LOJ_LEFTRESULTSET_ID + 68;
+
 -- Insert into Join Type
 insert into IRCTJoin(id, joinImplementation, description, displayName, name) values (@LOJID, 'edu.harvard.hms.dbmi.bd2k.irct.join.LeftOuterHashJoin', 'Performs a left outer join on two result sets', 'Left Outer Join', 'leftOuterJoin');
 insert into IRCTJoin(id, joinImplementation, description, displayName, name) values (@ROJID, 'edu.harvard.hms.dbmi.bd2k.irct.join.RightOuterHashJoin', 'Performs a right outer join on two result sets', 'Right Outer Join', 'rightOuterJoin');
 insert into IRCTJoin(id, joinImplementation, description, displayName, name) values (@FOJID, 'edu.harvard.hms.dbmi.bd2k.irct.join.FullOuterHashJoin', 'Performs a full outer join on two result sets', 'Full Outer Join', 'fullOuterJoin');
 insert into IRCTJoin(id, joinImplementation, description, displayName, name) values (@IJID, 'edu.harvard.hms.dbmi.bd2k.irct.join.InnerHashJoin', 'Performs an inner join on two result sets', 'Inner Join', 'innerJoin');
 insert into IRCTJoin(id, joinImplementation, description, displayName, name) values (@UJID, 'edu.harvard.hms.dbmi.bd2k.irct.join.UnionJoin', 'Performs an union join on two result sets', 'Union Join', 'unionJoin');
+insert into IRCTJoin(id, joinImplementation, description, displayName, name) values (@SMJID, 'edu.harvard.hms.dbmi.bd2k.irct.join.SortMergeJoin', 'Performs a sort merge join on two result sets', 'Sort Merge Join', 'sortMergeJoin');
+insert into IRCTJoin(id, joinImplementation, description, displayName, name) values (@MWJID, 'edu.harvard.hms.dbmi.bd2k.irct.join.MultiWayHashJoin', 'Performs a join on several result sets that share a column', 'Multi Way Join', 'multiWayJoin');
+insert into IRCTJoin(id, joinImplementation, description, displayName, name) values (@IXJID, 'edu.harvard.hms.dbmi.bd2k.irct.join.IntersectJoin', 'Returns the distinct rows of the left result set that are also in the right result set', 'Intersect Join', 'intersectJoin');
+insert into IRCTJoin(id, joinImplementation, description, displayName, name) values (@EXJID, 'edu.harvard.hms.dbmi.bd2k.irct.join.ExceptJoin', 'Returns the distinct rows of the left result set that are not in the right result set', 'Except Join', 'exceptJoin');
+insert into IRCTJoin(id, joinImplementation, description, displayName, name) values (@LSJID, 'edu.harvard.hms.dbmi.bd2k.irct.join.LeftSemiHashJoin', 'Returns the rows of the left result set that have a match in the right result set', 'Left Semi Join', 'leftSemiJoin');
+insert into IRCTJoin(id, joinImplementation, description, displayName, name) values (@LAJID, 'edu.harvard.hms.dbmi.bd2k.irct.join.LeftAntiHashJoin', 'Returns the rows of the left result set that have no match in the right result set', 'Left Anti Join', 'leftAntiJoin');
+insert into IRCTJoin(id, joinImplementation, description, displayName, name) values (@IVJID, 'edu.harvard.hms.dbmi.bd2k.irct.join.IntervalJoin', 'Joins the rows of two result sets that share a key and whose range columns lie within a window of each other', 'Interval Join', 'intervalJoin');
+insert into IRCTJoin(id, joinImplementation, description, displayName, name) values (@AJID, 'edu.harvard.hms.dbmi.bd2k.irct.join.AdaptiveJoin', 'Performs a join on two result sets with the plan that is estimated to be the cheapest', 'Adaptive Join', 'adaptiveJoin');
 
 -- Insert into fields
 insert into Field(id, description, name, path, required) values (@LOJ_LEFTRESULTSET_ID, 'Result set on left side of join', 'Left Result Set', 'LeftResultSet', 1);
@@ -81,6 +166,107 @@ insert into Field(id, description, name, path, required) values (@UJ_RIGHTRESULT
 insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@UJID, @UJ_LEFTRESULTSET_ID);
 insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@UJID, @UJ_RIGHTRESULTSET_ID);
 
+insert into Field(id, description, name, path, required) values (@SMJ_LEFTRESULTSET_ID, 'Result set on left side of join', 'Left Result Set', 'LeftResultSet', 1);
+insert into Field(id, description, name, path, required) values (@SMJ_LEFTCOLUMN_ID, 'Column for result set on left side of join', 'Left Result Set Column', 'LeftColumn', 1);
+insert into Field(id, description, name, path, required) values (@SMJ_RIGHTRESULTSET_ID, 'Result set on right side of join', 'Right Result Set', 'RightResultSet', 1);
+insert into Field(id, description, name, path, required) values (@SMJ_RIGHTCOLUMN_ID, 'Column for result set on right side of join', 'Right Result Set Column', 'RightColumn', 1);
+insert into Field(id, description, name, path, required) values (@SMJ_JOINTYPE_ID, 'Type of join: inner, leftOuter, rightOuter or fullOuter', 'Join Type', 'JoinType', 0);
+insert into Field(id, description, name, path, required) values (@SMJ_SORTED_ID, 'True if both result sets are already sorted on their join columns', 'Sorted', 'Sorted', 0);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@SMJID, @SMJ_LEFTRESULTSET_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@SMJID, @SMJ_LEFTCOLUMN_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@SMJID, @SMJ_RIGHTRESULTSET_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@SMJID, @SMJ_RIGHTCOLUMN_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@SMJID, @SMJ_JOINTYPE_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@SMJID, @SMJ_SORTED_ID);
+
+insert into Field(id, description, name, path, required) values (@MWJ_RESULTSET1_ID, 'The first result set to join', 'Result Set 1', 'ResultSet1', 1);
+insert into Field(id, description, name, path, required) values (@MWJ_RESULTSET2_ID, 'The second result set to join', 'Result Set 2', 'ResultSet2', 1);
+insert into Field(id, description, name, path, required) values (@MWJ_RESULTSET3_ID, 'The third result set to join', 'Result Set 3', 'ResultSet3', 0);
+insert into Field(id, description, name, path, required) values (@MWJ_RESULTSET4_ID, 'The fourth result set to join', 'Result Set 4', 'ResultSet4', 0);
+insert into Field(id, description, name, path, required) values (@MWJ_RESULTSET5_ID, 'The fifth result set to join', 'Result Set 5', 'ResultSet5', 0);
+insert into Field(id, description, name, path, required) values (@MWJ_RESULTSET6_ID, 'The sixth result set to join', 'Result Set 6', 'ResultSet6', 0);
+insert into Field(id, description, name, path, required) values (@MWJ_COLUMN_ID, 'Column that all the result sets are joined on', 'Column', 'Column', 1);
+insert into Field(id, description, name, path, required) values (@MWJ_JOINTYPE_ID, 'Type of join: inner or leftOuter', 'Join Type', 'JoinType', 0);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@MWJID, @MWJ_RESULTSET1_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@MWJID, @MWJ_RESULTSET2_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@MWJID, @MWJ_RESULTSET3_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@MWJID, @MWJ_RESULTSET4_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@MWJID, @MWJ_RESULTSET5_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@MWJID, @MWJ_RESULTSET6_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@MWJID, @MWJ_COLUMN_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@MWJID, @MWJ_JOINTYPE_ID);
+
+insert into Field(id, description, name, path, required) values (@UJ_DISTINCT_ID, 'True to remove duplicate rows', 'Distinct', 'Distinct', 0);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@UJID, @UJ_DISTINCT_ID);
+
+insert into Field(id, description, name, path, required) values (@IXJ_LEFTRESULTSET_ID, 'Result set on left side of join', 'Left Result Set', 'LeftResultSet', 1);
+insert into Field(id, description, name, path, required) values (@IXJ_RIGHTRESULTSET_ID, 'Result set on right side of join', 'Right Result Set', 'RightResultSet', 1);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@IXJID, @IXJ_LEFTRESULTSET_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@IXJID, @IXJ_RIGHTRESULTSET_ID);
+
+insert into Field(id, description, name, path, required) values (@EXJ_LEFTRESULTSET_ID, 'Result set on left side of join', 'Left Result Set', 'LeftResultSet', 1);
+insert into Field(id, description, name, path, required) values (@EXJ_RIGHTRESULTSET_ID, 'Result set on right side of join', 'Right Result Set', 'RightResultSet', 1);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@EXJID, @EXJ_LEFTRESULTSET_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@EXJID, @EXJ_RIGHTRESULTSET_ID);
+
+insert into Field(id, description, name, path, required) values (@LSJ_LEFTRESULTSET_ID, 'Result set on left side of join', 'Left Result Set', 'LeftResultSet', 1);
+insert into Field(id, description, name, path, required) values (@LSJ_LEFTCOLUMN_ID, 'Column for result set on left side of join', 'Left Result Set Column', 'LeftColumn', 1);
+insert into Field(id, description, name, path, required) values (@LSJ_RIGHTRESULTSET_ID, 'Result set on right side of join', 'Right Result Set', 'RightResultSet', 1);
+insert into Field(id, description, name, path, required) values (@LSJ_RIGHTCOLUMN_ID, 'Column for result set on right side of join', 'Right Result Set Column', 'RightColumn', 1);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@LSJID, @LSJ_LEFTRESULTSET_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@LSJID, @LSJ_LEFTCOLUMN_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@LSJID, @LSJ_RIGHTRESULTSET_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@LSJID, @LSJ_RIGHTCOLUMN_ID);
+
+insert into Field(id, description, name, path, required) values (@LAJ_LEFTRESULTSET_ID, 'Result set on left side of join', 'Left Result Set', 'LeftResultSet', 1);
+insert into Field(id, description, name, path, required) values (@LAJ_LEFTCOLUMN_ID, 'Column for result set on left side of join', 'Left Result Set Column', 'LeftColumn', 1);
+insert into Field(id, description, name, path, required) values (@LAJ_RIGHTRESULTSET_ID, 'Result set on right side of join', 'Right Result Set', 'RightResultSet', 1);
+insert into Field(id, description, name, path, required) values (@LAJ_RIGHTCOLUMN_ID, 'Column for result set on right side of join', 'Right Result Set Column', 'RightColumn', 1);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@LAJID, @LAJ_LEFTRESULTSET_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@LAJID, @LAJ_LEFTCOLUMN_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@LAJID, @LAJ_RIGHTRESULTSET_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@LAJID, @LAJ_RIGHTCOLUMN_ID);
+insert into Field(id, description, name, path, required) values (@IVJ_LEFTRESULTSET_ID, 'Result set on left side of join', 'Left Result Set', 'LeftResultSet', 1);
+insert into Field(id, description, name, path, required) values (@IVJ_LEFTCOLUMN_ID, 'Column for result set on left side of join', 'Left Result Set Column', 'LeftColumn', 1);
+insert into Field(id, description, name, path, required) values (@IVJ_RIGHTRESULTSET_ID, 'Result set on right side of join', 'Right Result Set', 'RightResultSet', 1);
+insert into Field(id, description, name, path, required) values (@IVJ_RIGHTCOLUMN_ID, 'Column for result set on right side of join', 'Right Result Set Column', 'RightColumn', 1);
+insert into Field(id, description, name, path, required) values (@IVJ_LEFTRANGECOLUMN_ID, 'Number or date column of the left result set the window starts from', 'Left Range Column', 'LeftRangeColumn', 1);
+insert into Field(id, description, name, path, required) values (@IVJ_RIGHTRANGECOLUMN_ID, 'Number or date column of the right result set that has to lie within the window', 'Right Range Column', 'RightRangeColumn', 1);
+insert into Field(id, description, name, path, required) values (@IVJ_MINOFFSET_ID, 'Start of the window relative to the left range column, in days for dates (default: 0)', 'Minimum Offset', 'MinOffset', 0);
+insert into Field(id, description, name, path, required) values (@IVJ_MAXOFFSET_ID, 'End of the window relative to the left range column, in days for dates (default: 0)', 'Maximum Offset', 'MaxOffset', 0);
+insert into Field(id, description, name, path, required) values (@IVJ_JOINTYPE_ID, 'Type of join: inner or leftOuter', 'Join Type', 'JoinType', 0);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@IVJID, @IVJ_LEFTRESULTSET_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@IVJID, @IVJ_LEFTCOLUMN_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@IVJID, @IVJ_RIGHTRESULTSET_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@IVJID, @IVJ_RIGHTCOLUMN_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@IVJID, @IVJ_LEFTRANGECOLUMN_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@IVJID, @IVJ_RIGHTRANGECOLUMN_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@IVJID, @IVJ_MINOFFSET_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@IVJID, @IVJ_MAXOFFSET_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@IVJID, @IVJ_JOINTYPE_ID);
+insert into Field(id, description, name, path, required) values (@AJ_LEFTRESULTSET_ID, 'Result set on left side of join', 'Left Result Set', 'LeftResultSet', 1);
+insert into Field(id, description, name, path, required) values (@AJ_LEFTCOLUMN_ID, 'Column for result set on left side of join', 'Left Result Set Column', 'LeftColumn', 1);
+insert into Field(id, description, name, path, required) values (@AJ_RIGHTRESULTSET_ID, 'Result set on right side of join', 'Right Result Set', 'RightResultSet', 1);
+insert into Field(id, description, name, path, required) values (@AJ_RIGHTCOLUMN_ID, 'Column for result set on right side of join', 'Right Result Set Column', 'RightColumn', 1);
+insert into Field(id, description, name, path, required) values (@AJ_JOINTYPE_ID, 'Type of join: inner, leftOuter, rightOuter or fullOuter', 'Join Type', 'JoinType', 0);
+insert into Field(id, description, name, path, required) values (@AJ_SORTED_ID, 'True if both result sets are already sorted on their join columns', 'Sorted', 'Sorted', 0);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@AJID, @AJ_LEFTRESULTSET_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@AJID, @AJ_LEFTCOLUMN_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@AJID, @AJ_RIGHTRESULTSET_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@AJID, @AJ_RIGHTCOLUMN_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@AJID, @AJ_JOINTYPE_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@AJID, @AJ_SORTED_ID);
+insert into Field(id, description, name, path, required) values (@LOJ_COLUMNS_ID, 'Comma separated names of the output columns to keep (default: all)', 'Columns', 'Columns', 0);
+insert into Field(id, description, name, path, required) values (@ROJ_COLUMNS_ID, 'Comma separated names of the output columns to keep (default: all)', 'Columns', 'Columns', 0);
+insert into Field(id, description, name, path, required) values (@FOJ_COLUMNS_ID, 'Comma separated names of the output columns to keep (default: all)', 'Columns', 'Columns', 0);
+insert into Field(id, description, name, path, required) values (@IJ_COLUMNS_ID, 'Comma separated names of the output columns to keep (default: all)', 'Columns', 'Columns', 0);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@LOJID, @LOJ_COLUMNS_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@ROJID, @ROJ_COLUMNS_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@FOJID, @FOJ_COLUMNS_ID);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@IJID, @IJ_COLUMNS_ID);
+insert into Field(id, description, name, path, required) values (@IJ_INCREMENTAL_ID, 'True to only join the rows appended to the results since the join was last run', 'Incremental', 'Incremental', 0);
+insert into IRCTJoin_Field(IRCTJoin_id, Fields_id) values (@IJID, @IJ_INCREMENTAL_ID);
+
 -- Insert into datatypes
 insert into Field_dataTypes(Field_Id, dataTypes) values (@LOJ_LEFTRESULTSET_ID ,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:RESULTSET');
 insert into Field_dataTypes(Field_Id, dataTypes) values (@LOJ_LEFTCOLUMN_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:COLUMN');
@@ -104,3 +290,57 @@ insert into Field_dataTypes(Field_Id, dataTypes) values (@IJ_RIGHTCOLUMN_ID,'edu
 
 insert into Field_dataTypes(Field_Id, dataTypes) values (@UJ_LEFTRESULTSET_ID ,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:RESULTSET');
 insert into Field_dataTypes(Field_Id, dataTypes) values (@UJ_RIGHTRESULTSET_ID ,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:RESULTSET');
+
+insert into Field_dataTypes(Field_Id, dataTypes) values (@SMJ_LEFTRESULTSET_ID ,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:RESULTSET');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@SMJ_LEFTCOLUMN_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:COLUMN');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@SMJ_RIGHTRESULTSET_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:RESULTSET');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@SMJ_RIGHTCOLUMN_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:COLUMN');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@SMJ_JOINTYPE_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:STRING');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@SMJ_SORTED_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:STRING');
+
+insert into Field_dataTypes(Field_Id, dataTypes) values (@MWJ_RESULTSET1_ID ,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:RESULTSET');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@MWJ_RESULTSET2_ID ,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:RESULTSET');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@MWJ_RESULTSET3_ID ,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:RESULTSET');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@MWJ_RESULTSET4_ID ,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:RESULTSET');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@MWJ_RESULTSET5_ID ,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:RESULTSET');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@MWJ_RESULTSET6_ID ,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:RESULTSET');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@MWJ_COLUMN_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:COLUMN');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@MWJ_JOINTYPE_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:STRING');
+
+insert into Field_dataTypes(Field_Id, dataTypes) values (@UJ_DISTINCT_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:STRING');
+
+insert into Field_dataTypes(Field_Id, dataTypes) values (@IXJ_LEFTRESULTSET_ID ,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:RESULTSET');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@IXJ_RIGHTRESULTSET_ID ,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:RESULTSET');
+
+insert into Field_dataTypes(Field_Id, dataTypes) values (@EXJ_LEFTRESULTSET_ID ,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:RESULTSET');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@EXJ_RIGHTRESULTSET_ID ,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:RESULTSET');
+
+insert into Field_dataTypes(Field_Id, dataTypes) values (@LSJ_LEFTRESULTSET_ID ,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:RESULTSET');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@LSJ_LEFTCOLUMN_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:COLUMN');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@LSJ_RIGHTRESULTSET_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:RESULTSET');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@LSJ_RIGHTCOLUMN_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:COLUMN');
+
+insert into Field_dataTypes(Field_Id, dataTypes) values (@LAJ_LEFTRESULTSET_ID ,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:RESULTSET');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@LAJ_LEFTCOLUMN_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:COLUMN');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@LAJ_RIGHTRESULTSET_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:RESULTSET');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@LAJ_RIGHTCOLUMN_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:COLUMN');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@IVJ_LEFTRESULTSET_ID ,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:RESULTSET');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@IVJ_LEFTCOLUMN_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:COLUMN');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@IVJ_RIGHTRESULTSET_ID ,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:RESULTSET');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@IVJ_RIGHTCOLUMN_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:COLUMN');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@IVJ_LEFTRANGECOLUMN_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:COLUMN');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@IVJ_RIGHTRANGECOLUMN_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:COLUMN');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@IVJ_MINOFFSET_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:STRING');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@IVJ_MAXOFFSET_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:STRING');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@IVJ_JOINTYPE_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:STRING');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@AJ_LEFTRESULTSET_ID ,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:RESULTSET');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@AJ_LEFTCOLUMN_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:COLUMN');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@AJ_RIGHTRESULTSET_ID ,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:RESULTSET');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@AJ_RIGHTCOLUMN_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:COLUMN');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@AJ_JOINTYPE_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:STRING');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@AJ_SORTED_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:STRING');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@LOJ_COLUMNS_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:STRING');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@ROJ_COLUMNS_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:STRING');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@FOJ_COLUMNS_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:STRING');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@IJ_COLUMNS_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:STRING');
+insert into Field_dataTypes(Field_Id, dataTypes) values (@IJ_INCREMENTAL_ID,'edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType:STRING');
@@ -0,0 +1,573 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join.test;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import edu.harvard.hms.dbmi.bd2k.irct.exception.JoinActionSetupException;
+import edu.harvard.hms.dbmi.bd2k.irct.join.AdaptiveJoin;
+import edu.harvard.hms.dbmi.bd2k.irct.join.JoinProgress;
+import edu.harvard.hms.dbmi.bd2k.irct.model.join.Join;
+import edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.Result;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultStatus;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Column;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Row;
+import edu.harvard.hms.dbmi.bd2k.irct.model.security.SecureSession;
+
+public class AdaptiveJoinTest {
+
+	/**
+	 * Tests the creation of an Adaptive Join
+	 *
+	 */
+	@Test
+	public void testSetup() {
+		AdaptiveJoin aj = new AdaptiveJoin();
+		try {
+			aj.setup(new HashMap<String, Object>());
+			assertNotNull(aj);
+		} catch (JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	/**
+	 * Runs a join between two small result sets that are not sorted, which
+	 * should be run as an in memory hash join
+	 */
+	@Test
+	public void testRunHash() {
+		Result result = runJoin(createParameters("1", null),
+				createLeftResult(), createUnsortedRightResult(), null);
+
+		assertEquals("ResultStatus is not COMPLETE", ResultStatus.COMPLETE,
+				result.getResultStatus());
+		assertTrue("Plan is not HASH : " + result.getMessage(), result
+				.getMessage().startsWith("Plan : HASH,"));
+		assertResult(result, createProbeOrderComparator());
+		// Three rows are built and three are probed
+		assertEquals("Actual cost is not equal", 9,
+				JoinTestUtil.getStatistic(result.getMessage(), "Actual cost"));
+		assertEquals("Actual cost is not equal to the estimated cost",
+				JoinTestUtil.getStatistic(result.getMessage(),
+						"Estimated cost"), JoinTestUtil.getStatistic(
+						result.getMessage(), "Actual cost"));
+	}
+
+	/**
+	 * Runs a join between two sorted result sets, which should be run as a
+	 * sort merge join
+	 */
+	@Test
+	public void testRunSortMerge() {
+		Result result = runJoin(createParameters("1", null),
+				createLeftResult(), createRightResult(), null);
+
+		assertEquals("ResultStatus is not COMPLETE", ResultStatus.COMPLETE,
+				result.getResultStatus());
+		assertTrue("Plan is not SORT_MERGE : " + result.getMessage(), result
+				.getMessage().startsWith("Plan : SORT_MERGE,"));
+		assertResult(result, createComparator());
+	}
+
+	/**
+	 * Runs a join between two unsorted result sets that do not fit in the
+	 * memory budget, which should be run as a grace hash join
+	 */
+	@Test
+	public void testRunGraceHash() {
+		Result result = runJoin(createParameters("1", "1"),
+				createUnsortedLeftResult(), createUnsortedRightResult(),
+				"fullOuter");
+
+		assertEquals("ResultStatus is not COMPLETE", ResultStatus.COMPLETE,
+				result.getResultStatus());
+		assertTrue("Plan is not GRACE_HASH : " + result.getMessage(), result
+				.getMessage().startsWith("Plan : GRACE_HASH,"));
+		try {
+			assertTrue("Results are not equal", JoinTestUtil
+					.isEqualIgnoringOrder((ResultSet) result.getData(),
+							createFullOuterComparator()));
+		} catch (ResultSetException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	/**
+	 * Runs a sort merge join between two large sorted result sets, and tests
+	 * to see if the actual cost counts the rows that were merged in the same
+	 * units as the estimate
+	 */
+	@Test
+	public void testRunSortMergeCost() {
+		try {
+			Result result = runJoin(createParameters("1", null),
+					JoinTestUtil.createRangeResultSet("id", "Name", 0, 5000,
+							1, 0), JoinTestUtil.createRangeResultSet(
+							"user_id", "Age", 2500, 7500, 1, 0), null);
+
+			assertEquals("ResultStatus is not COMPLETE",
+					ResultStatus.COMPLETE, result.getResultStatus());
+			assertTrue("Plan is not SORT_MERGE : " + result.getMessage(),
+					result.getMessage().startsWith("Plan : SORT_MERGE,"));
+			assertEquals("Sorted rows are not equal", 0,
+					JoinTestUtil.getStatistic(result.getMessage(),
+							"Sorted rows"));
+			assertEquals("Merged rows are not equal", 10000,
+					JoinTestUtil.getStatistic(result.getMessage(),
+							"Merged rows"));
+			assertEquals("Actual cost is not equal to the estimated cost",
+					JoinTestUtil.getStatistic(result.getMessage(),
+							"Estimated cost"), JoinTestUtil.getStatistic(
+							result.getMessage(), "Actual cost"));
+			assertEquals("Result size is not equal", 2500,
+					((ResultSet) result.getData()).getSize());
+		} catch (ResultSetException | PersistableException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	/**
+	 * Runs a join where the left result set is large and not sorted, so a
+	 * sort merge join is ruled out before the right result set is checked.
+	 * Tests to see if the right result set is read no more than in a join
+	 * that is told the result sets are not sorted.
+	 */
+	@Test
+	public void testRunSortedCheckSkipped() {
+		Object[] leftData = new Object[2000];
+		for (int rowI = 0; rowI < 1000; rowI++) {
+			leftData[rowI * 2] = 1000 - rowI;
+			leftData[(rowI * 2) + 1] = "Name" + rowI;
+		}
+		Object[] rightData = new Object[2000];
+		for (int rowI = 0; rowI < 1000; rowI++) {
+			rightData[rowI * 2] = rowI;
+			rightData[(rowI * 2) + 1] = rowI;
+		}
+
+		final int[] leftReads = new int[2];
+		final int[] rightReads = new int[2];
+		for (int run = 0; run < 2; run++) {
+			final int runI = run;
+			MemoryResultSet leftResult = new MemoryResultSet() {
+				@Override
+				public boolean next() throws ResultSetException {
+					leftReads[runI]++;
+					return super.next();
+				}
+			};
+			MemoryResultSet rightResult = new MemoryResultSet() {
+				@Override
+				public boolean next() throws ResultSetException {
+					rightReads[runI]++;
+					return super.next();
+				}
+			};
+			fillResultSet(leftResult, createLeftColumns(), leftData);
+			fillResultSet(rightResult, createRightColumns(), rightData);
+
+			Result result = runSorted(leftResult, rightResult,
+					(run == 0) ? "false" : null, new Result());
+			assertEquals("ResultStatus is not COMPLETE",
+					ResultStatus.COMPLETE, result.getResultStatus());
+			assertTrue("Plan is not HASH : " + result.getMessage(), result
+					.getMessage().startsWith("Plan : HASH,"));
+		}
+
+		assertTrue("Left result set was not checked",
+				leftReads[1] > leftReads[0]);
+		assertEquals("Right result set was checked", rightReads[0],
+				rightReads[1]);
+	}
+
+	/**
+	 * Runs joins that fail while reading a result set, once with a sort merge
+	 * join and once with a hash join, and tests to see if both fail the same
+	 * way
+	 */
+	@Test
+	public void testRunFailed() {
+		Result sortMerge = runSorted(createFailingResult(),
+				createRightResult(), "true", new Result());
+		assertEquals("ResultStatus is not ERROR", ResultStatus.ERROR,
+				sortMerge.getResultStatus());
+		assertEquals("Message is not equal", "Plan : SORT_MERGE : Read failed",
+				sortMerge.getMessage());
+
+		Result hash = runSorted(createFailingResult(), createRightResult(),
+				"false", new Result());
+		assertEquals("ResultStatus is not ERROR", ResultStatus.ERROR,
+				hash.getResultStatus());
+		assertEquals("Message is not equal", "Plan : HASH : Read failed",
+				hash.getMessage());
+	}
+
+	/**
+	 * Cancels a sort merge join while it writes its first row, and tests to
+	 * see if it stops at its next checkpoint
+	 */
+	@Test
+	public void testRunSortMergeCancelled() {
+		final Result result = new Result();
+		result.setId(22L);
+		result.setData(new MemoryResultSet() {
+			@Override
+			public void appendRow() throws ResultSetException,
+					PersistableException {
+				super.appendRow();
+				JoinProgress.cancel(result.getId());
+			}
+		});
+
+		try {
+			runSorted(JoinTestUtil.createRangeResultSet("id", "Name", 0,
+					5000, 1, 0), JoinTestUtil.createRangeResultSet("user_id",
+					"Age", 0, 5000, 1, 0), "true", result);
+		} catch (ResultSetException | PersistableException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+		assertEquals("Join was not cancelled", ResultStatus.ERROR,
+				result.getResultStatus());
+		assertTrue("Join was not cancelled : " + result.getMessage(), result
+				.getMessage().startsWith("Join was cancelled"));
+		assertNull("Join is still running", JoinProgress.get(22L));
+	}
+
+	/**
+	 * Runs a join with a small result set and a large one on several threads,
+	 * which should be run as a broadcast hash join
+	 */
+	@Test
+	public void testRunBroadcastHash() {
+		Column rightIdColumn = new Column();
+		rightIdColumn.setName("user_id");
+		rightIdColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Object[] rightData = new Object[20000];
+		for (int rowI = 0; rowI < rightData.length; rowI++) {
+			rightData[rowI] = rowI % 10;
+		}
+
+		try {
+			Result result = runJoin(createParameters("4", null),
+					createLeftResult(), JoinTestUtil.createResultSet(
+							new Column[] { rightIdColumn }, rightData), null);
+
+			assertEquals("ResultStatus is not COMPLETE",
+					ResultStatus.COMPLETE, result.getResultStatus());
+			assertTrue("Plan is not BROADCAST_HASH : " + result.getMessage(),
+					result.getMessage().startsWith("Plan : BROADCAST_HASH,"));
+			assertEquals("Result size is not equal", 6000,
+					((ResultSet) result.getData()).getSize());
+		} catch (ResultSetException | PersistableException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	/**
+	 * Runs a join with an unknown join type, which should fail
+	 */
+	@Test
+	public void testRunNegative() {
+		Result result = runJoin(createParameters("1", null),
+				createLeftResult(), createRightResult(), "sideways");
+		assertEquals("ResultStatus is not ERROR", ResultStatus.ERROR,
+				result.getResultStatus());
+	}
+
+	/**
+	 * Runs a join between two results sets where the result sets are null
+	 */
+	@Test
+	public void testRunNull() {
+		AdaptiveJoin aj = new AdaptiveJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			aj.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", null);
+			join.getStringValues().put("LeftColumn", "id");
+			join.getObjectValues().put("RightResultSet", null);
+			join.getStringValues().put("RightColumn", "user_id");
+
+			result = aj.run(session, join, result);
+			assertEquals("ResultStatus is not ERROR", ResultStatus.ERROR,
+					result.getResultStatus());
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Tests to make sure that the result type that is returned is tabular;
+	 */
+	@Test
+	public void testGetJoinDataType() {
+		AdaptiveJoin aj = new AdaptiveJoin();
+		assertEquals("Should be result type of tabular", aj.getJoinDataType(),
+				ResultDataType.TABULAR);
+	}
+
+	private Map<String, Object> createParameters(String parallelism,
+			String memoryBudget) {
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("parallelism", parallelism);
+		if (memoryBudget != null) {
+			parameters.put("memoryBudget", memoryBudget);
+		}
+		return parameters;
+	}
+
+	private Result runJoin(Map<String, Object> parameters,
+			ResultSet leftResultSet, ResultSet rightResultSet, String joinType) {
+		AdaptiveJoin aj = new AdaptiveJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		Join join = new Join();
+
+		try {
+			aj.setup(parameters);
+			result.setData(new MemoryResultSet());
+
+			join.getObjectValues().put("LeftResultSet", leftResultSet);
+			join.getStringValues().put("LeftColumn", "id");
+			join.getObjectValues().put("RightResultSet", rightResultSet);
+			join.getStringValues().put("RightColumn", "user_id");
+			if (joinType != null) {
+				join.getStringValues().put("JoinType", joinType);
+			}
+
+			return aj.run(session, join, result);
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+			return null;
+		}
+	}
+
+	/**
+	 * Runs an inner join on one thread that may be told whether the result
+	 * sets are sorted
+	 */
+	private Result runSorted(ResultSet leftResultSet,
+			ResultSet rightResultSet, String sorted, Result result) {
+		AdaptiveJoin aj = new AdaptiveJoin();
+		Join join = new Join();
+
+		try {
+			aj.setup(createParameters("1", null));
+			if (result.getData() == null) {
+				result.setData(new MemoryResultSet());
+			}
+
+			join.getObjectValues().put("LeftResultSet", leftResultSet);
+			join.getStringValues().put("LeftColumn", "id");
+			join.getObjectValues().put("RightResultSet", rightResultSet);
+			join.getStringValues().put("RightColumn", "user_id");
+			if (sorted != null) {
+				join.getStringValues().put("Sorted", sorted);
+			}
+
+			return aj.run(new SecureSession(), join, result);
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+			return null;
+		}
+	}
+
+	private void assertResult(Result result, ResultSet comparator) {
+		try {
+			assertTrue("Results are not equal", JoinTestUtil.isEqual(
+					(ResultSet) result.getData(), comparator));
+		} catch (ResultSetException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	/**
+	 * Creates a left result set for testing
+	 *
+	 * @return ResultSet
+	 */
+	private ResultSet createLeftResult() {
+		return createResultSet(createLeftColumns(), new Object[] { 1,
+				"Jeremy", 2, "James", 3, "Bob" });
+	}
+
+	/**
+	 * Creates a left result set that is not sorted on its join column
+	 *
+	 * @return ResultSet
+	 */
+	private ResultSet createUnsortedLeftResult() {
+		return createResultSet(createLeftColumns(), new Object[] { 3, "Bob",
+				1, "Jeremy", 2, "James" });
+	}
+
+	/**
+	 * Creates a right result set for testing
+	 *
+	 * @return ResultSet
+	 */
+	private ResultSet createRightResult() {
+		return createResultSet(createRightColumns(), new Object[] { 1, 20, 2,
+				30, 5, 10 });
+	}
+
+	/**
+	 * Creates a right result set that is not sorted on its join column
+	 *
+	 * @return ResultSet
+	 */
+	private ResultSet createUnsortedRightResult() {
+		return createResultSet(createRightColumns(), new Object[] { 5, 10, 2,
+				30, 1, 20 });
+	}
+
+	/**
+	 * Creates a comparator result set for testing
+	 *
+	 * @return ResultSet
+	 */
+	private ResultSet createComparator() {
+		Column[] leftColumns = createLeftColumns();
+		Column[] rightColumns = createRightColumns();
+		return createResultSet(new Column[] { leftColumns[0], leftColumns[1],
+				rightColumns[0], rightColumns[1] }, new Object[] {
+				1, "Jeremy", 1, 20,
+				2, "James", 2, 30 });
+	}
+
+	/**
+	 * Creates a comparator result set in the order of the unsorted right
+	 * result set, which is the order a hash join probes it in
+	 *
+	 * @return ResultSet
+	 */
+	private ResultSet createProbeOrderComparator() {
+		Column[] leftColumns = createLeftColumns();
+		Column[] rightColumns = createRightColumns();
+		return createResultSet(new Column[] { leftColumns[0], leftColumns[1],
+				rightColumns[0], rightColumns[1] }, new Object[] {
+				2, "James", 2, 30,
+				1, "Jeremy", 1, 20 });
+	}
+
+	/**
+	 * Creates a left result set that fails when its second row is read
+	 *
+	 * @return ResultSet
+	 */
+	private ResultSet createFailingResult() {
+		MemoryResultSet resultSet = new MemoryResultSet() {
+			@Override
+			public Row getCurrentRow() throws ResultSetException {
+				if (getRowPosition() > 0) {
+					throw new ResultSetException("Read failed");
+				}
+				return super.getCurrentRow();
+			}
+		};
+		fillResultSet(resultSet, createLeftColumns(), new Object[] { 1,
+				"Jeremy", 2, "James", 3, "Bob" });
+		return resultSet;
+	}
+
+	/**
+	 * Creates a comparator result set for a full outer join of the left and
+	 * right result sets
+	 *
+	 * @return ResultSet
+	 */
+	private ResultSet createFullOuterComparator() {
+		Column[] leftColumns = createLeftColumns();
+		Column[] rightColumns = createRightColumns();
+		return createResultSet(new Column[] { leftColumns[0], leftColumns[1],
+				rightColumns[0], rightColumns[1] }, new Object[] {
+				1, "Jeremy", 1, 20,
+				2, "James", 2, 30,
+				3, "Bob", null, null,
+				null, null, 5, 10 });
+	}
+
+	private void fillResultSet(MemoryResultSet resultSet, Column[] columns,
+			Object[] data) {
+		try {
+			for (Column column : columns) {
+				resultSet.appendColumn(column);
+			}
+			resultSet.beforeFirst();
+			for (int dataI = 0; dataI < data.length; dataI += columns.length) {
+				resultSet.appendRow();
+				for (int column = 0; column < columns.length; column++) {
+					resultSet.updateObject(column, data[dataI + column]);
+				}
+			}
+			resultSet.beforeFirst();
+		} catch (ResultSetException | PersistableException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	private ResultSet createResultSet(Column[] columns, Object[] data) {
+		try {
+			return JoinTestUtil.createResultSet(columns, data);
+		} catch (ResultSetException | PersistableException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+			return null;
+		}
+	}
+
+	private Column[] createLeftColumns() {
+		Column leftIdColumn = new Column();
+		leftIdColumn.setName("id");
+		leftIdColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column leftNameColumn = new Column();
+		leftNameColumn.setName("Name");
+		leftNameColumn.setDataType(PrimitiveDataType.STRING);
+
+		return new Column[] { leftIdColumn, leftNameColumn };
+	}
+
+	private Column[] createRightColumns() {
+		Column rightIdColumn = new Column();
+		rightIdColumn.setName("user_id");
+		rightIdColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column rightAgeColumn = new Column();
+		rightAgeColumn.setName("Age");
+		rightAgeColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		return new Column[] { rightIdColumn, rightAgeColumn };
+	}
+}
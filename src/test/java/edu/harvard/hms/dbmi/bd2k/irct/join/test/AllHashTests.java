@@ -9,7 +9,9 @@ import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
 @SuiteClasses({ FullOuterHashJoinTest.class, InnerHashJoinTest.class,
-		LeftOuterHashJoinTest.class, RightOuterHashJoinTest.class })
+		LeftOuterHashJoinTest.class, RightOuterHashJoinTest.class,
+		LeftSemiHashJoinTest.class, LeftAntiHashJoinTest.class,
+		JoinEstimateTest.class })
 public class AllHashTests {
 
 }
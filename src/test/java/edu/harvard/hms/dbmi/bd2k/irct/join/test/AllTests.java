@@ -9,7 +9,10 @@ import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
 @SuiteClasses({ FullOuterJoinTest.class, InnerJoinTest.class,
-		LeftOuterJoinTest.class, RightOuterJoinTest.class, UnionJoinTest.class })
+		LeftOuterJoinTest.class, RightOuterJoinTest.class, UnionJoinTest.class,
+		SortMergeJoinTest.class, MultiWayHashJoinTest.class,
+		IntersectJoinTest.class, ExceptJoinTest.class, IntervalJoinTest.class,
+		AdaptiveJoinTest.class, JoinKeyTypeTest.class })
 public class AllTests {
 
 }
@@ -0,0 +1,144 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import edu.harvard.hms.dbmi.bd2k.irct.join.ColumnBatch;
+import edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Column;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+
+public class ColumnBatchTest {
+
+	/**
+	 * Reads a result set in batches smaller than the result set and checks
+	 * every cell, including the nulls
+	 */
+	@Test
+	public void testFill() {
+		try {
+			ResultSet input = createResultSet();
+			ColumnBatch batch = new ColumnBatch(input, 2);
+
+			assertEquals("Column type is not equal",
+					ColumnBatch.VectorType.LONG, batch.getType(0));
+			assertEquals("Column type is not equal",
+					ColumnBatch.VectorType.DOUBLE, batch.getType(1));
+			assertEquals("Column type is not equal",
+					ColumnBatch.VectorType.OBJECT, batch.getType(2));
+
+			input.beforeFirst();
+			assertEquals("Batch size is not equal", 2, batch.fill(input));
+			assertEquals("Value is not equal", 1L, batch.getLongs(0)[0]);
+			assertEquals("Value is not equal", 2L, batch.getLongs(0)[1]);
+			assertEquals("Value is not equal", "1.5", batch.getString(1, 0));
+			assertEquals("Value is not equal", "Jeremy", batch.getString(2, 0));
+			assertTrue("Cell is not null", batch.isNull(2, 1));
+			assertNull("Cell is not null", batch.getString(2, 1));
+
+			assertEquals("Batch size is not equal", 1, batch.fill(input));
+			assertEquals("Value is not equal", "3", batch.getString(0, 0));
+			assertTrue("Cell is not null", batch.isNull(1, 0));
+			assertFalse("Cell is null", batch.isNull(2, 0));
+			assertSame("Row is not equal", input.getCurrentRow(),
+					batch.getRow(0));
+
+			assertEquals("Batch size is not equal", 0, batch.fill(input));
+		} catch (ResultSetException | PersistableException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	/**
+	 * Reads a column whose values do not match its data type, which moves the
+	 * column over to holding objects without losing the values already read
+	 */
+	@Test
+	public void testFillMixedTypes() {
+		try {
+			Column idColumn = new Column();
+			idColumn.setName("id");
+			idColumn.setDataType(PrimitiveDataType.INTEGER);
+			ResultSet input = JoinTestUtil.createResultSet(
+					new Column[] { idColumn }, new Object[] { 1, 2L, "three" });
+			ColumnBatch batch = new ColumnBatch(input, new int[] { 0 }, 8);
+
+			input.beforeFirst();
+			assertEquals("Batch size is not equal", 3, batch.fill(input));
+			assertEquals("Column type is not equal",
+					ColumnBatch.VectorType.OBJECT, batch.getType(0));
+			assertEquals("Value is not equal", 1, batch.getObject(0, 0));
+			assertEquals("Value is not equal", 2L, batch.getObject(0, 1));
+			assertEquals("Value is not equal", "2", batch.getString(0, 1));
+			assertEquals("Value is not equal", "three", batch.getString(0, 2));
+		} catch (ResultSetException | PersistableException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	/**
+	 * Reads float and integer columns, whose values should come back as the
+	 * same objects and strings as the values in the result set
+	 */
+	@Test
+	public void testFillValueClasses() {
+		try {
+			Column idColumn = new Column();
+			idColumn.setName("id");
+			idColumn.setDataType(PrimitiveDataType.INTEGER);
+			Column scoreColumn = new Column();
+			scoreColumn.setName("score");
+			scoreColumn.setDataType(PrimitiveDataType.FLOAT);
+			Object[] values = new Object[] { 1, 0.1f, 2, 1.0E10f, 3, null };
+			ResultSet input = JoinTestUtil.createResultSet(new Column[] {
+					idColumn, scoreColumn }, values);
+			ColumnBatch batch = new ColumnBatch(input, 8);
+
+			input.beforeFirst();
+			assertEquals("Batch size is not equal", 3, batch.fill(input));
+			assertEquals("Column type is not equal",
+					ColumnBatch.VectorType.LONG, batch.getType(0));
+			assertEquals("Column type is not equal",
+					ColumnBatch.VectorType.DOUBLE, batch.getType(1));
+			for (int row = 0; row < 3; row++) {
+				for (int column = 0; column < 2; column++) {
+					Object value = values[row * 2 + column];
+					assertEquals("Value is not equal", value,
+							batch.getObject(column, row));
+					assertEquals("Value is not equal", (value == null) ? null
+							: value.toString(), batch.getString(column, row));
+				}
+			}
+		} catch (ResultSetException | PersistableException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	private ResultSet createResultSet() throws ResultSetException,
+			PersistableException {
+		Column idColumn = new Column();
+		idColumn.setName("id");
+		idColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column scoreColumn = new Column();
+		scoreColumn.setName("score");
+		scoreColumn.setDataType(PrimitiveDataType.DOUBLE);
+
+		Column nameColumn = new Column();
+		nameColumn.setName("name");
+		nameColumn.setDataType(PrimitiveDataType.STRING);
+
+		return JoinTestUtil.createResultSet(new Column[] { idColumn,
+				scoreColumn, nameColumn }, new Object[] { 1, 1.5, "Jeremy", 2,
+				2.5, null, 3, null, "Bob" });
+	}
+}
@@ -0,0 +1,256 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join.test;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import edu.harvard.hms.dbmi.bd2k.irct.exception.JoinActionSetupException;
+import edu.harvard.hms.dbmi.bd2k.irct.join.ExternalSort;
+import edu.harvard.hms.dbmi.bd2k.irct.join.ExceptJoin;
+import edu.harvard.hms.dbmi.bd2k.irct.model.join.Join;
+import edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.Result;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultStatus;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Column;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSetImpl;
+import edu.harvard.hms.dbmi.bd2k.irct.model.security.SecureSession;
+
+public class ExceptJoinTest {
+
+	/**
+	 * Tests the creation of an Except Join
+	 * 
+	 */
+	@Test
+	public void testSetup() {
+		ExceptJoin ej = new ExceptJoin();
+		try {
+			ej.setup(new HashMap<String, Object>());
+			assertNotNull(ej);
+		} catch (JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Runs an except between two result sets that share rows and tests to see
+	 * if the results are equal
+	 */
+	@Test
+	public void testRunPositive() {
+		ExceptJoin ej = new ExceptJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			ej.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet",
+					createOverlappingLeftResult());
+			join.getObjectValues().put("RightResultSet",
+					createOverlappingRightResult());
+
+			ResultSetImpl returnedData = (ResultSetImpl) ej.run(session,
+					join, result).getData();
+
+			assertTrue("Results are not equal",
+					JoinTestUtil.isEqual(returnedData, createComparator()));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Runs an except that has to partition the result sets to disk and tests
+	 * to see if the results are equal
+	 */
+	@Test
+	public void testRunSpilled() {
+		ExceptJoin ej = new ExceptJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			Map<String, Object> parameters = new HashMap<String, Object>();
+			parameters.put("memoryBudget", "1");
+			ej.setup(parameters);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet",
+					createOverlappingLeftResult());
+			join.getObjectValues().put("RightResultSet",
+					createOverlappingRightResult());
+
+			ResultSetImpl returnedData = (ResultSetImpl) ej.run(session,
+					join, result).getData();
+
+			// Partitioned rows come out partition by partition
+			MemoryResultSet sortedData = new MemoryResultSet();
+			new ExternalSort(new int[] { 0, 1 }, Long.MAX_VALUE, null).sort(
+					returnedData, sortedData);
+			assertTrue("Results are not equal",
+					JoinTestUtil.isEqual(sortedData, createComparator()));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Runs an except between two result sets with different columns
+	 */
+	@Test
+	public void testRunNegative() {
+		ExceptJoin ej = new ExceptJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			ej.setup(null);
+			result.setData(rsi);
+
+			Column idColumn = new Column();
+			idColumn.setName("id");
+			idColumn.setDataType(PrimitiveDataType.INTEGER);
+
+			join.getObjectValues().put("LeftResultSet",
+					createOverlappingLeftResult());
+			join.getObjectValues().put("RightResultSet",
+					JoinTestUtil.createResultSet(new Column[] { idColumn },
+							new Object[] { 1, 2 }));
+
+			result = ej.run(session, join, result);
+			assertEquals("ResultStatus is not ERROR", ResultStatus.ERROR,
+					result.getResultStatus());
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Runs an except where the result sets are null
+	 */
+	@Test
+	public void testRunNull() {
+		ExceptJoin ej = new ExceptJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			ej.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", null);
+			join.getObjectValues().put("RightResultSet", null);
+
+			result = ej.run(session, join, result);
+			assertEquals("ResultStatus is not ERROR", ResultStatus.ERROR,
+					result.getResultStatus());
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Tests to make sure that the result type that is returned is tabular;
+	 */
+	@Test
+	public void testGetJoinDataType() {
+		ExceptJoin ej = new ExceptJoin();
+		assertEquals("Should be result type of tabular", ej.getJoinDataType(),
+				ResultDataType.TABULAR);
+	}
+
+	/**
+	 * Creates a left result set with a duplicate row for testing
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException An exception occurred
+	 * @throws PersistableException An exception occurred
+	 */
+	private ResultSet createOverlappingLeftResult() throws ResultSetException,
+			PersistableException {
+		Column idColumn = new Column();
+		idColumn.setName("id");
+		idColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column nameColumn = new Column();
+		nameColumn.setName("Name");
+		nameColumn.setDataType(PrimitiveDataType.STRING);
+
+		return JoinTestUtil.createResultSet(new Column[] { idColumn,
+				nameColumn }, new Object[] { 1, "Jeremy", 2, "James", 3, "Bob", 2, "James" });
+	}
+
+	/**
+	 * Creates a right result set that shares rows with the left result set
+	 * for testing
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException An exception occurred
+	 * @throws PersistableException An exception occurred
+	 */
+	private ResultSet createOverlappingRightResult() throws ResultSetException,
+			PersistableException {
+		Column idColumn = new Column();
+		idColumn.setName("id");
+		idColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column nameColumn = new Column();
+		nameColumn.setName("Name");
+		nameColumn.setDataType(PrimitiveDataType.STRING);
+
+		return JoinTestUtil.createResultSet(new Column[] { idColumn,
+				nameColumn }, new Object[] { 2, "James", 4, "Sue", 3, "Bob" });
+	}
+
+	/**
+	 * Creates a comparator result set for testing
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException An exception occurred
+	 * @throws PersistableException An exception occurred
+	 */
+	private ResultSet createComparator() throws ResultSetException,
+			PersistableException {
+		Column idColumn = new Column();
+		idColumn.setName("id");
+		idColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column nameColumn = new Column();
+		nameColumn.setName("Name");
+		nameColumn.setDataType(PrimitiveDataType.STRING);
+
+		return JoinTestUtil.createResultSet(new Column[] { idColumn,
+				nameColumn }, new Object[] { 1, "Jeremy" });
+	}
+
+}
@@ -0,0 +1,168 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import edu.harvard.hms.dbmi.bd2k.irct.join.ExternalSort;
+import edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Column;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+
+public class ExternalSortTest {
+	private static final File TEMP_DIRECTORY = new File(
+			System.getProperty("java.io.tmpdir"));
+
+	/**
+	 * Sorts a result set that fits into memory on two columns
+	 */
+	@Test
+	public void testSortInMemory() {
+		ExternalSort sort = new ExternalSort(new int[] { 0, 1 }, Long.MAX_VALUE,
+				TEMP_DIRECTORY);
+		MemoryResultSet output = new MemoryResultSet();
+
+		try {
+			sort.sort(createUnsortedResult(), output);
+			assertTrue("Results are not equal",
+					JoinTestUtil.isEqual(output, createComparator()));
+		} catch (ResultSetException | PersistableException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	/**
+	 * Sorts a result set where every row is spilled to its own run so the runs
+	 * have to be merged in more than one pass
+	 */
+	@Test
+	public void testSortSpilled() {
+		ExternalSort sort = new ExternalSort(new int[] { 0 }, 1,
+				TEMP_DIRECTORY);
+		MemoryResultSet output = new MemoryResultSet();
+
+		try {
+			Object[] values = new Object[200];
+			for (int row = 0; row < values.length; row++) {
+				values[row] = (row * 7919) % values.length;
+			}
+			Column idColumn = new Column();
+			idColumn.setName("id");
+			idColumn.setDataType(PrimitiveDataType.INTEGER);
+			ResultSet input = JoinTestUtil.createResultSet(
+					new Column[] { idColumn }, values);
+
+			sort.sort(input, output);
+
+			assertEquals("Row count is not equal", values.length,
+					output.getSize());
+			output.beforeFirst();
+			int expected = 0;
+			while (output.next()) {
+				assertEquals("Rows are not in order", expected,
+						output.getObject(0));
+				expected++;
+			}
+		} catch (ResultSetException | PersistableException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	/**
+	 * Checks that sorted and unsorted result sets are recognized
+	 */
+	@Test
+	public void testIsSorted() {
+		ExternalSort sort = new ExternalSort(new int[] { 0, 1 }, Long.MAX_VALUE,
+				TEMP_DIRECTORY);
+
+		try {
+			assertFalse("Result set is not sorted",
+					sort.isSorted(createUnsortedResult()));
+			assertTrue("Result set is sorted",
+					sort.isSorted(createComparator()));
+		} catch (ResultSetException | PersistableException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	/**
+	 * Sorts on a column that does not exist
+	 */
+	@Test
+	public void testSortMissingColumn() {
+		ExternalSort sort = new ExternalSort(new int[] { 5 }, Long.MAX_VALUE,
+				TEMP_DIRECTORY);
+		MemoryResultSet output = new MemoryResultSet();
+
+		try {
+			sort.sort(createUnsortedResult(), output);
+			fail("Exception not thrown");
+		} catch (ResultSetException e) {
+			assertNotNull(e.getMessage());
+		} catch (PersistableException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	/**
+	 * Creates a result set that is not sorted for testing
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createUnsortedResult() throws ResultSetException,
+			PersistableException {
+		return JoinTestUtil.createResultSet(createColumns(), new Object[] {
+				3, "Bob",
+				1, "Jeremy",
+				null, "Nobody",
+				2, "James",
+				1, "Alice" });
+	}
+
+	/**
+	 * Creates a comparator result set for testing
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createComparator() throws ResultSetException,
+			PersistableException {
+		return JoinTestUtil.createResultSet(createColumns(), new Object[] {
+				null, "Nobody",
+				1, "Alice",
+				1, "Jeremy",
+				2, "James",
+				3, "Bob" });
+	}
+
+	private Column[] createColumns() {
+		Column idColumn = new Column();
+		idColumn.setName("id");
+		idColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column nameColumn = new Column();
+		nameColumn.setName("Name");
+		nameColumn.setDataType(PrimitiveDataType.STRING);
+
+		return new Column[] { idColumn, nameColumn };
+	}
+}
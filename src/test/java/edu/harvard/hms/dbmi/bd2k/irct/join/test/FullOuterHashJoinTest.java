@@ -5,6 +5,9 @@ package edu.harvard.hms.dbmi.bd2k.irct.join.test;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.HashMap;
 
 import org.junit.Test;
@@ -74,6 +77,138 @@ public class FullOuterHashJoinTest {
 
 	}
 
+	/**
+	 * Runs a join with blocks of two rows, so the result sets are partitioned
+	 * and spilled to disk, and tests to see if the results are equal and the
+	 * spill files are deleted
+	 */
+	@Test
+	public void testRunSpilled() {
+		FullOuterHashJoin foj = new FullOuterHashJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		final File tempDirectory = createTempDirectory();
+		final int[] spillFiles = new int[1];
+		MemoryResultSet rsi = new MemoryResultSet() {
+			@Override
+			public void appendRow() throws ResultSetException,
+					PersistableException {
+				super.appendRow();
+				spillFiles[0] = Math.max(spillFiles[0],
+						tempDirectory.list().length);
+			}
+		};
+		Join join = new Join();
+		HashMap<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("blockSize", "2");
+		parameters.put("tempDirectory", tempDirectory.getAbsolutePath());
+
+		try {
+			foj.setup(parameters);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", createSpillLeftResult());
+			join.getStringValues().put("LeftColumn", "id");
+			join.getObjectValues().put("RightResultSet", createSpillRightResult());
+			join.getStringValues().put("RightColumn", "user_id");
+
+			result = foj.run(session, join, result);
+			assertEquals("ResultStatus is not COMPLETE",
+					ResultStatus.COMPLETE, result.getResultStatus());
+			assertTrue("Results are not equal", JoinTestUtil.isEqualIgnoringOrder(
+					(ResultSet) result.getData(), createSpillComparator(true)));
+			assertTrue("Join did not spill", spillFiles[0] > 0);
+			assertEquals("Spill files were not deleted", 0,
+					tempDirectory.list().length);
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		} finally {
+			tempDirectory.delete();
+		}
+
+	}
+
+	/**
+	 * Runs a join in blocks with several threads and tests to see if it probes
+	 * in parallel and outputs the same rows in the same order as a join on one
+	 * thread, including the unmatched rows
+	 */
+	@Test
+	public void testRunParallel() {
+		try {
+			ResultSet leftResult = JoinTestUtil.createRangeResultSet("id",
+					"Name", 0, 5000, 1, 10);
+			ResultSet rightResult = JoinTestUtil.createRangeResultSet(
+					"user_id", "Age", 2500, 7500, 2, 10);
+			HashMap<String, Object> parameters = new HashMap<String, Object>();
+			parameters.put("blockSize", "1000");
+
+			Result serial = runRange(parameters, leftResult, rightResult);
+			assertEquals("Parallel probe rows are not equal", 0,
+					JoinTestUtil.getStatistic(serial.getMessage(),
+							"Parallel probe rows"));
+
+			parameters.put("parallelism", "4");
+			Result parallel = runRange(parameters, leftResult, rightResult);
+			long probeRows = JoinTestUtil.getStatistic(parallel.getMessage(),
+					"Probe rows");
+			// The rows of the partition kept in memory are probed while the
+			// inner result set is partitioned, which is done on one thread
+			long parallelProbeRows = JoinTestUtil.getStatistic(
+					parallel.getMessage(), "Parallel probe rows");
+			assertTrue("Join was not probed in parallel",
+					(parallelProbeRows > 0) && (parallelProbeRows < probeRows));
+			assertTrue("Join was not partitioned", JoinTestUtil.getStatistic(
+					parallel.getMessage(), "Blocks") > 1);
+
+			ResultSet parallelData = (ResultSet) parallel.getData();
+			assertEquals("Result size is not equal", 12520,
+					parallelData.getSize());
+			assertTrue("Results are not equal", JoinTestUtil.isEqual(
+					(ResultSet) serial.getData(), parallelData));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	/**
+	 * Runs a join that is estimated to output more rows than it may, which
+	 * should be rejected before it runs
+	 */
+	@Test
+	public void testRunMaxOutputRows() {
+		FullOuterHashJoin foj = new FullOuterHashJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		HashMap<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("maxOutputRows", "3");
+
+		try {
+			foj.setup(parameters);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", createLeftResult());
+			join.getStringValues().put("LeftColumn", "id");
+			join.getObjectValues().put("RightResultSet", createRightResult());
+			join.getStringValues().put("RightColumn", "user_id");
+
+			foj.run(session, join, result);
+			assertEquals("Join was not rejected", ResultStatus.ERROR,
+					result.getResultStatus());
+			assertTrue("Message is not the estimate", result.getMessage()
+					.startsWith("Estimated output rows : 4"));
+			assertEquals("Join was run", 0, rsi.getColumnSize());
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
 	/**
 	 * Runs a join between two results sets that should fail on joining
 	 */
@@ -181,6 +316,143 @@ public class FullOuterHashJoinTest {
 				ResultDataType.TABULAR);
 	}
 
+	private Result runRange(HashMap<String, Object> parameters,
+			ResultSet leftResultSet, ResultSet rightResultSet)
+			throws ResultSetException, PersistableException,
+			JoinActionSetupException {
+		FullOuterHashJoin join = new FullOuterHashJoin();
+		Result result = new Result();
+		Join joinValues = new Join();
+
+		join.setup(parameters);
+		result.setData(new MemoryResultSet());
+
+		joinValues.getObjectValues().put("LeftResultSet", leftResultSet);
+		joinValues.getStringValues().put("LeftColumn", "id");
+		joinValues.getObjectValues().put("RightResultSet", rightResultSet);
+		joinValues.getStringValues().put("RightColumn", "user_id");
+
+		result = join.run(new SecureSession(), joinValues, result);
+		assertEquals("ResultStatus is not COMPLETE : " + result.getMessage(),
+				ResultStatus.COMPLETE, result.getResultStatus());
+		return result;
+	}
+
+	private File createTempDirectory() {
+		try {
+			return Files.createTempDirectory("join").toFile();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Creates a left result set for testing a join that spills, with rows
+	 * without a key
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createSpillLeftResult() throws ResultSetException,
+			PersistableException {
+		Column leftIdColumn = new Column();
+		leftIdColumn.setName("id");
+		leftIdColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column leftNameColumn = new Column();
+		leftNameColumn.setName("Name");
+		leftNameColumn.setDataType(PrimitiveDataType.STRING);
+
+		return JoinTestUtil.createResultSet(new Column[] { leftIdColumn,
+				leftNameColumn }, new Object[] { 1, "Jeremy", 2, "James", 3,
+				"Bob", 4, "Alice", null, "Nobody", 5, "Carol", 6, "Dave", 7,
+				"Eve", 8, "Frank", null, "No one" });
+	}
+
+	/**
+	 * Creates a right result set for testing a join that spills, with a key
+	 * that has two rows and a row without a key
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createSpillRightResult() throws ResultSetException,
+			PersistableException {
+		Column rightIdColumn = new Column();
+		rightIdColumn.setName("user_id");
+		rightIdColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column rightAgeColumn = new Column();
+		rightAgeColumn.setName("Age");
+		rightAgeColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		return JoinTestUtil.createResultSet(new Column[] { rightIdColumn,
+				rightAgeColumn }, new Object[] { 1, 10, 3, 30, 1, 11, null, 0,
+				9, 90, 5, 50, 10, 100, 8, 80 });
+	}
+
+	/**
+	 * Creates a comparator result set for testing a join that spills
+	 * 
+	 * @param fullOuter
+	 *            True to include the unmatched rows of both result sets
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createSpillComparator(boolean fullOuter)
+			throws ResultSetException, PersistableException {
+		Column leftIdColumn = new Column();
+		leftIdColumn.setName("id");
+		leftIdColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column leftNameColumn = new Column();
+		leftNameColumn.setName("Name");
+		leftNameColumn.setDataType(PrimitiveDataType.STRING);
+
+		Column rightIdColumn = new Column();
+		rightIdColumn.setName("user_id");
+		rightIdColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column rightAgeColumn = new Column();
+		rightAgeColumn.setName("Age");
+		rightAgeColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Object[] matched = new Object[] { 
+				1, "Jeremy", 1, 10, 
+				1, "Jeremy", 1, 11, 
+				3, "Bob", 3, 30, 
+				5, "Carol", 5, 50, 
+				8, "Frank", 8, 80 };
+		Object[] unmatched = new Object[] { 
+				2, "James", null, null, 
+				4, "Alice", null, null, 
+				null, "Nobody", null, null, 
+				6, "Dave", null, null, 
+				7, "Eve", null, null, 
+				null, "No one", null, null, 
+				null, null, null, 0, 
+				null, null, 9, 90, 
+				null, null, 10, 100 };
+		Object[] objects = matched;
+		if (fullOuter) {
+			objects = new Object[matched.length + unmatched.length];
+			System.arraycopy(matched, 0, objects, 0, matched.length);
+			System.arraycopy(unmatched, 0, objects, matched.length,
+					unmatched.length);
+		}
+		return JoinTestUtil.createResultSet(new Column[] { leftIdColumn,
+				leftNameColumn, rightIdColumn, rightAgeColumn }, objects);
+	}
+
 	/**
 	 * Creates a left result set for testing
 	 * 
@@ -5,12 +5,18 @@ package edu.harvard.hms.dbmi.bd2k.irct.join.test;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.HashMap;
 
 import org.junit.Test;
 
 import edu.harvard.hms.dbmi.bd2k.irct.exception.JoinActionSetupException;
+import edu.harvard.hms.dbmi.bd2k.irct.join.HashJoinImpl;
+import edu.harvard.hms.dbmi.bd2k.irct.join.IncrementalJoinImpl;
 import edu.harvard.hms.dbmi.bd2k.irct.join.InnerHashJoin;
+import edu.harvard.hms.dbmi.bd2k.irct.join.JoinProgress;
 import edu.harvard.hms.dbmi.bd2k.irct.model.join.Join;
 import edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.Result;
@@ -75,111 +81,1139 @@ public class InnerHashJoinTest {
 
 	}
 
+	/**
+	 * Runs a join where the join columns hold equal values of different types
+	 * and tests to see if they match
+	 */
+	@Test
+	public void testRunMixedKeyTypes() {
+		InnerHashJoin ij = new InnerHashJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			ij.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", createLeftResult());
+			join.getStringValues().put("LeftColumn", "id");
+			join.getObjectValues().put("RightResultSet",
+					createDoubleRightResult());
+			join.getStringValues().put("RightColumn", "user_id");
+
+			ResultSetImpl returnedData = (ResultSetImpl) ij.run(session, join,
+					result).getData();
+
+			assertTrue("Results are not equal", JoinTestUtil.isEqual(
+					returnedData, createDoubleComparator()));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Runs the same join twice with the build table cache turned on and tests
+	 * to see if the second join reuses the hash table of the first
+	 */
+	@Test
+	public void testRunBuildCache() {
+		HashJoinImpl.clearBuildCache();
+		try {
+			ResultSet leftResult = createLeftResult();
+			ResultSet rightResult = createRightResult();
+
+			Result result = runBuildCache(leftResult, rightResult, "40");
+			assertTrue("Results are not equal", JoinTestUtil.isEqual(
+					(ResultSet) result.getData(), createComparator()));
+			assertTrue("Hash table was reused", result.getMessage()
+					.contains("Cached blocks : 0"));
+
+			result = runBuildCache(leftResult, rightResult, "40");
+			assertTrue("Results are not equal", JoinTestUtil.isEqual(
+					(ResultSet) result.getData(), createComparator()));
+			assertTrue("Hash table was not reused", result.getMessage()
+					.contains("Cached blocks : 1"));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		} finally {
+			HashJoinImpl.clearBuildCache();
+		}
+	}
+
+	/**
+	 * Changes a value of a result set without changing its size between two
+	 * joins with the build table cache turned on, which should build the hash
+	 * table again
+	 */
+	@Test
+	public void testRunBuildCacheChanged() {
+		HashJoinImpl.clearBuildCache();
+		try {
+			ResultSet leftResult = createLeftResult();
+			ResultSet rightResult = createRightResult();
+			runBuildCache(leftResult, rightResult, "41");
+
+			leftResult.beforeFirst();
+			leftResult.next();
+			leftResult.updateObject(1, "Jerry");
+			leftResult.beforeFirst();
+
+			Result result = runBuildCache(leftResult, rightResult, "41");
+			assertTrue("Hash table was reused", result.getMessage()
+					.contains("Cached blocks : 0"));
+			ResultSet returnedData = (ResultSet) result.getData();
+			assertEquals("Result size is not equal", 2, returnedData.getSize());
+			returnedData.beforeFirst();
+			returnedData.next();
+			assertEquals("Value is not equal", "Jerry",
+					returnedData.getString(1));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		} finally {
+			HashJoinImpl.clearBuildCache();
+		}
+	}
+
+	/**
+	 * Renames a column of a result set without changing its values between
+	 * two joins with the build table cache turned on, which should build the
+	 * hash table again
+	 */
+	@Test
+	public void testRunBuildCacheRenamed() {
+		HashJoinImpl.clearBuildCache();
+		try {
+			ResultSet rightResult = createRightResult();
+			runBuildCache(createLeftResult(), rightResult, "42");
+
+			Column leftIdColumn = new Column();
+			leftIdColumn.setName("id");
+			leftIdColumn.setDataType(PrimitiveDataType.INTEGER);
+			Column leftNameColumn = new Column();
+			leftNameColumn.setName("FirstName");
+			leftNameColumn.setDataType(PrimitiveDataType.STRING);
+			ResultSet renamedResult = JoinTestUtil.createResultSet(
+					new Column[] { leftIdColumn, leftNameColumn },
+					new Object[] { 1, "Jeremy", 2, "James", 3, "Bob" });
+
+			Result result = runBuildCache(renamedResult, rightResult, "42");
+			assertTrue("Hash table was reused", result.getMessage()
+					.contains("Cached blocks : 0"));
+			assertEquals("Column name is not equal", "FirstName",
+					((ResultSet) result.getData()).getColumn(1).getName());
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		} finally {
+			HashJoinImpl.clearBuildCache();
+		}
+	}
+
+	/**
+	 * Runs the same join twice with the build table cache turned on but
+	 * without result ids, which should not use the cache
+	 */
+	@Test
+	public void testRunBuildCacheNoIds() {
+		HashJoinImpl.clearBuildCache();
+		try {
+			ResultSet leftResult = createLeftResult();
+			ResultSet rightResult = createRightResult();
+			runBuildCache(leftResult, rightResult, null);
+
+			Result result = runBuildCache(leftResult, rightResult, null);
+			assertTrue("Results are not equal", JoinTestUtil.isEqual(
+					(ResultSet) result.getData(), createComparator()));
+			assertTrue("Hash table was reused", result.getMessage()
+					.contains("Cached blocks : 0"));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		} finally {
+			HashJoinImpl.clearBuildCache();
+		}
+	}
+
+	/**
+	 * Runs a join with the rows of the hash table kept off the heap and tests
+	 * to see if the results are equal
+	 */
+	@Test
+	public void testRunOffHeap() {
+		InnerHashJoin ij = new InnerHashJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+		HashMap<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("offHeap", "true");
+
+		try {
+			ij.setup(parameters);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", createLeftResult());
+			join.getStringValues().put("LeftColumn", "id");
+			join.getObjectValues().put("RightResultSet", createRightResult());
+			join.getStringValues().put("RightColumn", "user_id");
+
+			ResultSetImpl returnedData = (ResultSetImpl) ij.run(session, join,
+					result).getData();
+
+			assertTrue("Results are not equal",
+					JoinTestUtil.isEqual(returnedData, createComparator()));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Runs a join with a skew threshold of one row so every key is joined as a
+	 * heavy hitter and tests to see if the results are equal
+	 */
+	@Test
+	public void testRunSkewedKeys() {
+		InnerHashJoin ij = new InnerHashJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+		HashMap<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("skewThreshold", "1");
+
+		try {
+			ij.setup(parameters);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", createLeftResult());
+			join.getStringValues().put("LeftColumn", "id");
+			join.getObjectValues().put("RightResultSet", createRightResult());
+			join.getStringValues().put("RightColumn", "user_id");
+
+			result = ij.run(session, join, result);
+
+			assertTrue("Results are not equal", JoinTestUtil.isEqual(
+					(ResultSet) result.getData(), createComparator()));
+			assertTrue("Heavy hitters were not joined", result.getMessage()
+					.contains("Heavy key probe rows : 2"));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Cancels a join by the id of its result once it has written its first
+	 * row and tests to see if the join stops with an error
+	 */
+	@Test
+	public void testRunCancelled() {
+		InnerHashJoin ij = new InnerHashJoin();
+		SecureSession session = new SecureSession();
+		final Result result = new Result();
+		result.setId(20L);
+		MemoryResultSet rsi = new MemoryResultSet() {
+			@Override
+			public void appendRow() throws ResultSetException,
+					PersistableException {
+				super.appendRow();
+				JoinProgress.cancel(result.getId());
+			}
+		};
+		Join join = new Join();
+
+		try {
+			ij.setup(new HashMap<String, Object>());
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", createLeftResult());
+			join.getStringValues().put("LeftColumn", "id");
+			join.getObjectValues().put("RightResultSet", createRightResult());
+			join.getStringValues().put("RightColumn", "user_id");
+
+			ij.run(session, join, result);
+
+			assertEquals("Join was not cancelled", ResultStatus.ERROR,
+					result.getResultStatus());
+			assertTrue("Join was not cancelled", result.getMessage()
+					.startsWith("Join was cancelled"));
+			assertNull("Join is still running", JoinProgress.get(20L));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Runs a join that only keeps some of the output columns
+	 */
+	@Test
+	public void testRunProjection() {
+		InnerHashJoin ij = new InnerHashJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			ij.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", createLeftResult());
+			join.getStringValues().put("LeftColumn", "id");
+			join.getObjectValues().put("RightResultSet", createRightResult());
+			join.getStringValues().put("RightColumn", "user_id");
+			join.getStringValues().put("Columns", "Age,Name");
+
+			ResultSetImpl returnedData = (ResultSetImpl) ij.run(session, join,
+					result).getData();
+
+			Column nameColumn = new Column();
+			nameColumn.setName("Name");
+			nameColumn.setDataType(PrimitiveDataType.STRING);
+
+			Column ageColumn = new Column();
+			ageColumn.setName("Age");
+			ageColumn.setDataType(PrimitiveDataType.INTEGER);
+
+			assertTrue("Results are not equal", JoinTestUtil.isEqual(
+					returnedData, JoinTestUtil.createResultSet(new Column[] {
+							nameColumn, ageColumn }, new Object[] {
+							"Jeremy", 20,
+							"James", 30 })));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Runs a join that asks for a column neither result set has, which should
+	 * fail
+	 */
+	@Test
+	public void testRunUnknownProjection() {
+		InnerHashJoin ij = new InnerHashJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			ij.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", createLeftResult());
+			join.getStringValues().put("LeftColumn", "id");
+			join.getObjectValues().put("RightResultSet", createRightResult());
+			join.getStringValues().put("RightColumn", "user_id");
+			join.getStringValues().put("Columns", "Name,Height");
+
+			result = ij.run(session, join, result);
+			assertEquals("ResultStatus is not ERROR", ResultStatus.ERROR,
+					result.getResultStatus());
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Runs an incremental join, appends rows to both result sets and runs it
+	 * again, which should only return the joined rows of the new rows
+	 */
+	@Test
+	public void testRunIncremental() {
+		IncrementalJoinImpl.clearState();
+		try {
+			ResultSet leftResultSet = createLeftResult();
+			ResultSet rightResultSet = createRightResult();
+
+			Result result = runIncremental(leftResultSet, rightResultSet);
+			assertTrue("Join is not full : " + result.getMessage(), result
+					.getMessage().startsWith("Full"));
+			assertTrue("Results are not equal", JoinTestUtil.isEqual(
+					(ResultSet) result.getData(), createComparator()));
+
+			appendRow(leftResultSet, 5, "Alice");
+			appendRow(rightResultSet, 3, 40);
+			appendRow(rightResultSet, 1, 25);
+
+			result = runIncremental(leftResultSet, rightResultSet);
+			assertEquals("Message is not equal",
+					"Incremental : New left rows : 1, New right rows : 2",
+					result.getMessage());
+
+			ResultSet returnedData = (ResultSet) result.getData();
+			assertEquals("Result size is not equal", 3, returnedData.getSize());
+			returnedData.beforeFirst();
+			returnedData.next();
+			assertEquals("Value is not equal", "Alice",
+					returnedData.getString(1));
+			assertEquals("Value is not equal", 10, returnedData.getObject(3));
+			returnedData.next();
+			assertEquals("Value is not equal", "Bob", returnedData.getString(1));
+			assertEquals("Value is not equal", 40, returnedData.getObject(3));
+			returnedData.next();
+			assertEquals("Value is not equal", "Jeremy",
+					returnedData.getString(1));
+			assertEquals("Value is not equal", 25, returnedData.getObject(3));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		} finally {
+			IncrementalJoinImpl.clearState();
+		}
+	}
+
+	/**
+	 * Runs an incremental join, sorts the left result set again under the
+	 * same id and runs it again, which should join every row
+	 */
+	@Test
+	public void testRunIncrementalResorted() {
+		IncrementalJoinImpl.clearState();
+		try {
+			ResultSet rightResultSet = createRightResult();
+			Result result = runIncremental(createLeftResult(), rightResultSet);
+			assertTrue("Join is not full : " + result.getMessage(), result
+					.getMessage().startsWith("Full"));
+
+			Column leftIdColumn = new Column();
+			leftIdColumn.setName("id");
+			leftIdColumn.setDataType(PrimitiveDataType.INTEGER);
+			Column leftNameColumn = new Column();
+			leftNameColumn.setName("Name");
+			leftNameColumn.setDataType(PrimitiveDataType.STRING);
+			ResultSet resortedResultSet = JoinTestUtil.createResultSet(
+					new Column[] { leftIdColumn, leftNameColumn },
+					new Object[] { 3, "Bob", 2, "James", 1, "Jeremy" });
+
+			result = runIncremental(resortedResultSet, rightResultSet);
+			assertEquals("Message is not equal",
+					"Full : New left rows : 3, New right rows : 3",
+					result.getMessage());
+			assertTrue("Results are not equal", JoinTestUtil
+					.isEqualIgnoringOrder((ResultSet) result.getData(),
+							createComparator()));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		} finally {
+			IncrementalJoinImpl.clearState();
+		}
+	}
+
+	/**
+	 * Runs an incremental join whose state does not fit in
+	 * incrementalStateBytes twice, which should join every row as a hash join
+	 * both times
+	 */
+	@Test
+	public void testRunIncrementalStateTooLarge() {
+		HashMap<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("incrementalStateBytes", "1");
+		IncrementalJoinImpl.clearState();
+		try {
+			ResultSet leftResultSet = createLeftResult();
+			ResultSet rightResultSet = createRightResult();
+			for (int run = 0; run < 2; run++) {
+				InnerHashJoin ij = new InnerHashJoin();
+				Result result = new Result();
+				ij.setup(parameters);
+				result.setData(new MemoryResultSet());
+
+				ij.run(new SecureSession(), createIncrementalJoin(
+						leftResultSet, rightResultSet), result);
+				assertEquals("ResultStatus is not COMPLETE",
+						ResultStatus.COMPLETE, result.getResultStatus());
+				assertTrue("State was built : " + result.getMessage(), result
+						.getMessage().startsWith(
+								"Full : State does not fit in incrementalStateBytes"));
+				assertTrue("Results are not equal", JoinTestUtil
+						.isEqualIgnoringOrder((ResultSet) result.getData(),
+								createComparator()));
+			}
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		} finally {
+			IncrementalJoinImpl.clearState();
+		}
+	}
+
+	/**
+	 * Runs an incremental join without the result ids of the result sets,
+	 * which should fail
+	 */
+	@Test
+	public void testRunIncrementalNoIds() {
+		InnerHashJoin ij = new InnerHashJoin();
+		Result result = new Result();
+		try {
+			ij.setup(null);
+			result.setData(new MemoryResultSet());
+			Join join = createIncrementalJoin(createLeftResult(),
+					createRightResult());
+			join.getStringValues().remove("LeftResultSet");
+
+			ij.run(new SecureSession(), join, result);
+			assertEquals("ResultStatus is not ERROR", ResultStatus.ERROR,
+					result.getResultStatus());
+			assertEquals("Message is not equal",
+					"Incremental : LeftResultSet and RightResultSet have no result ids",
+					result.getMessage());
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	/**
+	 * Runs an incremental join that would output more rows than are allowed,
+	 * which should fail before it runs
+	 */
+	@Test
+	public void testRunIncrementalMaxOutputRows() {
+		InnerHashJoin ij = new InnerHashJoin();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		HashMap<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("maxOutputRows", "1");
+		IncrementalJoinImpl.clearState();
+		try {
+			ij.setup(parameters);
+			result.setData(rsi);
+
+			ij.run(new SecureSession(), createIncrementalJoin(
+					createLeftResult(), createRightResult()), result);
+			assertEquals("ResultStatus is not ERROR", ResultStatus.ERROR,
+					result.getResultStatus());
+			assertTrue("Join was not rejected : " + result.getMessage(),
+					result.getMessage().startsWith("Estimated output rows"));
+			assertEquals("Rows were written", 0, rsi.getColumnSize());
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		} finally {
+			IncrementalJoinImpl.clearState();
+		}
+	}
+
+	/**
+	 * Cancels an incremental join by the id of its result once it has written
+	 * its first row, which should stop it with an error and drop its state
+	 */
+	@Test
+	public void testRunIncrementalCancelled() {
+		InnerHashJoin ij = new InnerHashJoin();
+		final Result result = new Result();
+		result.setId(21L);
+		MemoryResultSet rsi = new MemoryResultSet() {
+			@Override
+			public void appendRow() throws ResultSetException,
+					PersistableException {
+				super.appendRow();
+				JoinProgress.cancel(result.getId());
+			}
+		};
+		IncrementalJoinImpl.clearState();
+		try {
+			ij.setup(null);
+			result.setData(rsi);
+			ResultSet leftResultSet = createLeftResult();
+			ResultSet rightResultSet = createRightResult();
+
+			ij.run(new SecureSession(), createIncrementalJoin(leftResultSet,
+					rightResultSet), result);
+			assertEquals("Join was not cancelled", ResultStatus.ERROR,
+					result.getResultStatus());
+			assertTrue("Join was not cancelled", result.getMessage()
+					.startsWith("Join was cancelled"));
+			assertNull("Join is still running", JoinProgress.get(21L));
+
+			Result nextResult = runIncremental(leftResultSet, rightResultSet);
+			assertTrue("State was kept : " + nextResult.getMessage(),
+					nextResult.getMessage().startsWith("Full"));
+			assertTrue("Results are not equal", JoinTestUtil.isEqual(
+					(ResultSet) nextResult.getData(), createComparator()));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		} finally {
+			IncrementalJoinImpl.clearState();
+		}
+	}
+
 	/**
 	 * Runs a join between two results sets that should fail on joining
 	 */
 	@Test
-	public void testRunNegative() {
+	public void testRunNegative() {
+		InnerHashJoin ij = new InnerHashJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			ij.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", createRightResult());
+			join.getStringValues().put("LeftColumn", "id");
+			join.getObjectValues().put("RightResultSet", createLeftResult());
+			join.getStringValues().put("RightColumn", "user_id");
+
+			result = ij.run(session, join, result);
+			assertEquals("ResultStatus is not ERROR", ResultStatus.ERROR,
+					result.getResultStatus());
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Runs a join between two results sets where the result sets are null
+	 */
+	@Test
+	public void testRunNull() {
+		InnerHashJoin ij = new InnerHashJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			ij.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", null);
+			join.getStringValues().put("LeftColumn", "id");
+			join.getObjectValues().put("RightResultSet", null);
+			join.getStringValues().put("RightColumn", "user_id");
+
+			result = ij.run(session, join, result);
+			assertEquals("ResultStatus is not ERROR", ResultStatus.ERROR,
+					result.getResultStatus());
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Tests to ensure that the results from the getResults is equal to the
+	 * results from the run
+	 */
+	@Test
+	public void testGetResults() {
+		InnerHashJoin ij = new InnerHashJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			ij.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", createLeftResult());
+			join.getStringValues().put("LeftColumn", "id");
+			join.getObjectValues().put("RightResultSet", createRightResult());
+			join.getStringValues().put("RightColumn", "user_id");
+
+			ij.run(session, join, result);
+
+			ResultSetImpl returnedData = (ResultSetImpl) ij.getResults(result)
+					.getData();
+			assertTrue("Results are not equal",
+					JoinTestUtil.isEqual(returnedData, createComparator()));
+
+			assertSame(result, ij.getResults(result));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+
+		}
+
+	}
+
+	/**
+	 * Tests to make sure that the result type that is returned is tabular;
+	 */
+	@Test
+	public void testGetJoinDataType() {
+		InnerHashJoin ij = new InnerHashJoin();
+		assertEquals("Should be result type of tabular", ij.getJoinDataType(),
+				ResultDataType.TABULAR);
+	}
+
+	private Result runBuildCache(ResultSet leftResultSet,
+			ResultSet rightResultSet, String leftResultId)
+			throws ResultSetException, PersistableException,
+			JoinActionSetupException {
+		InnerHashJoin ij = new InnerHashJoin();
+		HashMap<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("buildCacheBytes", "1048576");
+		parameters.put("buildSide", "left");
+		Result result = new Result();
+		Join join = new Join();
+
+		ij.setup(parameters);
+		result.setData(new MemoryResultSet());
+
+		join.getObjectValues().put("LeftResultSet", leftResultSet);
+		if (leftResultId != null) {
+			join.getStringValues().put("LeftResultSet", leftResultId);
+		}
+		join.getStringValues().put("LeftColumn", "id");
+		join.getObjectValues().put("RightResultSet", rightResultSet);
+		join.getStringValues().put("RightColumn", "user_id");
+
+		return ij.run(new SecureSession(), join, result);
+	}
+
+	private Result runIncremental(ResultSet leftResultSet,
+			ResultSet rightResultSet) throws ResultSetException,
+			PersistableException, JoinActionSetupException {
+		InnerHashJoin ij = new InnerHashJoin();
+		Result result = new Result();
+
+		ij.setup(null);
+		result.setData(new MemoryResultSet());
+
+		return ij.run(new SecureSession(), createIncrementalJoin(
+				leftResultSet, rightResultSet), result);
+	}
+
+	private Join createIncrementalJoin(ResultSet leftResultSet,
+			ResultSet rightResultSet) {
+		Join join = new Join();
+		join.getObjectValues().put("LeftResultSet", leftResultSet);
+		join.getStringValues().put("LeftResultSet", "30");
+		join.getStringValues().put("LeftColumn", "id");
+		join.getObjectValues().put("RightResultSet", rightResultSet);
+		join.getStringValues().put("RightResultSet", "31");
+		join.getStringValues().put("RightColumn", "user_id");
+		join.getStringValues().put("Incremental", "true");
+		return join;
+	}
+
+	private void appendRow(ResultSet resultSet, Object id, Object value)
+			throws ResultSetException, PersistableException {
+		// Move to the last row so the new row is added after it
+		resultSet.beforeFirst();
+		while (resultSet.next()) {
+		}
+		resultSet.appendRow();
+		resultSet.updateObject(0, id);
+		resultSet.updateObject(1, value);
+		resultSet.beforeFirst();
+	}
+
+	/**
+	 * Runs a join with blocks of two rows, so the result sets are partitioned
+	 * and spilled to disk, and tests to see if the results are equal and the
+	 * spill files are deleted
+	 */
+	@Test
+	public void testRunSpilled() {
 		InnerHashJoin ij = new InnerHashJoin();
 		SecureSession session = new SecureSession();
 		Result result = new Result();
-		MemoryResultSet rsi = new MemoryResultSet();
+		final File tempDirectory = createTempDirectory();
+		final int[] spillFiles = new int[1];
+		MemoryResultSet rsi = new MemoryResultSet() {
+			@Override
+			public void appendRow() throws ResultSetException,
+					PersistableException {
+				super.appendRow();
+				spillFiles[0] = Math.max(spillFiles[0],
+						tempDirectory.list().length);
+			}
+		};
 		Join join = new Join();
+		HashMap<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("blockSize", "2");
+		parameters.put("tempDirectory", tempDirectory.getAbsolutePath());
 
 		try {
-			ij.setup(null);
+			ij.setup(parameters);
 			result.setData(rsi);
 
-			join.getObjectValues().put("LeftResultSet", createRightResult());
+			join.getObjectValues().put("LeftResultSet", createSpillLeftResult());
 			join.getStringValues().put("LeftColumn", "id");
-			join.getObjectValues().put("RightResultSet", createLeftResult());
+			join.getObjectValues().put("RightResultSet", createSpillRightResult());
 			join.getStringValues().put("RightColumn", "user_id");
 
 			result = ij.run(session, join, result);
-			assertEquals("ResultStatus is not ERROR", ResultStatus.ERROR,
-					result.getResultStatus());
+			assertEquals("ResultStatus is not COMPLETE",
+					ResultStatus.COMPLETE, result.getResultStatus());
+			assertTrue("Results are not equal", JoinTestUtil.isEqualIgnoringOrder(
+					(ResultSet) result.getData(), createSpillComparator(false)));
+			assertTrue("Join did not spill", spillFiles[0] > 0);
+			assertEquals("Spill files were not deleted", 0,
+					tempDirectory.list().length);
 		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
 			e.printStackTrace();
 			fail("Exception thrown");
+		} finally {
+			tempDirectory.delete();
 		}
 
 	}
 
 	/**
-	 * Runs a join between two results sets where the result sets are null
+	 * Runs a join with several threads and tests to see if it probes in
+	 * parallel and outputs the same rows in the same order as a join on one
+	 * thread
 	 */
 	@Test
-	public void testRunNull() {
-		InnerHashJoin ij = new InnerHashJoin();
-		SecureSession session = new SecureSession();
-		Result result = new Result();
-		MemoryResultSet rsi = new MemoryResultSet();
-		Join join = new Join();
+	public void testRunParallel() {
+		try {
+			ResultSet leftResult = JoinTestUtil.createRangeResultSet("id",
+					"Name", 0, 5000, 1, 10);
+			ResultSet rightResult = JoinTestUtil.createRangeResultSet(
+					"user_id", "Age", 2500, 7500, 2, 10);
+			HashMap<String, Object> parameters = new HashMap<String, Object>();
+
+			Result serial = runRange(parameters, leftResult, rightResult);
+			assertEquals("Parallel probe rows are not equal", 0,
+					JoinTestUtil.getStatistic(serial.getMessage(),
+							"Parallel probe rows"));
+
+			parameters.put("parallelism", "4");
+			Result parallel = runRange(parameters, leftResult, rightResult);
+			long probeRows = JoinTestUtil.getStatistic(parallel.getMessage(),
+					"Probe rows");
+			assertTrue("Join did not probe", probeRows > 0);
+			assertEquals("Join was not probed in parallel", probeRows,
+					JoinTestUtil.getStatistic(parallel.getMessage(),
+							"Parallel probe rows"));
+
+			ResultSet parallelData = (ResultSet) parallel.getData();
+			assertEquals("Result size is not equal", 5000,
+					parallelData.getSize());
+			assertTrue("Results are not equal", JoinTestUtil.isEqual(
+					(ResultSet) serial.getData(), parallelData));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
 
+	/**
+	 * Runs a join with several threads whose hash table is large enough to be
+	 * built from several radix partitions, and tests to see if it is built in
+	 * parallel and outputs the same rows in the same order as a join on one
+	 * thread
+	 */
+	@Test
+	public void testRunParallelBuild() {
 		try {
-			ij.setup(null);
-			result.setData(rsi);
+			ResultSet leftResult = JoinTestUtil.createRangeResultSet("id",
+					"Name", 0, 10000, 1, 10);
+			ResultSet rightResult = JoinTestUtil.createRangeResultSet(
+					"user_id", "Age", 5000, 25000, 1, 0);
+			HashMap<String, Object> parameters = new HashMap<String, Object>();
 
-			join.getObjectValues().put("LeftResultSet", null);
+			Result serial = runRange(parameters, leftResult, rightResult);
+			assertEquals("Parallel build rows are not equal", 0,
+					JoinTestUtil.getStatistic(serial.getMessage(),
+							"Parallel build rows"));
+
+			parameters.put("parallelism", "4");
+			Result parallel = runRange(parameters, leftResult, rightResult);
+			assertEquals("Hash table was not built in parallel", 10000,
+					JoinTestUtil.getStatistic(parallel.getMessage(),
+							"Parallel build rows"));
+			assertTrue("Hash table was not partitioned", JoinTestUtil
+					.getStatistic(parallel.getMessage(), "Build partitions") > 1);
+
+			ResultSet parallelData = (ResultSet) parallel.getData();
+			assertEquals("Result size is not equal", 5000,
+					parallelData.getSize());
+			assertTrue("Results are not equal", JoinTestUtil.isEqual(
+					(ResultSet) serial.getData(), parallelData));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	/**
+	 * Runs a pipelined join with a queue of one row, and tests to see if the
+	 * output is written while the join is still probing and holds the same
+	 * rows in the same order as a join that is not pipelined
+	 */
+	@Test
+	public void testRunPipelined() {
+		final Result result = new Result();
+		result.setId(22L);
+		final long[] probedAtFirstRow = new long[] { -1 };
+		MemoryResultSet rsi = new MemoryResultSet() {
+			@Override
+			public void appendRow() throws ResultSetException,
+					PersistableException {
+				super.appendRow();
+				if (probedAtFirstRow[0] < 0) {
+					probedAtFirstRow[0] = JoinProgress.get(result.getId())
+							.getRowsProbed();
+				}
+			}
+		};
+		try {
+			ResultSet leftResult = JoinTestUtil.createRangeResultSet("id",
+					"Name", 0, 5000, 1, 10);
+			ResultSet rightResult = JoinTestUtil.createRangeResultSet(
+					"user_id", "Age", 2500, 7500, 2, 10);
+			HashMap<String, Object> parameters = new HashMap<String, Object>();
+			Result serial = runRange(parameters, leftResult, rightResult);
+
+			parameters.put("pipelined", "true");
+			parameters.put("outputQueueSize", "1");
+			InnerHashJoin ij = new InnerHashJoin();
+			ij.setup(parameters);
+			result.setData(rsi);
+			Join join = new Join();
+			join.getObjectValues().put("LeftResultSet", leftResult);
 			join.getStringValues().put("LeftColumn", "id");
-			join.getObjectValues().put("RightResultSet", null);
+			join.getObjectValues().put("RightResultSet", rightResult);
 			join.getStringValues().put("RightColumn", "user_id");
 
-			result = ij.run(session, join, result);
-			assertEquals("ResultStatus is not ERROR", ResultStatus.ERROR,
-					result.getResultStatus());
+			ij.run(new SecureSession(), join, result);
+			assertEquals("ResultStatus is not COMPLETE : " + result.getMessage(),
+					ResultStatus.COMPLETE, result.getResultStatus());
+			assertTrue("Output was not written while the join ran : "
+					+ probedAtFirstRow[0], (probedAtFirstRow[0] >= 0)
+					&& (probedAtFirstRow[0] < rightResult.getSize()));
+			assertTrue("Results are not equal", JoinTestUtil.isEqual(
+					(ResultSet) serial.getData(), (ResultSet) result.getData()));
 		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
 			e.printStackTrace();
 			fail("Exception thrown");
 		}
-
 	}
 
 	/**
-	 * Tests to ensure that the results from the getResults is equal to the
-	 * results from the run
+	 * Cancels a pipelined join from the thread that writes its output, which
+	 * should stop the join on its own thread and fail with an error
 	 */
 	@Test
-	public void testGetResults() {
-		InnerHashJoin ij = new InnerHashJoin();
-		SecureSession session = new SecureSession();
-		Result result = new Result();
-		MemoryResultSet rsi = new MemoryResultSet();
-		Join join = new Join();
-
+	public void testRunPipelinedCancelled() {
+		final Result result = new Result();
+		result.setId(23L);
+		MemoryResultSet rsi = new MemoryResultSet() {
+			@Override
+			public void appendRow() throws ResultSetException,
+					PersistableException {
+				super.appendRow();
+				JoinProgress.cancel(result.getId());
+			}
+		};
+		HashMap<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("pipelined", "true");
+		parameters.put("outputQueueSize", "1");
 		try {
-			ij.setup(null);
+			InnerHashJoin ij = new InnerHashJoin();
+			ij.setup(parameters);
 			result.setData(rsi);
-
-			join.getObjectValues().put("LeftResultSet", createLeftResult());
+			Join join = new Join();
+			join.getObjectValues().put("LeftResultSet",
+					JoinTestUtil.createRangeResultSet("id", "Name", 0, 5000,
+							1, 0));
 			join.getStringValues().put("LeftColumn", "id");
-			join.getObjectValues().put("RightResultSet", createRightResult());
+			join.getObjectValues().put("RightResultSet",
+					JoinTestUtil.createRangeResultSet("user_id", "Age", 0,
+							5000, 1, 0));
 			join.getStringValues().put("RightColumn", "user_id");
 
-			ij.run(session, join, result);
+			ij.run(new SecureSession(), join, result);
+			assertEquals("Join was not cancelled", ResultStatus.ERROR,
+					result.getResultStatus());
+			assertTrue("Join was not cancelled : " + result.getMessage(),
+					result.getMessage().startsWith("Join was cancelled"));
+			assertTrue("Join was not stopped", rsi.getSize() < 5000);
+			assertNull("Join is still running", JoinProgress.get(23L));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
 
-			ResultSetImpl returnedData = (ResultSetImpl) ij.getResults(result)
-					.getData();
-			assertTrue("Results are not equal",
-					JoinTestUtil.isEqual(returnedData, createComparator()));
+	/**
+	 * Runs a join where most probe rows have no match with and without a Bloom
+	 * filter, and tests to see if the filter rejects rows before the hash
+	 * table is searched and the results are equal
+	 */
+	@Test
+	public void testRunBloomFilter() {
+		try {
+			ResultSet leftResult = JoinTestUtil.createRangeResultSet("id",
+					"Name", 0, 1000, 1, 10);
+			ResultSet rightResult = JoinTestUtil.createRangeResultSet(
+					"user_id", "Age", 0, 20000, 1, 0);
+			HashMap<String, Object> parameters = new HashMap<String, Object>();
+			parameters.put("bloomFilter", "false");
+			Result unfiltered = runRange(parameters, leftResult, rightResult);
+			assertEquals("Bloom filter rejected rows", 0,
+					JoinTestUtil.getStatistic(unfiltered.getMessage(),
+							"Bloom filter rejected"));
+			assertEquals("Bloom filter passed rows", 0,
+					JoinTestUtil.getStatistic(unfiltered.getMessage(),
+							"Bloom filter passed"));
 
-			assertSame(result, ij.getResults(result));
+			parameters.put("bloomFilter", "true");
+			Result filtered = runRange(parameters, leftResult, rightResult);
+			long probeRows = JoinTestUtil.getStatistic(filtered.getMessage(),
+					"Probe rows");
+			long rejected = JoinTestUtil.getStatistic(filtered.getMessage(),
+					"Bloom filter rejected");
+			long passed = JoinTestUtil.getStatistic(filtered.getMessage(),
+					"Bloom filter passed");
+			assertEquals("Probe rows are not equal", 20000, probeRows);
+			assertEquals("Every probe row was not filtered", probeRows,
+					rejected + passed);
+			// Rows that match always pass, and few of the rest are false
+			// positives
+			assertTrue("Too few rows were rejected : " + rejected,
+					rejected > 18000);
+			assertTrue("Matching rows were rejected", passed >= 1000);
+
+			ResultSet filteredData = (ResultSet) filtered.getData();
+			assertEquals("Result size is not equal", 1000,
+					filteredData.getSize());
+			assertTrue("Results are not equal", JoinTestUtil.isEqual(
+					(ResultSet) unfiltered.getData(), filteredData));
 		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
 			e.printStackTrace();
 			fail("Exception thrown");
-
 		}
+	}
+
+	/**
+	 * Runs a join where the smaller result set has many rows for each key.
+	 * Tests to see if an explicit build side is used, if the automatic build
+	 * side passes over the smaller result set when sampling shows it is more
+	 * expensive to hold in the hash table, if it keeps the smaller result set
+	 * without sampling, and if the results are equal.
+	 */
+	@Test
+	public void testRunBuildSide() {
+		try {
+			ResultSet leftResult = JoinTestUtil.createRangeResultSet("id",
+					"Name", 0, 100, 20, 10);
+			ResultSet rightResult = JoinTestUtil.createRangeResultSet(
+					"user_id", "Age", 0, 3000, 1, 0);
+			HashMap<String, Object> parameters = new HashMap<String, Object>();
+
+			parameters.put("buildSide", "left");
+			Result left = runRange(parameters, leftResult, rightResult);
+			assertBuildSide("left", left);
 
+			parameters.put("buildSide", "right");
+			Result right = runRange(parameters, leftResult, rightResult);
+			assertBuildSide("right", right);
+
+			parameters.put("buildSide", "auto");
+			Result auto = runRange(parameters, leftResult, rightResult);
+			assertBuildSide("right", auto);
+
+			parameters.put("sampleRows", "0");
+			Result unsampled = runRange(parameters, leftResult, rightResult);
+			assertBuildSide("left", unsampled);
+
+			ResultSet leftData = (ResultSet) left.getData();
+			assertEquals("Result size is not equal", 2000, leftData.getSize());
+			assertTrue("Results are not equal", JoinTestUtil
+					.isEqualIgnoringOrder(leftData, (ResultSet) right.getData()));
+			assertTrue("Results are not equal", JoinTestUtil
+					.isEqualIgnoringOrder(leftData, (ResultSet) auto.getData()));
+			assertTrue("Results are not equal", JoinTestUtil
+					.isEqualIgnoringOrder(leftData,
+							(ResultSet) unsampled.getData()));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
 	}
 
 	/**
-	 * Tests to make sure that the result type that is returned is tabular;
+	 * Runs joins with a memory budget that does not fit the hash table, and
+	 * tests to see if the block size is sized from the budget and the width
+	 * of the rows, if an explicit block size is kept, and if the results are
+	 * equal to a join in a single block
 	 */
 	@Test
-	public void testGetJoinDataType() {
-		InnerHashJoin ij = new InnerHashJoin();
-		assertEquals("Should be result type of tabular", ij.getJoinDataType(),
-				ResultDataType.TABULAR);
+	public void testRunBlockSize() {
+		File tempDirectory = createTempDirectory();
+		try {
+			ResultSet leftResult = JoinTestUtil.createRangeResultSet("id",
+					"Name", 0, 5000, 1, 10);
+			ResultSet wideLeftResult = createWideResult(0, 5000);
+			ResultSet rightResult = JoinTestUtil.createRangeResultSet(
+					"user_id", "Age", 0, 5000, 1, 0);
+			HashMap<String, Object> parameters = new HashMap<String, Object>();
+			parameters.put("buildSide", "left");
+			parameters.put("tempDirectory", tempDirectory.getAbsolutePath());
+
+			Result single = runRange(parameters, leftResult, rightResult);
+			assertEquals("Blocks are not equal", 1,
+					JoinTestUtil.getStatistic(single.getMessage(), "Blocks"));
+
+			parameters.put("memoryBudget", "100000");
+			Result budgeted = runRange(parameters, leftResult, rightResult);
+			long blockSize = JoinTestUtil.getStatistic(budgeted.getMessage(),
+					"Block size");
+			assertTrue("Block size was not sized to the budget : " + blockSize,
+					(blockSize > 1) && (blockSize < 5000));
+			assertTrue("Hash table was not built in several blocks",
+					JoinTestUtil.getStatistic(budgeted.getMessage(), "Blocks") > 1);
+			assertTrue("Results are not equal", JoinTestUtil
+					.isEqualIgnoringOrder((ResultSet) single.getData(),
+							(ResultSet) budgeted.getData()));
+
+			Result wide = runRange(parameters, wideLeftResult, rightResult);
+			long wideBlockSize = JoinTestUtil.getStatistic(wide.getMessage(),
+					"Block size");
+			assertTrue("Wider rows did not get a smaller block size : "
+					+ wideBlockSize + " and " + blockSize,
+					(wideBlockSize > 1) && (wideBlockSize < blockSize));
+			assertEquals("Result size is not equal", 5000,
+					((ResultSet) wide.getData()).getSize());
+
+			parameters.put("blockSize", "1000");
+			Result explicit = runRange(parameters, leftResult, rightResult);
+			assertEquals("Block size is not equal", 1000,
+					JoinTestUtil.getStatistic(explicit.getMessage(),
+							"Block size"));
+			assertTrue("Results are not equal", JoinTestUtil
+					.isEqualIgnoringOrder((ResultSet) single.getData(),
+							(ResultSet) explicit.getData()));
+			assertEquals("Spill files were not deleted", 0,
+					tempDirectory.list().length);
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		} finally {
+			tempDirectory.delete();
+		}
 	}
 
 	/**
@@ -229,6 +1263,243 @@ public class InnerHashJoinTest {
 				rightAgeColumn }, new Object[] { 1, 20, 2, 30, 5, 10 });
 	}
 
+	private Result runRange(HashMap<String, Object> parameters,
+			ResultSet leftResultSet, ResultSet rightResultSet)
+			throws ResultSetException, PersistableException,
+			JoinActionSetupException {
+		InnerHashJoin join = new InnerHashJoin();
+		Result result = new Result();
+		Join joinValues = new Join();
+
+		join.setup(parameters);
+		result.setData(new MemoryResultSet());
+
+		joinValues.getObjectValues().put("LeftResultSet", leftResultSet);
+		joinValues.getStringValues().put("LeftColumn", "id");
+		joinValues.getObjectValues().put("RightResultSet", rightResultSet);
+		joinValues.getStringValues().put("RightColumn", "user_id");
+
+		result = join.run(new SecureSession(), joinValues, result);
+		assertEquals("ResultStatus is not COMPLETE : " + result.getMessage(),
+				ResultStatus.COMPLETE, result.getResultStatus());
+		return result;
+	}
+
+	private void assertBuildSide(String buildSide, Result result) {
+		assertTrue("Hash table was not built from the " + buildSide
+				+ " result set : " + result.getMessage(), result.getMessage()
+				.contains("Build side : " + buildSide + ","));
+	}
+
+	/**
+	 * Creates a result set with a row for every key in a range, and several
+	 * text columns
+	 *
+	 * @param start
+	 *            First key
+	 * @param end
+	 *            Key after the last key
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createWideResult(int start, int end)
+			throws ResultSetException, PersistableException {
+		Column[] columns = new Column[6];
+		columns[0] = new Column();
+		columns[0].setName("id");
+		columns[0].setDataType(PrimitiveDataType.INTEGER);
+		for (int column = 1; column < columns.length; column++) {
+			columns[column] = new Column();
+			columns[column].setName("Text" + column);
+			columns[column].setDataType(PrimitiveDataType.STRING);
+		}
+
+		Object[] objects = new Object[(end - start) * columns.length];
+		int objLoc = 0;
+		for (int key = start; key < end; key++) {
+			objects[objLoc++] = key;
+			for (int column = 1; column < columns.length; column++) {
+				objects[objLoc++] = "Text" + column + "-" + key;
+			}
+		}
+		return JoinTestUtil.createResultSet(columns, objects);
+	}
+
+	private File createTempDirectory() {
+		try {
+			return Files.createTempDirectory("join").toFile();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Creates a left result set for testing a join that spills, with rows
+	 * without a key
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createSpillLeftResult() throws ResultSetException,
+			PersistableException {
+		Column leftIdColumn = new Column();
+		leftIdColumn.setName("id");
+		leftIdColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column leftNameColumn = new Column();
+		leftNameColumn.setName("Name");
+		leftNameColumn.setDataType(PrimitiveDataType.STRING);
+
+		return JoinTestUtil.createResultSet(new Column[] { leftIdColumn,
+				leftNameColumn }, new Object[] { 1, "Jeremy", 2, "James", 3,
+				"Bob", 4, "Alice", null, "Nobody", 5, "Carol", 6, "Dave", 7,
+				"Eve", 8, "Frank", null, "No one" });
+	}
+
+	/**
+	 * Creates a right result set for testing a join that spills, with a key
+	 * that has two rows and a row without a key
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createSpillRightResult() throws ResultSetException,
+			PersistableException {
+		Column rightIdColumn = new Column();
+		rightIdColumn.setName("user_id");
+		rightIdColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column rightAgeColumn = new Column();
+		rightAgeColumn.setName("Age");
+		rightAgeColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		return JoinTestUtil.createResultSet(new Column[] { rightIdColumn,
+				rightAgeColumn }, new Object[] { 1, 10, 3, 30, 1, 11, null, 0,
+				9, 90, 5, 50, 10, 100, 8, 80 });
+	}
+
+	/**
+	 * Creates a comparator result set for testing a join that spills
+	 * 
+	 * @param fullOuter
+	 *            True to include the unmatched rows of both result sets
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createSpillComparator(boolean fullOuter)
+			throws ResultSetException, PersistableException {
+		Column leftIdColumn = new Column();
+		leftIdColumn.setName("id");
+		leftIdColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column leftNameColumn = new Column();
+		leftNameColumn.setName("Name");
+		leftNameColumn.setDataType(PrimitiveDataType.STRING);
+
+		Column rightIdColumn = new Column();
+		rightIdColumn.setName("user_id");
+		rightIdColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column rightAgeColumn = new Column();
+		rightAgeColumn.setName("Age");
+		rightAgeColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Object[] matched = new Object[] { 
+				1, "Jeremy", 1, 10, 
+				1, "Jeremy", 1, 11, 
+				3, "Bob", 3, 30, 
+				5, "Carol", 5, 50, 
+				8, "Frank", 8, 80 };
+		Object[] unmatched = new Object[] { 
+				2, "James", null, null, 
+				4, "Alice", null, null, 
+				null, "Nobody", null, null, 
+				6, "Dave", null, null, 
+				7, "Eve", null, null, 
+				null, "No one", null, null, 
+				null, null, null, 0, 
+				null, null, 9, 90, 
+				null, null, 10, 100 };
+		Object[] objects = matched;
+		if (fullOuter) {
+			objects = new Object[matched.length + unmatched.length];
+			System.arraycopy(matched, 0, objects, 0, matched.length);
+			System.arraycopy(unmatched, 0, objects, matched.length,
+					unmatched.length);
+		}
+		return JoinTestUtil.createResultSet(new Column[] { leftIdColumn,
+				leftNameColumn, rightIdColumn, rightAgeColumn }, objects);
+	}
+
+	/**
+	 * Creates a right result set for testing with a join column of doubles
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createDoubleRightResult() throws ResultSetException,
+			PersistableException {
+		Column rightIdColumn = new Column();
+		rightIdColumn.setName("user_id");
+		rightIdColumn.setDataType(PrimitiveDataType.DOUBLE);
+
+		Column rightAgeColumn = new Column();
+		rightAgeColumn.setName("Age");
+		rightAgeColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		return JoinTestUtil.createResultSet(new Column[] { rightIdColumn,
+				rightAgeColumn }, new Object[] { 1.0, 20, 2.0, 30, 5.5, 10 });
+	}
+
+	/**
+	 * Creates a comparator result set for testing with a join column of
+	 * doubles
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createDoubleComparator() throws ResultSetException,
+			PersistableException {
+		Column leftIdColumn = new Column();
+		leftIdColumn.setName("id");
+		leftIdColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column leftNameColumn = new Column();
+		leftNameColumn.setName("Name");
+		leftNameColumn.setDataType(PrimitiveDataType.STRING);
+
+		Column rightIdColumn = new Column();
+		rightIdColumn.setName("user_id");
+		rightIdColumn.setDataType(PrimitiveDataType.DOUBLE);
+
+		Column rightAgeColumn = new Column();
+		rightAgeColumn.setName("Age");
+		rightAgeColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		return JoinTestUtil.createResultSet(new Column[] { leftIdColumn,
+				leftNameColumn, rightIdColumn, rightAgeColumn }, new Object[] {
+				1, "Jeremy", 1.0, 20,
+				2, "James", 2.0, 30 });
+	}
+
 	/**
 	 * Creates a comparator result set for testing
 	 * 
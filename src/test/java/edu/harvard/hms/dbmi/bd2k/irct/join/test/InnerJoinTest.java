@@ -74,6 +74,53 @@ public class InnerJoinTest {
 
 	}
 
+	/**
+	 * Runs a join where the left result set is smaller than the right one, so
+	 * the left rows are indexed, and tests to see if the matches of each left
+	 * row are in the order of the right result set
+	 */
+	@Test
+	public void testRunDrivingIndexed() {
+		try {
+			ResultSet returnedData = runJoin(createLeftResult(),
+					createRightResult(new Object[] { 2, 30, 1, 20, 2, 35, 5,
+							10 }));
+			assertTrue("Results are not equal", JoinTestUtil.isEqual(
+					returnedData, createComparator(new Object[] { 1, "Jeremy",
+							20, 2, "James", 30, 2, "James", 35 })));
+		} catch (ResultSetException | PersistableException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	/**
+	 * Runs joins where both result sets have null keys, with either result set
+	 * indexed, which should never match the null keys
+	 */
+	@Test
+	public void testRunNullKeys() {
+		try {
+			ResultSet leftResult = createLeftResult(new Object[] { 1,
+					"Jeremy", null, "James", 3, "Bob" });
+
+			ResultSet returnedData = runJoin(leftResult,
+					createRightResult(new Object[] { null, 30, 1, 20 }));
+			assertTrue("Results are not equal", JoinTestUtil.isEqual(
+					returnedData, createComparator(new Object[] { 1, "Jeremy",
+							20 })));
+
+			returnedData = runJoin(leftResult, createRightResult(new Object[] {
+					null, 30, 1, 20, null, 40, 3, 50 }));
+			assertTrue("Results are not equal", JoinTestUtil.isEqual(
+					returnedData, createComparator(new Object[] { 1, "Jeremy",
+							20, 3, "Bob", 50 })));
+		} catch (ResultSetException | PersistableException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
 	/**
 	 * Runs a join between two results sets that should fail on joining
 	 */
@@ -189,6 +236,12 @@ public class InnerJoinTest {
 	 */
 	private ResultSet createLeftResult() throws ResultSetException,
 			PersistableException {
+		return createLeftResult(new Object[] { 1, "Jeremy", 2, "James", 3,
+				"Bob" });
+	}
+
+	private ResultSet createLeftResult(Object[] data)
+			throws ResultSetException, PersistableException {
 		Column leftIdColumn = new Column();
 		leftIdColumn.setName("id");
 		leftIdColumn.setDataType(PrimitiveDataType.INTEGER);
@@ -198,8 +251,7 @@ public class InnerJoinTest {
 		leftNameColumn.setDataType(PrimitiveDataType.STRING);
 
 		return JoinTestUtil.createResultSet(new Column[] { leftIdColumn,
-				leftNameColumn }, new Object[] { 1, "Jeremy", 2, "James", 3,
-				"Bob" });
+				leftNameColumn }, data);
 	}
 
 	/**
@@ -213,6 +265,11 @@ public class InnerJoinTest {
 	 */
 	private ResultSet createRightResult() throws ResultSetException,
 			PersistableException {
+		return createRightResult(new Object[] { 1, 20, 2, 30, 5, 10 });
+	}
+
+	private ResultSet createRightResult(Object[] data)
+			throws ResultSetException, PersistableException {
 		Column rightIdColumn = new Column();
 		rightIdColumn.setName("user_id");
 		rightIdColumn.setDataType(PrimitiveDataType.INTEGER);
@@ -222,7 +279,7 @@ public class InnerJoinTest {
 		rightAgeColumn.setDataType(PrimitiveDataType.INTEGER);
 
 		return JoinTestUtil.createResultSet(new Column[] { rightIdColumn,
-				rightAgeColumn }, new Object[] { 1, 20, 2, 30, 5, 10 });
+				rightAgeColumn }, data);
 	}
 
 	/**
@@ -253,4 +310,41 @@ public class InnerJoinTest {
 				20, 2, "James", 30, 3 });
 	}
 
+	private ResultSet createComparator(Object[] data)
+			throws ResultSetException, PersistableException {
+		Column leftIdColumn = new Column();
+		leftIdColumn.setName("id");
+		leftIdColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column leftNameColumn = new Column();
+		leftNameColumn.setName("Name");
+		leftNameColumn.setDataType(PrimitiveDataType.STRING);
+
+		Column rightAgeColumn = new Column();
+		rightAgeColumn.setName("Age");
+		rightAgeColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		return JoinTestUtil.createResultSet(new Column[] { leftIdColumn,
+				leftNameColumn, rightAgeColumn }, data);
+	}
+
+	private ResultSet runJoin(ResultSet leftResultSet,
+			ResultSet rightResultSet) throws ResultSetException,
+			PersistableException {
+		InnerJoin ij = new InnerJoin();
+		Result result = new Result();
+		Join join = new Join();
+
+		result.setData(new MemoryResultSet());
+		join.getObjectValues().put("LeftResultSet", leftResultSet);
+		join.getStringValues().put("LeftColumn", "id");
+		join.getObjectValues().put("RightResultSet", rightResultSet);
+		join.getStringValues().put("RightColumn", "user_id");
+
+		result = ij.run(new SecureSession(), join, result);
+		assertEquals("ResultStatus is not COMPLETE", ResultStatus.COMPLETE,
+				result.getResultStatus());
+		return (ResultSet) result.getData();
+	}
+
 }
@@ -0,0 +1,411 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Date;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import edu.harvard.hms.dbmi.bd2k.irct.exception.JoinActionSetupException;
+import edu.harvard.hms.dbmi.bd2k.irct.join.IntervalJoin;
+import edu.harvard.hms.dbmi.bd2k.irct.join.JoinProgress;
+import edu.harvard.hms.dbmi.bd2k.irct.model.join.Join;
+import edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.Result;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultStatus;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Column;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSetImpl;
+import edu.harvard.hms.dbmi.bd2k.irct.model.security.SecureSession;
+
+public class IntervalJoinTest {
+	private static final long DAY = 24 * 60 * 60 * 1000L;
+
+	/**
+	 * Tests the creation of an Interval Join
+	 *
+	 */
+	@Test
+	public void testSetup() {
+		IntervalJoin ivj = new IntervalJoin();
+		try {
+			ivj.setup(new HashMap<String, Object>());
+			assertNotNull(ivj);
+		} catch (JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	/**
+	 * Runs a join of the labs taken within 30 days after a diagnosis of the
+	 * same patient and tests to see if the results are equal
+	 */
+	@Test
+	public void testRunPositive() {
+		IntervalJoin ivj = new IntervalJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			ivj.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", createLeftResult());
+			join.getStringValues().put("LeftColumn", "patient_id");
+			join.getObjectValues().put("RightResultSet", createRightResult());
+			join.getStringValues().put("RightColumn", "lab_patient_id");
+			join.getStringValues().put("LeftRangeColumn", "diagnosis_day");
+			join.getStringValues().put("RightRangeColumn", "lab_day");
+			join.getStringValues().put("MinOffset", "0");
+			join.getStringValues().put("MaxOffset", "30");
+
+			ResultSetImpl returnedData = (ResultSetImpl) ivj.run(session, join,
+					result).getData();
+
+			assertTrue("Results are not equal",
+					JoinTestUtil.isEqual(returnedData, createComparator()));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Runs a left outer interval join, which keeps the diagnoses without a lab
+	 * in their window
+	 */
+	@Test
+	public void testRunLeftOuter() {
+		IntervalJoin ivj = new IntervalJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			ivj.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", createLeftResult());
+			join.getStringValues().put("LeftColumn", "patient_id");
+			join.getObjectValues().put("RightResultSet", createRightResult());
+			join.getStringValues().put("RightColumn", "lab_patient_id");
+			join.getStringValues().put("LeftRangeColumn", "diagnosis_day");
+			join.getStringValues().put("RightRangeColumn", "lab_day");
+			join.getStringValues().put("MinOffset", "0");
+			join.getStringValues().put("MaxOffset", "30");
+			join.getStringValues().put("JoinType", "leftOuter");
+
+			ResultSetImpl returnedData = (ResultSetImpl) ivj.run(session, join,
+					result).getData();
+
+			assertTrue("Results are not equal", JoinTestUtil.isEqual(
+					returnedData, createLeftOuterComparator()));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Runs a join on date columns, where the offsets are a number of days
+	 */
+	@Test
+	public void testRunDates() {
+		IntervalJoin ivj = new IntervalJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			ivj.setup(null);
+			result.setData(rsi);
+
+			Column leftIdColumn = new Column();
+			leftIdColumn.setName("patient_id");
+			leftIdColumn.setDataType(PrimitiveDataType.INTEGER);
+			Column leftDateColumn = new Column();
+			leftDateColumn.setName("diagnosis_date");
+			leftDateColumn.setDataType(PrimitiveDataType.DATE);
+
+			Column rightIdColumn = new Column();
+			rightIdColumn.setName("lab_patient_id");
+			rightIdColumn.setDataType(PrimitiveDataType.INTEGER);
+			Column rightDateColumn = new Column();
+			rightDateColumn.setName("lab_date");
+			rightDateColumn.setDataType(PrimitiveDataType.DATE);
+
+			join.getObjectValues().put("LeftResultSet", JoinTestUtil
+					.createResultSet(new Column[] { leftIdColumn,
+							leftDateColumn }, new Object[] { 1,
+							new Date(100 * DAY) }));
+			join.getStringValues().put("LeftColumn", "patient_id");
+			join.getObjectValues().put("RightResultSet", JoinTestUtil
+					.createResultSet(new Column[] { rightIdColumn,
+							rightDateColumn }, new Object[] { 1,
+							new Date(95 * DAY), 1, new Date(101 * DAY), 1,
+							new Date(107 * DAY), 1, new Date(108 * DAY) }));
+			join.getStringValues().put("RightColumn", "lab_patient_id");
+			join.getStringValues().put("LeftRangeColumn", "diagnosis_date");
+			join.getStringValues().put("RightRangeColumn", "lab_date");
+			join.getStringValues().put("MinOffset", "-5");
+			join.getStringValues().put("MaxOffset", "7");
+
+			ResultSetImpl returnedData = (ResultSetImpl) ivj.run(session, join,
+					result).getData();
+
+			assertTrue("Results are not equal", JoinTestUtil.isEqual(
+					returnedData, JoinTestUtil.createResultSet(new Column[] {
+							leftIdColumn, leftDateColumn, rightIdColumn,
+							rightDateColumn }, new Object[] {
+							1, new Date(100 * DAY), 1, new Date(95 * DAY),
+							1, new Date(100 * DAY), 1, new Date(101 * DAY),
+							1, new Date(100 * DAY), 1, new Date(107 * DAY) })));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Runs a join with a window that ends before it starts, which should fail
+	 */
+	@Test
+	public void testRunNegative() {
+		IntervalJoin ivj = new IntervalJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			ivj.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", createLeftResult());
+			join.getStringValues().put("LeftColumn", "patient_id");
+			join.getObjectValues().put("RightResultSet", createRightResult());
+			join.getStringValues().put("RightColumn", "lab_patient_id");
+			join.getStringValues().put("LeftRangeColumn", "diagnosis_day");
+			join.getStringValues().put("RightRangeColumn", "lab_day");
+			join.getStringValues().put("MinOffset", "30");
+			join.getStringValues().put("MaxOffset", "0");
+
+			result = ivj.run(session, join, result);
+			assertEquals("ResultStatus is not ERROR", ResultStatus.ERROR,
+					result.getResultStatus());
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Runs a join between two results sets where the result sets are null
+	 */
+	@Test
+	public void testRunNull() {
+		IntervalJoin ivj = new IntervalJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			ivj.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", null);
+			join.getStringValues().put("LeftColumn", "patient_id");
+			join.getObjectValues().put("RightResultSet", null);
+			join.getStringValues().put("RightColumn", "lab_patient_id");
+
+			result = ivj.run(session, join, result);
+			assertEquals("ResultStatus is not ERROR", ResultStatus.ERROR,
+					result.getResultStatus());
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Cancels a interval join by the id of its result once it has written its first
+	 * row and tests to see if it stops at its next checkpoint
+	 */
+	@Test
+	public void testRunCancelled() {
+		IntervalJoin ivj = new IntervalJoin();
+		SecureSession session = new SecureSession();
+		final Result result = new Result();
+		result.setId(25L);
+		MemoryResultSet rsi = new MemoryResultSet() {
+			@Override
+			public void appendRow() throws ResultSetException,
+					PersistableException {
+				super.appendRow();
+				JoinProgress.cancel(result.getId());
+			}
+		};
+		Join join = new Join();
+
+		try {
+			ivj.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", JoinTestUtil
+					.createRangeResultSet("id", "Name", 0, 5000, 1, 0));
+			join.getStringValues().put("LeftColumn", "id");
+			join.getObjectValues().put("RightResultSet", JoinTestUtil
+					.createRangeResultSet("user_id", "Age", 0, 5000, 1, 0));
+			join.getStringValues().put("RightColumn", "user_id");
+			join.getStringValues().put("LeftRangeColumn", "id");
+			join.getStringValues().put("RightRangeColumn", "user_id");
+			join.getStringValues().put("MinOffset", "0");
+			join.getStringValues().put("MaxOffset", "0");
+
+			ivj.run(session, join, result);
+
+			assertEquals("Join was not cancelled", ResultStatus.ERROR,
+					result.getResultStatus());
+			assertTrue("Join was not cancelled : " + result.getMessage(),
+					result.getMessage().startsWith("Join was cancelled"));
+			assertNull("Join is still running", JoinProgress.get(25L));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Tests to make sure that the result type that is returned is tabular;
+	 */
+	@Test
+	public void testGetJoinDataType() {
+		IntervalJoin ivj = new IntervalJoin();
+		assertEquals("Should be result type of tabular", ivj.getJoinDataType(),
+				ResultDataType.TABULAR);
+	}
+
+	/**
+	 * Creates a left result set of diagnoses for testing
+	 *
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createLeftResult() throws ResultSetException,
+			PersistableException {
+		return JoinTestUtil.createResultSet(createLeftColumns(), new Object[] {
+				1, 10, 2, 5, 3, 100 });
+	}
+
+	/**
+	 * Creates a right result set of labs for testing
+	 *
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createRightResult() throws ResultSetException,
+			PersistableException {
+		return JoinTestUtil.createResultSet(createRightColumns(), new Object[] {
+				1, 40, "B", 1, 12, "A", 2, 5, "D", 1, 9, "C", 2, 36, "E", 1,
+				40, "F", 4, 10, "G" });
+	}
+
+	/**
+	 * Creates a comparator result set for the inner join
+	 *
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createComparator() throws ResultSetException,
+			PersistableException {
+		return JoinTestUtil.createResultSet(createOutputColumns(),
+				new Object[] {
+				1, 10, 1, 12, "A",
+				1, 10, 1, 40, "B",
+				1, 10, 1, 40, "F",
+				2, 5, 2, 5, "D" });
+	}
+
+	/**
+	 * Creates a comparator result set for the left outer join
+	 *
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createLeftOuterComparator() throws ResultSetException,
+			PersistableException {
+		return JoinTestUtil.createResultSet(createOutputColumns(),
+				new Object[] {
+				1, 10, 1, 12, "A",
+				1, 10, 1, 40, "B",
+				1, 10, 1, 40, "F",
+				2, 5, 2, 5, "D",
+				3, 100, null, null, null });
+	}
+
+	private Column[] createLeftColumns() {
+		Column idColumn = new Column();
+		idColumn.setName("patient_id");
+		idColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column dayColumn = new Column();
+		dayColumn.setName("diagnosis_day");
+		dayColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		return new Column[] { idColumn, dayColumn };
+	}
+
+	private Column[] createRightColumns() {
+		Column idColumn = new Column();
+		idColumn.setName("lab_patient_id");
+		idColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column dayColumn = new Column();
+		dayColumn.setName("lab_day");
+		dayColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column valueColumn = new Column();
+		valueColumn.setName("lab_value");
+		valueColumn.setDataType(PrimitiveDataType.STRING);
+
+		return new Column[] { idColumn, dayColumn, valueColumn };
+	}
+
+	private Column[] createOutputColumns() {
+		Column[] leftColumns = createLeftColumns();
+		Column[] rightColumns = createRightColumns();
+		return new Column[] { leftColumns[0], leftColumns[1], rightColumns[0],
+				rightColumns[1], rightColumns[2] };
+	}
+}
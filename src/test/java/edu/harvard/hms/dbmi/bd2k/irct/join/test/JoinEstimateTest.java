@@ -0,0 +1,222 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import edu.harvard.hms.dbmi.bd2k.irct.join.JoinEstimate;
+import edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Column;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+
+public class JoinEstimateTest {
+
+	/**
+	 * Estimates a join of two result sets that share half of their keys, where
+	 * every right key has two rows and some left rows have no key
+	 */
+	@Test
+	public void testEstimate() {
+		try {
+			ResultSet left = createResultSet(0, 10000, 1, 100);
+			ResultSet right = createResultSet(5000, 15000, 2, 0);
+			JoinEstimate estimate = JoinEstimate.estimate(left, right,
+					new int[] { 0 }, new int[] { 0 });
+
+			assertEquals("Rows are not equal", 10100, estimate.getLeftRows());
+			assertEquals("Rows are not equal", 20000, estimate.getRightRows());
+			assertClose("Left distinct keys", 10000,
+					estimate.getLeftDistinctKeys(), 0.05);
+			assertClose("Right distinct keys", 10000,
+					estimate.getRightDistinctKeys(), 0.05);
+			assertClose("Shared keys", 5000, estimate.getSharedKeys(), 0.1);
+			assertClose("Inner rows", 10000, estimate.getInnerRows(), 0.1);
+			assertClose("Left outer rows", 15100,
+					estimate.getLeftOuterRows(), 0.1);
+			assertClose("Right outer rows", 20000,
+					estimate.getRightOuterRows(), 0.1);
+			assertClose("Full outer rows", 25100,
+					estimate.getFullOuterRows(), 0.1);
+
+			assertTrue("Result set was not rewound", left.next());
+			assertEquals("Result set was not rewound", 0, left.getInt(0));
+		} catch (ResultSetException | PersistableException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	/**
+	 * Estimates a join of two result sets that do not share any keys
+	 */
+	@Test
+	public void testEstimateDisjoint() {
+		try {
+			ResultSet left = createResultSet(0, 100, 1, 0);
+			ResultSet right = createResultSet(1000, 1100, 1, 0);
+			JoinEstimate estimate = JoinEstimate.estimate(left, right,
+					new int[] { 0 }, new int[] { 0 });
+
+			assertEquals("Shared keys are not equal", 0,
+					estimate.getSharedKeys());
+			assertEquals("Inner rows are not equal", 0,
+					estimate.getInnerRows());
+			assertEquals("Full outer rows are not equal", 200,
+					estimate.getFullOuterRows());
+		} catch (ResultSetException | PersistableException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	/**
+	 * Estimates a join where one key holds half of the left rows and a
+	 * hundred right rows, which an estimate from the average rows of a key
+	 * puts far too low
+	 */
+	@Test
+	public void testEstimateSkewed() {
+		try {
+			ResultSet left = createSkewedResultSet(0, 10000, -1, 10000);
+			ResultSet right = createSkewedResultSet(0, 10000, -1, 100);
+			JoinEstimate estimate = JoinEstimate.estimate(left, right,
+					new int[] { 0 }, new int[] { 0 });
+
+			assertEquals("Heavy keys are not equal", 1,
+					estimate.getHeavyKeys());
+			// Every other key matches one row on each side
+			assertClose("Inner rows", 1010000, estimate.getInnerRows(), 0.1);
+			assertClose("Full outer rows", 1010000,
+					estimate.getFullOuterRows(), 0.1);
+		} catch (ResultSetException | PersistableException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	/**
+	 * Estimates a join where one key holds half of the left rows and is not
+	 * in the right result set
+	 */
+	@Test
+	public void testEstimateSkewedUnmatched() {
+		try {
+			ResultSet left = createSkewedResultSet(0, 10000, -1, 10000);
+			ResultSet right = createResultSet(0, 10000, 1, 0);
+			JoinEstimate estimate = JoinEstimate.estimate(left, right,
+					new int[] { 0 }, new int[] { 0 });
+
+			assertEquals("Heavy keys are not equal", 1,
+					estimate.getHeavyKeys());
+			assertClose("Inner rows", 10000, estimate.getInnerRows(), 0.1);
+			assertClose("Left outer rows", 20000,
+					estimate.getLeftOuterRows(), 0.1);
+			assertClose("Right outer rows", 10000,
+					estimate.getRightOuterRows(), 0.1);
+		} catch (ResultSetException | PersistableException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	private void assertClose(String name, long expected, long actual,
+			double error) {
+		assertTrue(name + " is " + actual + " and not close to " + expected,
+				Math.abs(actual - expected) <= expected * error);
+	}
+
+	/**
+	 * Creates a result set with a row for every key in a range, followed by
+	 * rows without a key
+	 *
+	 * @param start
+	 *            First key
+	 * @param end
+	 *            Key after the last key
+	 * @param rowsPerKey
+	 *            Number of rows of each key
+	 * @param nullRows
+	 *            Number of rows without a key
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createResultSet(int start, int end, int rowsPerKey,
+			int nullRows) throws ResultSetException, PersistableException {
+		Column idColumn = new Column();
+		idColumn.setName("id");
+		idColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column valueColumn = new Column();
+		valueColumn.setName("value");
+		valueColumn.setDataType(PrimitiveDataType.STRING);
+
+		int rows = (end - start) * rowsPerKey + nullRows;
+		Object[] objects = new Object[rows * 2];
+		int objectI = 0;
+		for (int key = start; key < end; key++) {
+			for (int keyRowI = 0; keyRowI < rowsPerKey; keyRowI++) {
+				objects[objectI++] = key;
+				objects[objectI++] = "value" + keyRowI;
+			}
+		}
+		for (int nullRowI = 0; nullRowI < nullRows; nullRowI++) {
+			objects[objectI++] = null;
+			objects[objectI++] = "none";
+		}
+		return JoinTestUtil.createResultSet(new Column[] { idColumn,
+				valueColumn }, objects);
+	}
+
+	/**
+	 * Creates a result set with a row for every key in a range, and rows of a
+	 * single hot key spread evenly between them
+	 *
+	 * @param start
+	 *            First key
+	 * @param end
+	 *            Key after the last key
+	 * @param hotKey
+	 *            Hot key, which is not in the range
+	 * @param hotRows
+	 *            Number of rows of the hot key
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createSkewedResultSet(int start, int end, int hotKey,
+			int hotRows) throws ResultSetException, PersistableException {
+		Column idColumn = new Column();
+		idColumn.setName("id");
+		idColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column valueColumn = new Column();
+		valueColumn.setName("value");
+		valueColumn.setDataType(PrimitiveDataType.STRING);
+
+		int keys = end - start;
+		Object[] objects = new Object[(keys + hotRows) * 2];
+		int objectI = 0;
+		int hotRowI = 0;
+		for (int key = start; key < end; key++) {
+			objects[objectI++] = key;
+			objects[objectI++] = "value";
+			while (hotRowI < (long) (key - start + 1) * hotRows / keys) {
+				objects[objectI++] = hotKey;
+				objects[objectI++] = "hot" + hotRowI;
+				hotRowI++;
+			}
+		}
+		return JoinTestUtil.createResultSet(new Column[] { idColumn,
+				valueColumn }, objects);
+	}
+}
@@ -0,0 +1,383 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join.test;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import edu.harvard.hms.dbmi.bd2k.irct.exception.JoinActionSetupException;
+import edu.harvard.hms.dbmi.bd2k.irct.join.AdaptiveJoin;
+import edu.harvard.hms.dbmi.bd2k.irct.join.ExceptJoin;
+import edu.harvard.hms.dbmi.bd2k.irct.join.FullOuterHashJoin;
+import edu.harvard.hms.dbmi.bd2k.irct.join.FullOuterJoin;
+import edu.harvard.hms.dbmi.bd2k.irct.join.IncrementalJoinImpl;
+import edu.harvard.hms.dbmi.bd2k.irct.join.InnerHashJoin;
+import edu.harvard.hms.dbmi.bd2k.irct.join.InnerJoin;
+import edu.harvard.hms.dbmi.bd2k.irct.join.IntersectJoin;
+import edu.harvard.hms.dbmi.bd2k.irct.join.IntervalJoin;
+import edu.harvard.hms.dbmi.bd2k.irct.join.LeftAntiHashJoin;
+import edu.harvard.hms.dbmi.bd2k.irct.join.LeftOuterHashJoin;
+import edu.harvard.hms.dbmi.bd2k.irct.join.LeftOuterJoin;
+import edu.harvard.hms.dbmi.bd2k.irct.join.LeftSemiHashJoin;
+import edu.harvard.hms.dbmi.bd2k.irct.join.MultiWayHashJoin;
+import edu.harvard.hms.dbmi.bd2k.irct.join.RightOuterHashJoin;
+import edu.harvard.hms.dbmi.bd2k.irct.join.RightOuterJoin;
+import edu.harvard.hms.dbmi.bd2k.irct.join.SortMergeJoin;
+import edu.harvard.hms.dbmi.bd2k.irct.join.UnionJoin;
+import edu.harvard.hms.dbmi.bd2k.irct.model.join.Join;
+import edu.harvard.hms.dbmi.bd2k.irct.model.join.JoinImplementation;
+import edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.Result;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultStatus;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Column;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.security.SecureSession;
+
+/**
+ * Runs every join on integer join columns that hold their values as text,
+ * integers, longs and doubles. The left keys are 1 to 5 and the right keys
+ * are 1 to 4 and 6, so every join should match the keys 1 to 4 whatever type
+ * they are held as.
+ */
+public class JoinKeyTypeTest {
+	private static final Object[] LEFT_KEYS = new Object[] { "1", 2, 3L, 4.0,
+			5 };
+	private static final Object[] RIGHT_KEYS = new Object[] { 1, 2L, "3",
+			" 4 ", 6 };
+
+	/**
+	 * Runs the nested loop joins
+	 */
+	@Test
+	public void testNestedLoopJoins() {
+		assertRows("InnerJoin", 4, runJoin(new InnerJoin(), null,
+				createJoin(false)));
+		assertRows("LeftOuterJoin", 5, runJoin(new LeftOuterJoin(), null,
+				createJoin(false)));
+		assertRows("RightOuterJoin", 5, runJoin(new RightOuterJoin(), null,
+				createJoin(false)));
+		assertRows("FullOuterJoin", 6, runJoin(new FullOuterJoin(), null,
+				createJoin(false)));
+	}
+
+	/**
+	 * Runs the hash joins, both in memory and with a memory budget that makes
+	 * them partition their rows
+	 */
+	@Test
+	public void testHashJoins() {
+		for (String memoryBudget : new String[] { null, "1" }) {
+			Map<String, Object> parameters = createParameters("memoryBudget",
+					memoryBudget);
+			assertRows("InnerHashJoin", 4, runJoin(new InnerHashJoin(),
+					parameters, createJoin(false)));
+			assertRows("LeftOuterHashJoin", 5, runJoin(
+					new LeftOuterHashJoin(), parameters, createJoin(false)));
+			assertRows("RightOuterHashJoin", 5, runJoin(
+					new RightOuterHashJoin(), parameters, createJoin(false)));
+			assertRows("FullOuterHashJoin", 6, runJoin(
+					new FullOuterHashJoin(), parameters, createJoin(false)));
+			assertRows("LeftSemiHashJoin", 4, runJoin(
+					new LeftSemiHashJoin(), parameters, createJoin(false)));
+			assertRows("LeftAntiHashJoin", 1, runJoin(
+					new LeftAntiHashJoin(), parameters, createJoin(false)));
+		}
+	}
+
+	/**
+	 * Runs the hash joins on integer join columns that also hold values that
+	 * are not whole numbers, which should be matched by their value like they
+	 * are in every other join
+	 */
+	@Test
+	public void testHashJoinsNotWholeNumbers() {
+		for (String memoryBudget : new String[] { null, "1" }) {
+			Map<String, Object> parameters = createParameters("memoryBudget",
+					memoryBudget);
+			assertRows("InnerHashJoin", 4, runJoin(new InnerHashJoin(),
+					parameters, createNotWholeNumberJoin()));
+			assertRows("LeftOuterHashJoin", 5, runJoin(
+					new LeftOuterHashJoin(), parameters,
+					createNotWholeNumberJoin()));
+			assertRows("RightOuterHashJoin", 5, runJoin(
+					new RightOuterHashJoin(), parameters,
+					createNotWholeNumberJoin()));
+			assertRows("FullOuterHashJoin", 6, runJoin(
+					new FullOuterHashJoin(), parameters,
+					createNotWholeNumberJoin()));
+			assertRows("LeftSemiHashJoin", 4, runJoin(
+					new LeftSemiHashJoin(), parameters,
+					createNotWholeNumberJoin()));
+			assertRows("LeftAntiHashJoin", 1, runJoin(
+					new LeftAntiHashJoin(), parameters,
+					createNotWholeNumberJoin()));
+		}
+	}
+
+	/**
+	 * Runs the inner hash join in its incremental mode
+	 */
+	@Test
+	public void testIncrementalJoin() {
+		Join join = createJoin(false);
+		join.getStringValues().put("Incremental", "true");
+		join.getStringValues().put("LeftResultSet", "JoinKeyTypeTestLeft");
+		join.getStringValues().put("RightResultSet", "JoinKeyTypeTestRight");
+		IncrementalJoinImpl.clearState();
+		try {
+			assertRows("InnerHashJoin Incremental", 4, runJoin(
+					new InnerHashJoin(), null, join));
+		} finally {
+			IncrementalJoinImpl.clearState();
+		}
+	}
+
+	/**
+	 * Runs the sort merge join on sorted and unsorted result sets, and the
+	 * interval join
+	 */
+	@Test
+	public void testSortMergeAndIntervalJoins() {
+		for (boolean reversed : new boolean[] { false, true }) {
+			Join join = createJoin(reversed);
+			join.getStringValues().put("JoinType", "fullOuter");
+			assertRows("SortMergeJoin", 6, runJoin(new SortMergeJoin(), null,
+					join));
+		}
+
+		Join join = createJoin(false);
+		join.getStringValues().put("LeftRangeColumn", "Start");
+		join.getStringValues().put("RightRangeColumn", "Time");
+		join.getStringValues().put("MinOffset", "0");
+		join.getStringValues().put("MaxOffset", "0");
+		assertRows("IntervalJoin", 4, runJoin(new IntervalJoin(), null, join));
+	}
+
+	/**
+	 * Runs the multi way hash join
+	 */
+	@Test
+	public void testMultiWayHashJoin() {
+		Join join = new Join();
+		join.getObjectValues().put("ResultSet1", createLeftResult(false));
+		join.getObjectValues().put("ResultSet2",
+				createKeyResult("id", RIGHT_KEYS));
+		join.getStringValues().put("Column", "id");
+		assertRows("MultiWayHashJoin", 4, runJoin(new MultiWayHashJoin(),
+				null, join));
+	}
+
+	/**
+	 * Runs the set operations, which compare every column
+	 */
+	@Test
+	public void testSetOperations() {
+		assertRows("IntersectJoin", 4, runJoin(new IntersectJoin(), null,
+				createSetJoin()));
+		assertRows("ExceptJoin", 1, runJoin(new ExceptJoin(), null,
+				createSetJoin()));
+		Join join = createSetJoin();
+		join.getStringValues().put("Distinct", "true");
+		assertRows("UnionJoin", 6, runJoin(new UnionJoin(), null, join));
+	}
+
+	/**
+	 * Runs the adaptive join with each of the plans it picks from
+	 */
+	@Test
+	public void testAdaptiveJoin() {
+		assertPlan("SORT_MERGE", runJoin(new AdaptiveJoin(),
+				createParameters("parallelism", "1"), createJoin(false)));
+		assertPlan("HASH", runJoin(new AdaptiveJoin(),
+				createParameters("parallelism", "1"), createJoin(true)));
+
+		Map<String, Object> parameters = createParameters("parallelism", "1");
+		parameters.put("memoryBudget", "1");
+		assertPlan("GRACE_HASH", runJoin(new AdaptiveJoin(), parameters,
+				createJoin(true)));
+
+		// Many right rows, whose keys cycle through 0 to 9 held as every type
+		Object[] rightKeys = new Object[20000];
+		for (int rowI = 0; rowI < rightKeys.length; rowI++) {
+			int key = rowI % 10;
+			switch (rowI % 3) {
+			case 0:
+				rightKeys[rowI] = Integer.toString(key);
+				break;
+			case 1:
+				rightKeys[rowI] = (long) key;
+				break;
+			default:
+				rightKeys[rowI] = key;
+			}
+		}
+		Join join = new Join();
+		join.getObjectValues().put("LeftResultSet", createLeftResult(false));
+		join.getStringValues().put("LeftColumn", "id");
+		join.getObjectValues().put("RightResultSet",
+				createKeyResult("id", rightKeys));
+		join.getStringValues().put("RightColumn", "id");
+		Result result = runJoin(new AdaptiveJoin(), createParameters(
+				"parallelism", "4"), join);
+		assertTrue("Plan is not BROADCAST_HASH : " + result.getMessage(),
+				result.getMessage().startsWith("Plan : BROADCAST_HASH,"));
+		assertRows("AdaptiveJoin BROADCAST_HASH", 10000, result);
+	}
+
+	private void assertPlan(String plan, Result result) {
+		assertTrue("Plan is not " + plan + " : " + result.getMessage(), result
+				.getMessage().startsWith("Plan : " + plan + ","));
+		assertRows("AdaptiveJoin " + plan, 4, result);
+	}
+
+	private void assertRows(String name, long rows, Result result) {
+		assertEquals(name + " : " + result.getMessage(),
+				ResultStatus.COMPLETE, result.getResultStatus());
+		try {
+			assertEquals(name + " row count is not equal", rows,
+					((ResultSet) result.getData()).getSize());
+		} catch (ResultSetException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	private Map<String, Object> createParameters(String name, String value) {
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		if (value != null) {
+			parameters.put(name, value);
+		}
+		return parameters;
+	}
+
+	private Result runJoin(JoinImplementation joinImplementation,
+			Map<String, Object> parameters, Join join) {
+		Result result = new Result();
+		try {
+			joinImplementation.setup(parameters);
+			result.setData(new MemoryResultSet());
+			return joinImplementation.run(new SecureSession(), join, result);
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+			return null;
+		}
+	}
+
+	/**
+	 * Creates a join of the left and right result sets on their id columns
+	 *
+	 * @param reversed
+	 *            True if the rows of the result sets are in reverse order
+	 * @return Join
+	 */
+	private Join createJoin(boolean reversed) {
+		Join join = new Join();
+		join.getObjectValues().put("LeftResultSet", createLeftResult(reversed));
+		join.getStringValues().put("LeftColumn", "id");
+		join.getObjectValues().put("RightResultSet",
+				createRightResult(reversed));
+		join.getStringValues().put("RightColumn", "user_id");
+		return join;
+	}
+
+	/**
+	 * Creates a join on integer columns where the keys 1.5, abc and a blank
+	 * are not whole numbers. The keys 1, 2, 1.5 and abc match.
+	 *
+	 * @return Join
+	 */
+	private Join createNotWholeNumberJoin() {
+		Join join = new Join();
+		join.getObjectValues().put("LeftResultSet",
+				createKeyResult("id", new Object[] { 1, 1.5, "abc", " ", 2 }));
+		join.getStringValues().put("LeftColumn", "id");
+		join.getObjectValues().put("RightResultSet",
+				createKeyResult("user_id",
+						new Object[] { 2, "1.5", "abc", "", 1 }));
+		join.getStringValues().put("RightColumn", "user_id");
+		return join;
+	}
+
+	private Join createSetJoin() {
+		Join join = new Join();
+		join.getObjectValues().put("LeftResultSet",
+				createKeyResult("id", LEFT_KEYS));
+		join.getObjectValues().put("RightResultSet",
+				createKeyResult("id", RIGHT_KEYS));
+		return join;
+	}
+
+	/**
+	 * Creates a left result set with an integer id column that holds values
+	 * of different types, and a range column
+	 *
+	 * @param reversed
+	 *            True if the rows are in reverse order of their ids
+	 * @return ResultSet
+	 */
+	private ResultSet createLeftResult(boolean reversed) {
+		Object[] data = new Object[LEFT_KEYS.length * 3];
+		for (int rowI = 0; rowI < LEFT_KEYS.length; rowI++) {
+			int keyI = reversed ? LEFT_KEYS.length - rowI - 1 : rowI;
+			data[rowI * 3] = LEFT_KEYS[keyI];
+			data[rowI * 3 + 1] = "Name" + keyI;
+			data[rowI * 3 + 2] = 0;
+		}
+		return createResultSet(new Column[] {
+				createColumn("id", PrimitiveDataType.INTEGER),
+				createColumn("Name", PrimitiveDataType.STRING),
+				createColumn("Start", PrimitiveDataType.INTEGER) }, data);
+	}
+
+	/**
+	 * Creates a right result set with an integer user_id column that holds
+	 * values of different types, and a range column
+	 *
+	 * @param reversed
+	 *            True if the rows are in reverse order of their ids
+	 * @return ResultSet
+	 */
+	private ResultSet createRightResult(boolean reversed) {
+		Object[] data = new Object[RIGHT_KEYS.length * 3];
+		for (int rowI = 0; rowI < RIGHT_KEYS.length; rowI++) {
+			int keyI = reversed ? RIGHT_KEYS.length - rowI - 1 : rowI;
+			data[rowI * 3] = RIGHT_KEYS[keyI];
+			data[rowI * 3 + 1] = keyI * 10;
+			data[rowI * 3 + 2] = 0;
+		}
+		return createResultSet(new Column[] {
+				createColumn("user_id", PrimitiveDataType.INTEGER),
+				createColumn("Age", PrimitiveDataType.INTEGER),
+				createColumn("Time", PrimitiveDataType.INTEGER) }, data);
+	}
+
+	private ResultSet createKeyResult(String name, Object[] keys) {
+		return createResultSet(new Column[] { createColumn(name,
+				PrimitiveDataType.INTEGER) }, keys);
+	}
+
+	private Column createColumn(String name, PrimitiveDataType dataType) {
+		Column column = new Column();
+		column.setName(name);
+		column.setDataType(dataType);
+		return column;
+	}
+
+	private ResultSet createResultSet(Column[] columns, Object[] data) {
+		try {
+			return JoinTestUtil.createResultSet(columns, data);
+		} catch (ResultSetException | PersistableException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+			return null;
+		}
+	}
+}
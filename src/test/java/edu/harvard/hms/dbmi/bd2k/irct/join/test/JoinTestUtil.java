@@ -3,6 +3,11 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package edu.harvard.hms.dbmi.bd2k.irct.join.test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
 import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Column;
@@ -74,6 +79,46 @@ public class JoinTestUtil {
 		return true;
 	}
 	
+	public static boolean isEqualIgnoringOrder(ResultSet base, ResultSet comparator) throws ResultSetException {
+		//Check input
+		if((base == null) || (comparator == null)) {
+			return false;
+		}
+		
+		//Check Columns
+		if(base.getColumnSize() != comparator.getColumnSize()) {
+			return false;
+		}
+		
+		for(int columnIndex = 0; columnIndex < base.getColumnSize(); columnIndex++) {
+			if(!base.getColumn(columnIndex).equals(comparator.getColumn(columnIndex))) {
+				return false; 
+			}
+		}
+		
+		//Check the rows in any order
+		return getRows(base).equals(getRows(comparator));
+	}
+	
+	private static List<String> getRows(ResultSet resultSet) throws ResultSetException {
+		List<String> rows = new ArrayList<String>();
+		if(resultSet.getColumnSize() == 0) {
+			return rows;
+		}
+		resultSet.beforeFirst();
+		while(resultSet.next()) {
+			StringBuilder row = new StringBuilder();
+			for(int columnIndex = 0; columnIndex < resultSet.getColumnSize(); columnIndex++) {
+				Object obj = resultSet.getObject(columnIndex);
+				row.append(obj == null ? "null" : obj.getClass().getName() + ":" + obj).append("|");
+			}
+			rows.add(row.toString());
+		}
+		resultSet.beforeFirst();
+		Collections.sort(rows);
+		return rows;
+	}
+	
 	public static ResultSet createResultSet(final Column[] columns, final Object[] objects) throws ResultSetException, PersistableException {
 		MemoryResultSet mrs = new MemoryResultSet();
 		
@@ -94,5 +139,42 @@ public class JoinTestUtil {
 		mrs.beforeFirst();
 		return mrs;
 	}
+	
+	public static ResultSet createRangeResultSet(String idName, String valueName, int start, int end, int rowsPerKey, int nullRows) throws ResultSetException, PersistableException {
+		Column idColumn = new Column();
+		idColumn.setName(idName);
+		idColumn.setDataType(PrimitiveDataType.INTEGER);
+		
+		Column valueColumn = new Column();
+		valueColumn.setName(valueName);
+		valueColumn.setDataType(PrimitiveDataType.STRING);
+		
+		Object[] objects = new Object[((end - start) * rowsPerKey + nullRows) * 2];
+		int objLoc = 0;
+		for(int key = start; key < end; key++) {
+			for(int keyRow = 0; keyRow < rowsPerKey; keyRow++) {
+				objects[objLoc++] = key;
+				objects[objLoc++] = valueName + key + "-" + keyRow;
+			}
+		}
+		for(int nullRow = 0; nullRow < nullRows; nullRow++) {
+			objects[objLoc++] = null;
+			objects[objLoc++] = valueName + "-" + nullRow;
+		}
+		return createResultSet(new Column[] { idColumn, valueColumn }, objects);
+	}
+	
+	public static long getStatistic(String message, String name) {
+		int start = message.indexOf(name + " : ");
+		if(start == -1) {
+			throw new IllegalArgumentException(name + " is not in " + message);
+		}
+		start += name.length() + 3;
+		int end = start;
+		while((end < message.length()) && Character.isDigit(message.charAt(end))) {
+			end++;
+		}
+		return Long.parseLong(message.substring(start, end));
+	}
 
 }
@@ -0,0 +1,303 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join.test;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import edu.harvard.hms.dbmi.bd2k.irct.exception.JoinActionSetupException;
+import edu.harvard.hms.dbmi.bd2k.irct.join.JoinProgress;
+import edu.harvard.hms.dbmi.bd2k.irct.join.LeftSemiHashJoin;
+import edu.harvard.hms.dbmi.bd2k.irct.model.join.Join;
+import edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.Result;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultStatus;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Column;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSetImpl;
+import edu.harvard.hms.dbmi.bd2k.irct.model.security.SecureSession;
+
+public class LeftSemiHashJoinTest {
+
+	/**
+	 * Tests the creation of a Left Semi Join
+	 * 
+	 */
+	@Test
+	public void testSetup() {
+		LeftSemiHashJoin lsj = new LeftSemiHashJoin();
+		try {
+			lsj.setup(new HashMap<String, Object>());
+			assertNotNull(lsj);
+		} catch (JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	/**
+	 * Runs a join between two result sets and tests to see if the results are
+	 * equal
+	 */
+	@Test
+	public void testRunPositive() {
+		LeftSemiHashJoin lsj = new LeftSemiHashJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			lsj.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", createLeftResult());
+			join.getStringValues().put("LeftColumn", "id");
+			join.getObjectValues().put("RightResultSet", createRightResult());
+			join.getStringValues().put("RightColumn", "user_id");
+
+			ResultSetImpl returnedData = (ResultSetImpl) lsj.run(session, join,
+					result).getData();
+			
+			
+			assertTrue("Results are not equal",
+					JoinTestUtil.isEqual(returnedData, createComparator()));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Runs a join between two results sets that should fail on joining
+	 */
+	@Test
+	public void testRunNegative() {
+		LeftSemiHashJoin lsj = new LeftSemiHashJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			lsj.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", createRightResult());
+			join.getStringValues().put("LeftColumn", "id");
+			join.getObjectValues().put("RightResultSet", createLeftResult());
+			join.getStringValues().put("RightColumn", "user_id");
+
+			result = lsj.run(session, join, result);
+			assertEquals("ResultStatus is not ERROR", ResultStatus.ERROR,
+					result.getResultStatus());
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Runs a join between two results sets where the result sets are null
+	 */
+	@Test
+	public void testRunNull() {
+		LeftSemiHashJoin lsj = new LeftSemiHashJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			lsj.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", null);
+			join.getStringValues().put("LeftColumn", "id");
+			join.getObjectValues().put("RightResultSet", null);
+			join.getStringValues().put("RightColumn", "user_id");
+
+			result = lsj.run(session, join, result);
+			assertEquals("ResultStatus is not ERROR", ResultStatus.ERROR,
+					result.getResultStatus());
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Tests to ensure that the results from the getResults is equal to the
+	 * results from the run
+	 */
+	@Test
+	public void testGetResults() {
+		LeftSemiHashJoin lsj = new LeftSemiHashJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			lsj.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", createLeftResult());
+			join.getStringValues().put("LeftColumn", "id");
+			join.getObjectValues().put("RightResultSet", createRightResult());
+			join.getStringValues().put("RightColumn", "user_id");
+
+			lsj.run(session, join, result);
+
+			ResultSetImpl returnedData = (ResultSetImpl) lsj.getResults(result)
+					.getData();
+			assertTrue("Results are not equal",
+					JoinTestUtil.isEqual(returnedData, createComparator()));
+
+			assertSame(result, lsj.getResults(result));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+
+		}
+
+	}
+
+	/**
+	 * Cancels a left semi join by the id of its result once it has written its first
+	 * row and tests to see if it stops at its next checkpoint
+	 */
+	@Test
+	public void testRunCancelled() {
+		LeftSemiHashJoin lsj = new LeftSemiHashJoin();
+		SecureSession session = new SecureSession();
+		final Result result = new Result();
+		result.setId(28L);
+		MemoryResultSet rsi = new MemoryResultSet() {
+			@Override
+			public void appendRow() throws ResultSetException,
+					PersistableException {
+				super.appendRow();
+				JoinProgress.cancel(result.getId());
+			}
+		};
+		Join join = new Join();
+
+		try {
+			lsj.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", JoinTestUtil
+					.createRangeResultSet("id", "Name", 0, 5000, 1, 0));
+			join.getStringValues().put("LeftColumn", "id");
+			join.getObjectValues().put("RightResultSet", JoinTestUtil
+					.createRangeResultSet("user_id", "Age", 0, 5000, 1, 0));
+			join.getStringValues().put("RightColumn", "user_id");
+
+			lsj.run(session, join, result);
+
+			assertEquals("Join was not cancelled", ResultStatus.ERROR,
+					result.getResultStatus());
+			assertTrue("Join was not cancelled : " + result.getMessage(),
+					result.getMessage().startsWith("Join was cancelled"));
+			assertNull("Join is still running", JoinProgress.get(28L));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Tests to make sure that the result type that is returned is tabular;
+	 */
+	@Test
+	public void testGetJoinDataType() {
+		LeftSemiHashJoin lsj = new LeftSemiHashJoin();
+		assertEquals("Should be result type of tabular", lsj.getJoinDataType(),
+				ResultDataType.TABULAR);
+	}
+
+	/**
+	 * Creates a left result set for testing
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createLeftResult() throws ResultSetException,
+			PersistableException {
+		Column leftIdColumn = new Column();
+		leftIdColumn.setName("id");
+		leftIdColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column leftNameColumn = new Column();
+		leftNameColumn.setName("Name");
+		leftNameColumn.setDataType(PrimitiveDataType.STRING);
+
+		return JoinTestUtil.createResultSet(new Column[] { leftIdColumn,
+				leftNameColumn }, new Object[] { 1, "Jeremy", 2, "James", 3,
+				"Bob" });
+	}
+
+	/**
+	 * Creates a right result set for testing
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createRightResult() throws ResultSetException,
+			PersistableException {
+		Column rightIdColumn = new Column();
+		rightIdColumn.setName("user_id");
+		rightIdColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column rightAgeColumn = new Column();
+		rightAgeColumn.setName("Age");
+		rightAgeColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		return JoinTestUtil.createResultSet(new Column[] { rightIdColumn,
+				rightAgeColumn }, new Object[] { 1, 20, 2, 30, 5, 10 });
+	}
+
+	/**
+	 * Creates a comparator result set for testing
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createComparator() throws ResultSetException,
+			PersistableException {
+		Column leftIdColumn = new Column();
+		leftIdColumn.setName("id");
+		leftIdColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column leftNameColumn = new Column();
+		leftNameColumn.setName("Name");
+		leftNameColumn.setDataType(PrimitiveDataType.STRING);
+
+		return JoinTestUtil.createResultSet(new Column[] { leftIdColumn,
+				leftNameColumn }, new Object[] { 
+				1, "Jeremy", 
+				2, "James" });
+	}
+
+}
@@ -0,0 +1,362 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join.test;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import edu.harvard.hms.dbmi.bd2k.irct.exception.JoinActionSetupException;
+import edu.harvard.hms.dbmi.bd2k.irct.join.JoinProgress;
+import edu.harvard.hms.dbmi.bd2k.irct.join.MultiWayHashJoin;
+import edu.harvard.hms.dbmi.bd2k.irct.model.join.Join;
+import edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.Result;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultStatus;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Column;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSetImpl;
+import edu.harvard.hms.dbmi.bd2k.irct.model.security.SecureSession;
+
+public class MultiWayHashJoinTest {
+
+	/**
+	 * Tests the creation of a Multi Way Hash Join
+	 * 
+	 */
+	@Test
+	public void testSetup() {
+		MultiWayHashJoin mwhj = new MultiWayHashJoin();
+		try {
+			mwhj.setup(new HashMap<String, Object>());
+			assertNotNull(mwhj);
+		} catch (JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	/**
+	 * Runs an inner join between three result sets and tests to see if the
+	 * results are equal
+	 */
+	@Test
+	public void testRunPositive() {
+		MultiWayHashJoin mwhj = new MultiWayHashJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			mwhj.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("ResultSet1", createNameResult());
+			join.getObjectValues().put("ResultSet2", createAgeResult());
+			join.getObjectValues().put("ResultSet3", createLabResult());
+			join.getStringValues().put("Column", "id");
+
+			ResultSetImpl returnedData = (ResultSetImpl) mwhj.run(session,
+					join, result).getData();
+
+			assertTrue("Results are not equal",
+					JoinTestUtil.isEqual(returnedData, createComparator()));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Runs a left outer join between three result sets and tests to see if
+	 * the results are equal
+	 */
+	@Test
+	public void testRunLeftOuter() {
+		MultiWayHashJoin mwhj = new MultiWayHashJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			mwhj.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("ResultSet1", createNameResult());
+			join.getObjectValues().put("ResultSet2", createAgeResult());
+			join.getObjectValues().put("ResultSet3", createLabResult());
+			join.getStringValues().put("Column", "id");
+			join.getStringValues().put("JoinType", "leftOuter");
+
+			ResultSetImpl returnedData = (ResultSetImpl) mwhj.run(session,
+					join, result).getData();
+
+			assertTrue("Results are not equal", JoinTestUtil.isEqual(
+					returnedData, createLeftOuterComparator()));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Runs a join between result sets that should fail on joining
+	 */
+	@Test
+	public void testRunNegative() {
+		MultiWayHashJoin mwhj = new MultiWayHashJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			mwhj.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("ResultSet1", createNameResult());
+			join.getObjectValues().put("ResultSet2", createAgeResult());
+			join.getStringValues().put("Column", "user_id");
+
+			result = mwhj.run(session, join, result);
+			assertEquals("ResultStatus is not ERROR", ResultStatus.ERROR,
+					result.getResultStatus());
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Runs a join where the result sets are null
+	 */
+	@Test
+	public void testRunNull() {
+		MultiWayHashJoin mwhj = new MultiWayHashJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			mwhj.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("ResultSet1", createNameResult());
+			join.getObjectValues().put("ResultSet2", null);
+			join.getStringValues().put("Column", "id");
+
+			result = mwhj.run(session, join, result);
+			assertEquals("ResultStatus is not ERROR", ResultStatus.ERROR,
+					result.getResultStatus());
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Tests to ensure that the results from the getResults is equal to the
+	 * results from the run
+	 */
+	@Test
+	public void testGetResults() {
+		MultiWayHashJoin mwhj = new MultiWayHashJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			mwhj.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("ResultSet1", createNameResult());
+			join.getObjectValues().put("ResultSet2", createAgeResult());
+			join.getObjectValues().put("ResultSet3", createLabResult());
+			join.getStringValues().put("Column", "id");
+
+			mwhj.run(session, join, result);
+
+			ResultSetImpl returnedData = (ResultSetImpl) mwhj.getResults(
+					result).getData();
+			assertTrue("Results are not equal",
+					JoinTestUtil.isEqual(returnedData, createComparator()));
+
+			assertSame(result, mwhj.getResults(result));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+
+		}
+
+	}
+
+	/**
+	 * Cancels a multi way join by the id of its result once it has written its first
+	 * row and tests to see if it stops at its next checkpoint
+	 */
+	@Test
+	public void testRunCancelled() {
+		MultiWayHashJoin mwhj = new MultiWayHashJoin();
+		SecureSession session = new SecureSession();
+		final Result result = new Result();
+		result.setId(26L);
+		MemoryResultSet rsi = new MemoryResultSet() {
+			@Override
+			public void appendRow() throws ResultSetException,
+					PersistableException {
+				super.appendRow();
+				JoinProgress.cancel(result.getId());
+			}
+		};
+		Join join = new Join();
+
+		try {
+			mwhj.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("ResultSet1", JoinTestUtil
+					.createRangeResultSet("id", "Name", 0, 5000, 1, 0));
+			join.getObjectValues().put("ResultSet2", JoinTestUtil
+					.createRangeResultSet("id", "Age", 0, 5000, 1, 0));
+			join.getStringValues().put("Column", "id");
+
+			mwhj.run(session, join, result);
+
+			assertEquals("Join was not cancelled", ResultStatus.ERROR,
+					result.getResultStatus());
+			assertTrue("Join was not cancelled : " + result.getMessage(),
+					result.getMessage().startsWith("Join was cancelled"));
+			assertNull("Join is still running", JoinProgress.get(26L));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Tests to make sure that the result type that is returned is tabular;
+	 */
+	@Test
+	public void testGetJoinDataType() {
+		MultiWayHashJoin mwhj = new MultiWayHashJoin();
+		assertEquals("Should be result type of tabular",
+				mwhj.getJoinDataType(), ResultDataType.TABULAR);
+	}
+
+	/**
+	 * Creates a result set of names for testing
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createNameResult() throws ResultSetException,
+			PersistableException {
+		return JoinTestUtil.createResultSet(new Column[] { createIdColumn(),
+				createColumn("Name", PrimitiveDataType.STRING) }, new Object[] {
+				1, "Jeremy", 2, "James", 3, "Bob" });
+	}
+
+	/**
+	 * Creates a result set of ages for testing
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createAgeResult() throws ResultSetException,
+			PersistableException {
+		return JoinTestUtil.createResultSet(new Column[] { createIdColumn(),
+				createColumn("Age", PrimitiveDataType.INTEGER) }, new Object[] {
+				1, 20, 2, 30, 5, 10 });
+	}
+
+	/**
+	 * Creates a result set of lab results for testing. It is the largest
+	 * result set and has two rows for the same id.
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createLabResult() throws ResultSetException,
+			PersistableException {
+		return JoinTestUtil.createResultSet(new Column[] { createIdColumn(),
+				createColumn("Lab", PrimitiveDataType.STRING) }, new Object[] {
+				2, "A1", 1, "B2", 1, "C3", 3, "D4" });
+	}
+
+	/**
+	 * Creates a comparator result set for the inner join
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createComparator() throws ResultSetException,
+			PersistableException {
+		return JoinTestUtil.createResultSet(new Column[] { createIdColumn(),
+				createColumn("Name", PrimitiveDataType.STRING),
+				createColumn("Age", PrimitiveDataType.INTEGER),
+				createColumn("Lab", PrimitiveDataType.STRING) }, new Object[] {
+				2, "James", 30, "A1",
+				1, "Jeremy", 20, "B2",
+				1, "Jeremy", 20, "C3" });
+	}
+
+	/**
+	 * Creates a comparator result set for the left outer join
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createLeftOuterComparator() throws ResultSetException,
+			PersistableException {
+		return JoinTestUtil.createResultSet(new Column[] { createIdColumn(),
+				createColumn("Name", PrimitiveDataType.STRING),
+				createColumn("Age", PrimitiveDataType.INTEGER),
+				createColumn("Lab", PrimitiveDataType.STRING) }, new Object[] {
+				1, "Jeremy", 20, "B2",
+				1, "Jeremy", 20, "C3",
+				2, "James", 30, "A1",
+				3, "Bob", null, "D4" });
+	}
+
+	private Column createIdColumn() {
+		return createColumn("id", PrimitiveDataType.INTEGER);
+	}
+
+	private Column createColumn(String name, PrimitiveDataType dataType) {
+		Column column = new Column();
+		column.setName(name);
+		column.setDataType(dataType);
+		return column;
+	}
+
+}
@@ -0,0 +1,407 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.join.test;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import edu.harvard.hms.dbmi.bd2k.irct.exception.JoinActionSetupException;
+import edu.harvard.hms.dbmi.bd2k.irct.join.JoinProgress;
+import edu.harvard.hms.dbmi.bd2k.irct.join.SortMergeJoin;
+import edu.harvard.hms.dbmi.bd2k.irct.model.join.Join;
+import edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.Result;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.ResultStatus;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Column;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSetImpl;
+import edu.harvard.hms.dbmi.bd2k.irct.model.security.SecureSession;
+
+public class SortMergeJoinTest {
+
+	/**
+	 * Tests the creation of a Sort Merge Join
+	 * 
+	 */
+	@Test
+	public void testSetup() {
+		SortMergeJoin smj = new SortMergeJoin();
+		try {
+			smj.setup(new HashMap<String, Object>());
+			assertNotNull(smj);
+		} catch (JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	/**
+	 * Runs a join between two result sets and tests to see if the results are
+	 * equal
+	 */
+	@Test
+	public void testRunPositive() {
+		SortMergeJoin smj = new SortMergeJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			smj.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", createLeftResult());
+			join.getStringValues().put("LeftColumn", "id");
+			join.getObjectValues().put("RightResultSet", createRightResult());
+			join.getStringValues().put("RightColumn", "user_id");
+
+			ResultSetImpl returnedData = (ResultSetImpl) smj.run(session, join,
+					result).getData();
+			
+			
+			assertTrue("Results are not equal",
+					JoinTestUtil.isEqual(returnedData, createComparator()));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Runs a full outer join between a sorted result set and an unsorted
+	 * result set that has to be sorted on disk
+	 */
+	@Test
+	public void testRunUnsortedFullOuter() {
+		SortMergeJoin smj = new SortMergeJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			Map<String, Object> parameters = new HashMap<String, Object>();
+			parameters.put("memoryBudget", "1");
+			smj.setup(parameters);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", createLeftResult());
+			join.getStringValues().put("LeftColumn", "id");
+			join.getObjectValues().put("RightResultSet",
+					createUnsortedRightResult());
+			join.getStringValues().put("RightColumn", "user_id");
+			join.getStringValues().put("JoinType", "fullOuter");
+
+			ResultSetImpl returnedData = (ResultSetImpl) smj.run(session, join,
+					result).getData();
+
+			assertTrue("Results are not equal", JoinTestUtil.isEqual(
+					returnedData, createFullOuterComparator()));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Runs a join between two results sets that should fail on joining
+	 */
+	@Test
+	public void testRunNegative() {
+		SortMergeJoin smj = new SortMergeJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			smj.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", createRightResult());
+			join.getStringValues().put("LeftColumn", "id");
+			join.getObjectValues().put("RightResultSet", createLeftResult());
+			join.getStringValues().put("RightColumn", "user_id");
+
+			result = smj.run(session, join, result);
+			assertEquals("ResultStatus is not ERROR", ResultStatus.ERROR,
+					result.getResultStatus());
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Runs a join between two results sets where the result sets are null
+	 */
+	@Test
+	public void testRunNull() {
+		SortMergeJoin smj = new SortMergeJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			smj.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", null);
+			join.getStringValues().put("LeftColumn", "id");
+			join.getObjectValues().put("RightResultSet", null);
+			join.getStringValues().put("RightColumn", "user_id");
+
+			result = smj.run(session, join, result);
+			assertEquals("ResultStatus is not ERROR", ResultStatus.ERROR,
+					result.getResultStatus());
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Tests to ensure that the results from the getResults is equal to the
+	 * results from the run
+	 */
+	@Test
+	public void testGetResults() {
+		SortMergeJoin smj = new SortMergeJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			smj.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", createLeftResult());
+			join.getStringValues().put("LeftColumn", "id");
+			join.getObjectValues().put("RightResultSet", createRightResult());
+			join.getStringValues().put("RightColumn", "user_id");
+
+			smj.run(session, join, result);
+
+			ResultSetImpl returnedData = (ResultSetImpl) smj.getResults(result)
+					.getData();
+			assertTrue("Results are not equal",
+					JoinTestUtil.isEqual(returnedData, createComparator()));
+
+			assertSame(result, smj.getResults(result));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+
+		}
+
+	}
+
+	/**
+	 * Cancels a sort merge join by the id of its result once it has written its first
+	 * row and tests to see if it stops at its next checkpoint
+	 */
+	@Test
+	public void testRunCancelled() {
+		SortMergeJoin smj = new SortMergeJoin();
+		SecureSession session = new SecureSession();
+		final Result result = new Result();
+		result.setId(24L);
+		MemoryResultSet rsi = new MemoryResultSet() {
+			@Override
+			public void appendRow() throws ResultSetException,
+					PersistableException {
+				super.appendRow();
+				JoinProgress.cancel(result.getId());
+			}
+		};
+		Join join = new Join();
+
+		try {
+			smj.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", JoinTestUtil
+					.createRangeResultSet("id", "Name", 0, 5000, 1, 0));
+			join.getStringValues().put("LeftColumn", "id");
+			join.getObjectValues().put("RightResultSet", JoinTestUtil
+					.createRangeResultSet("user_id", "Age", 0, 5000, 1, 0));
+			join.getStringValues().put("RightColumn", "user_id");
+
+			smj.run(session, join, result);
+
+			assertEquals("Join was not cancelled", ResultStatus.ERROR,
+					result.getResultStatus());
+			assertTrue("Join was not cancelled : " + result.getMessage(),
+					result.getMessage().startsWith("Join was cancelled"));
+			assertNull("Join is still running", JoinProgress.get(24L));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Tests to make sure that the result type that is returned is tabular;
+	 */
+	@Test
+	public void testGetJoinDataType() {
+		SortMergeJoin smj = new SortMergeJoin();
+		assertEquals("Should be result type of tabular", smj.getJoinDataType(),
+				ResultDataType.TABULAR);
+	}
+
+	/**
+	 * Creates a left result set for testing
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createLeftResult() throws ResultSetException,
+			PersistableException {
+		Column leftIdColumn = new Column();
+		leftIdColumn.setName("id");
+		leftIdColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column leftNameColumn = new Column();
+		leftNameColumn.setName("Name");
+		leftNameColumn.setDataType(PrimitiveDataType.STRING);
+
+		return JoinTestUtil.createResultSet(new Column[] { leftIdColumn,
+				leftNameColumn }, new Object[] { 1, "Jeremy", 2, "James", 3,
+				"Bob" });
+	}
+
+	/**
+	 * Creates a right result set for testing
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createRightResult() throws ResultSetException,
+			PersistableException {
+		Column rightIdColumn = new Column();
+		rightIdColumn.setName("user_id");
+		rightIdColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column rightAgeColumn = new Column();
+		rightAgeColumn.setName("Age");
+		rightAgeColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		return JoinTestUtil.createResultSet(new Column[] { rightIdColumn,
+				rightAgeColumn }, new Object[] { 1, 20, 2, 30, 5, 10 });
+	}
+
+	/**
+	 * Creates a right result set that is not sorted on its join column
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createUnsortedRightResult() throws ResultSetException,
+			PersistableException {
+		Column rightIdColumn = new Column();
+		rightIdColumn.setName("user_id");
+		rightIdColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column rightAgeColumn = new Column();
+		rightAgeColumn.setName("Age");
+		rightAgeColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		return JoinTestUtil.createResultSet(new Column[] { rightIdColumn,
+				rightAgeColumn }, new Object[] { 5, 10, 2, 30, 1, 20 });
+	}
+
+	/**
+	 * Creates a comparator result set for testing
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createComparator() throws ResultSetException,
+			PersistableException {
+		Column leftIdColumn = new Column();
+		leftIdColumn.setName("id");
+		leftIdColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column leftNameColumn = new Column();
+		leftNameColumn.setName("Name");
+		leftNameColumn.setDataType(PrimitiveDataType.STRING);
+
+		Column rightIdColumn = new Column();
+		rightIdColumn.setName("user_id");
+		rightIdColumn.setDataType(PrimitiveDataType.INTEGER);
+		
+		Column rightAgeColumn = new Column();
+		rightAgeColumn.setName("Age");
+		rightAgeColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		return JoinTestUtil.createResultSet(new Column[] { leftIdColumn,
+				leftNameColumn, rightIdColumn, rightAgeColumn }, new Object[] { 
+				1, "Jeremy", 1, 20, 
+				2, "James", 2, 30 });
+	}
+
+	/**
+	 * Creates a comparator result set for the full outer join
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createFullOuterComparator() throws ResultSetException,
+			PersistableException {
+		Column leftIdColumn = new Column();
+		leftIdColumn.setName("id");
+		leftIdColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column leftNameColumn = new Column();
+		leftNameColumn.setName("Name");
+		leftNameColumn.setDataType(PrimitiveDataType.STRING);
+
+		Column rightIdColumn = new Column();
+		rightIdColumn.setName("user_id");
+		rightIdColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column rightAgeColumn = new Column();
+		rightAgeColumn.setName("Age");
+		rightAgeColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		return JoinTestUtil.createResultSet(new Column[] { leftIdColumn,
+				leftNameColumn, rightIdColumn, rightAgeColumn }, new Object[] {
+				1, "Jeremy", 1, 20,
+				2, "James", 2, 30,
+				3, "Bob", null, null,
+				null, null, 5, 10 });
+	}
+
+}
@@ -6,10 +6,13 @@ package edu.harvard.hms.dbmi.bd2k.irct.join.test;
 import static org.junit.Assert.*;
 
 import java.util.HashMap;
+import java.util.Map;
 
 import org.junit.Test;
 
 import edu.harvard.hms.dbmi.bd2k.irct.exception.JoinActionSetupException;
+import edu.harvard.hms.dbmi.bd2k.irct.join.ExternalSort;
+import edu.harvard.hms.dbmi.bd2k.irct.join.JoinProgress;
 import edu.harvard.hms.dbmi.bd2k.irct.join.UnionJoin;
 import edu.harvard.hms.dbmi.bd2k.irct.model.join.Join;
 import edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType;
@@ -161,6 +164,122 @@ public class UnionJoinTest {
 
 	}
 
+	/**
+	 * Runs a distinct union between two result sets that share rows and tests
+	 * to see if the results are equal
+	 */
+	@Test
+	public void testRunDistinct() {
+		UnionJoin uj = new UnionJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			uj.setup(null);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet",
+					createOverlappingLeftResult());
+			join.getObjectValues().put("RightResultSet",
+					createOverlappingRightResult());
+			join.getStringValues().put("Distinct", "true");
+
+			ResultSetImpl returnedData = (ResultSetImpl) uj.run(session,
+					join, result).getData();
+
+			assertTrue("Results are not equal",
+					JoinTestUtil.isEqual(returnedData, createDistinctComparator()));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Runs a distinct union that has to partition the result sets to disk
+	 * and tests to see if the results are equal
+	 */
+	@Test
+	public void testRunDistinctSpilled() {
+		UnionJoin uj = new UnionJoin();
+		SecureSession session = new SecureSession();
+		Result result = new Result();
+		MemoryResultSet rsi = new MemoryResultSet();
+		Join join = new Join();
+
+		try {
+			Map<String, Object> parameters = new HashMap<String, Object>();
+			parameters.put("memoryBudget", "1");
+			uj.setup(parameters);
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet",
+					createOverlappingLeftResult());
+			join.getObjectValues().put("RightResultSet",
+					createOverlappingRightResult());
+			join.getStringValues().put("Distinct", "true");
+
+			ResultSetImpl returnedData = (ResultSetImpl) uj.run(session,
+					join, result).getData();
+
+			// Partitioned rows come out partition by partition
+			MemoryResultSet sortedData = new MemoryResultSet();
+			new ExternalSort(new int[] { 0, 1 }, Long.MAX_VALUE, null).sort(
+					returnedData, sortedData);
+			assertTrue("Results are not equal",
+					JoinTestUtil.isEqual(sortedData, createDistinctComparator()));
+		} catch (ResultSetException | PersistableException | JoinActionSetupException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
+	/**
+	 * Cancels a union by the id of its result once it has written its first
+	 * row and tests to see if it stops at its next checkpoint
+	 */
+	@Test
+	public void testRunCancelled() {
+		UnionJoin uj = new UnionJoin();
+		SecureSession session = new SecureSession();
+		final Result result = new Result();
+		result.setId(27L);
+		MemoryResultSet rsi = new MemoryResultSet() {
+			@Override
+			public void appendRow() throws ResultSetException,
+					PersistableException {
+				super.appendRow();
+				JoinProgress.cancel(result.getId());
+			}
+		};
+		Join join = new Join();
+
+		try {
+			result.setData(rsi);
+
+			join.getObjectValues().put("LeftResultSet", JoinTestUtil
+					.createRangeResultSet("id", "Name", 0, 5000, 1, 0));
+			join.getObjectValues().put("RightResultSet", JoinTestUtil
+					.createRangeResultSet("id", "Name", 0, 5000, 1, 0));
+
+			uj.run(session, join, result);
+
+			assertEquals("Join was not cancelled", ResultStatus.ERROR,
+					result.getResultStatus());
+			assertTrue("Join was not cancelled : " + result.getMessage(),
+					result.getMessage().startsWith("Join was cancelled"));
+			assertNull("Join is still running", JoinProgress.get(27L));
+		} catch (ResultSetException | PersistableException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+
+	}
+
 	/**
 	 * Tests to make sure that the result type that is returned is tabular;
 	 */
@@ -236,4 +355,68 @@ public class UnionJoinTest {
 				leftNameColumn }, new Object[] { 1, "Jeremy", 2, "James", 3, "Bob", 4, "Sue", 5, "Timmy", 6, "Sam"});
 	}
 
+	/**
+	 * Creates a left result set with a duplicate row for testing
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException An exception occurred
+	 * @throws PersistableException An exception occurred
+	 */
+	private ResultSet createOverlappingLeftResult() throws ResultSetException,
+			PersistableException {
+		Column idColumn = new Column();
+		idColumn.setName("id");
+		idColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column nameColumn = new Column();
+		nameColumn.setName("Name");
+		nameColumn.setDataType(PrimitiveDataType.STRING);
+
+		return JoinTestUtil.createResultSet(new Column[] { idColumn,
+				nameColumn }, new Object[] { 1, "Jeremy", 2, "James", 3, "Bob", 2, "James" });
+	}
+
+	/**
+	 * Creates a right result set that shares rows with the left result set
+	 * for testing
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException An exception occurred
+	 * @throws PersistableException An exception occurred
+	 */
+	private ResultSet createOverlappingRightResult() throws ResultSetException,
+			PersistableException {
+		Column idColumn = new Column();
+		idColumn.setName("id");
+		idColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column nameColumn = new Column();
+		nameColumn.setName("Name");
+		nameColumn.setDataType(PrimitiveDataType.STRING);
+
+		return JoinTestUtil.createResultSet(new Column[] { idColumn,
+				nameColumn }, new Object[] { 2, "James", 4, "Sue", 3, "Bob" });
+	}
+
+	/**
+	 * Creates a comparator result set for the distinct union
+	 * 
+	 * @return ResultSet
+	 * @throws ResultSetException An exception occurred
+	 * @throws PersistableException An exception occurred
+	 */
+	private ResultSet createDistinctComparator() throws ResultSetException,
+			PersistableException {
+		Column idColumn = new Column();
+		idColumn.setName("id");
+		idColumn.setDataType(PrimitiveDataType.INTEGER);
+
+		Column nameColumn = new Column();
+		nameColumn.setName("Name");
+		nameColumn.setDataType(PrimitiveDataType.STRING);
+
+		return JoinTestUtil.createResultSet(new Column[] { idColumn,
+				nameColumn }, new Object[] { 1, "Jeremy", 2, "James", 3, "Bob", 4, "Sue" });
+	}
+
 }
@@ -0,0 +1,248 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package edu.harvard.hms.dbmi.bd2k.irct.ws.rs.resultconverter.test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import edu.harvard.hms.dbmi.bd2k.irct.dataconverter.ResultDataConverter;
+import edu.harvard.hms.dbmi.bd2k.irct.join.test.MemoryResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.model.resource.PrimitiveDataType;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.Result;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.PersistableException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.exception.ResultSetException;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.Column;
+import edu.harvard.hms.dbmi.bd2k.irct.model.result.tabular.ResultSet;
+import edu.harvard.hms.dbmi.bd2k.irct.ws.rs.resultconverter.CSVTabularDataConverter;
+import edu.harvard.hms.dbmi.bd2k.irct.ws.rs.resultconverter.JSONTabularDataConverter;
+import edu.harvard.hms.dbmi.bd2k.irct.ws.rs.resultconverter.XMLTabularDataConverter;
+import edu.harvard.hms.dbmi.bd2k.irct.ws.rs.resultconverter.XSLXTabularDataConverter;
+
+/**
+ * Converts a result set with integer, float, double and string columns with
+ * each tabular data converter, and tests to see if every value in the output
+ * is the same as the string value the result set returns for it
+ */
+public class TabularDataConverterTest {
+	private static final String[] COLUMN_NAMES = new String[] { "id",
+			"score", "weight", "name" };
+
+	@Test
+	public void testCSV() {
+		try {
+			List<String[]> expected = getStrings(createResultSet());
+			String output = new String(convert(new CSVTabularDataConverter()),
+					"UTF-8");
+
+			List<CSVRecord> records = CSVFormat.DEFAULT.parse(
+					new StringReader(output)).getRecords();
+			assertEquals("Row count is not equal", expected.size() + 1,
+					records.size());
+			for (int row = 0; row < expected.size(); row++) {
+				CSVRecord record = records.get(row + 1);
+				for (int column = 0; column < COLUMN_NAMES.length; column++) {
+					assertEquals("Value is not equal",
+							expected.get(row)[column], record.get(column));
+				}
+			}
+		} catch (ResultSetException | PersistableException | IOException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	@Test
+	public void testJSON() {
+		try {
+			List<String[]> expected = getStrings(createResultSet());
+			String output = new String(
+					convert(new JSONTabularDataConverter()), "UTF-8");
+
+			JsonArray data = Json.createReader(new StringReader(output))
+					.readObject().getJsonArray("data");
+			assertEquals("Row count is not equal", expected.size(),
+					data.size());
+			for (int row = 0; row < expected.size(); row++) {
+				JsonArray cells = data.getJsonArray(row);
+				for (int column = 0; column < COLUMN_NAMES.length; column++) {
+					JsonObject cell = cells.getJsonObject(column);
+					assertEquals("Value is not equal",
+							expected.get(row)[column],
+							cell.getString(COLUMN_NAMES[column]));
+				}
+			}
+		} catch (ResultSetException | PersistableException | IOException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	@Test
+	public void testXML() {
+		try {
+			List<String[]> expected = getStrings(createResultSet());
+			Document document = DocumentBuilderFactory.newInstance()
+					.newDocumentBuilder()
+					.parse(new ByteArrayInputStream(
+							convert(new XMLTabularDataConverter())));
+
+			NodeList results = document.getElementsByTagName("result");
+			assertEquals("Row count is not equal", expected.size(),
+					results.getLength());
+			for (int row = 0; row < expected.size(); row++) {
+				Element result = (Element) results.item(row);
+				for (int column = 0; column < COLUMN_NAMES.length; column++) {
+					assertEquals("Value is not equal",
+							expected.get(row)[column], result
+									.getElementsByTagName(COLUMN_NAMES[column])
+									.item(0).getTextContent());
+				}
+			}
+		} catch (ResultSetException | PersistableException | IOException
+				| ParserConfigurationException | SAXException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	@Test
+	public void testXSLX() {
+		try {
+			List<String[]> expected = getStrings(createResultSet());
+			XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(
+					convert(new XSLXTabularDataConverter())));
+			try {
+				Sheet sheet = workbook.getSheetAt(0);
+				assertEquals("Row count is not equal", expected.size(),
+						sheet.getLastRowNum());
+				for (int row = 0; row < expected.size(); row++) {
+					for (int column = 0; column < COLUMN_NAMES.length; column++) {
+						assertEquals("Value is not equal",
+								expected.get(row)[column],
+								sheet.getRow(row + 1).getCell(column)
+										.getStringCellValue());
+					}
+				}
+			} finally {
+				workbook.close();
+			}
+		} catch (ResultSetException | PersistableException | IOException e) {
+			e.printStackTrace();
+			fail("Exception thrown");
+		}
+	}
+
+	/**
+	 * Writes a new copy of the test result set with a converter
+	 *
+	 * @param converter
+	 *            Data converter
+	 * @return Bytes written
+	 */
+	private byte[] convert(ResultDataConverter converter)
+			throws ResultSetException, PersistableException, IOException {
+		Result result = new Result();
+		result.setData(createResultSet());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		converter.createStream(result).write(output);
+		return output.toByteArray();
+	}
+
+	/**
+	 * Returns the string value of every cell of a result set
+	 */
+	private List<String[]> getStrings(ResultSet resultSet)
+			throws ResultSetException {
+		List<String[]> rows = new ArrayList<String[]>();
+		resultSet.beforeFirst();
+		while (resultSet.next()) {
+			String[] row = new String[resultSet.getColumnSize()];
+			for (int column = 0; column < row.length; column++) {
+				row[column] = resultSet.getString(column);
+			}
+			rows.add(row);
+		}
+		resultSet.beforeFirst();
+		return rows;
+	}
+
+	/**
+	 * Creates a result set for testing. Its float values print with more
+	 * digits if they are widened to doubles.
+	 *
+	 * @return ResultSet
+	 * @throws ResultSetException
+	 *             An exception occurred
+	 * @throws PersistableException
+	 *             An exception occurred
+	 */
+	private ResultSet createResultSet() throws ResultSetException,
+			PersistableException {
+		PrimitiveDataType[] dataTypes = new PrimitiveDataType[] {
+				PrimitiveDataType.INTEGER, PrimitiveDataType.FLOAT,
+				PrimitiveDataType.DOUBLE, PrimitiveDataType.STRING };
+		Object[][] rows = new Object[][] { { 1, 0.1f, 2.5, "Jeremy" },
+				{ 2, 1.0E10f, 0.3, "James" }, { 3, 3.3f, 1.0 / 3, "Bob" } };
+
+		StringResultSet resultSet = new StringResultSet();
+		for (int column = 0; column < COLUMN_NAMES.length; column++) {
+			Column resultColumn = new Column();
+			resultColumn.setName(COLUMN_NAMES[column]);
+			resultColumn.setDataType(dataTypes[column]);
+			resultSet.appendColumn(resultColumn);
+		}
+		resultSet.beforeFirst();
+		for (Object[] row : rows) {
+			resultSet.appendRow();
+			for (int column = 0; column < row.length; column++) {
+				resultSet.updateObject(column, row[column]);
+			}
+		}
+		resultSet.beforeFirst();
+		return resultSet;
+	}
+
+	/**
+	 * A result set held in memory that returns the string value of any cell,
+	 * and has nothing to load or close
+	 */
+	private static class StringResultSet extends MemoryResultSet {
+
+		@Override
+		public String getString(int columnIndex) throws ResultSetException {
+			Object value = getObject(columnIndex);
+			return (value == null) ? null : value.toString();
+		}
+
+		@Override
+		public void load(String location) {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}